@@ -506,19 +506,23 @@ public class EquinoxFwConfigFileParser {
 
 	private void saveProperties(File outputFile, Properties configProps) throws IOException {
 		String header = "This configuration file was written by: " + this.getClass().getName(); //$NON-NLS-1$
-		FileOutputStream out = null;
+		// write next to the target and move it in place so config.ini is never seen half written
+		File stagingFile = Utils.getStagingFile(outputFile);
+		boolean saved = false;
 		try {
-			out = new FileOutputStream(outputFile);
-			configProps.store(out, header);
-			Log.log(LogService.LOG_INFO, NLS.bind(Messages.log_propertiesSaved, outputFile));
-		} finally {
+			FileOutputStream out = new FileOutputStream(stagingFile);
 			try {
-				out.flush();
+				configProps.store(out, header);
+			} finally {
 				out.close();
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
+			Utils.replaceFile(stagingFile, outputFile);
+			saved = true;
+		} finally {
+			if (!saved)
+				stagingFile.delete();
 		}
+		Log.log(LogService.LOG_INFO, NLS.bind(Messages.log_propertiesSaved, outputFile));
 	}
 
 	private void filterPropertiesFromSharedArea(Properties configProps, Manipulator manipulator) {
@@ -179,6 +179,18 @@ public class Utils {
 		return parent.mkdirs();
 	}
 
+	/**
+	 * Return the file which should be written to when the given target file is to be
+	 * replaced atomically. The returned file lives next to the target so that it can
+	 * later be moved in place with {@link #replaceFile(File, File)}.
+	 * 
+	 * @param target the file that will eventually be replaced
+	 * @return File temporary sibling of the target file
+	 */
+	public static File getStagingFile(File target) {
+		return new File(target.getParentFile(), target.getName() + ".tmp"); //$NON-NLS-1$
+	}
+
 	public static BundleInfo[] getBundleInfosFromList(List<BundleInfo> list) {
 		if (list == null)
 			return new BundleInfo[0];
@@ -306,6 +318,28 @@ public class Utils {
 		return dest;
 	}
 
+	/**
+	 * Move the staged file over the target file. Readers of the target either see the
+	 * previous content or the new content, never a partially written file. Platforms
+	 * that refuse to rename over an existing file get the target removed first.
+	 * 
+	 * @param staged file previously obtained from {@link #getStagingFile(File)}
+	 * @param target file to replace
+	 * @throws IOException if the staged file could not be moved in place
+	 */
+	public static void replaceFile(File staged, File target) throws IOException {
+		if (staged.renameTo(target))
+			return;
+		if (target.exists() && !target.delete()) {
+			staged.delete();
+			throw new IOException("Fail to delete (" + target + ")"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (!staged.renameTo(target)) {
+			staged.delete();
+			throw new IOException("Fail to rename from (" + staged + ") to (" + target + ")"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
 	public static String[] getTokens(String msg, String delim) {
 		return getTokens(msg, delim, false);
 	}
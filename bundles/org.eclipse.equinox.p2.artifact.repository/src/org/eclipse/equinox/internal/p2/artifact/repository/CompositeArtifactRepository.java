@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 IBM Corporation and others.
+ * Copyright (c) 2008, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,10 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader.ChildLoader;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader.Result;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
@@ -30,7 +34,7 @@ import org.eclipse.equinox.p2.repository.artifact.*;
 import org.eclipse.equinox.p2.repository.artifact.spi.AbstractArtifactRepository;
 import org.eclipse.osgi.util.NLS;
 
-public class CompositeArtifactRepository extends AbstractArtifactRepository implements ICompositeRepository<IArtifactKey> {
+public class CompositeArtifactRepository extends AbstractArtifactRepository implements ICompositeRepository<IArtifactKey>, RepositoryIndexFile.Provider {
 
 	static final public String REPOSITORY_TYPE = CompositeArtifactRepository.class.getName();
 	static final private Integer REPOSITORY_VERSION = new Integer(1);
@@ -49,6 +53,7 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 	private List<ChildInfo> loadedRepos = new ArrayList<ChildInfo>();
 	private IArtifactRepositoryManager manager;
 	private boolean disableSave;
+	private volatile RepositoryIndexFile indexFile;
 
 	/**
 	 * Create a Composite repository in memory.
@@ -89,11 +94,34 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 	CompositeArtifactRepository(IArtifactRepositoryManager manager, CompositeRepositoryState state, IProgressMonitor monitor) throws ProvisionException {
 		super(manager.getAgent(), state.getName(), state.getType(), state.getVersion(), state.getLocation(), state.getDescription(), state.getProvider(), state.getProperties());
 		this.manager = manager;
-		SubMonitor sub = SubMonitor.convert(monitor, 100 * state.getChildren().length);
-		List<URI> repositoriesToBeRemovedOnFailure = new ArrayList<URI>();
+		List<URI> children = new ArrayList<URI>();
+		for (URI child : state.getChildren()) {
+			URI absolute = URIUtil.makeAbsolute(child, getLocation());
+			if (childrenURIs.contains(child) || childrenURIs.contains(absolute))
+				continue;
+			childrenURIs.add(child);
+			children.add(absolute);
+		}
 		boolean failOnChildFailure = shouldFailOnChildFailure(state);
-		for (URI child : state.getChildren())
-			addChild(child, false, sub.newChild(100), failOnChildFailure, repositoriesToBeRemovedOnFailure);
+		final List<URI> repositoriesToBeRemovedOnFailure = failOnChildFailure ? Collections.synchronizedList(new ArrayList<URI>()) : null;
+		List<Result<IArtifactRepository>> results = CompositeChildLoader.loadAll(children, new ChildLoader<IArtifactRepository>() {
+			public IArtifactRepository load(URI child, IProgressMonitor childMonitor) throws ProvisionException {
+				return loadChild(child, childMonitor, repositoriesToBeRemovedOnFailure);
+			}
+		}, failOnChildFailure, monitor);
+		for (Result<IArtifactRepository> result : results) {
+			if (result.failure != null) {
+				//repository failed to load. fall through
+				LogHelper.log(result.failure);
+				if (failOnChildFailure) {
+					removeFromRepoManager(repositoriesToBeRemovedOnFailure);
+					String msg = NLS.bind(Messages.io_failedRead, getLocation());
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, result.failure));
+				}
+				continue;
+			}
+			loadedRepos.add(new ChildInfo(result.repository));
+		}
 	}
 
 	/**
@@ -144,6 +172,17 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		return "file".equalsIgnoreCase(getLocation().getScheme()); //$NON-NLS-1$
 	}
 
+	public RepositoryIndexFile getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Records the index file this repository was loaded from.
+	 */
+	public void setIndexFile(RepositoryIndexFile indexFile) {
+		this.indexFile = indexFile;
+	}
+
 	public boolean isModifiable() {
 		return isLocal();
 	}
@@ -168,10 +207,7 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		if (save)
 			save();
 		try {
-			boolean currentLoaded = getManager().contains(absolute);
-			IArtifactRepository repo = load(childURI, sub);
-			if (!currentLoaded && propagateException)
-				repositoriesToBeRemovedOnFailure.add(absolute);
+			IArtifactRepository repo = loadChild(absolute, sub, propagateException ? repositoriesToBeRemovedOnFailure : null);
 			loadedRepos.add(new ChildInfo(repo));
 		} catch (ProvisionException e) {
 			//repository failed to load. fall through
@@ -467,18 +503,19 @@ public class CompositeArtifactRepository extends AbstractArtifactRepository impl
 		}
 	}
 
-	private IArtifactRepository load(URI repoURI, IProgressMonitor monitor) throws ProvisionException {
-		// make sure we are dealing with an absolute location
-		repoURI = URIUtil.makeAbsolute(repoURI, getLocation());
-		boolean loaded = getManager().contains(repoURI);
-		IArtifactRepository repo = getManager().loadRepository(repoURI, monitor);
-		if (!loaded) {
+	//a repository that was not known to the manager before is added to repositoriesToBeRemovedOnFailure if the list is not null
+	private IArtifactRepository loadChild(URI absolute, IProgressMonitor monitor, List<URI> repositoriesToBeRemovedOnFailure) throws ProvisionException {
+		boolean currentLoaded = getManager().contains(absolute);
+		IArtifactRepository currentRepo = getManager().loadRepository(absolute, monitor);
+		if (!currentLoaded) {
 			//set enabled to false so repositories do not get polled twice
-			getManager().setEnabled(repoURI, false);
+			getManager().setEnabled(absolute, false);
 			//set repository to system to hide from users
-			getManager().setRepositoryProperty(repoURI, IRepository.PROP_SYSTEM, String.valueOf(true));
+			getManager().setRepositoryProperty(absolute, IRepository.PROP_SYSTEM, String.valueOf(true));
+			if (repositoriesToBeRemovedOnFailure != null)
+				repositoriesToBeRemovedOnFailure.add(absolute);
 		}
-		return repo;
+		return currentRepo;
 	}
 
 	//	/**
@@ -21,6 +21,7 @@ import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
@@ -114,6 +115,7 @@ public class CompositeArtifactRepositoryFactory extends ArtifactRepositoryFactor
 					resultState.setLocation(location);
 				// Spending half the time in creating the repo is due to the loading of the children that happens during that period
 				CompositeArtifactRepository result = new CompositeArtifactRepository(getManager(), resultState, sub.newChild(200));
+				result.setIndexFile(RepositoryIndexFile.create(location, CompositeArtifactRepository.CONTENT_FILENAME, localFile, localFile.lastModified()));
 				if (Tracing.DEBUG_METADATA_PARSING) {
 					time += System.currentTimeMillis();
 					Tracing.debug(debugMsg + "time (ms): " + time); //$NON-NLS-1$ 
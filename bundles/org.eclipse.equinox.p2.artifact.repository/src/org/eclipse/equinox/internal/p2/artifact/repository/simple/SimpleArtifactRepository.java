@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2012 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -27,11 +27,16 @@ import org.eclipse.equinox.internal.p2.artifact.processors.md5.MD5Verifier;
 import org.eclipse.equinox.internal.p2.artifact.repository.*;
 import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
 import org.eclipse.equinox.internal.p2.core.helpers.FileUtils;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
 import org.eclipse.equinox.internal.p2.metadata.expression.CompoundIterator;
 import org.eclipse.equinox.internal.p2.metadata.index.IndexProvider;
 import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
 import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.helpers.IndexDelta;
+import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
+import org.eclipse.equinox.internal.p2.repository.helpers.XZIndex;
 import org.eclipse.equinox.internal.provisional.p2.artifact.repository.processing.*;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
@@ -47,7 +52,7 @@ import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
 import org.eclipse.osgi.service.datalocation.Location;
 import org.eclipse.osgi.util.NLS;
 
-public class SimpleArtifactRepository extends AbstractArtifactRepository implements IFileArtifactRepository, IIndexProvider<IArtifactKey> {
+public class SimpleArtifactRepository extends AbstractArtifactRepository implements IFileArtifactRepository, IIndexProvider<IArtifactKey>, RepositoryIndexFile.Provider {
 	/** 
 	 * A boolean property controlling whether mirroring is enabled.
 	 */
@@ -253,6 +258,7 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 	private MirrorSelector mirrors;
 
 	private boolean disableSave = false;
+	private volatile RepositoryIndexFile indexFile;
 
 	static void delete(File toDelete) {
 		if (toDelete.isDirectory()) {
@@ -1023,6 +1029,17 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 			canLock = new Boolean(canLock());
 	}
 
+	public RepositoryIndexFile getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Records the index file this repository was loaded from.
+	 */
+	public void setIndexFile(RepositoryIndexFile indexFile) {
+		this.indexFile = indexFile;
+	}
+
 	private String getBlobStoreName(String defaultValue) {
 		String value = getProperty(PROP_BLOBSTORE_NAME);
 		if (value == null || value.length() == 0) {
@@ -1222,12 +1239,15 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 
 	private void save(boolean compress) {
 		assertModifiable();
+		File artifactsFile = URIUtil.toFile(getActualLocation(getLocation(), false));
+		File jarFile = URIUtil.toFile(getActualLocation(getLocation(), true));
+		boolean publishDeltas = IndexDelta.isEnabled(getProperties());
+		byte[] previous = null;
+		if (publishDeltas)
+			previous = IndexDelta.readPrevious(artifactsFile, jarFile);
 		OutputStream os = null;
 		try {
 			try {
-				URI actualLocation = getActualLocation(getLocation(), false);
-				File artifactsFile = URIUtil.toFile(actualLocation);
-				File jarFile = URIUtil.toFile(getActualLocation(getLocation(), true));
 				if (!compress) {
 					if (jarFile.exists()) {
 						jarFile.delete();
@@ -1261,6 +1281,22 @@ public class SimpleArtifactRepository extends AbstractArtifactRepository impleme
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		if (publishDeltas) {
+			try {
+				IndexDelta.publish(artifactsFile, jarFile, previous);
+			} catch (IOException e) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error publishing index delta for artifact repository: " + getLocation(), e)); //$NON-NLS-1$
+			}
+		}
+		saveXZIndex(artifactsFile, jarFile, XZIndex.isEnabled(getProperties()));
+	}
+
+	private void saveXZIndex(File artifactsFile, File jarFile, boolean enabled) {
+		try {
+			XZIndex.save(artifactsFile, enabled ? IndexDelta.readIndex(artifactsFile, jarFile) : null, LocationProperties.ARTIFACT_REPOSITORY_FACTORY_ORDER);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error saving xz compressed index for artifact repository: " + getLocation(), e)); //$NON-NLS-1$
+		}
 	}
 
 	private String doSetProperty(String key, String newValue, IProgressMonitor monitor, boolean save) {
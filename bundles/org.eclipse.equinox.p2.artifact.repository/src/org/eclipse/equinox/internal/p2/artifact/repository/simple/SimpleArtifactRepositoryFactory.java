@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,8 @@ import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
 import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.CachingInputStream;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
@@ -72,6 +74,19 @@ public class SimpleArtifactRepositoryFactory extends ArtifactRepositoryFactory {
 		return localFile;
 	}
 
+	/**
+	 * Returns a stream on the contents of the artifact repository at the given location. The
+	 * index of a remote repository is cached as it is read.
+	 */
+	private CachingInputStream openIndex(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
+		if (PROTOCOL_FILE.equals(location.getScheme()))
+			return new CachingInputStream(getLocalFile(location, monitor));
+		CacheManager cache = (CacheManager) getAgent().getService(CacheManager.SERVICE_NAME);
+		if (cache == null)
+			throw new IllegalArgumentException("Cache manager service not available"); //$NON-NLS-1$
+		return cache.openCache(location, SimpleArtifactRepository.CONTENT_FILENAME, monitor);
+	}
+
 	public IArtifactRepository load(URI location, int flags, IProgressMonitor monitor) throws ProvisionException {
 		return load(location, flags, monitor, true);
 	}
@@ -85,8 +100,8 @@ public class SimpleArtifactRepositoryFactory extends ArtifactRepositoryFactory {
 		}
 		SubMonitor sub = SubMonitor.convert(monitor, 400);
 		try {
-			File localFile = getLocalFile(location, sub.newChild(300));
-			InputStream inStream = new BufferedInputStream(new FileInputStream(localFile));
+			CachingInputStream inStream = openIndex(location, sub.newChild(300));
+			File localFile = inStream.getCacheFile();
 			JarInputStream jarStream = null;
 			try {
 				//if reading from a jar, obtain a stream on the entry with the actual contents
@@ -104,11 +119,8 @@ public class SimpleArtifactRepositoryFactory extends ArtifactRepositoryFactory {
 				//parse the repository descriptor file
 				sub.setWorkRemaining(100);
 				InputStream descriptorStream = jarStream != null ? jarStream : inStream;
-				SimpleArtifactRepositoryIO io = new SimpleArtifactRepositoryIO(getAgent());
-				SimpleArtifactRepository result = (SimpleArtifactRepository) io.read(location, descriptorStream, sub.newChild(100), acquireLock);
-				result.initializeAfterLoad(location);
-				if (result != null && (flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0 && !result.isModifiable())
-					return null;
+				RepositoryIndexFile indexFile = RepositoryIndexFile.create(location, SimpleArtifactRepository.CONTENT_FILENAME, localFile, inStream.getLastModified());
+				IArtifactRepository result = read(location, descriptorStream, indexFile, flags, sub.newChild(100), acquireLock);
 				if (Tracing.DEBUG_METADATA_PARSING) {
 					time += System.currentTimeMillis();
 					Tracing.debug(debugMsg + "time (ms): " + time); //$NON-NLS-1$ 
@@ -134,10 +146,25 @@ public class SimpleArtifactRepositoryFactory extends ArtifactRepositoryFactory {
 		return new SimpleArtifactRepository(getAgent(), name, location, properties);
 	}
 
+	/**
+	 * Parses the repository index read from the given stream, and returns the repository
+	 * or <code>null</code> if it does not satisfy the given flags. The repository records
+	 * the given index file as the one it was loaded from.
+	 */
+	IArtifactRepository read(URI location, InputStream descriptorStream, RepositoryIndexFile indexFile, int flags, IProgressMonitor monitor, boolean acquireLock) throws ProvisionException {
+		SimpleArtifactRepositoryIO io = new SimpleArtifactRepositoryIO(getAgent());
+		SimpleArtifactRepository result = (SimpleArtifactRepository) io.read(location, descriptorStream, monitor, acquireLock);
+		result.initializeAfterLoad(location);
+		result.setIndexFile(indexFile);
+		if (result != null && (flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0 && !result.isModifiable())
+			return null;
+		return result;
+	}
+
 	/**
 	 * Closes a stream, ignoring any secondary exceptions
 	 */
-	private void safeClose(InputStream stream) {
+	void safeClose(InputStream stream) {
 		if (stream == null)
 			return;
 		try {
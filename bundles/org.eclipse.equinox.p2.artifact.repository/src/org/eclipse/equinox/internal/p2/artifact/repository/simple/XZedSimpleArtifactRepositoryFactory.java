@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.artifact.repository.simple;
+
+import java.io.*;
+import java.net.URI;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.artifact.repository.Activator;
+import org.eclipse.equinox.internal.p2.artifact.repository.Messages;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
+import org.eclipse.equinox.internal.p2.repository.helpers.XZIndex;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * Loads simple artifact repositories from their xz compressed index (<code>artifacts.xml.xz</code>).
+ * Any failure to obtain or open that index, including the absence of the optional xz codec,
+ * is reported as a missing repository, so that the repository manager goes on with the
+ * regular index.
+ */
+public class XZedSimpleArtifactRepositoryFactory extends SimpleArtifactRepositoryFactory {
+
+	private File getXZFile(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
+		if (PROTOCOL_FILE.equals(location.getScheme())) {
+			File localFile = new File(URIUtil.toFile(SimpleArtifactRepository.getActualLocation(location, false)).getPath() + XZIndex.EXTENSION);
+			if (!localFile.exists())
+				throw new FileNotFoundException(localFile.getAbsolutePath());
+			return localFile;
+		}
+		CacheManager cache = (CacheManager) getAgent().getService(CacheManager.SERVICE_NAME);
+		if (cache == null)
+			throw new IllegalArgumentException("Cache manager service not available"); //$NON-NLS-1$
+		return cache.createXZCache(location, SimpleArtifactRepository.CONTENT_FILENAME, monitor);
+	}
+
+	IArtifactRepository load(URI location, int flags, IProgressMonitor monitor, boolean acquireLock) throws ProvisionException {
+		long time = 0;
+		final String debugMsg = "Restoring xz compressed artifact repository "; //$NON-NLS-1$
+		if (Tracing.DEBUG_METADATA_PARSING) {
+			Tracing.debug(debugMsg + location);
+			time = -System.currentTimeMillis();
+		}
+		SubMonitor sub = SubMonitor.convert(monitor, 400);
+		try {
+			File localFile;
+			InputStream descriptorStream;
+			try {
+				if (!XZIndex.isAvailable())
+					throw new FileNotFoundException(XZIndex.EXTENSION);
+				localFile = getXZFile(location, sub.newChild(300));
+				descriptorStream = XZIndex.openStream(localFile);
+			} catch (ProvisionException e) {
+				if (e.getStatus().getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
+					throw e;
+				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.io_failedRead, location), e));
+			} catch (IOException e) {
+				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.io_failedRead, location), e));
+			}
+			try {
+				RepositoryIndexFile indexFile = RepositoryIndexFile.create(location, SimpleArtifactRepository.CONTENT_FILENAME, localFile, localFile.lastModified());
+				IArtifactRepository result = read(location, descriptorStream, indexFile, flags, sub.newChild(100), acquireLock);
+				if (Tracing.DEBUG_METADATA_PARSING) {
+					time += System.currentTimeMillis();
+					Tracing.debug(debugMsg + "time (ms): " + time); //$NON-NLS-1$
+				}
+				return result;
+			} finally {
+				safeClose(descriptorStream);
+			}
+		} catch (IOException e) {
+			String msg = NLS.bind(Messages.io_failedRead, location);
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, e));
+		} finally {
+			if (monitor != null)
+				monitor.done();
+		}
+	}
+}
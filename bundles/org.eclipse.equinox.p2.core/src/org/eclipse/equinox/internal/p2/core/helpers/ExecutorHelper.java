@@ -0,0 +1,119 @@
+/*******************************************************************************
+ *  Copyright (c) 2013 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ *
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.core.helpers;
+
+import java.util.concurrent.*;
+
+/**
+ * Creates the thread pools used by p2 to do work concurrently, and waits for their results.
+ * All threads are daemon threads so that a pool never keeps the VM alive.
+ */
+public class ExecutorHelper {
+	private static final long KEEP_ALIVE = 30;
+
+	/**
+	 * Returns the number of threads given by the system property, or the default
+	 * number if the property is not set or is not a number.
+	 */
+	public static int getThreadCount(String property, int defaultCount) {
+		String value = System.getProperty(property);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				// use the default
+			}
+		}
+		return defaultCount;
+	}
+
+	/**
+	 * Returns the number of available processors, but no more than the given number.
+	 */
+	public static int getProcessorCount(int max) {
+		return Math.min(Runtime.getRuntime().availableProcessors(), max);
+	}
+
+	/**
+	 * Returns a factory of daemon threads with the given name.
+	 */
+	public static ThreadFactory newDaemonThreadFactory(final String name) {
+		return new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * Returns a pool of the given number of daemon threads. Tasks that find all threads
+	 * busy wait in a queue.
+	 */
+	public static ThreadPoolExecutor newDaemonPool(String name, int threads) {
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), newDaemonThreadFactory(name));
+	}
+
+	/**
+	 * Returns a pool of the given number of daemon threads whose queue holds at most the
+	 * given number of tasks. A task submitted while the queue is full is run by the
+	 * submitting thread, which keeps a fast producer from getting far ahead of the pool.
+	 */
+	public static ThreadPoolExecutor newBoundedDaemonPool(String name, int threads, int queueSize) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), newDaemonThreadFactory(name));
+		pool.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		return pool;
+	}
+
+	/**
+	 * Returns a pool of at most the given number of daemon threads, meant to be shared by
+	 * callers that run the {@link FutureTask}s they wait for themselves when no thread has
+	 * picked them up yet. A task that finds all threads busy is therefore discarded rather
+	 * than queued. Idle threads go away after a while.
+	 */
+	public static ThreadPoolExecutor newSharedDaemonPool(String name, int threads) {
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(0, threads, KEEP_ALIVE, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), newDaemonThreadFactory(name));
+		pool.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+		return pool;
+	}
+
+	/**
+	 * Waits for the result of the given future. An interrupt does not stop the wait, it
+	 * is kept for the caller to see once the result is there. A runtime exception or an
+	 * error thrown by the computation is thrown again as is.
+	 *
+	 * @throws ExecutionException if the computation threw a checked exception
+	 * @throws CancellationException if the computation was canceled
+	 */
+	public static <T> T getResult(Future<T> future) throws ExecutionException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw e;
+				}
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.core.helpers;
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+/**
+ * A pool of immutable values shared by all the metadata loaded in a provisioning agent, such
+ * as identifiers, namespaces, versions, version ranges and capabilities. Parsers replace the
+ * values they create with the equal value already held by the pool, so that repositories and
+ * profiles describing the same units do not each retain their own copies.
+ * <p>
+ * Values are held through weak references and disappear from the pool once the metadata
+ * using them is discarded. Values are only ever compared with values of the same class, and
+ * must implement a meaningful equals method that takes every part of their state into account.
+ * </p><p>
+ * The pool is safe for use by concurrent threads. It is available as an agent service under
+ * {@link #SERVICE_NAME}.
+ * </p>
+ */
+public class InterningPool {
+	public static final String SERVICE_NAME = InterningPool.class.getName();
+
+	private final Map<Class<?>, Segment> segments = new HashMap<Class<?>, Segment>();
+
+	/*
+	 * The values of one class, along with the statistics of the lookups for that class.
+	 */
+	private static final class Segment {
+		final Map<Object, WeakReference<Object>> values = new WeakHashMap<Object, WeakReference<Object>>();
+		long hits = 0;
+		long misses = 0;
+
+		synchronized Object intern(Object value) {
+			WeakReference<Object> reference = values.get(value);
+			if (reference != null) {
+				Object shared = reference.get();
+				if (shared != null) {
+					hits++;
+					return shared;
+				}
+			}
+			misses++;
+			values.put(value, new WeakReference<Object>(value));
+			return value;
+		}
+
+		synchronized String getStatistics() {
+			return "size=" + values.size() + ", hits=" + hits + ", misses=" + misses; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	/**
+	 * Returns the value held by this pool that is equal to the given value, adding the
+	 * given value to the pool if there is none. Returns <code>null</code> for a <code>null</code> value.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T intern(T value) {
+		if (value == null)
+			return null;
+		return (T) getSegment(value.getClass()).intern(value);
+	}
+
+	private Segment getSegment(Class<?> type) {
+		synchronized (segments) {
+			Segment segment = segments.get(type);
+			if (segment == null) {
+				segment = new Segment();
+				segments.put(type, segment);
+			}
+			return segment;
+		}
+	}
+
+	/**
+	 * Returns the lookup statistics of this pool, for tracing purposes.
+	 */
+	public String toString() {
+		List<Map.Entry<Class<?>, Segment>> entries;
+		synchronized (segments) {
+			entries = new ArrayList<Map.Entry<Class<?>, Segment>>(segments.entrySet());
+		}
+		StringBuffer result = new StringBuffer("InterningPool"); //$NON-NLS-1$
+		for (Map.Entry<Class<?>, Segment> entry : entries) {
+			result.append("\n\t").append(entry.getKey().getName()).append(": "); //$NON-NLS-1$ //$NON-NLS-2$
+			result.append(entry.getValue().getStatistics());
+		}
+		return result.toString();
+	}
+}
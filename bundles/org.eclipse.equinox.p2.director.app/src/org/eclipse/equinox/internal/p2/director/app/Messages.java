@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 IBM Corporation and others. All rights reserved. This
+ * Copyright (c) 2007, 2013 IBM Corporation and others. All rights reserved. This
  * program and the accompanying materials are made available under the terms of
  * the Eclipse Public License v1.0 which accompanies this distribution, and is
  * available at http://www.eclipse.org/legal/epl-v10.html
@@ -66,6 +66,8 @@ public class Messages extends NLS {
 	public static String Help_Defines_a_tag_for_provisioning_session;
 	public static String Help_List_Tags;
 	public static String Help_Download_Only;
+	public static String Help_Solve_time_limit;
+	public static String Help_lt_milliseconds_gt;
 
 	public static String Help_formats_the_IU_list;
 
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+
+/**
+ * The results of the filters of units and requirements in a selection context.
+ * <p>
+ * A repository holds many units but only a handful of distinct filters, and the selection
+ * context of a profile rarely changes, so each filter is evaluated once per context and the
+ * result is shared by all the slices and projections, including those of later plans. A new
+ * selection context is created for each plan, so contexts are told apart by their id, version
+ * and properties rather than by identity. Filters are looked up by identity first; the filters
+ * parsed from the same string are usually the same object. Equal filters that are different
+ * objects share the result of the first one evaluated.
+ * </p><p>
+ * The cache holds the results of a bounded number of contexts, and forgets the filters of a
+ * context once it holds too many of them. The cache is safe for use by concurrent threads.
+ * </p>
+ */
+public final class FilterCache {
+	private static final int DEFAULT_CONTEXTS = 8;
+	private static final int DEFAULT_FILTERS = 4096;
+
+	/**
+	 * The cache shared by the planners.
+	 */
+	public static final FilterCache DEFAULT = new FilterCache(DEFAULT_CONTEXTS, DEFAULT_FILTERS);
+
+	/**
+	 * The results of the filters in one selection context.
+	 */
+	public static final class Results {
+		private final IInstallableUnit selectionContext;
+		private final int size;
+		private Map<IMatchExpression<IInstallableUnit>, Boolean> byIdentity = new IdentityHashMap<IMatchExpression<IInstallableUnit>, Boolean>();
+		private Map<IMatchExpression<IInstallableUnit>, Boolean> byEquality = new HashMap<IMatchExpression<IInstallableUnit>, Boolean>();
+		private long hits = 0;
+		private long misses = 0;
+
+		Results(IInstallableUnit selectionContext, int size) {
+			this.selectionContext = selectionContext;
+			this.size = size;
+		}
+
+		/**
+		 * Returns whether the given filter matches the selection context. A <code>null</code>
+		 * filter always matches.
+		 */
+		public synchronized boolean isMatch(IMatchExpression<IInstallableUnit> filter) {
+			if (filter == null)
+				return true;
+			Boolean result = byIdentity.get(filter);
+			if (result != null) {
+				hits++;
+				return result.booleanValue();
+			}
+			result = byEquality.get(filter);
+			if (result != null)
+				hits++;
+			else {
+				misses++;
+				result = Boolean.valueOf(filter.isMatch(selectionContext));
+				if (byEquality.size() >= size)
+					byEquality = new HashMap<IMatchExpression<IInstallableUnit>, Boolean>();
+				byEquality.put(filter, result);
+			}
+			if (byIdentity.size() >= size)
+				byIdentity = new IdentityHashMap<IMatchExpression<IInstallableUnit>, Boolean>();
+			byIdentity.put(filter, result);
+			return result.booleanValue();
+		}
+
+		/**
+		 * Returns the number of distinct filters held.
+		 */
+		public synchronized int size() {
+			return byEquality.size();
+		}
+
+		/**
+		 * Returns the lookup statistics of these results, for tracing purposes.
+		 */
+		public synchronized String toString() {
+			return "filters=" + byEquality.size() + ", hits=" + hits + ", misses=" + misses; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		}
+	}
+
+	/*
+	 * What a filter can see of a selection context.
+	 */
+	private static final class ContextKey {
+		private final String id;
+		private final Version version;
+		private final Map<String, String> properties;
+
+		ContextKey(IInstallableUnit selectionContext) {
+			id = selectionContext.getId();
+			version = selectionContext.getVersion();
+			properties = new HashMap<String, String>(selectionContext.getProperties());
+		}
+
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ContextKey))
+				return false;
+			ContextKey other = (ContextKey) obj;
+			return (id == null ? other.id == null : id.equals(other.id)) && (version == null ? other.version == null : version.equals(other.version)) && properties.equals(other.properties);
+		}
+
+		public int hashCode() {
+			return ((id == null ? 0 : id.hashCode()) * 31 + (version == null ? 0 : version.hashCode())) * 31 + properties.hashCode();
+		}
+	}
+
+	private final int filters;
+	private final Map<ContextKey, Results> contexts;
+
+	/**
+	 * Creates a cache holding the results of up to the given number of contexts, and of up to
+	 * the given number of filters in each context.
+	 */
+	public FilterCache(final int contexts, int filters) {
+		this.filters = filters;
+		this.contexts = new LinkedHashMap<ContextKey, Results>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<ContextKey, Results> eldest) {
+				return size() > contexts;
+			}
+		};
+	}
+
+	/**
+	 * Returns the results of the filters in the given selection context. Filters may only
+	 * depend on the id, the version and the properties of the context.
+	 *
+	 * @param selectionContext the selection context, typically created by
+	 * {@link org.eclipse.equinox.internal.p2.metadata.InstallableUnit#contextIU(Map)}
+	 * @return the results, shared with all the equal contexts
+	 */
+	public synchronized Results getResults(IInstallableUnit selectionContext) {
+		ContextKey key = new ContextKey(selectionContext);
+		Results results = contexts.get(key);
+		if (results == null) {
+			results = new Results(selectionContext, filters);
+			contexts.put(key, results);
+		}
+		return results;
+	}
+
+	/**
+	 * Forgets the results of all contexts.
+	 */
+	public synchronized void clear() {
+		contexts.clear();
+	}
+
+	/**
+	 * Returns the number of contexts held by this cache.
+	 */
+	public synchronized int size() {
+		return contexts.size();
+	}
+
+	/**
+	 * Returns the lookup statistics of this cache, for tracing purposes.
+	 */
+	public synchronized String toString() {
+		return "contexts=" + contexts.size() + ' ' + contexts.values(); //$NON-NLS-1$
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -52,6 +52,7 @@ public class Messages extends NLS {
 	public static String Explanation_unsatisfied;
 
 	public static String Planner_Timeout;
+	public static String Planner_Time_limit_reached;
 	public static String Planner_Problems_resolving_plan;
 	public static String Planner_Unsatisfiable_problem;
 	public static String Planner_Unsatisfied_dependency;
@@ -24,7 +24,6 @@ import org.eclipse.equinox.internal.p2.director.Explanation.NotInstallableRoot;
 import org.eclipse.equinox.internal.p2.metadata.IRequiredCapability;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.p2.metadata.*;
-import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
 import org.eclipse.equinox.p2.query.*;
 import org.eclipse.osgi.util.NLS;
 import org.sat4j.minisat.restarts.LubyRestarts;
@@ -52,6 +51,7 @@ public class Projector {
 	static boolean DEBUG = Tracing.DEBUG_PLANNER_PROJECTOR;
 	private static boolean DEBUG_ENCODING = Tracing.DEBUG_PLANNER_PROJECTOR_ENCODING;
 	private IQueryable<IInstallableUnit> picker;
+	private RequirementMatches requirementMatches;
 	private QueryableArray patches;
 
 	private List<AbstractVariable> allOptionalAbstractRequirements;
@@ -62,6 +62,8 @@ public class Projector {
 	private IInstallableUnit selectionContext;
 
 	DependencyHelper<Object, Explanation> dependencyHelper;
+	// whether the constraints are named after the explanation of their failure
+	private boolean explain = false;
 	private Collection<IInstallableUnit> solution;
 	private Collection<Object> assumptions;
 
@@ -72,6 +74,8 @@ public class Projector {
 
 	private boolean considerMetaRequirements;
 	private IInstallableUnit entryPoint;
+	private Collection<IInstallableUnit> newRoots;
+	private Map<String, String> context;
 	private Map<IInstallableUnitFragment, Set<IInstallableUnit>> fragments = new HashMap<IInstallableUnitFragment, Set<IInstallableUnit>>();
 
 	//Non greedy things
@@ -82,6 +86,13 @@ public class Projector {
 	private boolean emptyBecauseFiltered;
 	private boolean userDefinedFunction;
 
+	// the time given to the solver in milliseconds, 0 to search for the optimal solution
+	private long timeLimit = 0;
+	private TimeLimitedSolver timeLimitedSolver;
+	private boolean timeLimitReached = false;
+	private IPBSolver solver;
+	private int timeout;
+
 	static class AbstractVariable {
 		//		private String name;
 
@@ -99,6 +110,55 @@ public class Projector {
 		}
 	}
 
+	/**
+	 * Solver that records whether it ran out of time. It is placed under the optimization
+	 * decorators, which keep the best solution found so far when the time is up.
+	 */
+	static class TimeLimitedSolver extends PBSolverDecorator {
+		private static final long serialVersionUID = 1L;
+		boolean timedOut = false;
+
+		TimeLimitedSolver(IPBSolver solver) {
+			super(solver);
+		}
+
+		public boolean isSatisfiable() throws TimeoutException {
+			try {
+				return super.isSatisfiable();
+			} catch (TimeoutException e) {
+				timedOut = true;
+				throw e;
+			}
+		}
+
+		public boolean isSatisfiable(boolean global) throws TimeoutException {
+			try {
+				return super.isSatisfiable(global);
+			} catch (TimeoutException e) {
+				timedOut = true;
+				throw e;
+			}
+		}
+
+		public boolean isSatisfiable(IVecInt assumps) throws TimeoutException {
+			try {
+				return super.isSatisfiable(assumps);
+			} catch (TimeoutException e) {
+				timedOut = true;
+				throw e;
+			}
+		}
+
+		public boolean isSatisfiable(IVecInt assumps, boolean global) throws TimeoutException {
+			try {
+				return super.isSatisfiable(assumps, global);
+			} catch (TimeoutException e) {
+				timedOut = true;
+				throw e;
+			}
+		}
+	}
+
 	/**
 	 * Job for computing SAT failure explanation in the background.
 	 */
@@ -158,8 +218,10 @@ public class Projector {
 
 	public Projector(IQueryable<IInstallableUnit> q, Map<String, String> context, Set<IInstallableUnit> nonGreedyIUs, boolean considerMetaRequirements) {
 		picker = q;
-		slice = new HashMap<String, Map<Version, IInstallableUnit>>();
+		this.context = context;
 		selectionContext = InstallableUnit.contextIU(context);
+		requirementMatches = new RequirementMatches(q, selectionContext);
+		slice = new HashMap<String, Map<Version, IInstallableUnit>>();
 		abstractVariables = new ArrayList<AbstractVariable>();
 		allOptionalAbstractRequirements = new ArrayList<AbstractVariable>();
 		result = new MultiStatus(DirectorActivator.PI_DIRECTOR, IStatus.OK, Messages.Planner_Problems_resolving_plan, null);
@@ -173,13 +235,13 @@ public class Projector {
 		alreadyInstalledIUs = Arrays.asList(alreadyExistingRoots);
 		lastState = installedIUs;
 		this.entryPoint = entryPointIU;
+		this.newRoots = newRoots;
 		try {
 			long start = 0;
 			if (DEBUG) {
 				start = System.currentTimeMillis();
 				Tracing.debug("Start projection: " + start); //$NON-NLS-1$
 			}
-			IPBSolver solver;
 			if (DEBUG_ENCODING) {
 				solver = new UserFriendlyPBStringSolver<Object>();
 			} else {
@@ -188,11 +250,18 @@ public class Projector {
 					mysolver.setSimplifier(mysolver.SIMPLE_SIMPLIFICATION);
 					mysolver.setRestartStrategy(new LubyRestarts(512));
 					solver = mysolver;
+				} else if (timeLimit > 0) {
+					// built like SolverFactory.newEclipseP2(), with the timeouts recorded under the optimization
+					PBSolverResolution mysolver = SolverFactory.newCompetPBResHTMixedConstraintsObjectiveExpSimp();
+					mysolver.setSimplifier(mysolver.SIMPLE_SIMPLIFICATION);
+					mysolver.setRestartStrategy(new LubyRestarts(512));
+					timeLimitedSolver = new TimeLimitedSolver(mysolver);
+					solver = new OptToPBSATAdapter(new PseudoOptDecorator(timeLimitedSolver));
 				} else {
 					solver = SolverFactory.newEclipseP2();
 				}
 			}
-			int timeout = DEFAULT_SOLVER_TIMEOUT;
+			timeout = DEFAULT_SOLVER_TIMEOUT;
 			String timeoutString = null;
 			try {
 				// allow the user to specify a longer timeout. 
@@ -209,10 +278,14 @@ public class Projector {
 			}
 			if (userDefinedFunction)
 				solver.setTimeoutOnConflicts(timeout / 4);
+			else if (timeLimit > 0)
+				solver.setTimeoutMs(timeLimit);
 			else
 				solver.setTimeoutOnConflicts(timeout);
 
 			IQueryResult<IInstallableUnit> queryResult = picker.query(QueryUtil.createIUAnyQuery(), null);
+			// the matches of requirements are listed in the order of the picker
+			requirementMatches.addUnits(queryResult.iterator());
 			if (DEBUG_ENCODING) {
 				dependencyHelper = new LexicoHelper<Object, Explanation>(solver, false);
 				((UserFriendlyPBStringSolver<Object>) solver).setMapping(dependencyHelper.getMappingToDomain());
@@ -220,19 +293,24 @@ public class Projector {
 				if (userDefinedFunction)
 					dependencyHelper = new SteppedTimeoutLexicoHelper<Object, Explanation>(solver);
 				else
-					dependencyHelper = new DependencyHelper<Object, Explanation>(solver);
+					// the constraints are only tracked for explanations once a failure is to be explained
+					dependencyHelper = new DependencyHelper<Object, Explanation>(solver, explain);
 			}
 			List<IInstallableUnit> iusToOrder = new ArrayList<IInstallableUnit>(queryResult.toSet());
 			Collections.sort(iusToOrder);
+			Set<IInstallableUnit> impossibleIUs = findImpossibleIUs(iusToOrder, entryPointIU);
 			for (Iterator<IInstallableUnit> iusToEncode = iusToOrder.iterator(); iusToEncode.hasNext();) {
 				if (monitor.isCanceled()) {
 					result.merge(Status.CANCEL_STATUS);
 					throw new OperationCanceledException();
 				}
 				IInstallableUnit iuToEncode = iusToEncode.next();
-				if (iuToEncode != entryPointIU) {
+				if (iuToEncode == entryPointIU)
+					continue;
+				if (impossibleIUs.contains(iuToEncode))
+					processImpossibleIU(iuToEncode);
+				else
 					processIU(iuToEncode, false);
-				}
 			}
 			createMustHave(entryPointIU, alreadyExistingRoots);
 
@@ -244,6 +322,9 @@ public class Projector {
 			if (DEBUG) {
 				long stop = System.currentTimeMillis();
 				Tracing.debug("Projection complete: " + (stop - start)); //$NON-NLS-1$
+				Tracing.debug("Requirement matches: " + requirementMatches); //$NON-NLS-1$
+				Tracing.debug("Requirements cache: " + RequirementsCache.DEFAULT); //$NON-NLS-1$
+				Tracing.debug("Filter cache: " + FilterCache.DEFAULT); //$NON-NLS-1$
 			}
 			if (DEBUG_ENCODING) {
 				System.out.println(solver.toString());
@@ -324,13 +405,11 @@ public class Projector {
 
 	// Check whether the requirement is applicable
 	private boolean isApplicable(IRequirement req) {
-		IMatchExpression<IInstallableUnit> filter = req.getFilter();
-		return filter == null || filter.isMatch(selectionContext);
+		return requirementMatches.isApplicable(req);
 	}
 
 	private boolean isApplicable(IInstallableUnit iu) {
-		IMatchExpression<IInstallableUnit> filter = iu.getFilter();
-		return filter == null || filter.isMatch(selectionContext);
+		return requirementMatches.isApplicable(iu);
 	}
 
 	private void expandNegatedRequirement(IRequirement req, IInstallableUnit iu, List<AbstractVariable> optionalAbstractRequirements, boolean isRootIu) throws ContradictionException {
@@ -460,12 +539,7 @@ public class Projector {
 
 	public void processIU(IInstallableUnit iu, boolean isRootIU) throws ContradictionException {
 		iu = iu.unresolved();
-		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
-		if (iuSlice == null) {
-			iuSlice = new HashMap<Version, IInstallableUnit>();
-			slice.put(iu.getId(), iuSlice);
-		}
-		iuSlice.put(iu.getVersion(), iu);
+		addToSlice(iu);
 		if (!isApplicable(iu)) {
 			createNegation(iu, null);
 			return;
@@ -475,29 +549,59 @@ public class Projector {
 		expandLifeCycle(iu, isRootIU);
 		//No patches apply, normal code path
 		if (applicablePatches.isEmpty()) {
-			expandRequirements(getRequiredCapabilities(iu), iu, isRootIU);
+			expandRequirements(getRequiredCapabilities(iu, considerMetaRequirements), iu, isRootIU);
 		} else {
 			//Patches are applicable to the IU
 			expandRequirementsWithPatches(iu, applicablePatches, allOptionalAbstractRequirements, isRootIU);
 		}
 	}
 
-	private Collection<IRequirement> getRequiredCapabilities(IInstallableUnit iu) {
-		boolean isFragment = iu instanceof IInstallableUnitFragment;
-		//Short-circuit for the case of an IInstallableUnit 
-		if ((!isFragment) && iu.getMetaRequirements().size() == 0)
-			return iu.getRequirements();
+	private void addToSlice(IInstallableUnit iu) {
+		Map<Version, IInstallableUnit> iuSlice = slice.get(iu.getId());
+		if (iuSlice == null) {
+			iuSlice = new HashMap<Version, IInstallableUnit>();
+			slice.put(iu.getId(), iuSlice);
+		}
+		iuSlice.put(iu.getVersion(), iu);
+	}
 
-		ArrayList<IRequirement> aggregatedRequirements = new ArrayList<IRequirement>(iu.getRequirements().size() + iu.getMetaRequirements().size() + (isFragment ? ((IInstallableUnitFragment) iu).getHost().size() : 0));
-		aggregatedRequirements.addAll(iu.getRequirements());
+	/*
+	 * Returns the units that are false in every solution, whose requirements need not be encoded.
+	 * Nothing is pruned when the constraints are tracked, so that a failure is explained from
+	 * the complete problem, nor when patches may change the requirements of the units.
+	 */
+	private Set<IInstallableUnit> findImpossibleIUs(Collection<IInstallableUnit> ius, IInstallableUnit entryPointIU) {
+		if (canExplain() || getPatches().everything().hasNext())
+			return Collections.<IInstallableUnit> emptySet();
+		Set<IInstallableUnit> impossible = new SlicePruner(requirementMatches, considerMetaRequirements).findImpossible(ius, entryPointIU);
+		if (DEBUG)
+			Tracing.debug("Units that can not be installed: " + impossible.size() + " of " + ius.size()); //$NON-NLS-1$ //$NON-NLS-2$
+		return impossible;
+	}
 
-		if (iu instanceof IInstallableUnitFragment) {
-			aggregatedRequirements.addAll(((IInstallableUnitFragment) iu).getHost());
+	/*
+	 * Sets a unit that is false in every solution to false, instead of encoding its requirements.
+	 * The solutions and the optimization function stay the same as if the unit had been encoded,
+	 * and the requirements that have no applicable match are reported as they would be then.
+	 */
+	private void processImpossibleIU(IInstallableUnit iu) throws ContradictionException {
+		iu = iu.unresolved();
+		addToSlice(iu);
+		boolean missing = false;
+		if (isApplicable(iu)) {
+			for (IRequirement req : getRequiredCapabilities(iu, considerMetaRequirements)) {
+				if (req.getMin() > 0 && req.getMax() > 0 && isApplicable(req) && getApplicableMatches(req).isEmpty()) {
+					missingRequirement(iu, req);
+					missing = true;
+				}
+			}
 		}
+		if (!missing)
+			createNegation(iu, null);
+	}
 
-		if (considerMetaRequirements)
-			aggregatedRequirements.addAll(iu.getMetaRequirements());
-		return aggregatedRequirements;
+	static Collection<IRequirement> getRequiredCapabilities(IInstallableUnit iu, boolean considerMetaRequirements) {
+		return RequirementsCache.DEFAULT.getRequirements(iu, considerMetaRequirements);
 	}
 
 	static final class Pending {
@@ -508,7 +612,7 @@ public class Projector {
 
 	private void expandRequirementsWithPatches(IInstallableUnit iu, IQueryResult<IInstallableUnit> applicablePatches, List<AbstractVariable> optionalAbstractRequirements, boolean isRootIu) throws ContradictionException {
 		//Unmodified dependencies
-		Collection<IRequirement> iuRequirements = getRequiredCapabilities(iu);
+		Collection<IRequirement> iuRequirements = getRequiredCapabilities(iu, considerMetaRequirements);
 		Map<IRequirement, List<IInstallableUnitPatch>> unchangedRequirements = new HashMap<IRequirement, List<IInstallableUnitPatch>>(iuRequirements.size());
 		Map<IRequirement, Pending> nonPatchedRequirements = new HashMap<IRequirement, Pending>(iuRequirements.size());
 		for (Iterator<IInstallableUnit> iterator = applicablePatches.iterator(); iterator.hasNext();) {
@@ -824,15 +928,8 @@ public class Projector {
 	 * @return a list of mandatory requirements if any, an empty list if req.isOptional().
 	 */
 	private List<IInstallableUnit> getApplicableMatches(IRequirement req) {
-		List<IInstallableUnit> target = new ArrayList<IInstallableUnit>();
-		IQueryResult<IInstallableUnit> matches = picker.query(QueryUtil.createMatchQuery(req.getMatches()), null);
-		for (Iterator<IInstallableUnit> iterator = matches.iterator(); iterator.hasNext();) {
-			IInstallableUnit match = iterator.next();
-			if (isApplicable(match)) {
-				target.add(match);
-			}
-		}
-		emptyBecauseFiltered = !matches.isEmpty() && target.isEmpty();
+		List<IInstallableUnit> target = requirementMatches.getApplicableMatches(req);
+		emptyBecauseFiltered = target.isEmpty() && !requirementMatches.getMatches(req).isEmpty();
 		return target;
 	}
 
@@ -883,30 +980,40 @@ public class Projector {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		for (Object r : right)
-			dependencyHelper.implication(new Object[] {left}).impliesNot(r).named(name);
+		for (Object r : right) {
+			ImplicationNamer<Object, Explanation> namer = dependencyHelper.implication(new Object[] {left}).impliesNot(r);
+			if (canExplain())
+				namer.named(name);
+		}
 	}
 
 	private void createImplication(Object left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + left + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		dependencyHelper.implication(new Object[] {left}).implies(right.toArray()).named(name);
+		ImplicationNamer<Object, Explanation> namer = dependencyHelper.implication(new Object[] {left}).implies(right.toArray());
+		if (canExplain())
+			namer.named(name);
 	}
 
 	private void createImplication(Object[] left, List<?> right, Explanation name) throws ContradictionException {
 		if (DEBUG) {
 			Tracing.debug(name + ": " + Arrays.asList(left) + "->" + right); //$NON-NLS-1$ //$NON-NLS-2$
 		}
-		dependencyHelper.implication(left).implies(right.toArray()).named(name);
+		ImplicationNamer<Object, Explanation> namer = dependencyHelper.implication(left).implies(right.toArray());
+		if (canExplain())
+			namer.named(name);
 	}
 
 	//Return IUPatches that are applicable for the given iu
 	private IQueryResult<IInstallableUnit> getApplicablePatches(IInstallableUnit iu) {
+		return getPatches().query(new ApplicablePatchQuery(iu), null);
+	}
+
+	private QueryableArray getPatches() {
 		if (patches == null)
 			patches = new QueryableArray(picker.query(QueryUtil.createIUPatchQuery(), null).toArray(IInstallableUnit.class));
-
-		return patches.query(new ApplicablePatchQuery(iu), null);
+		return patches;
 	}
 
 	//Create constraints to deal with singleton
@@ -953,7 +1060,9 @@ public class Projector {
 			}
 			Tracing.debug("At most 1 of " + b); //$NON-NLS-1$
 		}
-		dependencyHelper.atMost(1, (Object[]) ius).named(new Explanation.Singleton(ius));
+		ImplicationNamer<Object, Explanation> namer = dependencyHelper.atMost(1, (Object[]) ius);
+		if (canExplain())
+			namer.named(new Explanation.Singleton(ius));
 	}
 
 	private AbstractVariable getAbstractVariable(IRequirement req) {
@@ -987,11 +1096,13 @@ public class Projector {
 		try {
 			if (monitor.isCanceled())
 				return Status.CANCEL_STATUS;
-			if (dependencyHelper.hasASolution(assumptions)) {
+			if (hasASolution()) {
 				if (DEBUG) {
 					Tracing.debug("Satisfiable !"); //$NON-NLS-1$
 				}
 				backToIU();
+				// the solver stops improving the solution when it runs out of time
+				timeLimitReached = timeLimitedSolver != null && timeLimitedSolver.timedOut;
 				long stop = System.currentTimeMillis();
 				if (DEBUG)
 					Tracing.debug("Solver solution found in: " + (stop - start) + " ms."); //$NON-NLS-1$ //$NON-NLS-2$
@@ -1044,7 +1155,54 @@ public class Projector {
 		return solution;
 	}
 
+	/*
+	 * Returns whether the solver tracks the constraints, so that a failure can be explained.
+	 * The helper of user defined functions always tracks them.
+	 */
+	private boolean canExplain() {
+		return explain || userDefinedFunction || DEBUG_ENCODING;
+	}
+
+	/*
+	 * Searches for a first solution. When no solution is found within the time limit,
+	 * the search goes on as if there was no limit.
+	 */
+	private boolean hasASolution() throws TimeoutException {
+		try {
+			return dependencyHelper.hasASolution(assumptions);
+		} catch (TimeoutException e) {
+			if (timeLimit <= 0 || userDefinedFunction)
+				throw e;
+			if (DEBUG)
+				Tracing.debug("No solution found within the time limit"); //$NON-NLS-1$
+			solver.setTimeoutOnConflicts(timeout);
+			return dependencyHelper.hasASolution(assumptions);
+		}
+	}
+
+	/**
+	 * Limits the time given to the solver. When the time is up, the best solution found
+	 * so far is used, which satisfies all the constraints but may not be the optimal one.
+	 * When no solution has been found yet, the search goes on until the first one is found.
+	 * This must be called before the problem is encoded.
+	 *
+	 * @param timeLimit the time limit in milliseconds, or <code>0</code> to search for the optimal solution
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * Returns whether the solver ran out of time while searching for the solution, in
+	 * which case a better solution may exist.
+	 */
+	public boolean isTimeLimitReached() {
+		return timeLimitReached;
+	}
+
 	public Set<Explanation> getExplanation(IProgressMonitor monitor) {
+		if (!canExplain())
+			return explainAgain(monitor);
 		ExplanationJob job = new ExplanationJob();
 		job.schedule();
 		monitor.setTaskName(Messages.Planner_NoSolution);
@@ -1072,6 +1230,24 @@ public class Projector {
 		return job.getExplanationResult();
 	}
 
+	/*
+	 * Encodes and solves the problem again, tracking the constraints this time, and explains
+	 * why it has no solution. Tracking the constraints makes every solve slower and larger,
+	 * while only failures are ever explained.
+	 */
+	private Set<Explanation> explainAgain(IProgressMonitor monitor) {
+		if (DEBUG)
+			Tracing.debug("Encoding again to explain the failure"); //$NON-NLS-1$
+		Projector explainer = new Projector(picker, context, nonGreedyIUs, considerMetaRequirements);
+		explainer.explain = true;
+		explainer.setUserDefined(userDefinedFunction);
+		explainer.encode(entryPoint, alreadyInstalledIUs.toArray(new IInstallableUnit[alreadyInstalledIUs.size()]), lastState, newRoots, monitor);
+		IStatus status = explainer.invokeSolver(monitor);
+		if (status.getCode() != SimplePlanner.UNSATISFIABLE)
+			return Collections.<Explanation> emptySet();
+		return explainer.getExplanation(monitor);
+	}
+
 	public Map<IInstallableUnitFragment, List<IInstallableUnit>> getFragmentAssociation() {
 		Map<IInstallableUnitFragment, List<IInstallableUnit>> resolvedFragments = new HashMap<IInstallableUnitFragment, List<IInstallableUnit>>(fragments.size());
 		for (Entry<IInstallableUnitFragment, Set<IInstallableUnit>> fragment : fragments.entrySet()) {
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+import org.eclipse.equinox.p2.query.*;
+
+/**
+ * The units of a queryable that match requirements, computed once per requirement.
+ * <p>
+ * Each unit seen gets a dense number, and the matches of a requirement are kept as a set of
+ * those numbers. Requirements are looked up by identity: the requirements loaded from a
+ * repository are shared by all the units declaring them, so the same requirement object
+ * appears many times in a slice and the queryable is only queried for it once. Whether a unit
+ * is applicable in the selection context is also computed once per unit, and filters are
+ * evaluated through the shared {@link FilterCache}.
+ * </p><p>
+ * Units are numbered in the order they are first seen, so a caller that needs the matches in
+ * the order of the queryable should {@link #addUnits(Iterator) add} all its units first.
+ * This class is not thread safe.
+ * </p>
+ */
+public class RequirementMatches {
+	private final IQueryable<IInstallableUnit> queryable;
+	private final FilterCache.Results filters;
+
+	private final List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+	private final Map<IInstallableUnit, Integer> ids = new HashMap<IInstallableUnit, Integer>();
+	private final Map<IRequirement, BitSet> matches = new IdentityHashMap<IRequirement, BitSet>();
+
+	// the units whose filter was evaluated, and those whose filter matches
+	private final BitSet checked = new BitSet();
+	private final BitSet applicable = new BitSet();
+
+	private int lookups = 0;
+
+	public RequirementMatches(IQueryable<IInstallableUnit> queryable, IInstallableUnit selectionContext) {
+		this.queryable = queryable;
+		this.filters = FilterCache.DEFAULT.getResults(selectionContext);
+	}
+
+	/**
+	 * Numbers the given units, in order, unless they already have a number.
+	 */
+	public void addUnits(Iterator<IInstallableUnit> iterator) {
+		while (iterator.hasNext())
+			getId(iterator.next());
+	}
+
+	/**
+	 * Returns the number of the given unit, numbering it if it has none yet.
+	 */
+	public int getId(IInstallableUnit iu) {
+		Integer id = ids.get(iu);
+		if (id == null) {
+			id = new Integer(units.size());
+			units.add(iu);
+			ids.put(iu, id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * Returns the unit with the given number.
+	 */
+	public IInstallableUnit getUnit(int id) {
+		return units.get(id);
+	}
+
+	/**
+	 * Returns the numbers of the units that match the given requirement, whether they are
+	 * applicable or not. The returned set is shared and must not be modified.
+	 */
+	public BitSet getMatches(IRequirement req) {
+		lookups++;
+		BitSet result = matches.get(req);
+		if (result == null) {
+			result = new BitSet();
+			Iterator<IInstallableUnit> iterator = queryable.query(QueryUtil.createMatchQuery(req.getMatches()), null).iterator();
+			while (iterator.hasNext())
+				result.set(getId(iterator.next()));
+			matches.put(req, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the units that match the given requirement and are applicable in the selection
+	 * context, in the order of their numbers. The returned list is a new list that the caller
+	 * may modify.
+	 */
+	public List<IInstallableUnit> getApplicableMatches(IRequirement req) {
+		BitSet matching = getMatches(req);
+		List<IInstallableUnit> result = new ArrayList<IInstallableUnit>(matching.cardinality());
+		for (int id = matching.nextSetBit(0); id >= 0; id = matching.nextSetBit(id + 1)) {
+			if (isApplicable(id))
+				result.add(units.get(id));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns whether the given unit is applicable in the selection context.
+	 */
+	public boolean isApplicable(IInstallableUnit iu) {
+		return isApplicable(getId(iu));
+	}
+
+	private boolean isApplicable(int id) {
+		if (!checked.get(id)) {
+			checked.set(id);
+			if (filters.isMatch(units.get(id).getFilter()))
+				applicable.set(id);
+		}
+		return applicable.get(id);
+	}
+
+	/**
+	 * Returns whether the given requirement is applicable in the selection context.
+	 */
+	public boolean isApplicable(IRequirement req) {
+		return filters.isMatch(req.getFilter());
+	}
+
+	/**
+	 * Returns the lookup statistics of this table, for tracing purposes.
+	 */
+	public String toString() {
+		return "units=" + units.size() + ", requirements=" + matches.size() + ", lookups=" + lookups; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
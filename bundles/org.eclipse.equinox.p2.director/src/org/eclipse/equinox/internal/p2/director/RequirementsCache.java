@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.*;
+
+/**
+ * The requirements that the slicer and the projector follow for a unit: its requirements,
+ * the host requirements of a fragment, and optionally its meta requirements.
+ * <p>
+ * Most units only have requirements, which are returned as they are. The requirements of the
+ * other units are aggregated once and shared by all the slices and projections, including those
+ * of later plans. Units are immutable and looked up by identity, so an entry never gets stale:
+ * the units of a repository that is loaded again are different objects. The cache holds two
+ * generations of a bounded number of units, so the units of repositories that are no longer used
+ * are eventually forgotten. The cache is safe for use by concurrent threads.
+ * </p>
+ */
+public final class RequirementsCache {
+	private static final int DEFAULT_SIZE = 8192;
+
+	/**
+	 * The cache shared by the planners.
+	 */
+	public static final RequirementsCache DEFAULT = new RequirementsCache(DEFAULT_SIZE);
+
+	private static final class Entry {
+		Collection<IRequirement> withMetaRequirements;
+		Collection<IRequirement> withoutMetaRequirements;
+	}
+
+	private final int size;
+	private Map<IInstallableUnit, Entry> current = new IdentityHashMap<IInstallableUnit, Entry>();
+	private Map<IInstallableUnit, Entry> previous = new IdentityHashMap<IInstallableUnit, Entry>();
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Creates a cache holding up to twice the given number of units.
+	 */
+	public RequirementsCache(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Returns the requirements to follow for the given unit. The returned collection must not be modified.
+	 *
+	 * @param iu the unit
+	 * @param considerMetaRequirements whether the meta requirements of the unit are followed
+	 * @return the requirements, followed by the host requirements and the meta requirements if any
+	 */
+	public Collection<IRequirement> getRequirements(IInstallableUnit iu, boolean considerMetaRequirements) {
+		boolean isFragment = iu instanceof IInstallableUnitFragment;
+		//Short-circuit for the case of an IInstallableUnit
+		if (!isFragment && (!considerMetaRequirements || iu.getMetaRequirements().isEmpty()))
+			return iu.getRequirements();
+
+		Entry entry = getEntry(iu);
+		synchronized (entry) {
+			if (considerMetaRequirements) {
+				if (entry.withMetaRequirements == null)
+					entry.withMetaRequirements = aggregate(iu, true);
+				return entry.withMetaRequirements;
+			}
+			if (entry.withoutMetaRequirements == null)
+				entry.withoutMetaRequirements = aggregate(iu, false);
+			return entry.withoutMetaRequirements;
+		}
+	}
+
+	private synchronized Entry getEntry(IInstallableUnit iu) {
+		Entry entry = current.get(iu);
+		if (entry != null) {
+			hits++;
+			return entry;
+		}
+		entry = previous.remove(iu);
+		if (entry != null)
+			hits++;
+		else {
+			misses++;
+			entry = new Entry();
+		}
+		if (current.size() >= size) {
+			previous = current;
+			current = new IdentityHashMap<IInstallableUnit, Entry>();
+		}
+		current.put(iu, entry);
+		return entry;
+	}
+
+	private static Collection<IRequirement> aggregate(IInstallableUnit iu, boolean considerMetaRequirements) {
+		Collection<IRequirement> host = iu instanceof IInstallableUnitFragment ? ((IInstallableUnitFragment) iu).getHost() : Collections.<IRequirement> emptyList();
+		Collection<IRequirement> meta = considerMetaRequirements ? iu.getMetaRequirements() : Collections.<IRequirement> emptyList();
+		ArrayList<IRequirement> aggregatedRequirements = new ArrayList<IRequirement>(iu.getRequirements().size() + host.size() + meta.size());
+		aggregatedRequirements.addAll(iu.getRequirements());
+		aggregatedRequirements.addAll(host);
+		aggregatedRequirements.addAll(meta);
+		return Collections.unmodifiableList(aggregatedRequirements);
+	}
+
+	/**
+	 * Forgets all entries and statistics.
+	 */
+	public synchronized void clear() {
+		current = new IdentityHashMap<IInstallableUnit, Entry>();
+		previous = new IdentityHashMap<IInstallableUnit, Entry>();
+		hits = 0;
+		misses = 0;
+	}
+
+	/**
+	 * Returns the number of units held by this cache.
+	 */
+	public synchronized int size() {
+		return current.size() + previous.size();
+	}
+
+	/**
+	 * Returns the lookup statistics of this cache, for tracing purposes.
+	 */
+	public synchronized String toString() {
+		return "size=" + size() + ", hits=" + hits + ", misses=" + misses; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
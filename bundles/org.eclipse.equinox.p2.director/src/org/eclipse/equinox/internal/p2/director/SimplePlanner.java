@@ -43,8 +43,14 @@ public class SimplePlanner implements IPlanner {
 	private static final String ID_IU_FOR_ACTIONS = "org.eclipse.equinox.p2.engine.actions.root"; //$NON-NLS-1$
 	private static final String EXPLANATION = "org.eclipse.equinox.p2.director.explain"; //$NON-NLS-1$
 	private static final String CONSIDER_METAREQUIREMENTS = "org.eclipse.equinox.p2.planner.resolveMetaRequirements"; //$NON-NLS-1$
+	/**
+	 * The provisioning context property limiting the time in milliseconds that the solver spends
+	 * looking for the best plan. When the time is up, the best plan found so far is returned.
+	 */
+	public static final String SOLVE_TIME_LIMIT = "org.eclipse.equinox.p2.planner.solveTimeLimit"; //$NON-NLS-1$
 
 	static final int UNSATISFIABLE = 1; //status code indicating that the problem is not satisfiable
+	public static final int TIME_LIMIT_REACHED = 2; //status code of a plan found within the time limit, a better plan may exist
 
 	private final IProvisioningAgent agent;
 	private final IProfileRegistry profileRegistry;
@@ -339,6 +345,7 @@ public class SimplePlanner implements IPlanner {
 			slice = new CompoundQueryable<IInstallableUnit>(queryables);
 			Projector projector = new Projector(slice, newSelectionContext, slicer.getNonGreedyIUs(), satisfyMetaRequirements(profileChangeRequest.getProfileProperties()));
 			projector.setUserDefined(profileChangeRequest.getPropertiesToAdd().containsKey("_internal_user_defined_"));
+			projector.setTimeLimit(getTimeLimit(context));
 			projector.encode((IInstallableUnit) updatedPlan[0], (IInstallableUnit[]) updatedPlan[1], profile, profileChangeRequest.getAdditions(), sub.newChild(ExpandWork / 4));
 			IStatus s = projector.invokeSolver(sub.newChild(ExpandWork / 4));
 			if (s.getSeverity() == IStatus.CANCEL) {
@@ -397,7 +404,10 @@ public class SimplePlanner implements IPlanner {
 			IProvisioningPlan temporaryPlan = generatePlan((Projector) resolutionResult, newState, pcr, context);
 
 			//Create a plan for installing necessary pieces to complete the installation (e.g touchpoint actions)
-			return createInstallerPlan(pcr.getProfile(), pcr, fullState, newState, temporaryPlan, context, sub.newChild(ExpandWork / 2));
+			IProvisioningPlan plan = createInstallerPlan(pcr.getProfile(), pcr, fullState, newState, temporaryPlan, context, sub.newChild(ExpandWork / 2));
+			if (((Projector) resolutionResult).isTimeLimitReached())
+				markTimeLimitReached(plan);
+			return plan;
 		} catch (OperationCanceledException e) {
 			IProvisioningPlan plan = engine.createPlan(pcr.getProfile(), context);
 			plan.setStatus(Status.CANCEL_STATUS);
@@ -407,6 +417,27 @@ public class SimplePlanner implements IPlanner {
 		}
 	}
 
+	private static long getTimeLimit(ProvisioningContext context) {
+		String value = context == null ? null : context.getProperty(SOLVE_TIME_LIMIT);
+		if (value == null)
+			return 0;
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			LogHelper.log(new Status(IStatus.WARNING, DirectorActivator.PI_DIRECTOR, "Ignoring the invalid solver time limit: " + value)); //$NON-NLS-1$
+			return 0;
+		}
+	}
+
+	// The plan is valid, only the status tells that it may not be the best one
+	private void markTimeLimitReached(IProvisioningPlan plan) {
+		if (!(plan.getStatus() instanceof PlannerStatus) || !plan.getStatus().isOK())
+			return;
+		PlannerStatus status = (PlannerStatus) plan.getStatus();
+		IStatus timeLimitReached = new Status(IStatus.OK, DirectorActivator.PI_DIRECTOR, TIME_LIMIT_REACHED, Messages.Planner_Time_limit_reached, null);
+		plan.setStatus(new PlannerStatus(timeLimitReached, status.getRequestStatus(), status.getRequestChanges(), status.getRequestSideEffects(), status.getPlannedState()));
+	}
+
 	//	private IProvisioningPlan generateAbsoluteProvisioningPlan(ProfileChangeRequest profileChangeRequest, ProvisioningContext context, IProgressMonitor monitor) {
 	//		Set<IInstallableUnit> toState = profileChangeRequest.getProfile().query(QueryUtil.createIUAnyQuery(), null).toSet();
 	//		HashSet<IInstallableUnit> fromState = new HashSet<IInstallableUnit>(toState);
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.director;
+
+import java.util.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.IRequirement;
+
+/**
+ * Finds the units of a slice that can not be part of any solution, so that the projector can
+ * set them to false instead of encoding their requirements.
+ * <p>
+ * A unit can not be installed when it is not applicable in the selection context, or when
+ * one of its hard requirements has no match that can be installed. The units that can not be
+ * installed are propagated backwards along the requirements until nothing changes: each hard
+ * requirement counts its matches that may still be installed, and the units it belongs to can
+ * not be installed once that count drops to zero. Units that require each other therefore stay
+ * in the problem as long as one of them has a way out, and each requirement is only visited
+ * once per match.
+ * </p><p>
+ * Only the greedy requirements with a minimum greater than zero are followed. Optional and
+ * non greedy requirements, and requirements forbidding their matches, never make a unit
+ * impossible. Patches change the requirements of the units they apply to, so a slice with
+ * patches is not pruned.
+ * </p>
+ */
+public class SlicePruner {
+	private final RequirementMatches requirementMatches;
+	private final boolean considerMetaRequirements;
+
+	// the hard requirements that each unit, by number, is a match of
+	private final Map<Integer, List<Constraint>> requiredBy = new HashMap<Integer, List<Constraint>>();
+
+	private static final class Constraint {
+		final IInstallableUnit iu;
+		int possibleMatches;
+
+		Constraint(IInstallableUnit iu, int possibleMatches) {
+			this.iu = iu;
+			this.possibleMatches = possibleMatches;
+		}
+	}
+
+	public SlicePruner(RequirementMatches requirementMatches, boolean considerMetaRequirements) {
+		this.requirementMatches = requirementMatches;
+		this.considerMetaRequirements = considerMetaRequirements;
+	}
+
+	/**
+	 * Returns the given units that can not be installed. The entry point is never returned.
+	 *
+	 * @param units all the units of the slice, numbered by the requirement matches of this pruner
+	 * @param entryPoint the unit whose installation is to be solved
+	 * @return the units that are false in every solution
+	 */
+	public Set<IInstallableUnit> findImpossible(Collection<IInstallableUnit> units, IInstallableUnit entryPoint) {
+		Set<IInstallableUnit> impossible = new HashSet<IInstallableUnit>();
+		LinkedList<IInstallableUnit> toPropagate = new LinkedList<IInstallableUnit>();
+		for (IInstallableUnit iu : units) {
+			if (iu == entryPoint)
+				continue;
+			if (!requirementMatches.isApplicable(iu) || !addConstraints(iu)) {
+				impossible.add(iu);
+				toPropagate.add(iu);
+			}
+		}
+		while (!toPropagate.isEmpty()) {
+			IInstallableUnit iu = toPropagate.removeFirst();
+			List<Constraint> constraints = requiredBy.get(new Integer(requirementMatches.getId(iu)));
+			if (constraints == null)
+				continue;
+			for (Constraint constraint : constraints) {
+				if (--constraint.possibleMatches == 0 && constraint.iu != entryPoint && impossible.add(constraint.iu))
+					toPropagate.add(constraint.iu);
+			}
+		}
+		return impossible;
+	}
+
+	/*
+	 * Records the hard requirements of the given unit as constraints on their matches.
+	 * Returns false if one of them has no match at all.
+	 */
+	private boolean addConstraints(IInstallableUnit iu) {
+		for (IRequirement req : Projector.getRequiredCapabilities(iu, considerMetaRequirements)) {
+			if (req.getMin() == 0 || req.getMax() == 0 || !req.isGreedy() || !requirementMatches.isApplicable(req))
+				continue;
+			BitSet matches = requirementMatches.getMatches(req);
+			if (matches.isEmpty())
+				return false;
+			Constraint constraint = new Constraint(iu, matches.cardinality());
+			for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+				Integer key = new Integer(id);
+				List<Constraint> constraints = requiredBy.get(key);
+				if (constraints == null) {
+					constraints = new ArrayList<Constraint>(2);
+					requiredBy.put(key, constraints);
+				}
+				constraints.add(constraint);
+			}
+		}
+		return true;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -18,15 +18,15 @@ import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
 import org.eclipse.equinox.internal.p2.metadata.InstallableUnitPatch;
 import org.eclipse.equinox.p2.metadata.*;
-import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
 import org.eclipse.equinox.p2.query.*;
 import org.eclipse.osgi.util.NLS;
 
 public class Slicer {
 	private static boolean DEBUG = false;
-	private final IQueryable<IInstallableUnit> possibilites;
+	private final RequirementMatches requirementMatches;
 	private final boolean considerMetaRequirements;
 	protected final IInstallableUnit selectionContext;
+	private final FilterCache.Results filters;
 	private final Map<String, Map<Version, IInstallableUnit>> slice; //The IUs that have been considered to be part of the problem
 	private final MultiStatus result;
 
@@ -39,8 +39,9 @@ public class Slicer {
 	}
 
 	public Slicer(IQueryable<IInstallableUnit> possibilites, IInstallableUnit selectionContext, boolean considerMetaRequirements) {
-		this.possibilites = possibilites;
 		this.selectionContext = selectionContext;
+		this.filters = FilterCache.DEFAULT.getResults(selectionContext);
+		this.requirementMatches = new RequirementMatches(possibilites, selectionContext);
 		this.considerMetaRequirements = considerMetaRequirements;
 		slice = new HashMap<String, Map<Version, IInstallableUnit>>();
 		result = new MultiStatus(DirectorActivator.PI_DIRECTOR, IStatus.OK, Messages.Planner_Problems_resolving_plan, null);
@@ -68,6 +69,8 @@ public class Slicer {
 			if (DEBUG) {
 				long stop = System.currentTimeMillis();
 				System.out.println("Slicing complete: " + (stop - start)); //$NON-NLS-1$
+				System.out.println("Requirement matches: " + requirementMatches); //$NON-NLS-1$
+				System.out.println("Filters: " + filters); //$NON-NLS-1$
 			}
 		} catch (IllegalStateException e) {
 			result.add(new Status(IStatus.ERROR, DirectorActivator.PI_DIRECTOR, e.getMessage(), e));
@@ -81,6 +84,8 @@ public class Slicer {
 
 	private void computeNonGreedyIUs() {
 		IQueryable<IInstallableUnit> queryable = new QueryableArray(considered.toArray(new IInstallableUnit[considered.size()]));
+		// the same requirement is declared by many units
+		RequirementMatches consideredMatches = new RequirementMatches(queryable, selectionContext);
 		Iterator<IInstallableUnit> it = queryable.query(QueryUtil.ALL_UNITS, new NullProgressMonitor()).iterator();
 		while (it.hasNext()) {
 			Collection<IRequirement> reqs = getRequirements(it.next().unresolved());
@@ -89,7 +94,9 @@ public class Slicer {
 					continue;
 
 				if (!isGreedy(req)) {
-					nonGreedyIUs.addAll(queryable.query(QueryUtil.createMatchQuery(req.getMatches()), null).toUnmodifiableSet());
+					BitSet matching = consideredMatches.getMatches(req);
+					for (int id = matching.nextSetBit(0); id >= 0; id = matching.nextSetBit(id + 1))
+						nonGreedyIUs.add(consideredMatches.getUnit(id));
 				}
 			}
 		}
@@ -109,13 +116,11 @@ public class Slicer {
 
 	// Check whether the requirement is applicable
 	protected boolean isApplicable(IRequirement req) {
-		IMatchExpression<IInstallableUnit> filter = req.getFilter();
-		return filter == null || filter.isMatch(selectionContext);
+		return filters.isMatch(req.getFilter());
 	}
 
 	protected boolean isApplicable(IInstallableUnit iu) {
-		IMatchExpression<IInstallableUnit> filter = iu.getFilter();
-		return filter == null || filter.isMatch(selectionContext);
+		return filters.isMatch(iu.getFilter());
 	}
 
 	protected void processIU(IInstallableUnit iu) {
@@ -154,9 +159,9 @@ public class Slicer {
 	private Collection<IRequirement> getRequirements(IInstallableUnit iu) {
 		boolean isPatch = iu instanceof IInstallableUnitPatch;
 		boolean isFragment = iu instanceof IInstallableUnitFragment;
-		//Short-circuit for the case of an IInstallableUnit 
-		if ((!isFragment) && (!isPatch) && iu.getMetaRequirements().size() == 0)
-			return iu.getRequirements();
+		// the changes of patches are only followed when slicing
+		if (!isPatch)
+			return RequirementsCache.DEFAULT.getRequirements(iu, considerMetaRequirements);
 
 		ArrayList<IRequirement> aggregatedRequirements = new ArrayList<IRequirement>(iu.getRequirements().size() + iu.getMetaRequirements().size() + (isFragment ? ((IInstallableUnitFragment) iu).getHost().size() : 0) + (isPatch ? ((IInstallableUnitPatch) iu).getRequirementsChange().size() : 0));
 		aggregatedRequirements.addAll(iu.getRequirements());
@@ -180,10 +185,10 @@ public class Slicer {
 	private void expandRequirement(IInstallableUnit iu, IRequirement req) {
 		if (req.getMax() == 0)
 			return;
-		IQueryResult<IInstallableUnit> matches = possibilites.query(QueryUtil.createMatchQuery(req.getMatches()), null);
+		BitSet matches = requirementMatches.getMatches(req);
 		int validMatches = 0;
-		for (Iterator<IInstallableUnit> iterator = matches.iterator(); iterator.hasNext();) {
-			IInstallableUnit match = iterator.next();
+		for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+			IInstallableUnit match = requirementMatches.getUnit(id);
 			if (!isApplicable(match))
 				continue;
 			validMatches++;
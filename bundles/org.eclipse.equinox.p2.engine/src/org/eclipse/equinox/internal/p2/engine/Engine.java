@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,11 +10,14 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.engine;
 
+import java.io.File;
+import java.util.List;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.osgi.util.NLS;
 
 /**
  * Concrete implementation of the {@link IEngine} API.
@@ -70,40 +73,70 @@ public class Engine implements IEngine {
 			if (DebugHelper.DEBUG_ENGINE)
 				DebugHelper.debug(ENGINE, "Beginning engine operation for profile=" + profile.getProfileId() + " [" + profile.getTimestamp() + "]:" + DebugHelper.LINE_SEPARATOR + DebugHelper.formatOperation(phaseSet, operands, context)); //$NON-NLS-1$//$NON-NLS-2$//$NON-NLS-3$
 
-			EngineSession session = new EngineSession(agent, profile, context);
-
-			MultiStatus result = phaseSet.perform(session, operands, monitor);
-			if (result.isOK() || result.matches(IStatus.INFO | IStatus.WARNING)) {
-				if (DebugHelper.DEBUG_ENGINE)
-					DebugHelper.debug(ENGINE, "Preparing to commit engine operation for profile=" + profile.getProfileId()); //$NON-NLS-1$
-				result.merge(session.prepare(monitor));
-			}
-			if (result.matches(IStatus.ERROR | IStatus.CANCEL)) {
-				if (DebugHelper.DEBUG_ENGINE)
-					DebugHelper.debug(ENGINE, "Rolling back engine operation for profile=" + profile.getProfileId() + ". Reason was: " + result.toString()); //$NON-NLS-1$ //$NON-NLS-2$
-				IStatus status = session.rollback(monitor, result.getSeverity());
-				if (status.matches(IStatus.ERROR))
-					LogHelper.log(status);
-				eventBus.publishEvent(new RollbackOperationEvent(profile, phaseSet, operands, this, result));
-			} else {
-				if (DebugHelper.DEBUG_ENGINE)
-					DebugHelper.debug(ENGINE, "Committing engine operation for profile=" + profile.getProfileId()); //$NON-NLS-1$
-				if (profile.isChanged())
-					profileRegistry.updateProfile(profile);
-				IStatus status = session.commit(monitor);
-				if (status.matches(IStatus.ERROR))
-					LogHelper.log(status);
-				eventBus.publishEvent(new CommitOperationEvent(profile, phaseSet, operands, this));
+			EngineJournal journal = openJournal(profileRegistry, profile);
+			try {
+				EngineSession session = new EngineSession(agent, profile, context);
+				if (journal != null)
+					session.setJournal(journal);
+
+				MultiStatus result = phaseSet.perform(session, operands, monitor);
+				if (result.isOK() || result.matches(IStatus.INFO | IStatus.WARNING)) {
+					if (DebugHelper.DEBUG_ENGINE)
+						DebugHelper.debug(ENGINE, "Preparing to commit engine operation for profile=" + profile.getProfileId()); //$NON-NLS-1$
+					result.merge(session.prepare(monitor));
+				}
+				if (result.matches(IStatus.ERROR | IStatus.CANCEL)) {
+					if (DebugHelper.DEBUG_ENGINE)
+						DebugHelper.debug(ENGINE, "Rolling back engine operation for profile=" + profile.getProfileId() + ". Reason was: " + result.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+					IStatus status = session.rollback(monitor, result.getSeverity());
+					if (status.matches(IStatus.ERROR))
+						LogHelper.log(status);
+					eventBus.publishEvent(new RollbackOperationEvent(profile, phaseSet, operands, this, result));
+				} else {
+					if (DebugHelper.DEBUG_ENGINE)
+						DebugHelper.debug(ENGINE, "Committing engine operation for profile=" + profile.getProfileId()); //$NON-NLS-1$
+					if (profile.isChanged())
+						profileRegistry.updateProfile(profile);
+					IStatus status = session.commit(monitor);
+					if (status.matches(IStatus.ERROR))
+						LogHelper.log(status);
+					eventBus.publishEvent(new CommitOperationEvent(profile, phaseSet, operands, this));
+				}
+				//if there is only one child status, return that status instead because it will have more context
+				IStatus[] children = result.getChildren();
+				return children.length == 1 ? children[0] : result;
+			} finally {
+				// an operation ended by an exception has an unknown outcome, so its journal is
+				// kept for the next session to report, but the file must not stay open
+				if (journal != null)
+					journal.close();
 			}
-			//if there is only one child status, return that status instead because it will have more context
-			IStatus[] children = result.getChildren();
-			return children.length == 1 ? children[0] : result;
 		} finally {
 			profileRegistry.unlockProfile(profile);
 			profile.setChanged(false);
 		}
 	}
 
+	/*
+	 * Reports a journal left behind by an interrupted operation and returns the journal of the
+	 * new session, or null if the profile data area is not available. Journaling is best effort.
+	 */
+	private EngineJournal openJournal(SimpleProfileRegistry profileRegistry, Profile profile) {
+		File dataDirectory;
+		try {
+			dataDirectory = profileRegistry.getProfileDataDirectory(profile.getProfileId());
+		} catch (IllegalStateException e) {
+			LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.journal_unavailable, profile.getProfileId()), e));
+			return null;
+		}
+		List<String> interrupted = EngineJournal.recover(dataDirectory);
+		if (interrupted != null) {
+			String lastStep = interrupted.isEmpty() ? "" : interrupted.get(interrupted.size() - 1); //$NON-NLS-1$
+			LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.journal_interrupted_operation, profile.getProfileId(), lastStep)));
+		}
+		return new EngineJournal(dataDirectory);
+	}
+
 	protected IStatus validate(IProfile iprofile, PhaseSet phaseSet, Operand[] operands, ProvisioningContext context, IProgressMonitor monitor) {
 		checkArguments(iprofile, phaseSet, operands, context, monitor);
 
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ *  Copyright (c) 2013 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ * 
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.osgi.util.NLS;
+
+/**
+ * An append only record of the progress of an engine session, kept in the profile data area.
+ * Entries are written ahead of the work they describe and the journal is removed once the
+ * session has been committed or rolled back. A journal that is still present when the next
+ * session for the profile starts therefore belongs to an operation that was interrupted,
+ * for example by a crash of the VM.
+ * 
+ * Entries are flushed at phase boundaries only, so the journal of an interrupted session
+ * tells which phase was running but may miss its last operands and actions.
+ * 
+ * Writing the journal is best effort; a failure to write it never fails the engine operation.
+ */
+public class EngineJournal {
+	public static final String JOURNAL_FILE = "engine.journal"; //$NON-NLS-1$
+
+	static final String BEGIN = "begin"; //$NON-NLS-1$
+	static final String PHASE = "phase"; //$NON-NLS-1$
+	static final String OPERAND = "operand"; //$NON-NLS-1$
+	static final String ACTION = "action"; //$NON-NLS-1$
+	static final String PHASE_END = "phaseEnd"; //$NON-NLS-1$
+	static final String ROLLBACK = "rollback"; //$NON-NLS-1$
+
+	private final File file;
+	private Writer writer;
+	private boolean failed;
+
+	public EngineJournal(File dataDirectory) {
+		this.file = new File(dataDirectory, JOURNAL_FILE);
+	}
+
+	/**
+	 * Returns the entries of a journal left behind by an interrupted session in the
+	 * given profile data area and removes it, or returns <code>null</code> if there is none.
+	 */
+	public static List<String> recover(File dataDirectory) {
+		File journal = new File(dataDirectory, JOURNAL_FILE);
+		if (!journal.isFile())
+			return null;
+		List<String> entries = new ArrayList<String>();
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "UTF-8")); //$NON-NLS-1$
+			String line;
+			while ((line = reader.readLine()) != null)
+				entries.add(line);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.journal_read_error, journal), e));
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+		journal.delete();
+		return entries;
+	}
+
+	void record(String kind, Object detail) {
+		if (failed)
+			return;
+		try {
+			if (writer == null)
+				writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+			writer.write(kind);
+			if (detail != null) {
+				writer.write(' ');
+				// keep one entry per line
+				writer.write(detail.toString().replace('\n', ' ').replace('\r', ' '));
+			}
+			writer.write('\n');
+			// one round trip to the disk per phase rather than per action
+			if (!OPERAND.equals(kind) && !ACTION.equals(kind))
+				writer.flush();
+		} catch (IOException e) {
+			failed = true;
+			LogHelper.log(new Status(IStatus.WARNING, EngineActivator.ID, NLS.bind(Messages.journal_write_error, file), e));
+			close();
+		}
+	}
+
+	/**
+	 * Closes and removes the journal. Called once the session has been committed or rolled back.
+	 */
+	void discard() {
+		close();
+		file.delete();
+	}
+
+	/**
+	 * Closes the journal but keeps it. Does nothing once the journal has been discarded.
+	 */
+	void close() {
+		if (writer == null)
+			return;
+		try {
+			writer.close();
+		} catch (IOException e) {
+			// ignore
+		}
+		writer = null;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -54,6 +54,8 @@ public class EngineSession {
 
 	private final IProvisioningAgent agent;
 
+	private EngineJournal journal;
+
 	public EngineSession(IProvisioningAgent agent, IProfile profile, ProvisioningContext context) {
 		super();
 		this.agent = agent;
@@ -69,6 +71,26 @@ public class EngineSession {
 		return agent;
 	}
 
+	/**
+	 * Sets the journal in which the progress of this session is recorded.
+	 * The session begins recording immediately and discards the journal once it has been
+	 * committed or rolled back.
+	 */
+	void setJournal(EngineJournal journal) {
+		this.journal = journal;
+		journal(EngineJournal.BEGIN, profile.getProfileId());
+	}
+
+	private void journal(String kind, Object detail) {
+		if (journal != null)
+			journal.record(kind, detail);
+	}
+
+	private void discardJournal() {
+		if (journal != null)
+			journal.discard();
+	}
+
 	public ProvisioningContext getProvisioningContext() {
 		return context;
 	}
@@ -133,6 +155,7 @@ public class EngineSession {
 			}
 		}
 
+		discardJournal();
 		if (status.matches(IStatus.ERROR)) {
 			MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, NLS.bind(Messages.session_commit_error, profile.getProfileId()), null);
 			result.merge(status);
@@ -148,6 +171,7 @@ public class EngineSession {
 		if (severity == IStatus.ERROR)
 			monitor.subTask(Messages.rollingback_error);
 
+		journal(EngineJournal.ROLLBACK, null);
 		MultiStatus status = new MultiStatus(EngineActivator.ID, IStatus.OK, null, null);
 		SubMonitor sub = SubMonitor.convert(monitor, 100 * (phaseActionRecordsPairs.size() + (currentPhaseActive ? 1 : 0) + 1 /* for touchpoint */));
 
@@ -175,6 +199,11 @@ public class EngineSession {
 			Phase phase = (Phase) pair[0];
 			@SuppressWarnings("unchecked")
 			List<ActionsRecord> actionRecords = (List<ActionsRecord>) pair[1];
+			// a completed phase that processed no operands has nothing to undo
+			if (actionRecords.isEmpty()) {
+				sub.worked(100);
+				continue;
+			}
 			try {
 				final IStatus result = rollBackPhase(phase, actionRecords, sub.newChild(100));
 				if (!result.isOK())
@@ -208,6 +237,7 @@ public class EngineSession {
 			}
 		}
 
+		discardJournal();
 		try {
 			if (status.matches(IStatus.ERROR)) {
 				MultiStatus result = new MultiStatus(EngineActivator.ID, IStatus.ERROR, NLS.bind(Messages.session_commit_error, profile.getProfileId()), null);
@@ -276,6 +306,7 @@ public class EngineSession {
 
 		currentPhaseActive = true;
 		currentActionRecords = new ArrayList<ActionsRecord>();
+		journal(EngineJournal.PHASE, phase.phaseId);
 	}
 
 	void recordPhaseEnd(Phase phase) {
@@ -288,6 +319,7 @@ public class EngineSession {
 		phaseActionRecordsPairs.add(new Object[] {currentPhase, currentActionRecords});
 		currentActionRecords = null;
 		currentPhaseActive = false;
+		journal(EngineJournal.PHASE_END, phase.phaseId);
 	}
 
 	void recordPhaseExit(Phase phase) {
@@ -311,6 +343,7 @@ public class EngineSession {
 
 		currentRecord = new ActionsRecord(operand);
 		currentActionRecords.add(currentRecord);
+		journal(EngineJournal.OPERAND, operand);
 
 		if (DebugHelper.DEBUG_ENGINE_SESSION)
 			debugOperandStart(operand);
@@ -334,6 +367,7 @@ public class EngineSession {
 			throw new IllegalArgumentException(Messages.null_action);
 
 		currentRecord.actions.add(action);
+		journal(EngineJournal.ACTION, action instanceof ParameterizedProvisioningAction ? ((ParameterizedProvisioningAction) action).getAction().getClass().getName() : action.getClass().getName());
 
 		Touchpoint touchpoint = action.getTouchpoint();
 		if (touchpoint != null)
@@ -49,6 +49,10 @@ public class Messages extends NLS {
 	public static String io_FailedRead;
 	public static String io_NotFound;
 	public static String not_current_operand;
+	public static String journal_interrupted_operation;
+	public static String journal_read_error;
+	public static String journal_write_error;
+	public static String journal_unavailable;
 	public static String not_current_phase;
 	public static String null_action;
 
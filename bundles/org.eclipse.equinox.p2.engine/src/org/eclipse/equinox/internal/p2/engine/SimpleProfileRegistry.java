@@ -704,6 +704,8 @@ public class SimpleProfileRegistry implements IProfileRegistry, IAgentService {
 
 		public Parser(BundleContext context, String bundleId) {
 			super(context, bundleId);
+			// profiles share their metadata values with the repositories of the agent
+			setInterningPool((InterningPool) agent.getService(InterningPool.SERVICE_NAME));
 		}
 
 		public void addProfilePlaceHolder(String profileId) {
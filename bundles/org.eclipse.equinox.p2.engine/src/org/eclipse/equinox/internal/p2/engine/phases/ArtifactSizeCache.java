@@ -0,0 +1,76 @@
+/*******************************************************************************
+ *  Copyright (c) 2013 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ * 
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.engine.phases;
+
+import java.util.*;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+
+/**
+ * Remembers the disk and download size of artifacts per artifact repository so that
+ * repeated sizing of similar plans against the same repositories does not need to
+ * look up every descriptor again. Entries are tied to the repository instance; when
+ * a repository is reloaded or garbage collected its entries go away with it.
+ * 
+ * Only complete sizes (both disk and download size known) are remembered.
+ */
+public class ArtifactSizeCache {
+	/**
+	 * Service name under which the cache is registered with the provisioning agent.
+	 */
+	public static final String SERVICE_NAME = ArtifactSizeCache.class.getName();
+
+	private final Map<IArtifactRepository, Map<IArtifactKey, long[]>> sizes = new WeakHashMap<IArtifactRepository, Map<IArtifactKey, long[]>>();
+
+	/**
+	 * Returns the cache registered with the given agent. Without an agent or a registered
+	 * cache, a new cache is returned that is only used by the caller.
+	 */
+	public static ArtifactSizeCache getCache(IProvisioningAgent agent) {
+		ArtifactSizeCache cache = agent == null ? null : (ArtifactSizeCache) agent.getService(SERVICE_NAME);
+		return cache == null ? new ArtifactSizeCache() : cache;
+	}
+
+	/**
+	 * Returns the remembered sizes for the key in the given repository as an array holding
+	 * the disk size and the download size, or <code>null</code> if they are not known.
+	 */
+	public synchronized long[] get(IArtifactRepository repository, IArtifactKey key) {
+		Map<IArtifactKey, long[]> repositorySizes = sizes.get(repository);
+		return repositorySizes == null ? null : repositorySizes.get(key);
+	}
+
+	/**
+	 * Computes the sizes of the given descriptor and remembers them if they are complete.
+	 * @return the disk size and download size, where an unknown size is -1
+	 */
+	public long[] put(IArtifactRepository repository, IArtifactKey key, IArtifactDescriptor descriptor) {
+		long[] result = new long[] {getSize(descriptor, IArtifactDescriptor.ARTIFACT_SIZE), getSize(descriptor, IArtifactDescriptor.DOWNLOAD_SIZE)};
+		if (result[0] != -1 && result[1] != -1) {
+			synchronized (this) {
+				Map<IArtifactKey, long[]> repositorySizes = sizes.get(repository);
+				if (repositorySizes == null) {
+					repositorySizes = new HashMap<IArtifactKey, long[]>();
+					sizes.put(repository, repositorySizes);
+				}
+				repositorySizes.put(key, result);
+			}
+		}
+		return result;
+	}
+
+	private static long getSize(IArtifactDescriptor descriptor, String property) {
+		String value = descriptor.getProperty(property);
+		return value == null ? -1 : Long.parseLong(value);
+	}
+}
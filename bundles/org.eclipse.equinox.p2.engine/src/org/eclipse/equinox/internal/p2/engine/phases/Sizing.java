@@ -13,12 +13,12 @@ package org.eclipse.equinox.internal.p2.engine.phases;
 import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.engine.*;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.engine.spi.ProvisioningAction;
-import org.eclipse.equinox.p2.metadata.IInstallableUnit;
-import org.eclipse.equinox.p2.metadata.ITouchpointType;
+import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
 import org.eclipse.equinox.p2.query.*;
 import org.eclipse.equinox.p2.repository.artifact.*;
@@ -74,13 +74,14 @@ public class Sizing extends InstallableUnitPhase {
 		ProvisioningContext context = (ProvisioningContext) parameters.get(PARM_CONTEXT);
 		int statusCode = 0;
 
-		Set<IArtifactRequest> artifactsToObtain = new HashSet<IArtifactRequest>(artifactRequests.size());
-
+		// the same artifact may be requested more than once, size each distinct key only once
+		Map<IArtifactKey, Integer> artifactsToObtain = new HashMap<IArtifactKey, Integer>(artifactRequests.size());
 		for (IArtifactRequest[] requests : artifactRequests) {
 			if (requests == null)
 				continue;
 			for (int i = 0; i < requests.length; i++) {
-				artifactsToObtain.add(requests[i]);
+				Integer count = artifactsToObtain.get(requests[i].getArtifactKey());
+				artifactsToObtain.put(requests[i].getArtifactKey(), new Integer(count == null ? 1 : count.intValue() + 1));
 			}
 		}
 
@@ -91,38 +92,56 @@ public class Sizing extends InstallableUnitPhase {
 		IQueryable<IArtifactRepository> repoQueryable = context.getArtifactRepositories(sub.newChild(500));
 		IQuery<IArtifactRepository> all = new ExpressionMatchQuery<IArtifactRepository>(IArtifactRepository.class, ExpressionUtil.TRUE_EXPRESSION);
 		IArtifactRepository[] repositories = repoQueryable.query(all, sub.newChild(500)).toArray(IArtifactRepository.class);
+		ArtifactSizeCache cache = ArtifactSizeCache.getCache((IProvisioningAgent) parameters.get(PARM_AGENT));
 
-		for (IArtifactRequest artifactRequest : artifactsToObtain) {
+		// visit each repository once, the first repository that has an artifact sizes it
+		Set<IArtifactKey> remaining = new HashSet<IArtifactKey>(artifactsToObtain.keySet());
+		for (int i = 0; i < repositories.length && !remaining.isEmpty(); i++) {
 			if (sub.isCanceled())
-				break;
-			boolean found = false;
-			for (int i = 0; i < repositories.length; i++) {
-				IArtifactRepository repo = repositories[i];
-				if (sub.isCanceled())
-					return Status.CANCEL_STATUS;
-				IArtifactDescriptor[] descriptors = repo.getArtifactDescriptors(artifactRequest.getArtifactKey());
-				if (descriptors.length > 0) {
-					if (descriptors[0].getProperty(IArtifactDescriptor.ARTIFACT_SIZE) != null)
-						sizeOnDisk += Long.parseLong(descriptors[0].getProperty(IArtifactDescriptor.ARTIFACT_SIZE));
-					else
-						statusCode = ProvisionException.ARTIFACT_INCOMPLETE_SIZING;
-					if (descriptors[0].getProperty(IArtifactDescriptor.DOWNLOAD_SIZE) != null)
-						dlSize += Long.parseLong(descriptors[0].getProperty(IArtifactDescriptor.DOWNLOAD_SIZE));
-					else
-						statusCode = ProvisionException.ARTIFACT_INCOMPLETE_SIZING;
-					found = true;
-					break;
+				return Status.CANCEL_STATUS;
+			IArtifactRepository repo = repositories[i];
+			Map<IArtifactKey, long[]> found = new HashMap<IArtifactKey, long[]>();
+			Set<IArtifactKey> unknown = new HashSet<IArtifactKey>();
+			for (IArtifactKey key : remaining) {
+				long[] sizes = cache.get(repo, key);
+				if (sizes != null)
+					found.put(key, sizes);
+				else
+					unknown.add(key);
+			}
+			if (!unknown.isEmpty()) {
+				// a single query for all the artifacts the cache knows nothing about
+				Iterator<IArtifactDescriptor> descriptors = repo.descriptorQueryable().query(ArtifactDescriptorQuery.ALL_DESCRIPTORS, null).iterator();
+				while (descriptors.hasNext() && !unknown.isEmpty()) {
+					IArtifactDescriptor descriptor = descriptors.next();
+					IArtifactKey key = descriptor.getArtifactKey();
+					if (unknown.remove(key))
+						found.put(key, cache.put(repo, key, descriptor));
 				}
 			}
-			if (!found)
-				// The artifact wasn't present in any repository
-				return new Status(IStatus.ERROR, EngineActivator.ID, ProvisionException.ARTIFACT_NOT_FOUND, Messages.Phase_Sizing_Error, null);
+			for (Map.Entry<IArtifactKey, long[]> entry : found.entrySet()) {
+				long[] sizes = entry.getValue();
+				if (sizes[0] == -1 || sizes[1] == -1)
+					statusCode = ProvisionException.ARTIFACT_INCOMPLETE_SIZING;
+				addSizes(sizes, artifactsToObtain.get(entry.getKey()).intValue());
+				remaining.remove(entry.getKey());
+			}
 		}
+		if (!remaining.isEmpty())
+			// The artifact wasn't present in any repository
+			return new Status(IStatus.ERROR, EngineActivator.ID, ProvisionException.ARTIFACT_NOT_FOUND, Messages.Phase_Sizing_Error, null);
 		if (statusCode != 0)
 			return new Status(IStatus.WARNING, EngineActivator.ID, statusCode, Messages.Phase_Sizing_Warning, null);
 		return null;
 	}
 
+	private void addSizes(long[] sizes, int count) {
+		if (sizes[0] != -1)
+			sizeOnDisk += sizes[0] * count;
+		if (sizes[1] != -1)
+			dlSize += sizes[1] * count;
+	}
+
 	protected IStatus initializePhase(IProgressMonitor monitor, IProfile profile, Map<String, Object> parameters) {
 		parameters.put(Collect.PARM_ARTIFACT_REQUESTS, new ArrayList<IArtifactRequest[]>());
 		return null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2011 IBM Corporation and others.
+ * Copyright (c) 2008, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -21,6 +21,10 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryIO;
 import org.eclipse.equinox.internal.p2.persistence.CompositeRepositoryState;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader.ChildLoader;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader.Result;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.index.IIndex;
@@ -32,7 +36,7 @@ import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository;
 import org.eclipse.osgi.util.NLS;
 
-public class CompositeMetadataRepository extends AbstractMetadataRepository implements ICompositeRepository<IInstallableUnit>, IIndexProvider<IInstallableUnit> {
+public class CompositeMetadataRepository extends AbstractMetadataRepository implements ICompositeRepository<IInstallableUnit>, IIndexProvider<IInstallableUnit>, RepositoryIndexFile.Provider {
 
 	static final public String REPOSITORY_TYPE = CompositeMetadataRepository.class.getName();
 	static final public String PI_REPOSITORY_TYPE = "compositeMetadataRepository"; //$NON-NLS-1$
@@ -51,6 +55,7 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 	private List<IMetadataRepository> loadedRepos = new ArrayList<IMetadataRepository>();
 	private IMetadataRepositoryManager manager;
 	private IPool<IInstallableUnit> iuPool = new WeakPool<IInstallableUnit>();
+	private volatile RepositoryIndexFile indexFile;
 
 	/**
 	 * Create a Composite repository in memory.
@@ -89,6 +94,17 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 		return "file".equalsIgnoreCase(getLocation().getScheme()); //$NON-NLS-1$
 	}
 
+	public RepositoryIndexFile getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Records the index file this repository was loaded from.
+	 */
+	public void setIndexFile(RepositoryIndexFile indexFile) {
+		this.indexFile = indexFile;
+	}
+
 	public boolean isModifiable() {
 		return isLocal();
 	}
@@ -99,12 +115,36 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 	CompositeMetadataRepository(IMetadataRepositoryManager manager, CompositeRepositoryState state, IProgressMonitor monitor) throws ProvisionException {
 		super(manager.getAgent(), state.getName(), state.getType(), state.getVersion(), state.getLocation(), state.getDescription(), state.getProvider(), state.getProperties());
 		this.manager = manager;
-		SubMonitor sub = SubMonitor.convert(monitor, 100 * state.getChildren().length);
-		List<URI> repositoriesToBeRemovedOnFailure = new ArrayList<URI>();
+		List<URI> children = new ArrayList<URI>();
+		for (URI child : state.getChildren()) {
+			URI absolute = URIUtil.makeAbsolute(child, getLocation());
+			if (childrenURIs.contains(child) || childrenURIs.contains(absolute))
+				continue;
+			// always add the URI to the list of child URIs (even if we can't load it later)
+			childrenURIs.add(child);
+			children.add(absolute);
+		}
 		boolean failOnChildFailure = shouldFailOnChildFailure(state);
-		for (URI child : state.getChildren())
-			addChild(child, false, sub.newChild(100), failOnChildFailure, repositoriesToBeRemovedOnFailure);
-
+		final List<URI> repositoriesToBeRemovedOnFailure = failOnChildFailure ? Collections.synchronizedList(new ArrayList<URI>()) : null;
+		List<Result<IMetadataRepository>> results = CompositeChildLoader.loadAll(children, new ChildLoader<IMetadataRepository>() {
+			public IMetadataRepository load(URI child, IProgressMonitor childMonitor) throws ProvisionException {
+				return loadChild(child, childMonitor, repositoriesToBeRemovedOnFailure);
+			}
+		}, failOnChildFailure, monitor);
+		for (Result<IMetadataRepository> result : results) {
+			if (result.failure != null) {
+				//repository failed to load. fall through
+				LogHelper.log(result.failure);
+				if (failOnChildFailure) {
+					removeFromRepoManager(repositoriesToBeRemovedOnFailure);
+					String msg = NLS.bind(Messages.io_failedRead, getLocation());
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, msg, result.failure));
+				}
+				continue;
+			}
+			result.repository.compress(iuPool); // Share IUs across this CompositeMetadataRepository
+			loadedRepos.add(result.repository);
+		}
 	}
 
 	CompositeMetadataRepository(IMetadataRepositoryManager manager, URI location, String name, Map<String, String> properties) {
@@ -162,16 +202,7 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 		if (save)
 			save();
 		try {
-			boolean currentLoaded = getManager().contains(absolute);
-			IMetadataRepository currentRepo = getManager().loadRepository(absolute, sub);
-			if (!currentLoaded) {
-				//set enabled to false so repositories do not polled twice
-				getManager().setEnabled(absolute, false);
-				//set repository to system to hide from users
-				getManager().setRepositoryProperty(absolute, IRepository.PROP_SYSTEM, String.valueOf(true));
-				if (propagateException)
-					repositoriesToBeRemovedOnFailure.add(absolute);
-			}
+			IMetadataRepository currentRepo = loadChild(absolute, sub, propagateException ? repositoriesToBeRemovedOnFailure : null);
 			currentRepo.compress(iuPool); // Share IUs across this CompositeMetadataRepository
 			// we successfully loaded the repo so remember it
 			loadedRepos.add(currentRepo);
@@ -187,6 +218,21 @@ public class CompositeMetadataRepository extends AbstractMetadataRepository impl
 		}
 	}
 
+	//a repository that was not known to the manager before is added to repositoriesToBeRemovedOnFailure if the list is not null
+	IMetadataRepository loadChild(URI absolute, IProgressMonitor monitor, List<URI> repositoriesToBeRemovedOnFailure) throws ProvisionException {
+		boolean currentLoaded = getManager().contains(absolute);
+		IMetadataRepository currentRepo = getManager().loadRepository(absolute, monitor);
+		if (!currentLoaded) {
+			//set enabled to false so repositories do not polled twice
+			getManager().setEnabled(absolute, false);
+			//set repository to system to hide from users
+			getManager().setRepositoryProperty(absolute, IRepository.PROP_SYSTEM, String.valueOf(true));
+			if (repositoriesToBeRemovedOnFailure != null)
+				repositoriesToBeRemovedOnFailure.add(absolute);
+		}
+		return currentRepo;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.p2.repository.ICompositeRepository#addChild(java.net.URI)
 	 */
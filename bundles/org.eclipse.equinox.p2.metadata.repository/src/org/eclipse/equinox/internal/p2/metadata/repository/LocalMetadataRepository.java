@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2011 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -20,6 +20,10 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.metadata.*;
 import org.eclipse.equinox.internal.p2.metadata.index.*;
+import org.eclipse.equinox.internal.p2.repository.helpers.IndexDelta;
+import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
+import org.eclipse.equinox.internal.p2.repository.helpers.XZIndex;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.*;
@@ -38,7 +42,7 @@ import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository
  * location is a directory, this implementation will traverse the directory structure
  * and combine any metadata repository files that are found.
  */
-public class LocalMetadataRepository extends AbstractMetadataRepository implements IIndexProvider<IInstallableUnit> {
+public class LocalMetadataRepository extends AbstractMetadataRepository implements IIndexProvider<IInstallableUnit>, RepositoryIndexFile.Provider {
 
 	static final private String CONTENT_FILENAME = "content"; //$NON-NLS-1$
 	static final private String REPOSITORY_TYPE = LocalMetadataRepository.class.getName();
@@ -53,6 +57,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	private TranslationSupport translationSupport;
 	private boolean snapshotNeeded = false;
 	private boolean disableSave = false;
+	private volatile RepositoryIndexFile indexFile;
 
 	private static File getActualLocation(URI location, String extension) {
 		File spec = URIUtil.toFile(location);
@@ -205,6 +210,17 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		setLocation(aLocation);
 	}
 
+	public RepositoryIndexFile getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Records the index file this repository was loaded from.
+	 */
+	public void setIndexFile(RepositoryIndexFile indexFile) {
+		this.indexFile = indexFile;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.p2.repository.spi.AbstractRepository#isModifiable()
 	 */
@@ -276,6 +292,10 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 		File file = getActualLocation(getLocation());
 		File jarFile = getActualLocation(getLocation(), JAR_EXTENSION);
 		boolean compress = "true".equalsIgnoreCase(getProperty(PROP_COMPRESSED)); //$NON-NLS-1$
+		boolean publishDeltas = IndexDelta.isEnabled(getProperties());
+		byte[] previous = null;
+		if (publishDeltas)
+			previous = IndexDelta.readPrevious(file, jarFile);
 		try {
 			OutputStream output = null;
 			if (!compress) {
@@ -305,6 +325,23 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 			new MetadataRepositoryIO(getProvisioningAgent()).write(this, output);
 		} catch (IOException e) {
 			LogHelper.log(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_WRITE, "Error saving metadata repository: " + getLocation(), e)); //$NON-NLS-1$
+			return;
+		}
+		if (publishDeltas) {
+			try {
+				IndexDelta.publish(file, jarFile, previous);
+			} catch (IOException e) {
+				LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error publishing index delta for metadata repository: " + getLocation(), e)); //$NON-NLS-1$
+			}
+		}
+		saveXZIndex(file, jarFile, XZIndex.isEnabled(getProperties()));
+	}
+
+	private void saveXZIndex(File file, File jarFile, boolean enabled) {
+		try {
+			XZIndex.save(file, enabled ? IndexDelta.readIndex(file, jarFile) : null, LocationProperties.METADATA_REPOSITORY_FACTORY_ORDER);
+		} catch (IOException e) {
+			LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Error saving xz compressed index for metadata repository: " + getLocation(), e)); //$NON-NLS-1$
 		}
 	}
 
@@ -362,7 +399,7 @@ public class LocalMetadataRepository extends AbstractMetadataRepository implemen
 	/* (non-Javadoc)
 	 * @see org.eclipse.equinox.p2.repository.metadata.IMetadataRepository#compress(IPool<IInstallableUnit> iuPool)
 	 */
-	public void compress(IPool<IInstallableUnit> iuPool) {
+	public synchronized void compress(IPool<IInstallableUnit> iuPool) {
 		units.compress(iuPool);
 	}
 }
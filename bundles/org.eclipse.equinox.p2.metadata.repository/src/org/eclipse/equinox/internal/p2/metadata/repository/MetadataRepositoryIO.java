@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,18 +15,23 @@ import java.io.*;
 import java.lang.reflect.Constructor;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 import javax.xml.parsers.ParserConfigurationException;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.ExecutorHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.InterningPool;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.metadata.ParseCache;
 import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataParser;
 import org.eclipse.equinox.internal.p2.metadata.repository.io.MetadataWriter;
 import org.eclipse.equinox.internal.p2.persistence.XMLWriter;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepositoryReference;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -40,6 +45,14 @@ import org.xml.sax.*;
  * This class reads and writes provisioning metadata.
  */
 public class MetadataRepositoryIO {
+	/**
+	 * System property holding the number of threads parsing the installable units of a
+	 * repository. A value of <code>1</code> or less parses them on the reading thread.
+	 */
+	public static final String PROP_PARSING_THREADS = "eclipse.p2.metadata.parsing.threads"; //$NON-NLS-1$
+	private static final int MAX_DEFAULT_THREADS = 8;
+	// chunks waiting for a parser thread, beyond which the reading thread parses them itself
+	private static final int QUEUED_CHUNKS_PER_THREAD = 2;
 
 	protected final IProvisioningAgent agent;
 
@@ -60,7 +73,14 @@ public class MetadataRepositoryIO {
 
 				Parser repositoryParser = new Parser(Activator.getContext(), Activator.ID);
 				repositoryParser.setErrorContext(location.toExternalForm());
+				InterningPool pool = agent == null ? null : (InterningPool) agent.getService(InterningPool.SERVICE_NAME);
+				repositoryParser.setInterningPool(pool);
 				repositoryParser.parse(input, monitor);
+				if (Tracing.DEBUG_METADATA_PARSING) {
+					if (pool != null)
+						Tracing.debug(pool.toString());
+					Tracing.debug("Version parse cache: " + ParseCache.VERSIONS + "\nVersion range parse cache: " + ParseCache.RANGES); //$NON-NLS-1$ //$NON-NLS-2$
+				}
 				IStatus result = repositoryParser.getStatus();
 				switch (result.getSeverity()) {
 					case IStatus.CANCEL :
@@ -191,6 +211,8 @@ public class MetadataRepositoryIO {
 	private class Parser extends MetadataParser implements XMLConstants {
 
 		private IMetadataRepository theRepository = null;
+		private UnitChunks chunks = null;
+		private IOException chunkFailure = null;
 
 		public Parser(BundleContext context, String bundleId) {
 			super(context, bundleId);
@@ -200,13 +222,17 @@ public class MetadataRepositoryIO {
 			this.status = null;
 			setProgressMonitor(monitor);
 			monitor.beginTask(Messages.repo_loading, IProgressMonitor.UNKNOWN);
+			int threads = getParsingThreads();
+			chunks = threads > 1 ? new UnitChunks(threads, monitor) : null;
 			try {
 				// TODO: currently not caching the parser since we make no assumptions
 				//		 or restrictions on concurrent parsing
 				getParser();
 				RepositoryHandler repositoryHandler = new RepositoryHandler();
 				xmlReader.setContentHandler(new RepositoryDocHandler(REPOSITORY_ELEMENT, repositoryHandler));
-				xmlReader.parse(new InputSource(stream));
+				xmlReader.parse(new InputSource(chunks == null ? stream : chunks.split(stream)));
+				if (chunkFailure != null)
+					throw chunkFailure;
 				if (isValidXML()) {
 					theRepository = repositoryHandler.getRepository();
 				}
@@ -216,6 +242,10 @@ public class MetadataRepositoryIO {
 			} catch (ParserConfigurationException e) {
 				throw new IOException(e.getMessage());
 			} finally {
+				if (chunks != null)
+					chunks.dispose();
+				chunks = null;
+				chunkFailure = null;
 				monitor.done();
 				stream.close();
 			}
@@ -304,11 +334,20 @@ public class MetadataRepositoryIO {
 			}
 
 			protected void finished() {
+				IInstallableUnit[] units = (unitsHandler == null ? new IInstallableUnit[0] //
+						: unitsHandler.getUnits());
+				if (chunks != null) {
+					try {
+						units = chunks.collect(units);
+					} catch (IOException e) {
+						chunkFailure = e;
+						return;
+					}
+				}
 				if (isValidXML()) {
 					state.Properties = (propertiesHandler == null ? new OrderedProperties(0) //
 							: propertiesHandler.getProperties());
-					state.Units = (unitsHandler == null ? new IInstallableUnit[0] //
-							: unitsHandler.getUnits());
+					state.Units = units;
 					state.Repositories = repositoryReferencesHandler == null ? new IRepositoryReference[0] : repositoryReferencesHandler.getReferences();
 					Object repositoryObject = null;
 					//can't create repository if missing type - this is already logged when parsing attributes
@@ -338,5 +377,174 @@ public class MetadataRepositoryIO {
 			// TODO:
 			return null;
 		}
+
+		/*
+		 * The installable units of the repository, parsed in chunks on a pool of threads while
+		 * the rest of the document is parsed by the reading thread.
+		 */
+		private final class UnitChunks {
+			private final int threads;
+			private final IProgressMonitor monitor;
+			private final List<FutureTask<UnitsParser>> tasks = new ArrayList<FutureTask<UnitsParser>>();
+			private ThreadPoolExecutor executor = null;
+
+			UnitChunks(int threads, final IProgressMonitor monitor) {
+				this.threads = threads;
+				// chunks parsed by other threads only share the cancellation state of the caller
+				this.monitor = new NullProgressMonitor() {
+					public boolean isCanceled() {
+						return monitor.isCanceled();
+					}
+				};
+			}
+
+			InputStream split(InputStream stream) {
+				return new UnitsSplitter(stream) {
+					protected void submit(byte[] units) {
+						UnitChunks.this.submit(units);
+					}
+				};
+			}
+
+			void submit(final byte[] units) {
+				FutureTask<UnitsParser> task = new FutureTask<UnitsParser>(new Callable<UnitsParser>() {
+					public UnitsParser call() throws IOException {
+						UnitsParser parser = new UnitsParser(context, bundleId);
+						parser.setErrorContext(errorContext);
+						parser.setInterningPool(pool);
+						parser.parse(units, monitor);
+						return parser;
+					}
+				});
+				tasks.add(task);
+				if (executor == null)
+					executor = ExecutorHelper.newBoundedDaemonPool("p2 metadata parser", threads, threads * QUEUED_CHUNKS_PER_THREAD); //$NON-NLS-1$
+				executor.execute(task);
+			}
+
+			/*
+			 * Returns the given units followed by the units of all chunks, in document order,
+			 * and adds the problems found in the chunks to the status of this parser.
+			 */
+			IInstallableUnit[] collect(IInstallableUnit[] first) throws IOException {
+				List<IInstallableUnit> units = new ArrayList<IInstallableUnit>(first.length + tasks.size() * UnitsSplitter.UNITS_PER_CHUNK);
+				units.addAll(Arrays.asList(first));
+				for (FutureTask<UnitsParser> task : tasks) {
+					// parses the chunk here unless a pool thread has already started it
+					task.run();
+					UnitsParser parser = getResult(task);
+					units.addAll(Arrays.asList(parser.getUnits()));
+					IStatus chunkStatus = parser.getStatus();
+					if (chunkStatus.isOK())
+						continue;
+					if (status == null)
+						status = new MultiStatus(bundleId, IStatus.OK, chunkStatus.getChildren(), getErrorMessage(), null);
+					else
+						status.merge(chunkStatus);
+				}
+				tasks.clear();
+				return units.toArray(new IInstallableUnit[units.size()]);
+			}
+
+			private UnitsParser getResult(FutureTask<UnitsParser> task) throws IOException {
+				try {
+					return ExecutorHelper.getResult(task);
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+
+			void dispose() {
+				for (FutureTask<UnitsParser> task : tasks)
+					task.cancel(false);
+				tasks.clear();
+				if (executor != null)
+					executor.shutdown();
+			}
+		}
+	}
+
+	/*
+	 * Parser for a chunk of the units of a metadata repository, as produced by UnitsSplitter.
+	 */
+	private static class UnitsParser extends MetadataParser implements XMLConstants {
+		private static final byte[] CHUNK_START = toUTF8("<?xml version='1.0' encoding='UTF-8'?><" + INSTALLABLE_UNITS_ELEMENT + '>'); //$NON-NLS-1$
+		private static final byte[] CHUNK_END = toUTF8("</" + INSTALLABLE_UNITS_ELEMENT + '>'); //$NON-NLS-1$
+
+		private IInstallableUnit[] units = new IInstallableUnit[0];
+
+		public UnitsParser(BundleContext context, String bundleId) {
+			super(context, bundleId);
+		}
+
+		public void parse(byte[] chunk, IProgressMonitor monitor) throws IOException {
+			setProgressMonitor(monitor);
+			InputStream stream = new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(CHUNK_START), new ByteArrayInputStream(chunk)), new ByteArrayInputStream(CHUNK_END));
+			try {
+				getParser();
+				ChunkHandler chunkHandler = new ChunkHandler();
+				xmlReader.setContentHandler(new DocHandler(INSTALLABLE_UNITS_ELEMENT, chunkHandler));
+				xmlReader.parse(new InputSource(stream));
+				if (isValidXML())
+					units = chunkHandler.getUnits();
+			} catch (SAXException e) {
+				if (!(e.getException() instanceof OperationCanceledException))
+					throw new IOException(e.getMessage());
+			} catch (ParserConfigurationException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+
+		public IInstallableUnit[] getUnits() {
+			return units;
+		}
+
+		protected Object getRootObject() {
+			return null;
+		}
+
+		protected String getErrorMessage() {
+			return Messages.io_parseError;
+		}
+
+		private static byte[] toUTF8(String markup) {
+			try {
+				return markup.getBytes("UTF-8"); //$NON-NLS-1$
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e.getMessage());
+			}
+		}
+
+		private final class ChunkHandler extends RootHandler {
+			private List<InstallableUnitDescription> descriptions = new ArrayList<InstallableUnitDescription>(UnitsSplitter.UNITS_PER_CHUNK);
+
+			protected void handleRootAttributes(Attributes attributes) {
+				// the root element is not part of the document
+			}
+
+			public void startElement(String name, Attributes attributes) {
+				checkCancel();
+				if (INSTALLABLE_UNIT_ELEMENT.equals(name)) {
+					new InstallableUnitHandler(this, attributes, descriptions);
+				} else {
+					invalidElement(name, attributes);
+				}
+			}
+
+			public IInstallableUnit[] getUnits() {
+				IInstallableUnit[] result = new IInstallableUnit[descriptions.size()];
+				int i = 0;
+				for (InstallableUnitDescription desc : descriptions)
+					result[i++] = MetadataFactory.createInstallableUnit(desc);
+				return result;
+			}
+		}
+	}
+
+	static int getParsingThreads() {
+		return ExecutorHelper.getThreadCount(PROP_PARSING_THREADS, ExecutorHelper.getProcessorCount(MAX_DEFAULT_THREADS));
 	}
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.Map;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
 import org.eclipse.equinox.internal.p2.repository.helpers.LocationProperties;
+import org.eclipse.equinox.internal.p2.repository.helpers.SharedRepositoryCache;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
@@ -88,6 +89,14 @@ public class MetadataRepositoryManager extends AbstractRepositoryManager<IInstal
 		return IRepository.TYPE_METADATA;
 	}
 
+	/**
+	 * Metadata repositories are shared with the other agents of the process. Artifact repositories
+	 * are not, since they download artifacts through the transport of the agent that loaded them.
+	 */
+	protected SharedRepositoryCache getSharedCache() {
+		return SharedRepositoryCache.getDefault();
+	}
+
 	public IMetadataRepository loadRepository(URI location, IProgressMonitor monitor) throws ProvisionException {
 		return loadRepository(location, 0, monitor);
 	}
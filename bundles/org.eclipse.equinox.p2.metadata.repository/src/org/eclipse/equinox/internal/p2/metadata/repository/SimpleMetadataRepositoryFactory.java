@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -11,8 +11,6 @@
  *******************************************************************************/
 package org.eclipse.equinox.internal.p2.metadata.repository;
 
-import org.eclipse.equinox.internal.p2.repository.CacheManager;
-
 import java.io.*;
 import java.net.URI;
 import java.util.Map;
@@ -20,6 +18,9 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.repository.CacheManager;
+import org.eclipse.equinox.internal.p2.repository.CachingInputStream;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
 import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.repository.IRepositoryManager;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -39,38 +40,30 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 	}
 
 	/**
-	 * Returns a file in the local file system that contains the contents of the
-	 * metadata repository at the given location.
+	 * Returns a stream on the contents of the metadata repository at the given location. The
+	 * index of a remote repository is cached as it is read.
 	 */
-	private File getLocalFile(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
-		File localFile = null;
+	private CachingInputStream openIndex(URI location, IProgressMonitor monitor) throws IOException, ProvisionException {
 		URI jarLocation = URLMetadataRepository.getActualLocation(location, JAR_EXTENSION);
 		URI xmlLocation = URLMetadataRepository.getActualLocation(location, XML_EXTENSION);
 		// If the repository is local, we can return the repository file directly
 		if (PROTOCOL_FILE.equals(xmlLocation.getScheme())) {
 			//look for a compressed local file
-			localFile = URIUtil.toFile(jarLocation);
+			File localFile = URIUtil.toFile(jarLocation);
 			if (localFile.exists())
-				return localFile;
+				return new CachingInputStream(localFile);
 			//look for an uncompressed local file
 			localFile = URIUtil.toFile(xmlLocation);
 			if (localFile.exists())
-				return localFile;
+				return new CachingInputStream(localFile);
 			String msg = NLS.bind(Messages.io_failedRead, location);
 			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, msg, null));
 		}
-		// file is not local, create a cache of the repository metadata
+		// file is not local, read it through a cache of the repository metadata
 		CacheManager cache = (CacheManager) getAgent().getService(CacheManager.SERVICE_NAME);
 		if (cache == null)
 			throw new IllegalArgumentException("Cache manager service not available"); //$NON-NLS-1$
-		localFile = cache.createCache(location, URLMetadataRepository.CONTENT_FILENAME, monitor);
-		if (localFile == null) {
-			// there is no remote file in either form - this should not really happen as
-			// createCache should bail out with exception if something is wrong. This is an internal
-			// error.
-			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, Messages.repoMan_internalError, null));
-		}
-		return localFile;
+		return cache.openCache(location, URLMetadataRepository.CONTENT_FILENAME, monitor);
 	}
 
 	/* (non-Javadoc)
@@ -85,8 +78,8 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 		}
 		SubMonitor sub = SubMonitor.convert(monitor, 400);
 		try {
-			File localFile = getLocalFile(location, sub.newChild(300));
-			InputStream inStream = new BufferedInputStream(new FileInputStream(localFile));
+			CachingInputStream inStream = openIndex(location, sub.newChild(300));
+			File localFile = inStream.getCacheFile();
 			JarInputStream jarStream = null;
 			try {
 				//if reading from a jar, obtain a stream on the entry with the actual contents
@@ -104,13 +97,8 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 				//parse the repository descriptor file
 				sub.setWorkRemaining(100);
 				InputStream descriptorStream = jarStream != null ? jarStream : inStream;
-				IMetadataRepository result = new MetadataRepositoryIO(getAgent()).read(localFile.toURL(), descriptorStream, sub.newChild(100));
-				if (result != null && (flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0 && !result.isModifiable())
-					return null;
-				if (result instanceof LocalMetadataRepository)
-					((LocalMetadataRepository) result).initializeAfterLoad(location);
-				if (result instanceof URLMetadataRepository)
-					((URLMetadataRepository) result).initializeAfterLoad(location);
+				RepositoryIndexFile indexFile = RepositoryIndexFile.create(location, URLMetadataRepository.CONTENT_FILENAME, localFile, inStream.getLastModified());
+				IMetadataRepository result = read(location, localFile, descriptorStream, indexFile, flags, sub.newChild(100));
 				if (Tracing.DEBUG_METADATA_PARSING) {
 					time += System.currentTimeMillis();
 					Tracing.debug(debugMsg + "time (ms): " + time); //$NON-NLS-1$ 
@@ -132,10 +120,30 @@ public class SimpleMetadataRepositoryFactory extends MetadataRepositoryFactory {
 		}
 	}
 
+	/**
+	 * Parses the repository index read from the given stream, and returns the repository
+	 * or <code>null</code> if it does not satisfy the given flags. The repository records
+	 * the given index file as the one it was loaded from.
+	 */
+	IMetadataRepository read(URI location, File localFile, InputStream descriptorStream, RepositoryIndexFile indexFile, int flags, IProgressMonitor monitor) throws IOException, ProvisionException {
+		IMetadataRepository result = new MetadataRepositoryIO(getAgent()).read(localFile.toURL(), descriptorStream, monitor);
+		if (result != null && (flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) > 0 && !result.isModifiable())
+			return null;
+		if (result instanceof LocalMetadataRepository) {
+			((LocalMetadataRepository) result).initializeAfterLoad(location);
+			((LocalMetadataRepository) result).setIndexFile(indexFile);
+		}
+		if (result instanceof URLMetadataRepository) {
+			((URLMetadataRepository) result).initializeAfterLoad(location);
+			((URLMetadataRepository) result).setIndexFile(indexFile);
+		}
+		return result;
+	}
+
 	/**
 	 * Closes a stream, ignoring any secondary exceptions
 	 */
-	private void safeClose(InputStream stream) {
+	void safeClose(InputStream stream) {
 		if (stream == null)
 			return;
 		try {
@@ -19,6 +19,7 @@ import org.eclipse.core.runtime.URIUtil;
 import org.eclipse.equinox.internal.p2.core.helpers.CollectionUtils;
 import org.eclipse.equinox.internal.p2.metadata.*;
 import org.eclipse.equinox.internal.p2.metadata.index.*;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.metadata.KeyWithLocale;
@@ -32,7 +33,7 @@ import org.eclipse.equinox.p2.repository.metadata.spi.AbstractMetadataRepository
 /**
  * A metadata repository backed by an arbitrary URL.
  */
-public class URLMetadataRepository extends AbstractMetadataRepository implements IIndexProvider<IInstallableUnit> {
+public class URLMetadataRepository extends AbstractMetadataRepository implements IIndexProvider<IInstallableUnit>, RepositoryIndexFile.Provider {
 
 	public static final String CONTENT_FILENAME = "content"; //$NON-NLS-1$
 	protected Collection<IRepositoryReference> references;
@@ -45,6 +46,7 @@ public class URLMetadataRepository extends AbstractMetadataRepository implements
 	private IIndex<IInstallableUnit> idIndex;
 	private IIndex<IInstallableUnit> capabilityIndex;
 	private TranslationSupport translationSupport;
+	private volatile RepositoryIndexFile indexFile;
 
 	public static URI getActualLocation(URI base) {
 		return getActualLocation(base, XML_EXTENSION);
@@ -88,6 +90,17 @@ public class URLMetadataRepository extends AbstractMetadataRepository implements
 		content = getActualLocation(repoLocation);
 	}
 
+	public RepositoryIndexFile getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Records the index file this repository was loaded from.
+	 */
+	public void setIndexFile(RepositoryIndexFile indexFile) {
+		this.indexFile = indexFile;
+	}
+
 	public Collection<IRepositoryReference> getReferences() {
 		return references;
 	}
@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.repository;
+
+import java.io.*;
+
+/**
+ * A stream that separates the installable units of a metadata repository document from the
+ * rest of it, so that the units can be parsed concurrently.
+ * <p>
+ * Reading from this stream returns the document without the content of its top level
+ * <code>units</code> element. The elements found in that content are instead grouped into
+ * chunks of {@link #UNITS_PER_CHUNK} and handed to {@link #submit(byte[])} in document order
+ * while the stream is being read. The scanner only looks at markup boundaries, so the work
+ * left to the reader of the stream is small compared to parsing the units.
+ * </p><p>
+ * Chunks are only produced for UTF-8 documents without a document type declaration, as their
+ * content must be parseable on its own. Other documents are returned unchanged.
+ * </p>
+ */
+abstract class UnitsSplitter extends InputStream {
+	static final int UNITS_PER_CHUNK = 250;
+
+	private static final byte[] COMMENT_START = bytes("<!--"); //$NON-NLS-1$
+	private static final byte[] COMMENT_END = bytes("-->"); //$NON-NLS-1$
+	private static final byte[] CDATA_START = bytes("<![CDATA["); //$NON-NLS-1$
+	private static final byte[] CDATA_END = bytes("]]>"); //$NON-NLS-1$
+	private static final byte[] PI_END = bytes("?>"); //$NON-NLS-1$
+	private static final byte[] TAG_END = bytes(">"); //$NON-NLS-1$
+	private static final String UNITS = "units"; //$NON-NLS-1$
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+
+	// where the bytes being scanned go
+	private static final int DOCUMENT = 0;
+	private static final int BETWEEN_UNITS = 1;
+	private static final int UNIT = 2;
+
+	private final InputStream source;
+	private byte[] buffer = new byte[64 * 1024];
+	private int pos = 0;
+	private int limit = 0;
+	private int routed = 0; // bytes before this index have been routed
+	private boolean eof = false;
+
+	private byte[] output = new byte[8 * 1024];
+	private int outputPos = 0;
+	private int outputLimit = 0;
+
+	private int mode = DOCUMENT;
+	private boolean started = false;
+	private boolean splitting = true;
+	private boolean unitsFound = false;
+	private int depth = 0;
+	private int unitsDepth = -1;
+
+	private ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+	private int chunkUnits = 0;
+
+	UnitsSplitter(InputStream source) {
+		this.source = source;
+	}
+
+	/**
+	 * Called with the content of a group of elements of the <code>units</code> element.
+	 */
+	protected abstract void submit(byte[] units);
+
+	public int read() throws IOException {
+		if (!fillOutput())
+			return -1;
+		return output[outputPos++] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fillOutput())
+			return -1;
+		int count = Math.min(len, outputLimit - outputPos);
+		System.arraycopy(output, outputPos, b, off, count);
+		outputPos += count;
+		return count;
+	}
+
+	public int available() {
+		return outputLimit - outputPos;
+	}
+
+	public void close() throws IOException {
+		source.close();
+	}
+
+	private boolean fillOutput() throws IOException {
+		while (outputPos == outputLimit) {
+			outputPos = outputLimit = 0;
+			if (!scan())
+				return outputLimit > 0;
+		}
+		return true;
+	}
+
+	/*
+	 * Scans the next piece of the document. Returns false at the end of the document.
+	 */
+	private boolean scan() throws IOException {
+		if (!started) {
+			started = true;
+			// byte order marks of UTF-16 and UTF-32 documents
+			if (ensure(2) && ((buffer[0] & 0xFF) == 0xFE || (buffer[0] & 0xFF) == 0xFF || buffer[0] == 0))
+				stopSplitting();
+		}
+		if (!splitting) {
+			if (!ensure(1))
+				return false;
+			pos = limit;
+			route(pos);
+			return true;
+		}
+		// text up to the next markup
+		while (pos < limit && buffer[pos] != '<')
+			pos++;
+		if (pos == limit) {
+			if (!ensure(1)) {
+				route(pos);
+				submitChunk();
+				return false;
+			}
+			return true;
+		}
+		ensure(CDATA_START.length);
+		if (startsWith(COMMENT_START)) {
+			skipTo(COMMENT_END);
+		} else if (startsWith(CDATA_START)) {
+			skipTo(CDATA_END);
+		} else if (at(1) == '?') {
+			if (mode == DOCUMENT && !unitsFound) {
+				ByteArrayOutputStream instruction = new ByteArrayOutputStream();
+				skipTo(PI_END, instruction);
+				if (!isUTF8Declaration(instruction.toByteArray()))
+					stopSplitting();
+			} else
+				skipTo(PI_END);
+		} else if (at(1) == '!') {
+			// a document type declaration may define entities the units depend on
+			if (unitsFound)
+				skipTo(TAG_END);
+			else
+				stopSplitting();
+		} else if (at(1) == '/') {
+			endTag();
+		} else {
+			startTag();
+		}
+		return true;
+	}
+
+	private void startTag() throws IOException {
+		if (mode == BETWEEN_UNITS) {
+			// the start of a unit
+			discard(pos);
+			mode = UNIT;
+		}
+		pos++;
+		StringBuffer name = new StringBuffer();
+		int c;
+		while ((c = next()) != -1 && c != '>' && c != '/' && !isWhitespace(c))
+			name.append((char) c);
+		// find the end of the tag, attribute values may contain '>'
+		int quote = 0;
+		int previous = c;
+		while (c != '>' || quote != 0) {
+			if (c == -1)
+				return;
+			if (quote == 0 && (c == '"' || c == '\''))
+				quote = c;
+			else if (c == quote)
+				quote = 0;
+			previous = c;
+			c = next();
+		}
+		boolean empty = previous == '/';
+		if (!empty)
+			depth++;
+		if (mode == DOCUMENT && !unitsFound && depth == 2 && !empty && UNITS.equals(name.toString())) {
+			unitsFound = true;
+			route(pos);
+			mode = BETWEEN_UNITS;
+			unitsDepth = depth;
+		} else if (mode == UNIT && empty && depth == unitsDepth) {
+			endUnit();
+		}
+	}
+
+	private void endTag() throws IOException {
+		if (mode == BETWEEN_UNITS) {
+			// the end of the units element
+			discard(pos);
+			submitChunk();
+			mode = DOCUMENT;
+		}
+		int c;
+		while ((c = next()) != -1 && c != '>') {
+			// skip the name of the element
+		}
+		depth--;
+		if (mode == UNIT && depth == unitsDepth)
+			endUnit();
+	}
+
+	private void endUnit() {
+		routeToChunk(pos);
+		mode = BETWEEN_UNITS;
+		if (++chunkUnits == UNITS_PER_CHUNK)
+			submitChunk();
+	}
+
+	private void submitChunk() {
+		if (chunkUnits == 0 && chunk.size() == 0)
+			return;
+		submit(chunk.toByteArray());
+		chunk = new ByteArrayOutputStream();
+		chunkUnits = 0;
+	}
+
+	private void stopSplitting() {
+		splitting = false;
+		mode = DOCUMENT;
+	}
+
+	private boolean isUTF8Declaration(byte[] instruction) {
+		String declaration;
+		try {
+			declaration = new String(instruction, "US-ASCII"); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+		if (!declaration.startsWith("<?xml")) //$NON-NLS-1$
+			return true;
+		int index = declaration.indexOf("encoding"); //$NON-NLS-1$
+		if (index == -1)
+			return true;
+		for (index += 8; index < declaration.length(); index++) {
+			char c = declaration.charAt(index);
+			if (c == '"' || c == '\'') {
+				int end = declaration.indexOf(c, index + 1);
+				return end != -1 && UTF_8.equalsIgnoreCase(declaration.substring(index + 1, end));
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Advances past the given terminator, or to the end of the document.
+	 */
+	private void skipTo(byte[] terminator) throws IOException {
+		skipTo(terminator, null);
+	}
+
+	/*
+	 * Advances past the given terminator, or to the end of the document, and writes the
+	 * skipped bytes to the given stream. The buffer may be compacted while skipping, so
+	 * the skipped bytes are collected before each refill.
+	 */
+	private void skipTo(byte[] terminator, ByteArrayOutputStream skipped) throws IOException {
+		int start = pos;
+		pos += 2;
+		while (true) {
+			if (limit - pos < terminator.length) {
+				if (skipped != null)
+					skipped.write(buffer, start, pos - start);
+				boolean more = ensure(terminator.length);
+				start = pos;
+				if (!more) {
+					pos = limit;
+					break;
+				}
+			}
+			if (startsWith(terminator)) {
+				pos += terminator.length;
+				break;
+			}
+			pos++;
+		}
+		if (skipped != null)
+			skipped.write(buffer, start, pos - start);
+	}
+
+	private int next() throws IOException {
+		if (!ensure(1))
+			return -1;
+		return buffer[pos++] & 0xFF;
+	}
+
+	private int at(int offset) {
+		return pos + offset < limit ? buffer[pos + offset] : -1;
+	}
+
+	private boolean startsWith(byte[] prefix) {
+		if (limit - pos < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (buffer[pos + i] != prefix[i])
+				return false;
+		return true;
+	}
+
+	/*
+	 * Makes sure that n bytes are available from pos, unless the document ends first.
+	 */
+	private boolean ensure(int n) throws IOException {
+		while (limit - pos < n) {
+			if (eof)
+				return limit > pos;
+			// what was scanned so far goes where the current mode says
+			if (mode == UNIT)
+				routeToChunk(pos);
+			else if (mode == BETWEEN_UNITS)
+				discard(pos);
+			else
+				route(pos);
+			System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+			routed = 0;
+			int read = source.read(buffer, limit, buffer.length - limit);
+			if (read == -1)
+				eof = true;
+			else
+				limit += read;
+		}
+		return true;
+	}
+
+	// passes the scanned bytes up to the given index on to the reader of this stream
+	private void route(int end) {
+		int length = end - routed;
+		if (length <= 0)
+			return;
+		if (outputLimit + length > output.length) {
+			byte[] larger = new byte[Math.max(output.length * 2, outputLimit + length)];
+			System.arraycopy(output, 0, larger, 0, outputLimit);
+			output = larger;
+		}
+		System.arraycopy(buffer, routed, output, outputLimit, length);
+		outputLimit += length;
+		routed = end;
+	}
+
+	private void routeToChunk(int end) {
+		if (end > routed)
+			chunk.write(buffer, routed, end - routed);
+		routed = end;
+	}
+
+	private void discard(int end) {
+		routed = end;
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static byte[] bytes(String ascii) {
+		try {
+			return ascii.getBytes("US-ASCII"); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+}
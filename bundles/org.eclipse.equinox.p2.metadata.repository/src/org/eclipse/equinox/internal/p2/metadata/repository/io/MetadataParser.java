@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2010 IBM Corporation and others.
+ * Copyright (c) 2007, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -150,7 +150,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			if (values[0] == null)
 				return;
 
-			id = values[0];
+			id = intern(values[0]);
 			version = checkVersion(INSTALLABLE_UNIT_ELEMENT, VERSION_ATTRIBUTE, values[1]);
 			singleton = checkBoolean(INSTALLABLE_UNIT_ELEMENT, SINGLETON_ATTRIBUTE, values[2], true).booleanValue();
 		}
@@ -496,7 +496,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			super(parentHandler, PROVIDED_CAPABILITY_ELEMENT);
 			String[] values = parseRequiredAttributes(attributes, REQUIRED_PROVIDED_CAPABILITY_ATTRIBUTES);
 			Version version = checkVersion(PROVIDED_CAPABILITY_ELEMENT, VERSION_ATTRIBUTE, values[2]);
-			capabilities.add(MetadataFactory.createProvidedCapability(values[0], values[1], version));
+			capabilities.add(intern(MetadataFactory.createProvidedCapability(intern(values[0]), intern(values[1]), version)));
 		}
 
 		public void startElement(String name, Attributes attributes) {
@@ -587,8 +587,8 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			this.capabilities = capabilities;
 			if (attributes.getIndex(NAMESPACE_ATTRIBUTE) >= 0) {
 				String[] values = parseAttributes(attributes, REQIURED_CAPABILITY_ATTRIBUTES, OPTIONAL_CAPABILITY_ATTRIBUTES);
-				namespace = values[0];
-				name = values[1];
+				namespace = intern(values[0]);
+				name = intern(values[1]);
 				range = checkVersionRange(REQUIREMENT_ELEMENT, VERSION_RANGE_ATTRIBUTE, values[2]);
 				boolean isOptional = checkBoolean(REQUIREMENT_ELEMENT, CAPABILITY_OPTIONAL_ATTRIBUTE, values[3], false).booleanValue();
 				min = isOptional ? 0 : 1;
@@ -638,7 +638,8 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 				requirement = MetadataFactory.createRequirement(matchExpr, filter, min, max, greedy, description);
 			} else
 				requirement = MetadataFactory.createRequirement(namespace, name, range, filter, min, max, greedy, description);
-			capabilities.add(requirement);
+			// requirements that only differ by their description are equal
+			capabilities.add(description == null ? intern(requirement) : requirement);
 		}
 
 		private String removeWhiteSpace(String s) {
@@ -684,7 +685,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			super(parentHandler, ARTIFACT_KEY_ELEMENT);
 			String[] values = parseRequiredAttributes(attributes, required);
 			Version version = checkVersion(ARTIFACT_KEY_ELEMENT, VERSION_ATTRIBUTE, values[2]);
-			artifacts.add(new ArtifactKey(values[0], values[1], version));
+			artifacts.add(intern(new ArtifactKey(intern(values[0]), intern(values[1]), version)));
 		}
 
 		public void startElement(String name, Attributes attributes) {
@@ -702,7 +703,7 @@ public abstract class MetadataParser extends XMLParser implements XMLConstants {
 			super(parentHandler, TOUCHPOINT_TYPE_ELEMENT);
 			String[] values = parseRequiredAttributes(attributes, required);
 			Version version = checkVersion(TOUCHPOINT_TYPE_ELEMENT, VERSION_ATTRIBUTE, values[1]);
-			touchpointType = MetadataFactory.createTouchpointType(values[0], version);
+			touchpointType = intern(MetadataFactory.createTouchpointType(intern(values[0]), version));
 		}
 
 		public ITouchpointType getTouchpointType() {
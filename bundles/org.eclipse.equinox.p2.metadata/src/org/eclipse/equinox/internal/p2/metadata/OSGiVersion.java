@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -97,8 +97,7 @@ public class OSGiVersion extends BasicVersion {
 	public int compareTo(Version v) {
 		int result;
 		if (!(v instanceof OSGiVersion)) {
-			BasicVersion ov = (BasicVersion) v;
-			result = VersionVector.compare(getVector(), null, ov.getVector(), ov.getPad());
+			result = VersionVector.compare(this, (BasicVersion) v);
 		} else {
 			OSGiVersion ov = (OSGiVersion) v;
 			result = major - ov.major;
@@ -106,7 +105,8 @@ public class OSGiVersion extends BasicVersion {
 				result = minor - ov.minor;
 				if (result == 0) {
 					result = micro - ov.micro;
-					if (result == 0)
+					// qualifiers are interned, so equal qualifiers are usually identical
+					if (result == 0 && qualifier != ov.qualifier)
 						result = VersionVector.compareSegments(qualifier, ov.qualifier);
 				}
 			}
@@ -119,15 +119,13 @@ public class OSGiVersion extends BasicVersion {
 			return true;
 
 		if (!(object instanceof OSGiVersion)) {
-			if (object instanceof BasicVersion) {
-				BasicVersion ov = (BasicVersion) object;
-				return VersionVector.equals(getVector(), null, ov.getVector(), ov.getPad());
-			}
+			if (object instanceof BasicVersion)
+				return VersionVector.equals(this, (BasicVersion) object);
 			return false;
 		}
 
 		OSGiVersion other = (OSGiVersion) object;
-		return micro == other.micro && minor == other.minor && major == other.major && qualifier.equals(other.qualifier);
+		return micro == other.micro && minor == other.minor && major == other.major && (qualifier == other.qualifier || qualifier.equals(other.qualifier));
 	}
 
 	public IVersionFormat getFormat() {
@@ -155,7 +153,13 @@ public class OSGiVersion extends BasicVersion {
 	}
 
 	public int hashCode() {
-		return (major << 24) + (minor << 16) + (micro << 8) + qualifier.hashCode();
+		// same as VersionVector.hashCode(getVector(), null), so that an OmniVersion equal to
+		// this version has the same hash code
+		int hashCode = 31 + qualifier.hashCode();
+		hashCode = (hashCode * 31) + micro;
+		hashCode = (hashCode * 31) + minor;
+		hashCode = (hashCode * 31) + major;
+		return hashCode * 31;
 	}
 
 	public boolean isOSGiCompatible() {
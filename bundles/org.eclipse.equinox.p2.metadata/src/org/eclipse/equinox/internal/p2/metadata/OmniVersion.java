@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -53,6 +53,11 @@ public class OmniVersion extends BasicVersion {
 	 */
 	private final String original;
 
+	/**
+	 * The hash code, computed when first needed
+	 */
+	private transient int hashCode;
+
 	static BasicVersion fromVector(List<Comparable<?>> vector, IVersionFormat format, String original) {
 		int vtop = vector.size() - 1;
 		Comparable<?> padValue = vector.get(vtop);
@@ -101,8 +106,7 @@ public class OmniVersion extends BasicVersion {
 		if (!(o instanceof BasicVersion))
 			return false;
 
-		BasicVersion ov = (BasicVersion) o;
-		return VersionVector.equals(vector, padValue, ov.getVector(), ov.getPad());
+		return VersionVector.equals(this, (BasicVersion) o);
 	}
 
 	public IVersionFormat getFormat() {
@@ -141,7 +145,12 @@ public class OmniVersion extends BasicVersion {
 	}
 
 	public int hashCode() {
-		return VersionVector.hashCode(vector, padValue);
+		int result = hashCode;
+		if (result == 0) {
+			result = VersionVector.hashCode(vector, padValue);
+			hashCode = result;
+		}
+		return result;
 	}
 
 	/**
@@ -254,7 +263,6 @@ public class OmniVersion extends BasicVersion {
 	}
 
 	public int compareTo(Version v) {
-		BasicVersion ov = (BasicVersion) v;
-		return VersionVector.compare(vector, padValue, ov.getVector(), ov.getPad());
+		return VersionVector.compare(this, (BasicVersion) v);
 	}
 }
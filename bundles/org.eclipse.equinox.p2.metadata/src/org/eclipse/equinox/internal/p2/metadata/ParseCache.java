@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+
+/**
+ * A bounded cache of the immutable values parsed from strings, such as versions and version
+ * ranges, so that a string that is seen again is not parsed again. Repositories and profiles
+ * repeat the same version literals many times, so most lookups are hits.
+ * <p>
+ * The cache holds two generations of entries. New entries go to the current generation, and
+ * when it is full it becomes the previous generation and the one before is dropped. An entry
+ * found in the previous generation moves back to the current one, so the strings in use stay
+ * in the cache while the others are eventually forgotten. The cache is safe for use by
+ * concurrent threads and lookups do not lock.
+ * </p><p>
+ * The number of entries of a generation is controlled by the system property {@link #PROP_SIZE};
+ * a value of <code>0</code> disables the caches.
+ * </p>
+ */
+public final class ParseCache<T> {
+	public static final String PROP_SIZE = "eclipse.p2.metadata.parse.cache.size"; //$NON-NLS-1$
+	private static final int DEFAULT_SIZE = 16384;
+
+	/**
+	 * The versions parsed by {@link Version#create(String)}.
+	 */
+	public static final ParseCache<Version> VERSIONS = new ParseCache<Version>(getDefaultSize());
+
+	/**
+	 * The ranges parsed by {@link VersionRange#VersionRange(String)}.
+	 */
+	public static final ParseCache<VersionRange> RANGES = new ParseCache<VersionRange>(getDefaultSize());
+
+	private final int size;
+	private volatile Map<String, T> current;
+	private volatile Map<String, T> previous;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static int getDefaultSize() {
+		String value = System.getProperty(PROP_SIZE);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				// use the default size
+			}
+		}
+		return DEFAULT_SIZE;
+	}
+
+	/**
+	 * Creates a cache holding up to twice the given number of entries.
+	 *
+	 * @param size the number of entries of a generation, <code>0</code> or less to cache nothing
+	 */
+	public ParseCache(int size) {
+		this.size = size;
+		this.current = new ConcurrentHashMap<String, T>();
+		this.previous = Collections.emptyMap();
+	}
+
+	/**
+	 * Returns the value parsed from the given string, or <code>null</code> if it is not cached.
+	 */
+	public T get(String string) {
+		if (size <= 0 || string == null)
+			return null;
+		T value = current.get(string);
+		if (value == null) {
+			value = previous.get(string);
+			if (value == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			put(string, value);
+		}
+		hits.incrementAndGet();
+		return value;
+	}
+
+	/**
+	 * Remembers the value parsed from the given string.
+	 */
+	public void put(String string, T value) {
+		if (size <= 0 || string == null || value == null)
+			return;
+		Map<String, T> generation = current;
+		if (generation.size() >= size) {
+			synchronized (this) {
+				// another thread may have started a new generation already
+				if (current == generation) {
+					previous = generation;
+					current = new ConcurrentHashMap<String, T>();
+				}
+				generation = current;
+			}
+		}
+		generation.put(string, value);
+	}
+
+	/**
+	 * Forgets all entries and statistics.
+	 */
+	public synchronized void clear() {
+		current = new ConcurrentHashMap<String, T>();
+		previous = Collections.emptyMap();
+		hits.set(0);
+		misses.set(0);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of entries held by this cache.
+	 */
+	public int size() {
+		return current.size() + previous.size();
+	}
+
+	/**
+	 * Returns the lookup statistics of this cache, for tracing purposes.
+	 */
+	public String toString() {
+		return "size=" + size() + ", hits=" + getHits() + ", misses=" + getMisses(); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
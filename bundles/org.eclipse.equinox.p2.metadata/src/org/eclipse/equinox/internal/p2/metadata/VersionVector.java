@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -133,6 +133,59 @@ public class VersionVector implements Comparable<VersionVector>, Serializable {
 		return padA == null ? (padB == null ? 0 : -1) : (padB == null ? 1 : compareSegments(padA, padB));
 	}
 
+	/**
+	 * Compares two versions segment by segment, the same way as
+	 * {@link #compare(Comparable[], Comparable, Comparable[], Comparable)} compares their
+	 * vectors, but without asking the versions for a copy of their vector.
+	 */
+	static int compare(BasicVersion a, BasicVersion b) {
+		int countA = a.getSegmentCount();
+		int countB = b.getSegmentCount();
+		int top = countA < countB ? countA : countB;
+		for (int idx = 0; idx < top; ++idx) {
+			int cmp = compareSegments(a.getSegment(idx), b.getSegment(idx));
+			if (cmp != 0)
+				return cmp;
+		}
+
+		Comparable<?> padA = a.getPad();
+		Comparable<?> padB = b.getPad();
+		if (top < countA)
+			return (padB == null) ? 1 : compareReminder(top, a, padA, padB);
+
+		if (top < countB)
+			return (padA == null) ? -1 : -compareReminder(top, b, padB, padA);
+
+		return padA == null ? (padB == null ? 0 : -1) : (padB == null ? 1 : compareSegments(padA, padB));
+	}
+
+	/**
+	 * Tells whether two versions are equal segment by segment, the same way as
+	 * {@link #equals(Comparable[], Comparable, Comparable[], Comparable)} does for their
+	 * vectors, but without asking the versions for a copy of their vector.
+	 */
+	static boolean equals(BasicVersion a, BasicVersion b) {
+		Comparable<?> padValueA = a.getPad();
+		Comparable<?> padValueB = b.getPad();
+		if (padValueA == null) {
+			if (padValueB != null)
+				return false;
+		} else {
+			if (padValueB == null || !padValueA.equals(padValueB))
+				return false;
+		}
+
+		int idx = a.getSegmentCount();
+		if (idx != b.getSegmentCount())
+			return false;
+
+		while (--idx >= 0)
+			if (!a.getSegment(idx).equals(b.getSegment(idx)))
+				return false;
+
+		return true;
+	}
+
 	static boolean equals(Comparable<?>[] vectorA, Comparable<?> padValueA, Comparable<?>[] vectorB, Comparable<?> padValueB) {
 		// We compare pad first since it is impossible for versions with
 		// different pad to be equal (versions are padded to infinity) 
@@ -190,6 +243,16 @@ public class VersionVector implements Comparable<VersionVector>, Serializable {
 		}
 	}
 
+	private static int compareReminder(int idx, BasicVersion version, Comparable<?> padValue, Comparable<?> othersPad) {
+		int cmp;
+		int count = version.getSegmentCount();
+		for (cmp = 0; idx < count && cmp == 0; ++idx)
+			cmp = compareSegments(version.getSegment(idx), othersPad);
+		if (cmp == 0)
+			cmp = (padValue == null) ? -1 : compareSegments(padValue, othersPad);
+		return cmp;
+	}
+
 	private static int compareReminder(int idx, Comparable<?>[] vector, Comparable<?> padValue, Comparable<?> othersPad) {
 		int cmp;
 		for (cmp = 0; idx < vector.length && cmp == 0; ++idx)
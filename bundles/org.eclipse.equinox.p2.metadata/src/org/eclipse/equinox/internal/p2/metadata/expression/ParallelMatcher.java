@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.expression;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.equinox.internal.p2.core.helpers.ExecutorHelper;
+import org.eclipse.equinox.p2.metadata.expression.IEvaluationContext;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+
+/**
+ * Matches large sets of candidates against an expression on several threads.
+ * <p>
+ * The candidates are split into consecutive slices that are matched on a bounded pool of
+ * threads shared by all queries, each slice with its own evaluation context. The matches
+ * are merged in the order of the candidates, so the result does not depend on how the work
+ * was scheduled. A caller waiting for a slice that no pool thread has picked up matches that
+ * slice itself, so queries evaluated while matching never wait for a free thread.
+ * </p><p>
+ * The number of threads is controlled by the system property {@link #PROP_THREADS}; a value
+ * of <code>1</code> or less matches all candidates on the calling thread.
+ * </p>
+ */
+public final class ParallelMatcher {
+	public static final String PROP_THREADS = "eclipse.p2.query.parallel.threads"; //$NON-NLS-1$
+	private static final int MAX_DEFAULT_THREADS = 4;
+
+	/**
+	 * The smallest number of candidates matched by a thread.
+	 */
+	static final int MIN_SLICE = 1024;
+	private static final int SLICES_PER_THREAD = 4;
+
+	private static int threadCount = -1;
+	private static ExecutorService executor;
+
+	private ParallelMatcher() {
+		// no instances
+	}
+
+	private static synchronized int getThreadCount() {
+		if (threadCount < 0)
+			threadCount = ExecutorHelper.getThreadCount(PROP_THREADS, ExecutorHelper.getProcessorCount(MAX_DEFAULT_THREADS));
+		return threadCount;
+	}
+
+	/**
+	 * Returns whether matching may happen on more than one thread.
+	 */
+	public static boolean isEnabled() {
+		return getThreadCount() > 1;
+	}
+
+	private static synchronized ExecutorService getExecutor(int threads) {
+		// the caller is one of the threads, and matches the slices no thread is free for itself
+		if (executor == null)
+			executor = ExecutorHelper.newSharedDaemonPool("p2 query matcher", threads - 1); //$NON-NLS-1$
+		return executor;
+	}
+
+	/**
+	 * Returns the candidates that are instances of the given class and match the given
+	 * expression, in the order of the iterator.
+	 *
+	 * @param expression the expression to match
+	 * @param matchingClass the class of the candidates that can match
+	 * @param context the context of the query, whose index provider is used by all threads
+	 * @param iterator the candidates
+	 * @return the matching candidates
+	 */
+	public static <T> List<T> match(final IMatchExpression<T> expression, final Class<? extends T> matchingClass, IEvaluationContext context, Iterator<T> iterator) {
+		final List<T> candidates = new ArrayList<T>();
+		while (iterator.hasNext())
+			candidates.add(iterator.next());
+		int size = candidates.size();
+		int threads = getThreadCount();
+		int sliceSize = Math.max(MIN_SLICE, (size + threads * SLICES_PER_THREAD - 1) / (threads * SLICES_PER_THREAD));
+		if (threads < 2 || size <= sliceSize)
+			return match(expression, matchingClass, context, candidates, 0, size);
+
+		final IEvaluationContext shared = context;
+		List<FutureTask<List<T>>> tasks = new ArrayList<FutureTask<List<T>>>();
+		for (int start = 0; start < size; start += sliceSize) {
+			final int from = start;
+			final int to = Math.min(start + sliceSize, size);
+			tasks.add(new FutureTask<List<T>>(new Callable<List<T>>() {
+				public List<T> call() {
+					// the variables of a context are only ever used by one thread
+					IEvaluationContext sliceContext = expression.createContext();
+					sliceContext.setIndexProvider(shared.getIndexProvider());
+					return match(expression, matchingClass, sliceContext, candidates, from, to);
+				}
+			}));
+		}
+		ExecutorService pool = getExecutor(threads);
+		// the caller takes the first slice itself
+		for (int i = 1; i < tasks.size(); i++)
+			pool.execute(tasks.get(i));
+
+		List<T> result = new ArrayList<T>();
+		for (FutureTask<List<T>> task : tasks) {
+			// matches the slice here unless a pool thread has already started it
+			task.run();
+			result.addAll(getResult(task));
+		}
+		return result;
+	}
+
+	static <T> List<T> match(IMatchExpression<T> expression, Class<? extends T> matchingClass, IEvaluationContext context, List<T> candidates, int from, int to) {
+		List<T> result = new ArrayList<T>();
+		for (int i = from; i < to; i++) {
+			T candidate = candidates.get(i);
+			if (matchingClass.isInstance(candidate) && expression.isMatch(context, candidate))
+				result.add(candidate);
+		}
+		return result;
+	}
+
+	private static <T> List<T> getResult(FutureTask<List<T>> task) {
+		try {
+			return ExecutorHelper.getResult(task);
+		} catch (ExecutionException e) {
+			// matching only throws runtime exceptions
+			throw new IllegalStateException(e.getCause().getMessage());
+		}
+	}
+}
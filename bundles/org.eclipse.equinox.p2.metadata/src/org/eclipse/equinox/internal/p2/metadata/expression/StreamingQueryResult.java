@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.metadata.expression;
+
+import java.lang.reflect.Array;
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.p2.query.IQuery;
+import org.eclipse.equinox.p2.query.IQueryResult;
+
+/**
+ * A query result that is evaluated as it is consumed. Elements are pulled from the
+ * underlying iterator only when a caller needs them, so that {@link #isEmpty()} and
+ * {@link #findFirst()} look at no more candidates than necessary, and a caller that stops
+ * iterating early never pays for the rest of the scan.
+ * <p>
+ * Elements that were pulled are remembered, so the result can be iterated any number of
+ * times. Duplicates are removed and the elements are returned in the order of the
+ * underlying iterator.
+ * </p>
+ */
+public class StreamingQueryResult<T> implements IQueryResult<T> {
+	private Iterator<T> source;
+	private final List<T> elements = new ArrayList<T>();
+	private final Set<T> seen = new HashSet<T>();
+
+	public StreamingQueryResult(Iterator<T> source) {
+		this.source = source;
+	}
+
+	/*
+	 * Pulls the next new element from the source. Returns false when the source is exhausted.
+	 */
+	private boolean pull() {
+		if (source == null)
+			return false;
+		while (source.hasNext()) {
+			T element = source.next();
+			if (seen.add(element)) {
+				elements.add(element);
+				return true;
+			}
+		}
+		// the source may hold on to the queryable
+		source = null;
+		return false;
+	}
+
+	private void drain() {
+		while (pull()) {
+			// keep pulling
+		}
+	}
+
+	public boolean isEmpty() {
+		return elements.isEmpty() && !pull();
+	}
+
+	/**
+	 * Returns the first element of this result, or <code>null</code> if it is empty.
+	 */
+	public T findFirst() {
+		return isEmpty() ? null : elements.get(0);
+	}
+
+	/**
+	 * Returns the number of elements of this result, which evaluates all of it.
+	 */
+	public int size() {
+		drain();
+		return elements.size();
+	}
+
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private int position = 0;
+
+			public boolean hasNext() {
+				return position < elements.size() || pull();
+			}
+
+			public T next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return elements.get(position++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	public T[] toArray(Class<T> clazz) {
+		drain();
+		return elements.toArray((T[]) Array.newInstance(clazz, elements.size()));
+	}
+
+	public Set<T> toSet() {
+		drain();
+		return new HashSet<T>(seen);
+	}
+
+	public Set<T> toUnmodifiableSet() {
+		drain();
+		return Collections.unmodifiableSet(new HashSet<T>(seen));
+	}
+
+	public IQueryResult<T> query(IQuery<T> query, IProgressMonitor monitor) {
+		return query.perform(iterator());
+	}
+}
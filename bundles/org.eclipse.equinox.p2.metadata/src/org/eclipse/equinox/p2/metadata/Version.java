@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith and others.
+ * Copyright (c) 2009, 2013 Cloudsmith and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -76,7 +76,14 @@ public abstract class Version implements Comparable<Version>, Serializable {
 	 *         formatted.
 	 */
 	public static Version create(String version) {
-		return version == null ? null : VersionParser.parse(version, 0, version.length());
+		if (version == null)
+			return null;
+		Version v = ParseCache.VERSIONS.get(version);
+		if (v == null) {
+			v = VersionParser.parse(version, 0, version.length());
+			ParseCache.VERSIONS.put(version, v);
+		}
+		return v;
 	}
 
 	/**
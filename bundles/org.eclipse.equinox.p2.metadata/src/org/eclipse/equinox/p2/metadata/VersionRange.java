@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2003, 2010 IBM Corporation and others.
+ * Copyright (c) 2003, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -102,6 +102,29 @@ public class VersionRange implements Serializable {
 	 * versions.
 	 */
 	public VersionRange(String versionRange) {
+		this(parse(versionRange));
+	}
+
+	private VersionRange(VersionRange parsed) {
+		this.minVersion = parsed.minVersion;
+		this.includeMin = parsed.includeMin;
+		this.maxVersion = parsed.maxVersion;
+		this.includeMax = parsed.includeMax;
+	}
+
+	private static VersionRange parse(String versionRange) {
+		VersionRange range = ParseCache.RANGES.get(versionRange);
+		if (range == null) {
+			range = new VersionRange(versionRange, new int[1]);
+			ParseCache.RANGES.put(versionRange, range);
+		}
+		return range;
+	}
+
+	/*
+	 * Parses the given range. The position array is scratch space to track the parse position.
+	 */
+	private VersionRange(String versionRange, int[] position) {
 		int top = 0;
 		int pos = 0;
 		if (versionRange != null) {
@@ -119,7 +142,6 @@ public class VersionRange implements Serializable {
 		}
 
 		char c = versionRange.charAt(pos);
-		int[] position = new int[1];
 		boolean rawPrefix = false;
 		IVersionFormat fmt = null;
 		if (VersionParser.isLetter(c)) {
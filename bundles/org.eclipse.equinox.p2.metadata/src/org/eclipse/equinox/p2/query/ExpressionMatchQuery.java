@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -67,6 +67,12 @@ public class ExpressionMatchQuery<T> implements IMatchQuery<T>, IQueryWithIndex<
 		if (((MatchExpression<T>) expression).operand == ExpressionUtil.TRUE_EXPRESSION)
 			return new QueryResult<T>(iterator);
 
+		// subclasses may depend on being matched on one thread
+		if (getClass() == ExpressionMatchQuery.class && ParallelMatcher.isEnabled()) {
+			List<T> matches = ParallelMatcher.match(expression, matchingClass, context, iterator);
+			return matches.isEmpty() ? Collector.<T> emptyCollector() : new CollectionResult<T>(new HashSet<T>(matches));
+		}
+
 		HashSet<T> result = null;
 		while (iterator.hasNext()) {
 			T value = iterator.next();
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,11 +39,11 @@ public class ExpressionQuery<T> implements IQueryWithIndex<T> {
 	}
 
 	public IQueryResult<T> perform(IIndexProvider<T> indexProvider) {
-		return new QueryResult<T>(expression.iterator(expression.createContext(elementClass, indexProvider)));
+		return new StreamingQueryResult<T>(expression.iterator(expression.createContext(elementClass, indexProvider)));
 	}
 
 	public IQueryResult<T> perform(Iterator<T> iterator) {
-		return new QueryResult<T>(expression.iterator(expression.createContext(elementClass, iterator)));
+		return new StreamingQueryResult<T>(expression.iterator(expression.createContext(elementClass, iterator)));
 	}
 
 	public IContextExpression<T> getExpression() {
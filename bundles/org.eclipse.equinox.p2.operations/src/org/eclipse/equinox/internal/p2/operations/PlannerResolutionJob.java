@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@ package org.eclipse.equinox.internal.p2.operations;
 
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.internal.p2.director.SimplePlanner;
 import org.eclipse.equinox.p2.engine.IProvisioningPlan;
 import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.operations.*;
@@ -31,6 +32,7 @@ public class PlannerResolutionJob extends ProvisioningJob implements IProfileCha
 	ResolutionResult report;
 	ProvisioningContext firstPass, successful;
 	IFailedStatusEvaluator evaluator;
+	long timeLimit = 0;
 
 	public static MultiStatus getProfileChangeRequestAlteredStatus() {
 		return PlanAnalyzer.getProfileChangeAlteredStatus();
@@ -65,6 +67,39 @@ public class PlannerResolutionJob extends ProvisioningJob implements IProfileCha
 		this.firstPass = firstPass;
 	}
 
+	/**
+	 * Limits the time spent looking for the best plan, in milliseconds. <code>0</code>
+	 * means no limit.
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	/**
+	 * Returns whether the plan was found when the time limit was reached, in which case
+	 * a better plan may exist.
+	 */
+	public boolean isTimeLimitReached() {
+		return plan != null && plan.getStatus().getCode() == SimplePlanner.TIME_LIMIT_REACHED;
+	}
+
+	private IProvisioningPlan getProvisioningPlan(ProvisioningContext context, IProgressMonitor monitor) {
+		IPlanner planner = (IPlanner) getSession().getProvisioningAgent().getService(IPlanner.SERVICE_NAME);
+		if (timeLimit <= 0)
+			return planner.getProvisioningPlan(request, context, monitor);
+		// the limit only applies to this resolution, the context belongs to the caller and is also used to provision
+		String previous = context.getProperty(SimplePlanner.SOLVE_TIME_LIMIT);
+		context.setProperty(SimplePlanner.SOLVE_TIME_LIMIT, Long.toString(timeLimit));
+		try {
+			return planner.getProvisioningPlan(request, context, monitor);
+		} finally {
+			if (previous == null)
+				context.getProperties().remove(SimplePlanner.SOLVE_TIME_LIMIT);
+			else
+				context.setProperty(SimplePlanner.SOLVE_TIME_LIMIT, previous);
+		}
+	}
+
 	public IStatus runModal(IProgressMonitor monitor) {
 		SubMonitor sub;
 		if (evaluator != null) {
@@ -73,7 +108,7 @@ public class PlannerResolutionJob extends ProvisioningJob implements IProfileCha
 			sub = SubMonitor.convert(monitor, 500);
 		}
 
-		plan = ((IPlanner) getSession().getProvisioningAgent().getService(IPlanner.SERVICE_NAME)).getProvisioningPlan(request, firstPass, sub.newChild(500));
+		plan = getProvisioningPlan(firstPass, sub.newChild(500));
 		IStatus status;
 		if (plan == null) {
 			status = new Status(IStatus.ERROR, Activator.ID, Messages.PlannerResolutionJob_NullProvisioningPlan);
@@ -93,7 +128,7 @@ public class PlannerResolutionJob extends ProvisioningJob implements IProfileCha
 			return status;
 
 		successful = secondPass;
-		plan = ((IPlanner) getSession().getProvisioningAgent().getService(IPlanner.SERVICE_NAME)).getProvisioningPlan(request, secondPass, sub.newChild(500));
+		plan = getProvisioningPlan(secondPass, sub.newChild(500));
 		if (plan == null) {
 			status = new Status(IStatus.ERROR, Activator.ID, Messages.PlannerResolutionJob_NullProvisioningPlan);
 			additionalStatus.add(status);
@@ -17,6 +17,7 @@ import org.eclipse.equinox.internal.p2.operations.*;
 import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
 import org.eclipse.equinox.p2.planner.IProfileChangeRequest;
+import org.eclipse.equinox.p2.query.QueryUtil;
 
 /**
  * ProfileChangeOperation describes a provisioning operation that modifies a profile.
@@ -83,8 +84,10 @@ public abstract class ProfileChangeOperation implements IProfileChangeJob {
 	String profileId;
 	ProvisioningContext context;
 	MultiStatus noChangeRequest;
-	PlannerResolutionJob job;
+	volatile PlannerResolutionJob job;
 	ProfileChangeRequest request;
+	long resolutionTimeLimit = 0;
+	volatile boolean resolutionRefined = false;
 
 	/**
 	 * Create an operation using the provided provisioning session.
@@ -111,6 +114,7 @@ public abstract class ProfileChangeOperation implements IProfileChangeJob {
 			monitor = new NullProgressMonitor();
 		prepareToResolve();
 		makeResolveJob(monitor);
+		limitResolveJob();
 		if (job != null) {
 			IStatus status = job.runModal(monitor);
 			if (status.getSeverity() == IStatus.CANCEL)
@@ -143,6 +147,7 @@ public abstract class ProfileChangeOperation implements IProfileChangeJob {
 		SubMonitor mon = SubMonitor.convert(monitor, Messages.ProfileChangeOperation_ResolveTaskName, 1000);
 		prepareToResolve();
 		makeResolveJob(mon.newChild(100));
+		limitResolveJob();
 		if (mon.isCanceled())
 			return null;
 		if (job != null)
@@ -184,6 +189,12 @@ public abstract class ProfileChangeOperation implements IProfileChangeJob {
 	 */
 	protected abstract void computeProfileChangeRequest(MultiStatus status, IProgressMonitor monitor);
 
+	private void limitResolveJob() {
+		resolutionRefined = false;
+		if (job != null)
+			job.setTimeLimit(resolutionTimeLimit);
+	}
+
 	private void createPlannerResolutionJob() {
 		job = new PlannerResolutionJob(getResolveJobName(), session, profileId, request, getFirstPassProvisioningContext(), getSecondPassEvaluator(), noChangeRequest);
 	}
@@ -330,6 +341,76 @@ public abstract class ProfileChangeOperation implements IProfileChangeJob {
 		return null;
 	}
 
+	/**
+	 * Set a time limit for finding the best plan when this operation is resolved.  When the time is up,
+	 * the operation is resolved with the best plan found so far.  That plan is valid, but a better
+	 * plan may exist, which a job returned by {@link #getRefinementJob(IProgressMonitor)} can look for.
+	 * This must be set before an attempt is made to resolve the operation for it to have any effect.
+	 * 
+	 * @param millis the time limit in milliseconds, or <code>0</code> to always resolve the 
+	 * operation with the best plan
+	 * @since 2.4
+	 */
+	public void setResolutionTimeLimit(long millis) {
+		this.resolutionTimeLimit = millis;
+	}
+
+	/**
+	 * Return a job that resolves this operation again without a time limit, when it was resolved
+	 * with a plan found within the {@link #setResolutionTimeLimit(long) time limit}.  When the job is
+	 * done, the provisioning plan, the resolution result and the provisioning job of this operation
+	 * are those of the best plan, and {@link #isResolutionRefined()} tells whether that plan differs from
+	 * the one found within the time limit.  As with the other jobs of this operation, it is up to
+	 * clients to configure and schedule the job.
+	 * 
+	 * @param monitor a progress monitor that should be used to report the job's progress in addition
+	 * to the standard job progress reporting.  Can be <code>null</code>.  If provided, this monitor 
+	 * will be called from a background thread.
+	 * 
+	 * @return a job that looks for a better plan, or <code>null</code> if the operation has not been
+	 * resolved, or was resolved with the best plan.
+	 * @since 2.4
+	 */
+	public ProvisioningJob getRefinementJob(IProgressMonitor monitor) {
+		final PlannerResolutionJob resolved = job;
+		if (resolved == null || !resolved.isTimeLimitReached())
+			return null;
+		PlannerResolutionJob refinement = new PlannerResolutionJob(getResolveJobName(), session, profileId, request, resolved.getActualProvisioningContext(), null, noChangeRequest) {
+			public IStatus runModal(IProgressMonitor mon) {
+				IStatus status = super.runModal(mon);
+				refine(resolved, this);
+				return status;
+			}
+		};
+		refinement.setAdditionalProgressMonitor(monitor);
+		return refinement;
+	}
+
+	void refine(PlannerResolutionJob resolved, PlannerResolutionJob refinement) {
+		IProvisioningPlan better = refinement.getProvisioningPlan();
+		if (better == null || better.getStatus().getSeverity() == IStatus.ERROR || better.getStatus().getSeverity() == IStatus.CANCEL)
+			return;
+		synchronized (this) {
+			// the operation may have been resolved again in the meantime
+			if (job != resolved)
+				return;
+			resolutionRefined = !better.getFutureState().query(QueryUtil.ALL_UNITS, null).toUnmodifiableSet().equals(resolved.getProvisioningPlan().getFutureState().query(QueryUtil.ALL_UNITS, null).toUnmodifiableSet());
+			job = refinement;
+		}
+	}
+
+	/**
+	 * Return a boolean indicating whether the plan this operation was resolved with within
+	 * the {@link #setResolutionTimeLimit(long) time limit} was replaced by a better plan 
+	 * found by its {@link #getRefinementJob(IProgressMonitor) refinement job}.
+	 * 
+	 * @return <code>true</code> if a better plan was found, <code>false</code> otherwise
+	 * @since 2.4
+	 */
+	public boolean isResolutionRefined() {
+		return resolutionRefined;
+	}
+
 	/**
 	 * Set the provisioning context that should be used to resolve and perform the provisioning for
 	 * the operation.  This must be set before an attempt is made to resolve the operation
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2011 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import java.util.StringTokenizer;
 import javax.xml.parsers.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.Activator;
+import org.eclipse.equinox.internal.p2.core.helpers.InterningPool;
 import org.eclipse.equinox.internal.p2.core.helpers.OrderedProperties;
 import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
 import org.eclipse.equinox.p2.metadata.Version;
@@ -43,6 +44,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 
 	protected MultiStatus status = null; // accumulation of non-fatal errors
 	protected Locator locator = null; // document locator, if supported by the parser
+	protected InterningPool pool = null; // pool of the values shared with other parsers, if any
 
 	private IProgressMonitor monitor;
 
@@ -85,14 +87,18 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 		if (factory == null) {
 			throw new SAXException(Messages.XMLParser_No_SAX_Parser);
 		}
-		factory.setNamespaceAware(true);
-		factory.setValidating(false);
-		try {
-			factory.setFeature("http://xml.org/sax/features/string-interning", true); //$NON-NLS-1$
-		} catch (SAXException se) {
-			// some parsers may not support string interning
+		SAXParser theParser;
+		// the factory is shared by all parsers, which may be created on several threads
+		synchronized (factory) {
+			factory.setNamespaceAware(true);
+			factory.setValidating(false);
+			try {
+				factory.setFeature("http://xml.org/sax/features/string-interning", true); //$NON-NLS-1$
+			} catch (SAXException se) {
+				// some parsers may not support string interning
+			}
+			theParser = factory.newSAXParser();
 		}
-		SAXParser theParser = factory.newSAXParser();
 		if (theParser == null) {
 			throw new SAXException(Messages.XMLParser_No_SAX_Parser);
 		}
@@ -117,6 +123,22 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 		locator = docLocator;
 	}
 
+	/**
+	 * Sets the pool through which the parser shares the values it creates, such as versions,
+	 * with other parsers of the same agent. When not set, values are not shared.
+	 */
+	public void setInterningPool(InterningPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the shared value equal to the given value, or the value itself if this
+	 * parser has no interning pool.
+	 */
+	protected <T> T intern(T value) {
+		return pool == null ? value : pool.intern(value);
+	}
+
 	/**
 	 * Sets the progress monitor for the parser
 	 */
@@ -664,7 +686,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 	 */
 	public Version checkVersion(String element, String attribute, String value) {
 		try {
-			return Version.parseVersion(value);
+			return intern(Version.parseVersion(value));
 		} catch (IllegalArgumentException iae) {
 			invalidAttributeValue(element, attribute, value);
 		} catch (NullPointerException npe) {
@@ -676,7 +698,7 @@ public abstract class XMLParser extends DefaultHandler implements XMLConstants {
 	public VersionRange checkVersionRange(String element, String attribute, String value) {
 		try {
 			if (value != null)
-				return new VersionRange(value);
+				return intern(new VersionRange(value));
 		} catch (IllegalArgumentException iae) {
 			invalidAttributeValue(element, attribute, value);
 		} catch (NullPointerException npe) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,10 +14,13 @@ package org.eclipse.equinox.internal.p2.repository;
 
 import java.io.*;
 import java.net.*;
-import java.util.EventObject;
-import java.util.HashSet;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.repository.helpers.IndexDelta;
+import org.eclipse.equinox.internal.p2.repository.helpers.XZIndex;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.SynchronousProvisioningListener;
 import org.eclipse.equinox.internal.provisional.p2.repository.IStateful;
@@ -45,6 +48,32 @@ public class CacheManager {
 
 	private final Transport transport;
 
+	/*
+	 * A download target that records whether the download started, and stops it right away.
+	 */
+	private static class ModifiedProbe extends OutputStream implements IStateful {
+		boolean modified = false;
+		private IStatus status;
+
+		public void write(int b) throws IOException {
+			modified = true;
+			throw new IOException("Download stopped, the file was modified"); //$NON-NLS-1$
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > 0)
+				write(b[off]);
+		}
+
+		public IStatus getStatus() {
+			return status;
+		}
+
+		public void setStatus(IStatus aStatus) {
+			status = aStatus;
+		}
+	}
+
 	/**
 	 * IStateful implementation of BufferedOutputStream. Class is used to get the status from
 	 * a download operation.
@@ -76,6 +105,12 @@ public class CacheManager {
 	private static final String DOWNLOADING = "downloading"; //$NON-NLS-1$
 	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
 	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String XZ_EXTENSION = XML_EXTENSION + XZIndex.EXTENSION;
+	// the digest of a jar based cache of a repository that publishes deltas, see IndexDelta
+	private static final String DIGEST_EXTENSION = ".digest"; //$NON-NLS-1$
+	private static final String DIGEST = "digest"; //$NON-NLS-1$
+	private static final String DIGEST_LENGTH = "length"; //$NON-NLS-1$
+	private static final String DIGEST_LAST_MODIFIED = "lastModified"; //$NON-NLS-1$
 
 	private final HashSet<String> knownPrefixes = new HashSet<String>(5);
 
@@ -129,38 +164,82 @@ public class CacheManager {
 				lastModified = cacheFile.lastModified();
 				name = cacheFile.getName();
 			}
-			// get last modified on jar
 			long lastModifiedRemote = 0L;
 			// bug 269588 - server may return 0 when file exists, so extra flag is needed
 			boolean useJar = true;
-			try {
-				lastModifiedRemote = transport.getLastModified(jarLocation, submonitor.newChild(1));
-				if (lastModifiedRemote <= 0)
-					LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Server returned lastModified <= 0 for " + jarLocation)); //$NON-NLS-1$
-			} catch (AuthenticationFailedException e) {
-				// it is not meaningful to continue - the credentials are for the server
-				// do not pass the exception - it gives no additional meaningful user information
-				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
-			} catch (CoreException e) {
-				useJar = false;
-				// give up on a timeout - if we did not get a 404 on the jar, we will just prolong the pain
-				// by (almost certainly) also timing out on the xml.
-				if (e.getStatus() != null && e.getStatus().getException() != null) {
-					Throwable ex = e.getStatus().getException();
-					if (ex.getClass() == java.net.SocketTimeoutException.class)
-						throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, repositoryLocation), ex));
+			if (isHTTP(repositoryLocation) && (name == null || name.endsWith(JAR_EXTENSION))) {
+				// A single conditional request both validates a jar based cache and refreshes it when
+				// needed, instead of asking for the last modified time before downloading.
+				File jarCacheFile = new File(getCacheDirectory(), prefix + hashCode + JAR_EXTENSION);
+				IStatus result = null;
+				if (name != null && publishesDeltas(cacheFile, prefix)) {
+					// the deltas are only worth asking for once the jar is known to have changed
+					result = probeIfModified(jarLocation, lastModified, submonitor.newChild(10));
+					if (result.isOK() && result.getCode() == DownloadStatus.CODE_NOT_MODIFIED)
+						return cacheFile;
+					if (result.isOK()) {
+						if (updateCacheFromDeltas(cacheFile, repositoryLocation, prefix, getLastModified(jarLocation, submonitor.newChild(1)), submonitor.newChild(40)))
+							return cacheFile;
+						if (!cacheFile.exists()) {
+							// discarded as stale
+							name = null;
+							lastModified = 0L;
+						}
+						result = null;
+					}
 				}
-			} catch (OperationCanceledException e) {
-				// must pass this on
-				throw e;
-			} catch (Exception e) {
-				// not ideal, just skip the jar on error, and try the xml instead - report errors for
-				// the xml.
+				if (result == null)
+					result = updateCacheIfModified(jarCacheFile, jarLocation, name == null ? 0L : lastModified, submonitor.newChild(900));
+				if (result.isOK())
+					return jarCacheFile;
+				if (result.getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
+				Throwable ex = result.getException();
+				if (ex != null && ex.getClass() == java.net.SocketTimeoutException.class)
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, repositoryLocation), ex));
+				// no usable jar, try the xml instead
 				useJar = false;
+			} else {
+				// get last modified on jar
+				try {
+					lastModifiedRemote = transport.getLastModified(jarLocation, submonitor.newChild(1));
+					if (lastModifiedRemote <= 0)
+						LogHelper.log(new Status(IStatus.WARNING, Activator.ID, "Server returned lastModified <= 0 for " + jarLocation)); //$NON-NLS-1$
+				} catch (AuthenticationFailedException e) {
+					// it is not meaningful to continue - the credentials are for the server
+					// do not pass the exception - it gives no additional meaningful user information
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
+				} catch (CoreException e) {
+					useJar = false;
+					// give up on a timeout - if we did not get a 404 on the jar, we will just prolong the pain
+					// by (almost certainly) also timing out on the xml.
+					if (e.getStatus() != null && e.getStatus().getException() != null) {
+						Throwable ex = e.getStatus().getException();
+						if (ex.getClass() == java.net.SocketTimeoutException.class)
+							throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_READ, NLS.bind(Messages.CacheManager_FailedCommunicationWithRepo_0, repositoryLocation), ex));
+					}
+				} catch (OperationCanceledException e) {
+					// must pass this on
+					throw e;
+				} catch (Exception e) {
+					// not ideal, just skip the jar on error, and try the xml instead - report errors for
+					// the xml.
+					useJar = false;
+				}
 			}
 			if (submonitor.isCanceled())
 				throw new OperationCanceledException();
 
+			if (useJar && name != null && name.endsWith(JAR_EXTENSION) && lastModifiedRemote != lastModified && publishesDeltas(cacheFile, prefix)) {
+				if (updateCacheFromDeltas(cacheFile, repositoryLocation, prefix, lastModifiedRemote, submonitor.newChild(50)))
+					return cacheFile;
+				if (!cacheFile.exists()) {
+					// discarded as stale
+					name = null;
+					lastModified = 0L;
+				}
+			}
+
 			if (useJar) {
 				// There is a jar, and it should be used - cache is stale if it is xml based or
 				// if older (irrespective of jar or xml).
@@ -212,6 +291,114 @@ public class CacheManager {
 		}
 	}
 
+	/**
+	 * Returns a stream on the jar or xml index of the given remote location, as cached by
+	 * {@link #createCache(URI, String, IProgressMonitor)}. When nothing is cached for the
+	 * location yet, the index is streamed from the repository and written to the cache as
+	 * the caller reads it, so that parsing overlaps with the download.
+	 * 
+	 * @param repositoryLocation The remote location to be cached
+	 * @param prefix The prefix to use when creating the cache file
+	 * @param monitor a progress monitor
+	 * @return A stream on the index, the caller is responsible for closing it
+	 * @throws FileNotFoundException if neither jar nor xml index file exists at given location 
+	 * @throws IOException on general IO errors
+	 * @throws ProvisionException on failure to communicate with the repository
+	 */
+	public CachingInputStream openCache(URI repositoryLocation, String prefix, IProgressMonitor monitor) throws IOException, ProvisionException {
+		SubMonitor submonitor = SubMonitor.convert(monitor, 1000);
+		try {
+			if (!isURL(repositoryLocation) || getCache(repositoryLocation, prefix) != null)
+				return new CachingInputStream(createCache(repositoryLocation, prefix, submonitor.newChild(1000)));
+
+			knownPrefixes.add(prefix);
+			URI remoteFile = URIUtil.append(repositoryLocation, prefix + JAR_EXTENSION);
+			String extension = JAR_EXTENSION;
+			long lastModifiedRemote = 0L;
+			InputStream download = null;
+			try {
+				try {
+					lastModifiedRemote = transport.getLastModified(remoteFile, submonitor.newChild(1));
+				} catch (FileNotFoundException e) {
+					remoteFile = URIUtil.append(repositoryLocation, prefix + XML_EXTENSION);
+					extension = XML_EXTENSION;
+					lastModifiedRemote = transport.getLastModified(remoteFile, submonitor.newChild(1));
+				}
+				download = transport.stream(remoteFile, submonitor.newChild(1));
+			} catch (OperationCanceledException e) {
+				throw e;
+			} catch (Exception e) {
+				// the regular download reports the problem in the most meaningful way
+				download = null;
+			}
+			if (download == null)
+				return new CachingInputStream(createCache(repositoryLocation, prefix, submonitor.newChild(998)));
+
+			File cacheFile = new File(getCacheDirectory(), prefix + computeHash(repositoryLocation) + extension);
+			try {
+				return new CachingInputStream(download, cacheFile, prepareTempFile(cacheFile), lastModifiedRemote);
+			} catch (IOException e) {
+				download.close();
+				throw e;
+			}
+		} finally {
+			submonitor.done();
+		}
+	}
+
+	/**
+	 * Returns a local cache file with the contents of the xz compressed index at the given
+	 * remote location, downloading it if the cache is missing or stale.
+	 * 
+	 * @param repositoryLocation The remote location to be cached
+	 * @param prefix The prefix of the index file, such as <code>content</code>
+	 * @param monitor a progress monitor
+	 * @return A {@link File} object pointing to the cache file
+	 * @throws FileNotFoundException if there is no xz compressed index at the given location
+	 * @throws IOException on general IO errors
+	 * @throws ProvisionException on failure to communicate with the repository
+	 */
+	public File createXZCache(URI repositoryLocation, String prefix, IProgressMonitor monitor) throws IOException, ProvisionException {
+		if (!isURL(repositoryLocation)) {
+			throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_NOT_FOUND, NLS.bind(Messages.CacheManager_CannotLoadNonUrlLocation, repositoryLocation), null));
+		}
+
+		SubMonitor submonitor = SubMonitor.convert(monitor, 1000);
+		try {
+			knownPrefixes.add(prefix);
+			File cacheFile = getCacheFiles(repositoryLocation, prefix)[2];
+			URI xzLocation = URIUtil.append(repositoryLocation, prefix + XZ_EXTENSION);
+			long lastModified = cacheFile.exists() ? cacheFile.lastModified() : 0L;
+			if (isHTTP(repositoryLocation)) {
+				IStatus result = updateCacheIfModified(cacheFile, xzLocation, lastModified, submonitor.newChild(1000));
+				if (result.isOK())
+					return cacheFile;
+				if (result.getCode() == ProvisionException.REPOSITORY_FAILED_AUTHENTICATION)
+					throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
+				if (result.getCode() == ProvisionException.ARTIFACT_NOT_FOUND || result.getException() instanceof FileNotFoundException)
+					throw new FileNotFoundException(xzLocation.toString());
+				throw new ProvisionException(result);
+			}
+			long lastModifiedRemote = 0L;
+			try {
+				lastModifiedRemote = transport.getLastModified(xzLocation, submonitor.newChild(1));
+			} catch (AuthenticationFailedException e) {
+				throw new ProvisionException(new Status(IStatus.ERROR, Activator.ID, ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, NLS.bind(Messages.CacheManager_AuthenticationFaileFor_0, repositoryLocation), null));
+			} catch (CoreException e) {
+				throw new ProvisionException(e.getStatus());
+			}
+			if (submonitor.isCanceled())
+				throw new OperationCanceledException();
+			// bug 269588 - server may return 0 when file exists - assume it is stale
+			if (lastModified != 0L && lastModifiedRemote > 0 && lastModifiedRemote == lastModified)
+				return cacheFile;
+			updateCache(cacheFile, xzLocation, lastModifiedRemote, submonitor);
+			return cacheFile;
+		} finally {
+			submonitor.done();
+		}
+	}
+
 	/**
 	 * Deletes the local cache file(s) for the given repository
 	 * @param repositoryLocation
@@ -222,6 +409,7 @@ public class CacheManager {
 			for (int i = 0; i < cacheFiles.length; i++) {
 				// delete the cache file if it exists
 				safeDelete(cacheFiles[i]);
+				safeDelete(getDigestFile(cacheFiles[i]));
 				// delete a resumable download if it exists
 				safeDelete(new File(new File(cacheFiles[i].getParentFile(), DOWNLOADING), cacheFiles[i].getName()));
 			}
@@ -253,14 +441,15 @@ public class CacheManager {
 	 * Determines the local file paths of the repository's potential cache files.
 	 * @param repositoryLocation The location to compute the cache for
 	 * @param prefix The prefix to use for this location
-	 * @return A {@link File} array with the cache files for JAR and XML extensions.
+	 * @return A {@link File} array with the cache files for JAR, XML and XZ extensions.
 	 */
 	private File[] getCacheFiles(URI repositoryLocation, String prefix) {
-		File[] files = new File[2];
+		File[] files = new File[3];
 		File dataAreaFile = getCacheDirectory();
 		int hashCode = computeHash(repositoryLocation);
 		files[0] = new File(dataAreaFile, prefix + hashCode + JAR_EXTENSION);
 		files[1] = new File(dataAreaFile, prefix + hashCode + XML_EXTENSION);
+		files[2] = new File(dataAreaFile, prefix + hashCode + XZ_EXTENSION);
 		return files;
 	}
 
@@ -273,6 +462,11 @@ public class CacheManager {
 		return true;
 	}
 
+	private static boolean isHTTP(URI location) {
+		String scheme = location.getScheme();
+		return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
 	/**
 	 * Adds a {@link SynchronousProvisioningListener} to the event bus for
 	 * deleting cache files when the corresponding repository is deleted.
@@ -321,7 +515,225 @@ public class CacheManager {
 			bus.removeListener(busListener);
 	}
 
-	protected void updateCache(File cacheFile, URI remoteFile, long lastModifiedRemote, SubMonitor submonitor) throws FileNotFoundException, IOException, ProvisionException {
+	/**
+	 * Refreshes the cache file from the remote file with a conditional request, unless the remote
+	 * file was not modified after the given time. Returns an OK status if the cache file is up to
+	 * date, or the status of the failed download otherwise; a failed download leaves the
+	 * cache file untouched.
+	 */
+	protected IStatus updateCacheIfModified(File cacheFile, URI remoteFile, long lastModified, SubMonitor submonitor) throws IOException {
+		File tempFile = prepareTempFile(cacheFile);
+		StatefulStream stream = new StatefulStream(new FileOutputStream(tempFile));
+		IStatus result = null;
+		try {
+			submonitor.setWorkRemaining(1000);
+			result = transport.downloadIfModified(remoteFile, stream, lastModified, submonitor.newChild(1000));
+		} catch (OperationCanceledException e) {
+			result = stream.getStatus();
+		} finally {
+			stream.close();
+		}
+		if (result == null || result.getSeverity() == IStatus.CANCEL || submonitor.isCanceled()) {
+			safeDelete(tempFile);
+			throw new OperationCanceledException();
+		}
+		if (!result.isOK() || result.getCode() == DownloadStatus.CODE_NOT_MODIFIED) {
+			safeDelete(tempFile);
+			return result;
+		}
+		if (cacheFile.exists())
+			safeDelete(cacheFile);
+		if (!tempFile.renameTo(cacheFile)) {
+			safeDelete(tempFile);
+			return new Status(IStatus.ERROR, Activator.ID, NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {remoteFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()}));
+		}
+		long lastModifiedRemote = result instanceof DownloadStatus ? ((DownloadStatus) result).getLastModified() : 0;
+		if (lastModifiedRemote > 0)
+			//local cache file should have the same lastModified as the server's file. bug 324200
+			cacheFile.setLastModified(lastModifiedRemote);
+		return result;
+	}
+
+	/**
+	 * Asks with a conditional request whether the remote file was modified after the given
+	 * time, without downloading it: the download is stopped as soon as the file comes in.
+	 * Returns an OK status with the {@link DownloadStatus#CODE_NOT_MODIFIED} code if the file was
+	 * not modified, another OK status if it was, or the status of the failed request.
+	 */
+	private IStatus probeIfModified(URI remoteFile, long lastModified, IProgressMonitor monitor) {
+		ModifiedProbe probe = new ModifiedProbe();
+		IStatus result;
+		try {
+			result = transport.downloadIfModified(remoteFile, probe, lastModified, monitor);
+		} catch (OperationCanceledException e) {
+			result = probe.getStatus();
+		}
+		if (probe.modified)
+			return Status.OK_STATUS;
+		if (result == null || result.getSeverity() == IStatus.CANCEL || monitor.isCanceled())
+			throw new OperationCanceledException();
+		return result;
+	}
+
+	/*
+	 * Returns the last modified time of the remote file, or 0 if it cannot be told.
+	 */
+	private long getLastModified(URI remoteFile, IProgressMonitor monitor) {
+		try {
+			return transport.getLastModified(remoteFile, monitor);
+		} catch (CoreException e) {
+			return 0L;
+		} catch (FileNotFoundException e) {
+			return 0L;
+		} catch (AuthenticationFailedException e) {
+			return 0L;
+		}
+	}
+
+	/*
+	 * Returns whether the index held by the given jar based cache says that its repository
+	 * publishes deltas.
+	 */
+	private boolean publishesDeltas(File cacheFile, String prefix) {
+		try {
+			return getIndexDigest(cacheFile, prefix + XML_EXTENSION) != null;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Brings a jar based cache, whose remote jar has changed, up to date by applying the index
+	 * deltas published by the repository, provided the cached index says that the repository
+	 * publishes them. Returns whether the cache is now current; on <code>false</code> the cache
+	 * must be refreshed in full.
+	 * <p>
+	 * The published digest alone cannot tell that the index was rewritten by a writer that
+	 * does not publish deltas, so the cache also has to carry the last modified time of the
+	 * remote jar it corresponds to. When that time is unknown, a cache matching the published
+	 * digest is kept. A cache that is known to be stale but cannot be brought up to date from
+	 * deltas is discarded, so that the full refresh does not trust its time.
+	 * </p>
+	 */
+	private boolean updateCacheFromDeltas(File cacheFile, URI repositoryLocation, String prefix, long lastModifiedRemote, IProgressMonitor monitor) {
+		SubMonitor submonitor = SubMonitor.convert(monitor, IndexDelta.MAX_DELTAS + 1);
+		String entryName = prefix + XML_EXTENSION;
+		boolean stale = false;
+		try {
+			String digest = getIndexDigest(cacheFile, entryName);
+			if (digest == null)
+				return false;
+			String folder = prefix + IndexDelta.FOLDER_SUFFIX + '/';
+			String current = new String(downloadIndexFile(URIUtil.append(repositoryLocation, folder + IndexDelta.CURRENT), submonitor.newChild(1)), "US-ASCII").trim(); //$NON-NLS-1$
+			if (digest.equals(current)) {
+				if (lastModifiedRemote <= 0 || lastModifiedRemote == cacheFile.lastModified())
+					return true;
+				// the index was replaced without publishing a delta
+				discardCache(cacheFile);
+				return false;
+			}
+			stale = true;
+			byte[] index = IndexDelta.readIndex(new File(entryName), cacheFile);
+			// each delta is checked against the digest of the index it produces
+			for (int applied = 0; index != null && applied < IndexDelta.MAX_DELTAS && !digest.equals(current); applied++) {
+				byte[] delta = downloadIndexFile(URIUtil.append(repositoryLocation, folder + digest + IndexDelta.EXTENSION), submonitor.newChild(1));
+				index = IndexDelta.apply(index, delta);
+				digest = IndexDelta.digest(index);
+			}
+			// the repository no longer has a delta this old
+			if (index == null || !digest.equals(current)) {
+				discardCache(cacheFile);
+				return false;
+			}
+			writeJarCache(cacheFile, entryName, index, digest, lastModifiedRemote);
+			return true;
+		} catch (IOException e) {
+			if (stale)
+				discardCache(cacheFile);
+			return false;
+		} finally {
+			submonitor.done();
+		}
+	}
+
+	/*
+	 * Returns the digest of the index held by the given jar based cache if the index says that
+	 * its repository publishes deltas, or null otherwise. The digest is kept in a file next to
+	 * the cache, so the cache is only read again once it has been replaced.
+	 */
+	private String getIndexDigest(File cacheFile, String entryName) throws IOException {
+		File digestFile = getDigestFile(cacheFile);
+		if (digestFile.isFile()) {
+			Properties properties = new Properties();
+			InputStream input = new BufferedInputStream(new FileInputStream(digestFile));
+			try {
+				properties.load(input);
+			} finally {
+				input.close();
+			}
+			if (Long.toString(cacheFile.length()).equals(properties.getProperty(DIGEST_LENGTH)) && Long.toString(cacheFile.lastModified()).equals(properties.getProperty(DIGEST_LAST_MODIFIED)))
+				return properties.getProperty(DIGEST);
+		}
+		byte[] index = IndexDelta.readIndex(new File(entryName), cacheFile);
+		String digest = index != null && IndexDelta.isAdvertised(index) ? IndexDelta.digest(index) : null;
+		writeIndexDigest(cacheFile, digest);
+		return digest;
+	}
+
+	private void writeIndexDigest(File cacheFile, String digest) throws IOException {
+		Properties properties = new Properties();
+		properties.setProperty(DIGEST_LENGTH, Long.toString(cacheFile.length()));
+		properties.setProperty(DIGEST_LAST_MODIFIED, Long.toString(cacheFile.lastModified()));
+		if (digest != null)
+			properties.setProperty(DIGEST, digest);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(getDigestFile(cacheFile)));
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+	}
+
+	private static File getDigestFile(File cacheFile) {
+		return new File(cacheFile.getParentFile(), cacheFile.getName() + DIGEST_EXTENSION);
+	}
+
+	private void discardCache(File cacheFile) {
+		safeDelete(cacheFile);
+		safeDelete(getDigestFile(cacheFile));
+	}
+
+	private byte[] downloadIndexFile(URI location, IProgressMonitor monitor) throws IOException {
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		IStatus result = transport.download(location, content, monitor);
+		if (result.getSeverity() == IStatus.CANCEL)
+			throw new OperationCanceledException();
+		if (!result.isOK())
+			throw new IOException(result.getMessage());
+		return content.toByteArray();
+	}
+
+	private void writeJarCache(File cacheFile, String entryName, byte[] index, String digest, long lastModifiedRemote) throws IOException {
+		File tempFile = prepareTempFile(cacheFile);
+		JarOutputStream output = new JarOutputStream(new FileOutputStream(tempFile));
+		try {
+			output.putNextEntry(new JarEntry(entryName));
+			output.write(index);
+		} finally {
+			output.close();
+		}
+		discardCache(cacheFile);
+		if (!tempFile.renameTo(cacheFile)) {
+			safeDelete(tempFile);
+			throw new IOException(NLS.bind(Messages.CacheManage_ErrorRenamingCache, new Object[] {cacheFile.toString(), tempFile.getAbsolutePath(), cacheFile.getAbsolutePath()}));
+		}
+		// like a downloaded cache, the cache has the time of the remote jar it corresponds to
+		if (lastModifiedRemote > 0)
+			cacheFile.setLastModified(lastModifiedRemote);
+		writeIndexDigest(cacheFile, digest);
+	}
+
+	private File prepareTempFile(File cacheFile) throws IOException {
 		cacheFile.getParentFile().mkdirs();
 		File downloadDir = new File(cacheFile.getParentFile(), DOWNLOADING);
 		if (!downloadDir.exists())
@@ -332,6 +744,11 @@ public class CacheManager {
 			safeDelete(tempFile);
 
 		tempFile.createNewFile();
+		return tempFile;
+	}
+
+	protected void updateCache(File cacheFile, URI remoteFile, long lastModifiedRemote, SubMonitor submonitor) throws FileNotFoundException, IOException, ProvisionException {
+		File tempFile = prepareTempFile(cacheFile);
 
 		StatefulStream stream = null;
 		try {
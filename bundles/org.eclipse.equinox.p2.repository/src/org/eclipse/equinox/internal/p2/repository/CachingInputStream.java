@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository;
+
+import java.io.*;
+
+/**
+ * A stream on a cached repository index, as returned by {@link CacheManager#openCache}.
+ * <p>
+ * When the index is being downloaded, every byte read from the stream is also written to a
+ * temporary file, which replaces the cache file when the stream is closed. Whatever the reader
+ * leaves unread, such as the end of a jar after the index entry, is read on close. If reading
+ * from the repository failed, the temporary file is discarded and the cache is left untouched.
+ * </p>
+ */
+public class CachingInputStream extends FilterInputStream {
+	private final File cacheFile;
+	private final File tempFile;
+	private final long lastModified;
+	private OutputStream copy;
+	private boolean failed = false;
+	private boolean complete = false;
+
+	/**
+	 * Creates a stream on an existing file, such as the index of a local repository.
+	 */
+	public CachingInputStream(File cacheFile) throws FileNotFoundException {
+		super(new BufferedInputStream(new FileInputStream(cacheFile)));
+		this.cacheFile = cacheFile;
+		this.tempFile = null;
+		this.lastModified = 0L;
+	}
+
+	/**
+	 * Creates a stream on a download, that is saved to the given cache file once read.
+	 */
+	CachingInputStream(InputStream download, File cacheFile, File tempFile, long lastModified) throws FileNotFoundException {
+		super(download);
+		this.cacheFile = cacheFile;
+		this.tempFile = tempFile;
+		this.lastModified = lastModified;
+		this.copy = new BufferedOutputStream(new FileOutputStream(tempFile));
+	}
+
+	/**
+	 * Returns the cache file holding, or about to hold, the content of this stream.
+	 */
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	/**
+	 * Returns the last modification time of the index read by this stream, or <code>0</code>
+	 * if the repository did not report it. A cache file has the time of the remote index.
+	 */
+	public long getLastModified() {
+		return tempFile == null ? cacheFile.lastModified() : lastModified;
+	}
+
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+		int read = read(single, 0, 1);
+		return read == -1 ? -1 : single[0] & 0xFF;
+	}
+
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read;
+		try {
+			read = super.read(b, off, len);
+		} catch (IOException e) {
+			failed = true;
+			throw e;
+		} catch (RuntimeException e) {
+			// includes cancelation
+			failed = true;
+			throw e;
+		}
+		if (read == -1)
+			complete = true;
+		else if (copy != null)
+			copy.write(b, off, read);
+		return read;
+	}
+
+	public long skip(long n) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(n, 8192)];
+		long skipped = 0;
+		while (skipped < n) {
+			int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+			if (read == -1)
+				break;
+			skipped += read;
+		}
+		return skipped;
+	}
+
+	public boolean markSupported() {
+		return false;
+	}
+
+	public void close() throws IOException {
+		if (copy == null) {
+			super.close();
+			return;
+		}
+		try {
+			if (!failed) {
+				byte[] buffer = new byte[8192];
+				while (read(buffer, 0, buffer.length) != -1) {
+					// read the rest into the cache
+				}
+			}
+		} finally {
+			try {
+				super.close();
+			} catch (IOException e) {
+				failed = true;
+			}
+			copy.close();
+			copy = null;
+			commit();
+		}
+	}
+
+	private void commit() throws IOException {
+		if (failed || !complete) {
+			tempFile.delete();
+			return;
+		}
+		if (cacheFile.exists())
+			cacheFile.delete();
+		if (!tempFile.renameTo(cacheFile)) {
+			tempFile.delete();
+			return;
+		}
+		if (lastModified > 0)
+			//local cache file should have the same lastModified as the server's file. bug 324200
+			cacheFile.setLastModified(lastModified);
+	}
+}
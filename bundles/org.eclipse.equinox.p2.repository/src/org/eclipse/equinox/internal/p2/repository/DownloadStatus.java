@@ -19,6 +19,11 @@ import org.eclipse.core.runtime.Status;
 public class DownloadStatus extends Status {
 	public static final long UNKNOWN_RATE = -1;
 	public static final long UNKNOWN_SIZE = -1;
+	/**
+	 * Status code of a successful conditional download that did not transfer any content
+	 * because the remote file was not modified.
+	 */
+	public static final int CODE_NOT_MODIFIED = 304;
 
 	private long speed = UNKNOWN_RATE;
 	private long fileSize = UNKNOWN_SIZE;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2012 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -85,6 +85,9 @@ public class Messages extends NLS {
 
 	public static String RepositoryTransport_failedReadRepo;
 
+	public static String RepositoryRefreshScheduler_jobName;
+	public static String RepositoryRefreshScheduler_failed;
+
 	static {
 		// initialize resource bundles
 		NLS.initializeMessages(BUNDLE_NAME, Messages.class);
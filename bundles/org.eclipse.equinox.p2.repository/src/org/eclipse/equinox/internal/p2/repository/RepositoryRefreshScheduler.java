@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.equinox.internal.p2.core.helpers.ExecutorHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.core.spi.IAgentService;
+import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepositoryManager;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+
+/**
+ * Refreshes the repositories known to the repository managers of an agent in the background,
+ * so that the repositories and the local cache of their indexes are current by the time a
+ * client needs them.
+ * <p>
+ * Once {@link #schedule() scheduled}, the enabled metadata and artifact repositories are
+ * refreshed every {@link #PROP_INTERVAL} seconds, plus a random delay of up to
+ * {@link #PROP_JITTER} seconds so that installations started together do not contact the
+ * same servers at the same time. Up to {@link #PROP_THREADS} repositories are refreshed
+ * concurrently. Each repository goes through
+ * {@link AbstractRepositoryManager#prefetchRepository(URI, IProgressMonitor)}, so indexes
+ * are only downloaded again when their cache validators tell that they changed.
+ * </p><p>
+ * The scheduler is available as an agent service under {@link #SERVICE_NAME}. It does
+ * nothing until scheduled, and is canceled when its agent stops.
+ * </p>
+ */
+public class RepositoryRefreshScheduler implements IAgentService {
+	public static final String SERVICE_NAME = RepositoryRefreshScheduler.class.getName();
+
+	/**
+	 * System property holding the number of seconds between two refreshes.
+	 */
+	public static final String PROP_INTERVAL = "eclipse.p2.repository.refresh.interval"; //$NON-NLS-1$
+	/**
+	 * System property holding the longest random delay, in seconds, added to each interval.
+	 */
+	public static final String PROP_JITTER = "eclipse.p2.repository.refresh.jitter"; //$NON-NLS-1$
+	/**
+	 * System property holding the number of repositories refreshed at the same time.
+	 */
+	public static final String PROP_THREADS = "eclipse.p2.repository.refresh.threads"; //$NON-NLS-1$
+
+	private static final long DEFAULT_INTERVAL = 60 * 60;
+	private static final long DEFAULT_JITTER = 5 * 60;
+	private static final int DEFAULT_THREADS = 2;
+
+	private final IProvisioningAgent agent;
+	private final Random random = new Random();
+	private long interval;
+	private long jitter;
+	private int threads;
+	private RefreshJob job = null;
+
+	private class RefreshJob extends Job {
+		RefreshJob() {
+			super(Messages.RepositoryRefreshScheduler_jobName);
+			setSystem(true);
+			setPriority(Job.DECORATE);
+		}
+
+		protected IStatus run(IProgressMonitor monitor) {
+			IStatus result = refresh(monitor);
+			//repositories that cannot be reached are expected in the background, such as when offline
+			if (Tracing.DEBUG && !result.isOK())
+				LogHelper.log(result);
+			synchronized (RepositoryRefreshScheduler.this) {
+				if (job == this && !monitor.isCanceled())
+					schedule(getNextDelay());
+			}
+			return monitor.isCanceled() ? Status.CANCEL_STATUS : Status.OK_STATUS;
+		}
+
+		public boolean belongsTo(Object family) {
+			return family == RepositoryRefreshScheduler.this;
+		}
+	}
+
+	public RepositoryRefreshScheduler(IProvisioningAgent agent) {
+		this.agent = agent;
+		this.interval = getProperty(PROP_INTERVAL, DEFAULT_INTERVAL) * 1000;
+		this.jitter = getProperty(PROP_JITTER, DEFAULT_JITTER) * 1000;
+		this.threads = ExecutorHelper.getThreadCount(PROP_THREADS, DEFAULT_THREADS);
+	}
+
+	private static long getProperty(String key, long defaultValue) {
+		String value = System.getProperty(key);
+		if (value != null) {
+			try {
+				return Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				// use the default value
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Sets the time between two refreshes, taking effect after the next refresh.
+	 */
+	public synchronized void setInterval(long millis) {
+		interval = millis;
+	}
+
+	/**
+	 * Sets the longest random delay added to each interval.
+	 */
+	public synchronized void setJitter(long millis) {
+		jitter = millis;
+	}
+
+	/**
+	 * Sets the number of repositories refreshed at the same time.
+	 */
+	public synchronized void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Starts refreshing the repositories periodically. The first refresh happens after a
+	 * random delay of up to the jitter. Does nothing if refreshes are already scheduled.
+	 */
+	public synchronized void schedule() {
+		if (job != null)
+			return;
+		job = new RefreshJob();
+		job.schedule(jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+	}
+
+	/**
+	 * Stops refreshing the repositories, canceling a refresh that is in progress.
+	 */
+	public synchronized void cancel() {
+		if (job == null)
+			return;
+		job.cancel();
+		job = null;
+	}
+
+	/**
+	 * Returns whether refreshes are scheduled.
+	 */
+	public synchronized boolean isScheduled() {
+		return job != null;
+	}
+
+	synchronized long getNextDelay() {
+		return Math.max(interval, 0) + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+	}
+
+	/**
+	 * Refreshes the enabled repositories known to the agent once, on the calling thread and
+	 * as many other threads as configured.
+	 *
+	 * @param monitor a progress monitor, or <code>null</code>
+	 * @return the outcome of the refresh, holding a status for each repository that could
+	 * not be refreshed
+	 */
+	public IStatus refresh(IProgressMonitor monitor) {
+		final IProgressMonitor caller = monitor == null ? new NullProgressMonitor() : monitor;
+		// refreshes running on other threads only share the cancellation state of the caller
+		IProgressMonitor shared = new NullProgressMonitor() {
+			public boolean isCanceled() {
+				return caller.isCanceled();
+			}
+		};
+		List<Callable<IStatus>> refreshes = new ArrayList<Callable<IStatus>>();
+		addRefreshes(refreshes, IMetadataRepositoryManager.SERVICE_NAME, shared);
+		addRefreshes(refreshes, IArtifactRepositoryManager.SERVICE_NAME, shared);
+		MultiStatus result = new MultiStatus(Activator.ID, IStatus.OK, Messages.RepositoryRefreshScheduler_failed, null);
+		SubMonitor sub = SubMonitor.convert(caller, Messages.RepositoryRefreshScheduler_jobName, refreshes.size());
+		int count;
+		synchronized (this) {
+			count = Math.min(threads, refreshes.size());
+		}
+		if (count < 2) {
+			for (Callable<IStatus> refresh : refreshes) {
+				if (sub.isCanceled())
+					break;
+				IStatus status = call(refresh);
+				if (!status.isOK())
+					result.add(status);
+				sub.worked(1);
+			}
+			return result;
+		}
+
+		List<FutureTask<IStatus>> tasks = new ArrayList<FutureTask<IStatus>>(refreshes.size());
+		for (Callable<IStatus> refresh : refreshes)
+			tasks.add(new FutureTask<IStatus>(refresh));
+		// the caller is one of the threads refreshing repositories
+		ThreadPoolExecutor pool = ExecutorHelper.newDaemonPool("p2 repository refresh", count - 1); //$NON-NLS-1$
+		try {
+			for (int i = 1; i < tasks.size(); i++)
+				pool.execute(tasks.get(i));
+			for (FutureTask<IStatus> task : tasks) {
+				if (sub.isCanceled()) {
+					task.cancel(false);
+					continue;
+				}
+				// refreshes the repository here unless a pool thread has already started it
+				task.run();
+				IStatus status = getResult(task);
+				if (status != null && !status.isOK())
+					result.add(status);
+				sub.worked(1);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return result;
+	}
+
+	/*
+	 * Adds a refresh of each enabled repository known to the given manager to the list.
+	 * The repositories are refreshed with the given monitor, which is shared by all threads.
+	 */
+	private void addRefreshes(List<Callable<IStatus>> refreshes, String managerName, final IProgressMonitor monitor) {
+		Object service = agent.getService(managerName);
+		if (!(service instanceof AbstractRepositoryManager<?>))
+			return;
+		final AbstractRepositoryManager<?> manager = (AbstractRepositoryManager<?>) service;
+		URI[] locations = manager.getKnownRepositories(IRepositoryManager.REPOSITORIES_ALL);
+		//repositories that failed recently are left alone until their backoff is over
+		Set<URI> unavailable = new HashSet<URI>(Arrays.asList(manager.getUnavailableRepositories(locations)));
+		for (int i = 0; i < locations.length; i++) {
+			final URI location = locations[i];
+			if (unavailable.contains(location))
+				continue;
+			refreshes.add(new Callable<IStatus>() {
+				public IStatus call() {
+					try {
+						boolean loaded = manager.prefetchRepository(location, monitor);
+						if (Tracing.DEBUG && loaded)
+							Tracing.debug("Refreshed repository in the background: " + location); //$NON-NLS-1$
+						return Status.OK_STATUS;
+					} catch (ProvisionException e) {
+						return e.getStatus();
+					} catch (OperationCanceledException e) {
+						return Status.CANCEL_STATUS;
+					}
+				}
+			});
+		}
+	}
+
+	private static IStatus call(Callable<IStatus> refresh) {
+		try {
+			return refresh.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			// the refreshes only throw runtime exceptions
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	private static IStatus getResult(FutureTask<IStatus> task) {
+		try {
+			return ExecutorHelper.getResult(task);
+		} catch (CancellationException e) {
+			return null;
+		} catch (ExecutionException e) {
+			// the refreshes only throw runtime exceptions
+			throw new IllegalStateException(e.getCause().getMessage());
+		}
+	}
+
+	public void start() {
+		// refreshes only happen once scheduled
+	}
+
+	public void stop() {
+		cancel();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -48,6 +48,27 @@ public abstract class Transport {
 	 */
 	public abstract IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor);
 
+	/**
+	 * Perform a conditional download, writing into the target output stream only if the remote
+	 * file has been modified after the given time. This allows a cached copy to be validated
+	 * and refreshed with a single request. If the <code>target</code> is an instance of
+	 * {@link IStateful} the resulting status is also set on the target.
+	 * <p>
+	 * The default implementation does not support conditional requests and always downloads.
+	 * 
+	 * @returns IStatus, that is a {@link DownloadStatus} on success. The code of the status
+	 * is {@link DownloadStatus#CODE_NOT_MODIFIED} if nothing was written because the remote file
+	 * was not modified.
+	 * @param toDownload URI of file to download
+	 * @param target OutputStream where result is written
+	 * @param ifModifiedSince the last modified time of the copy held by the caller, or 0 to always download
+	 * @param monitor where progress should be reported
+	 * @throws OperationCanceledException if the operation was canceled.
+	 */
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, long ifModifiedSince, IProgressMonitor monitor) {
+		return download(toDownload, target, monitor);
+	}
+
 	/**
 	 * Perform a stream download, writing into an InputStream that is returned. Performs authentication if needed.
 	 * 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2012 IBM Corporation and others.
+ * Copyright (c) 2008, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -22,6 +22,7 @@ import org.eclipse.core.runtime.*;
 import org.eclipse.core.runtime.preferences.IPreferencesService;
 import org.eclipse.equinox.internal.p2.core.helpers.*;
 import org.eclipse.equinox.internal.p2.repository.Activator;
+import org.eclipse.equinox.internal.p2.repository.AuthenticationFailedException;
 import org.eclipse.equinox.internal.p2.repository.Transport;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.IProvisioningEventBus;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.ProvisioningListener;
@@ -29,8 +30,7 @@ import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.core.spi.IAgentService;
 import org.eclipse.equinox.p2.query.*;
-import org.eclipse.equinox.p2.repository.IRepository;
-import org.eclipse.equinox.p2.repository.IRepositoryManager;
+import org.eclipse.equinox.p2.repository.*;
 import org.eclipse.equinox.security.storage.EncodingUtils;
 import org.eclipse.osgi.util.NLS;
 import org.osgi.service.prefs.BackingStoreException;
@@ -142,6 +142,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	public void addRepository(URI location) {
 		checkValidLocation(location);
+		//a location added explicitly is worth trying again
+		clearUnavailable(location);
 		//add the repository, or enable it if already known
 		if (!addRepository(location, true, true))
 			setEnabled(location, true);
@@ -193,8 +195,13 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	public IRepository<T> basicRefreshRepository(URI location, IProgressMonitor monitor) throws ProvisionException {
 		checkValidLocation(location);
 		clearNotFound(location);
+		clearUnavailable(location);
 		boolean wasEnabled = isEnabled(location);
 		String nick = getRepositoryProperty(location, IRepository.PROP_NICKNAME);
+		//a refresh must not be served by the repositories shared with other agents
+		SharedRepositoryCache sharedCache = getSharedCache();
+		if (sharedCache != null)
+			sharedCache.invalidate(getSharedKey(location));
 		//remove the repository so  event is broadcast and repositories can clear their caches
 		if (!removeRepository(location))
 			fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
@@ -232,6 +239,114 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		return badRepos.contains(location);
 	}
 
+	/**
+	 * Returns the record of the repositories that could not be loaded which is kept across
+	 * sessions and agents, or <code>null</code> if there is none.
+	 */
+	private UnavailableRepositoryCache getUnavailableCache() {
+		if (agentLocation == null)
+			return null;
+		URI dataArea = agentLocation.getDataArea(Activator.ID);
+		return UnavailableRepositoryCache.getCache(dataArea == null ? null : URIUtil.toFile(dataArea));
+	}
+
+	/**
+	 * Returns whether failures to load the given location are remembered across sessions.
+	 * Only remote locations are, as they are the ones that are slow to fail.
+	 */
+	private static boolean isRemote(URI location) {
+		return isURL(location) && !"file".equals(location.getScheme()); //$NON-NLS-1$
+	}
+
+	/**
+	 * Check if a previous session or another agent recently failed to reach the given
+	 * location, so that it must not be tried again yet unless explicitly asked for. Returns
+	 * the status code of that failure, or <code>0</code> if the location may be tried.
+	 */
+	private int checkUnavailable(URI location) {
+		if (!isRemote(location))
+			return 0;
+		UnavailableRepositoryCache cache = getUnavailableCache();
+		return cache == null ? 0 : cache.getFailureCode(getSharedKey(location));
+	}
+
+	/**
+	 * Remember across sessions that the given location could not be reached. Only timeouts
+	 * and connection failures are remembered, as they are what makes dead locations expensive;
+	 * a missing or broken repository fails fast and is worth trying again.
+	 */
+	private void rememberUnavailable(URI location, ProvisionException failure) {
+		if (!isRemote(location) || !isConnectionFailure(failure.getStatus()))
+			return;
+		UnavailableRepositoryCache cache = getUnavailableCache();
+		if (cache != null)
+			cache.failed(getSharedKey(location), failure.getStatus().getCode());
+	}
+
+	/**
+	 * Returns whether the given status reports a timeout or a failure to connect to the host.
+	 */
+	private static boolean isConnectionFailure(IStatus status) {
+		for (Throwable t = status.getException(); t != null; t = t.getCause()) {
+			if (t instanceof SocketTimeoutException || t instanceof ConnectException || t instanceof NoRouteToHostException || t instanceof UnknownHostException)
+				return true;
+			if (t instanceof CoreException && isConnectionFailure(((CoreException) t).getStatus()))
+				return true;
+		}
+		IStatus[] children = status.getChildren();
+		for (int i = 0; i < children.length; i++)
+			if (isConnectionFailure(children[i]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Clear the fact that a previous session failed to load the given location.
+	 */
+	private void clearUnavailable(URI location) {
+		if (!isRemote(location))
+			return;
+		UnavailableRepositoryCache cache = getUnavailableCache();
+		if (cache != null)
+			cache.available(getSharedKey(location));
+	}
+
+	/**
+	 * Returns the given locations that recently failed to load, in this session or in a
+	 * previous one, and that loading would therefore fail without trying them again. This
+	 * allows clients holding many locations, such as the repository references found in
+	 * metadata, to leave out the unavailable ones at once. Adding or refreshing a location
+	 * tries it again.
+	 *
+	 * @param locations the locations to check
+	 * @return the unavailable locations, in the order they were given
+	 */
+	public URI[] getUnavailableRepositories(URI[] locations) {
+		Set<URI> unavailable = new HashSet<URI>();
+		List<URI> remote = new ArrayList<URI>();
+		for (int i = 0; i < locations.length; i++) {
+			if (checkNotFound(locations[i]))
+				unavailable.add(locations[i]);
+			else if (isRemote(locations[i]))
+				remote.add(locations[i]);
+		}
+		UnavailableRepositoryCache cache = getUnavailableCache();
+		if (cache != null && !remote.isEmpty()) {
+			String[] keys = new String[remote.size()];
+			for (int i = 0; i < keys.length; i++)
+				keys[i] = getSharedKey(remote.get(i));
+			boolean[] failed = cache.isUnavailable(keys);
+			for (int i = 0; i < failed.length; i++)
+				if (failed[i])
+					unavailable.add(remote.get(i));
+		}
+		List<URI> result = new ArrayList<URI>(unavailable.size());
+		for (int i = 0; i < locations.length; i++)
+			if (unavailable.contains(locations[i]))
+				result.add(locations[i]);
+		return result.toArray(new URI[result.size()]);
+	}
+
 	/**
 	 * Clear the fact that we tried to load a repository at this location and did not find anything.
 	 */
@@ -435,6 +550,9 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		for (int i = 0; i < elements.length; i++) {
 			if (elements[i].getName().equals(EL_FILTER)) {
 				String suffix = elements[i].getAttribute(ATTR_SUFFIX);
+				//xz compressed indexes cannot be read without the optional xz codec
+				if (suffix != null && suffix.endsWith(XZIndex.EXTENSION) && !XZIndex.isAvailable())
+					continue;
 				if (!result.contains(suffix))
 					result.add(suffix);
 			}
@@ -643,6 +761,9 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		SubMonitor sub = SubMonitor.convert(monitor, 100);
 		boolean added = false;
 		IRepository<T> result = null;
+		SharedRepositoryCache sharedCache = getSharedCache();
+		String sharedKey = sharedCache == null ? null : getSharedKey(location);
+		boolean sharedLoad = false;
 
 		try {
 			enterLoad(location, sub.newChild(5));
@@ -651,47 +772,72 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 				return result;
 			if (checkNotFound(location))
 				fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
+			//loads meant to modify the repository are always explicit, other loads include repository references
+			if ((flags & IRepositoryManager.REPOSITORY_HINT_MODIFIABLE) == 0) {
+				int code = checkUnavailable(location);
+				if (code != 0)
+					fail(location, code);
+			}
 			//add the repository first so that it will be enabled, but don't send add event until after the load
 			added = addRepository(location, true, false);
 
-			LocationProperties indexFile = loadIndexFile(location, sub.newChild(15));
-			String[] preferredOrder = getPreferredRepositorySearchOrder(indexFile);
-			String[] suffixes = sortSuffixes(getAllSuffixes(), location, preferredOrder);
+			if (sharedCache != null) {
+				//wait for other agents loading the same repository, and use what they loaded
+				sharedLoad = sharedCache.enterLoad(sharedKey, sub);
+				if (type == null && flags == 0)
+					result = getSharedRepository(sharedCache, sharedKey, location, sub.newChild(5));
+			}
 
-			sub = SubMonitor.convert(sub, NLS.bind(Messages.repoMan_adding, location), suffixes.length * 100);
-			ProvisionException failure = null;
-			try {
-				for (int i = 0; i < suffixes.length; i++) {
-					if (sub.isCanceled())
-						throw new OperationCanceledException();
-					try {
-						result = loadRepository(location, suffixes[i], type, flags, sub.newChild(100));
-					} catch (ProvisionException e) {
-						failure = e;
-						break;
+			if (result == null) {
+				LocationProperties indexFile = loadIndexFile(location, sub.newChild(15));
+				String[] preferredOrder = getPreferredRepositorySearchOrder(indexFile);
+				String[] suffixes = sortSuffixes(getAllSuffixes(), location, preferredOrder);
+
+				sub = SubMonitor.convert(sub, NLS.bind(Messages.repoMan_adding, location), suffixes.length * 100);
+				ProvisionException failure = null;
+				try {
+					for (int i = 0; i < suffixes.length; i++) {
+						if (sub.isCanceled())
+							throw new OperationCanceledException();
+						try {
+							result = loadRepository(location, suffixes[i], type, flags, sub.newChild(100));
+						} catch (ProvisionException e) {
+							failure = e;
+							break;
+						}
+						if (result != null) {
+							addRepository(result, false, suffixes[i]);
+							clearUnavailable(location);
+							if (sharedCache != null)
+								shareRepository(sharedCache, sharedKey, location, result, suffixes[i]);
+							break;
+						}
 					}
-					if (result != null) {
-						addRepository(result, false, suffixes[i]);
-						break;
+				} finally {
+					sub.done();
+				}
+				if (result == null) {
+					//if we just added the repository, remove it because it cannot be loaded
+					if (added)
+						removeRepository(location, false);
+					//eagerly cleanup missing system repositories
+					if (Boolean.valueOf(getRepositoryProperty(location, IRepository.PROP_SYSTEM)).booleanValue())
+						removeRepository(location);
+					else {
+						int code = failure == null ? ProvisionException.REPOSITORY_NOT_FOUND : failure.getStatus().getCode();
+						if (code != ProvisionException.REPOSITORY_FAILED_AUTHENTICATION && code != ProvisionException.REPOSITORY_FAILED_READ)
+							rememberNotFound(location);
+						if (failure != null)
+							rememberUnavailable(location, failure);
 					}
+					if (failure != null)
+						throw failure;
+					fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
 				}
-			} finally {
-				sub.done();
-			}
-			if (result == null) {
-				//if we just added the repository, remove it because it cannot be loaded
-				if (added)
-					removeRepository(location, false);
-				//eagerly cleanup missing system repositories
-				if (Boolean.valueOf(getRepositoryProperty(location, IRepository.PROP_SYSTEM)).booleanValue())
-					removeRepository(location);
-				else if (failure == null || (failure.getStatus().getCode() != ProvisionException.REPOSITORY_FAILED_AUTHENTICATION && failure.getStatus().getCode() != ProvisionException.REPOSITORY_FAILED_READ))
-					rememberNotFound(location);
-				if (failure != null)
-					throw failure;
-				fail(location, ProvisionException.REPOSITORY_NOT_FOUND);
 			}
 		} finally {
+			if (sharedLoad)
+				sharedCache.exitLoad(sharedKey);
 			exitLoad(location);
 		}
 		//broadcast the add event after releasing lock
@@ -700,6 +846,135 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 		return result;
 	}
 
+	/**
+	 * Returns the process wide cache holding the repositories this manager shares with the
+	 * managers of other agents, or <code>null</code> if this manager does not share repositories.
+	 */
+	protected SharedRepositoryCache getSharedCache() {
+		return null;
+	}
+
+	/**
+	 * Returns whether the given repository, just loaded by this manager, may be used by the
+	 * managers of other agents. By default, remote repositories and repositories that cannot
+	 * be modified are shared. Composite repositories are not, as their children are loaded and
+	 * managed by the manager of the agent that loaded the composite.
+	 */
+	protected boolean isShareable(IRepository<T> repository) {
+		if (repository instanceof ICompositeRepository<?>)
+			return false;
+		return !repository.isModifiable() || !"file".equals(repository.getLocation().getScheme()); //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns the key of the repository at the given location among the repositories of all
+	 * types and agents.
+	 */
+	private String getSharedKey(URI location) {
+		return getRepositoryType() + ":" + getKey(location); //$NON-NLS-1$
+	}
+
+	/*
+	 * Returns the repository at the given location loaded by any agent, provided the index it was
+	 * loaded from has not changed since, and adds it to the repositories known to this manager.
+	 */
+	private IRepository<T> getSharedRepository(SharedRepositoryCache cache, String key, URI location, IProgressMonitor monitor) {
+		SharedRepositoryCache.Entry entry = cache.get(key);
+		if (entry == null)
+			return null;
+		//checking the timestamp of a local index is cheap enough to be done every time
+		if ("file".equals(location.getScheme()) || cache.needsValidation(entry)) { //$NON-NLS-1$
+			RepositoryIndexFile indexFile = getIndexFile(entry.repository);
+			long timestamp = indexFile == null ? 0 : getIndexTimestamp(indexFile.location, monitor);
+			if (timestamp == 0 || timestamp != entry.timestamp) {
+				cache.invalidate(key);
+				return null;
+			}
+		}
+		cache.validated(entry);
+		if (Tracing.DEBUG)
+			Tracing.debug("Using shared repository " + location + ": " + cache); //$NON-NLS-1$ //$NON-NLS-2$
+		@SuppressWarnings("unchecked")
+		IRepository<T> repository = (IRepository<T>) entry.repository;
+		addRepository(repository, false, entry.suffix);
+		return repository;
+	}
+
+	private void shareRepository(SharedRepositoryCache cache, String key, URI location, IRepository<T> repository, String suffix) {
+		//in-memory repositories are private to the agent that created them
+		if (!isURL(location) || !isShareable(repository))
+			return;
+		//a repository that cannot be checked for changes later on is not shared
+		RepositoryIndexFile indexFile = getIndexFile(repository);
+		if (indexFile == null || indexFile.timestamp == 0)
+			return;
+		cache.put(key, repository, suffix, indexFile.timestamp);
+	}
+
+	/*
+	 * Returns the index file the given repository was loaded from, as reported by the factory
+	 * that loaded it, or null if it is not known.
+	 */
+	private static RepositoryIndexFile getIndexFile(IRepository<?> repository) {
+		return repository instanceof RepositoryIndexFile.Provider ? ((RepositoryIndexFile.Provider) repository).getIndexFile() : null;
+	}
+
+	/*
+	 * Returns the current last modification time of the given index file, or 0 if it cannot
+	 * be determined.
+	 */
+	private long getIndexTimestamp(URI index, IProgressMonitor monitor) {
+		if ("file".equals(index.getScheme())) { //$NON-NLS-1$
+			File file = URIUtil.toFile(index);
+			return file == null ? 0 : file.lastModified();
+		}
+		try {
+			return getTransport().getLastModified(index, monitor == null ? new NullProgressMonitor() : monitor);
+		} catch (CoreException e) {
+			return 0;
+		} catch (FileNotFoundException e) {
+			return 0;
+		} catch (AuthenticationFailedException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Brings the repository at the given location up to date ahead of its use by a client.
+	 * A repository that is not loaded is loaded, which also fills the local cache of its index.
+	 * A loaded repository is refreshed unless the index file it was loaded from still has the
+	 * timestamp it had then, in which case nothing is downloaded. A repository is also refreshed
+	 * when that timestamp is unknown or cannot be checked. Disabled repositories and repositories
+	 * that are not at a URL are left alone. A location that recently could not be reached, in
+	 * this session or in a previous one, is not tried again until its backoff is over.
+	 *
+	 * @param location the location of the repository
+	 * @param monitor a progress monitor, or <code>null</code>
+	 * @return <code>true</code> if the repository was loaded, and <code>false</code> if it was
+	 * already up to date
+	 * @throws ProvisionException if the repository could not be loaded
+	 */
+	public boolean prefetchRepository(URI location, IProgressMonitor monitor) throws ProvisionException {
+		checkValidLocation(location);
+		if (!isURL(location) || !isEnabled(location))
+			return false;
+		int code = checkUnavailable(location);
+		if (code != 0)
+			fail(location, code);
+		SubMonitor sub = SubMonitor.convert(monitor, 100);
+		IRepository<T> repository = basicGetRepository(location);
+		RepositoryIndexFile indexFile = repository == null ? null : getIndexFile(repository);
+		boolean current = indexFile != null && indexFile.timestamp != 0 && getIndexTimestamp(indexFile.location, sub.newChild(10)) == indexFile.timestamp;
+		if (!current) {
+			sub.setWorkRemaining(90);
+			if (repository == null)
+				loadRepository(location, sub.newChild(90), null, 0);
+			else
+				basicRefreshRepository(location, sub.newChild(90));
+		}
+		return !current;
+	}
+
 	/**
 	 * Fetches the p2.index file from the server. If the file could not be fetched
 	 * a NullSafe version is returned.
@@ -917,7 +1192,8 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	}
 
 	public boolean removeRepository(URI toRemove) {
-		return removeRepository(checkValidLocation(toRemove), true);
+		clearUnavailable(checkValidLocation(toRemove));
+		return removeRepository(toRemove, true);
 	}
 
 	private boolean removeRepository(URI toRemove, boolean signalRemove) {
@@ -1067,6 +1343,10 @@ public abstract class AbstractRepositoryManager<T> implements IRepositoryManager
 	 */
 	public void stop() {
 		eventBus.removeListener(this);
+		//the repositories shared with other agents must not keep this agent reachable
+		SharedRepositoryCache sharedCache = getSharedCache();
+		if (sharedCache != null)
+			sharedCache.removeAgent(agent);
 		//ensure all repository state in memory is written to disk
 		boolean changed = false;
 		synchronized (repositoryLock) {
@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.ExecutorHelper;
+import org.eclipse.equinox.p2.core.ProvisionException;
+
+/**
+ * Loads the children of a composite repository concurrently on a bounded pool of threads
+ * that is shared by all composites, so that the children of nested composites are loaded
+ * as part of the same fan-out.
+ * 
+ * A thread waiting for a child that has not been picked up by the pool yet loads that child
+ * itself. Nested composites therefore never wait for a free pool thread, and loading degrades
+ * to the serial behaviour when the pool is saturated.
+ * 
+ * The number of threads is controlled by the system property {@link #PROP_THREADS}; a value
+ * of <code>1</code> or less loads the children one after the other on the calling thread.
+ * 
+ * A composite that fails when one of its children fails can have the other loads canceled
+ * as soon as the first child fails.
+ */
+public class CompositeChildLoader {
+	public static final String PROP_THREADS = "eclipse.p2.composite.loading.threads"; //$NON-NLS-1$
+	private static final int DEFAULT_THREADS = 8;
+
+	private static ExecutorService executor;
+
+	/**
+	 * Loads a single child of a composite.
+	 */
+	public interface ChildLoader<T> {
+		T load(URI child, IProgressMonitor monitor) throws ProvisionException;
+	}
+
+	/**
+	 * The outcome of loading a single child; exactly one of repository and failure is set.
+	 */
+	public static class Result<T> {
+		public final URI child;
+		public final T repository;
+		public final ProvisionException failure;
+
+		Result(URI child, T repository, ProvisionException failure) {
+			this.child = child;
+			this.repository = repository;
+			this.failure = failure;
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor(int threads) {
+		// when all threads are busy the waiting caller loads the child itself
+		if (executor == null)
+			executor = ExecutorHelper.newSharedDaemonPool("p2 composite loader", threads); //$NON-NLS-1$
+		return executor;
+	}
+
+	/**
+	 * Loads the given children and returns the results in the order of the children.
+	 * Failures to load a child are reported in its result rather than thrown.
+	 * <p>
+	 * When <code>stopOnFailure</code> is set, the loads that are still running are canceled
+	 * and the loads that have not started are skipped as soon as a child fails. The results
+	 * then end with the result of the child that failed first.
+	 * </p>
+	 */
+	public static <T> List<Result<T>> loadAll(List<URI> children, final ChildLoader<T> loader, final boolean stopOnFailure, IProgressMonitor monitor) {
+		final SubMonitor sub = SubMonitor.convert(monitor, 100 * children.size());
+		List<Result<T>> results = new ArrayList<Result<T>>(children.size());
+		int threads = ExecutorHelper.getThreadCount(PROP_THREADS, DEFAULT_THREADS);
+		if (children.size() < 2 || threads < 2) {
+			for (URI child : children) {
+				Result<T> result = load(child, loader, sub.newChild(100));
+				results.add(result);
+				if (stopOnFailure && result.failure != null)
+					break;
+			}
+			return results;
+		}
+
+		final AtomicReference<Result<T>> firstFailure = new AtomicReference<Result<T>>();
+		// children loaded by other threads only share the cancellation state of the caller
+		final IProgressMonitor shared = new NullProgressMonitor() {
+			public boolean isCanceled() {
+				return sub.isCanceled() || firstFailure.get() != null;
+			}
+		};
+		List<FutureTask<Result<T>>> tasks = new ArrayList<FutureTask<Result<T>>>(children.size());
+		for (final URI child : children) {
+			tasks.add(new FutureTask<Result<T>>(new Callable<Result<T>>() {
+				public Result<T> call() {
+					if (firstFailure.get() != null)
+						throw new OperationCanceledException();
+					Result<T> result = load(child, loader, shared);
+					// a load that fails after another child failed may only have been canceled
+					if (result.failure != null && stopOnFailure && !firstFailure.compareAndSet(null, result))
+						throw new OperationCanceledException();
+					return result;
+				}
+			}));
+		}
+		ExecutorService pool = getExecutor(threads);
+		// the caller takes the first child itself
+		for (int i = 1; i < tasks.size(); i++)
+			pool.execute(tasks.get(i));
+
+		// every task is waited for, so no load is still running once the results are returned
+		for (FutureTask<Result<T>> task : tasks) {
+			// runs the child here unless a pool thread has already started it
+			task.run();
+			try {
+				results.add(getResult(task));
+			} catch (OperationCanceledException e) {
+				// skipped or canceled because another child failed
+				if (firstFailure.get() == null)
+					throw e;
+			}
+			sub.worked(100);
+		}
+		Result<T> failure = firstFailure.get();
+		if (failure != null) {
+			// the failure comes last, after the children that were loaded
+			results.remove(failure);
+			results.add(failure);
+		}
+		return results;
+	}
+
+	private static <T> Result<T> load(URI child, ChildLoader<T> loader, IProgressMonitor monitor) {
+		try {
+			return new Result<T>(child, loader.load(child, monitor), null);
+		} catch (ProvisionException e) {
+			return new Result<T>(child, null, e);
+		}
+	}
+
+	private static <T> Result<T> getResult(FutureTask<Result<T>> task) {
+		try {
+			return ExecutorHelper.getResult(task);
+		} catch (ExecutionException e) {
+			// loading a child only throws runtime exceptions
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,491 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+/**
+ * Line based deltas between successive versions of a repository index file (such as
+ * <code>content.xml</code> or <code>artifacts.xml</code>), used to refresh a cached copy
+ * of the index without downloading it again.
+ * <p>
+ * A repository that has the property {@link #PROP_PUBLISH_DELTAS} set publishes, next to its
+ * index, a folder named after the index with the {@link #FOLDER_SUFFIX} suffix. It contains a
+ * file {@link #CURRENT} holding the digest of the current index, and one file per earlier
+ * version of the index, named after the digest of that version, describing how to turn it into
+ * the following version. Each delta states the digest of the index it produces, so a client can
+ * follow the chain from the version it holds and verify every step.
+ * </p><p>
+ * A delta is UTF-8 text, like the index itself. Added content is preceded by its length in
+ * characters.
+ * </p>
+ */
+public class IndexDelta {
+	/**
+	 * Repository property which, when set to <code>true</code>, causes deltas to be published
+	 * whenever the repository index is saved.
+	 */
+	public static final String PROP_PUBLISH_DELTAS = "p2.index.deltas"; //$NON-NLS-1$
+	public static final String FOLDER_SUFFIX = ".delta"; //$NON-NLS-1$
+	public static final String CURRENT = "current"; //$NON-NLS-1$
+	public static final String EXTENSION = ".delta"; //$NON-NLS-1$
+
+	/**
+	 * The number of deltas kept by a publisher, and therefore the number of versions a
+	 * client may lag behind and still be updated from deltas.
+	 */
+	public static final int MAX_DELTAS = 20;
+
+	private static final String HEADER = "p2delta 1"; //$NON-NLS-1$
+	private static final String UTF_8 = "UTF-8"; //$NON-NLS-1$
+	private static final String SOURCE = "source "; //$NON-NLS-1$
+	private static final String TARGET = "target "; //$NON-NLS-1$
+	private static final char COPY = 'c';
+	private static final char SKIP = 's';
+	private static final char ADD = 'a';
+
+	// a delta larger than this share of the target is not worth publishing
+	private static final int MAX_DELTA_PERCENT = 50;
+	private static final int MAX_EDITS = 2000;
+	private static final String ADVERTISEMENT = "<property name='" + PROP_PUBLISH_DELTAS + "' value='true'/>"; //$NON-NLS-1$ //$NON-NLS-2$
+	// repository properties precede the content of the index
+	private static final int ADVERTISEMENT_SCAN_LIMIT = 64 * 1024;
+
+	/**
+	 * Returns whether the given repository properties ask for deltas to be published.
+	 */
+	public static boolean isEnabled(Map<String, String> properties) {
+		return properties != null && Boolean.valueOf(properties.get(PROP_PUBLISH_DELTAS)).booleanValue();
+	}
+
+	/**
+	 * Returns whether the given index content declares that its repository publishes deltas.
+	 */
+	public static boolean isAdvertised(byte[] index) {
+		int length = Math.min(index.length, ADVERTISEMENT_SCAN_LIMIT);
+		String head;
+		try {
+			head = new String(index, 0, length, "UTF-8"); //$NON-NLS-1$
+		} catch (UnsupportedEncodingException e) {
+			return false;
+		}
+		return head.indexOf(ADVERTISEMENT) != -1;
+	}
+
+	/**
+	 * Returns the uncompressed content of an index, read either from the given xml file or
+	 * from the entry of the same name in the given jar file, or <code>null</code> if neither
+	 * exists.
+	 */
+	public static byte[] readIndex(File xmlFile, File jarFile) throws IOException {
+		if (jarFile != null && jarFile.isFile()) {
+			JarInputStream input = new JarInputStream(new BufferedInputStream(new FileInputStream(jarFile)));
+			try {
+				for (JarEntry entry = input.getNextJarEntry(); entry != null; entry = input.getNextJarEntry()) {
+					if (entry.getName().equals(xmlFile.getName()))
+						return readFully(input);
+				}
+				return null;
+			} finally {
+				input.close();
+			}
+		}
+		return xmlFile.isFile() ? read(xmlFile) : null;
+	}
+
+	/**
+	 * Returns the content of an index that is about to be saved again, or <code>null</code> if
+	 * there is none yet or it cannot be read, in which case only the digest of the next version
+	 * can be published.
+	 */
+	public static byte[] readPrevious(File xmlFile, File jarFile) {
+		try {
+			return readIndex(xmlFile, jarFile);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Records the index just saved in the given xml or jar file in the delta folder next to it,
+	 * with the delta from its previous content, see {@link #publish(File, byte[], byte[])}.
+	 *
+	 * @param xmlFile the xml index file, such as <code>content.xml</code>
+	 * @param jarFile the jar holding the index, or <code>null</code> if it is not compressed
+	 * @param previous the previous content of the index, as returned by {@link #readPrevious(File, File)}
+	 */
+	public static void publish(File xmlFile, File jarFile, byte[] previous) throws IOException {
+		byte[] current = readIndex(xmlFile, jarFile);
+		if (current == null)
+			return;
+		String name = xmlFile.getName();
+		String prefix = name.endsWith(".xml") ? name.substring(0, name.length() - ".xml".length()) : name; //$NON-NLS-1$ //$NON-NLS-2$
+		publish(new File(xmlFile.getParentFile(), prefix + FOLDER_SUFFIX), previous, current);
+	}
+
+	/**
+	 * Records a new version of an index in the given delta folder. A delta from the previous
+	 * version is written if there was one and the delta is worthwhile, the current digest is
+	 * updated and the oldest deltas beyond {@link #MAX_DELTAS} are removed.
+	 */
+	public static void publish(File folder, byte[] previous, byte[] current) throws IOException {
+		String target = digest(current);
+		if (!folder.isDirectory() && !folder.mkdirs())
+			throw new IOException("Unable to create " + folder); //$NON-NLS-1$
+		if (previous != null) {
+			String source = digest(previous);
+			if (!source.equals(target)) {
+				byte[] delta = create(previous, current);
+				if (delta != null)
+					write(new File(folder, source + EXTENSION), delta);
+			}
+		}
+		write(new File(folder, CURRENT), target.getBytes("US-ASCII")); //$NON-NLS-1$
+		prune(folder, target);
+	}
+
+	/*
+	 * Keeps the deltas of the last MAX_DELTAS versions leading to the current one, found by
+	 * walking the chain back from the current digest, and removes any other delta.
+	 */
+	private static void prune(File folder, String current) {
+		File[] deltas = folder.listFiles(new FileFilter() {
+			public boolean accept(File file) {
+				return file.getName().endsWith(EXTENSION);
+			}
+		});
+		if (deltas == null || deltas.length <= MAX_DELTAS)
+			return;
+		Map<String, File> byTarget = new HashMap<String, File>();
+		for (int i = 0; i < deltas.length; i++) {
+			try {
+				byTarget.put(getTarget(read(deltas[i])), deltas[i]);
+			} catch (IOException e) {
+				// unreadable, so it will be removed
+			}
+		}
+		Set<File> keep = new HashSet<File>();
+		String digest = current;
+		for (int i = 0; i < MAX_DELTAS; i++) {
+			File delta = byTarget.get(digest);
+			if (delta == null || !keep.add(delta))
+				break;
+			String name = delta.getName();
+			digest = name.substring(0, name.length() - EXTENSION.length());
+		}
+		for (int i = 0; i < deltas.length; i++) {
+			if (!keep.contains(deltas[i]))
+				deltas[i].delete();
+		}
+	}
+
+	/**
+	 * Returns the hexadecimal SHA-1 digest of the given content.
+	 */
+	public static String digest(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(content); //$NON-NLS-1$
+			StringBuffer result = new StringBuffer(digest.length * 2);
+			for (int i = 0; i < digest.length; i++) {
+				int b = digest[i] & 0xFF;
+				if (b < 0x10)
+					result.append('0');
+				result.append(Integer.toHexString(b));
+			}
+			return result.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform is required to support SHA-1
+			throw new IllegalStateException(e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates a delta that turns the source into the target, or returns <code>null</code>
+	 * if the two differ too much for a delta to be worthwhile.
+	 */
+	public static byte[] create(byte[] source, byte[] target) throws IOException {
+		byte[][] sourceLines = split(source);
+		byte[][] targetLines = split(target);
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		int[] a = identify(sourceLines, ids);
+		int[] b = identify(targetLines, ids);
+		char[] script = diff(a, b, MAX_EDITS);
+		if (script == null)
+			return null;
+
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		writeLine(result, HEADER);
+		writeLine(result, SOURCE + digest(source));
+		writeLine(result, TARGET + digest(target));
+		int targetIndex = 0;
+		for (int i = 0; i < script.length;) {
+			char op = script[i];
+			int run = 1;
+			while (i + run < script.length && script[i + run] == op)
+				run++;
+			if (op == ADD) {
+				int size = 0;
+				for (int j = 0; j < run; j++)
+					size += new String(targetLines[targetIndex + j], UTF_8).length();
+				writeLine(result, ADD + " " + size); //$NON-NLS-1$
+				for (int j = 0; j < run; j++)
+					result.write(targetLines[targetIndex + j]);
+				targetIndex += run;
+			} else {
+				writeLine(result, op + " " + run); //$NON-NLS-1$
+				if (op == COPY)
+					targetIndex += run;
+			}
+			i += run;
+		}
+		if (result.size() * 100L > target.length * (long) MAX_DELTA_PERCENT)
+			return null;
+		return result.toByteArray();
+	}
+
+	/**
+	 * Returns the digest of the index a delta produces.
+	 * @throws IOException if the delta is malformed
+	 */
+	public static String getTarget(byte[] delta) throws IOException {
+		BufferedReader input = createReader(delta);
+		readHeader(input);
+		readLine(input, SOURCE);
+		return readLine(input, TARGET);
+	}
+
+	/**
+	 * Applies a delta to the source it was created from.
+	 * @throws IOException if the delta is malformed, was not created from the given source, or
+	 * does not produce the content it claims to produce
+	 */
+	public static byte[] apply(byte[] source, byte[] delta) throws IOException {
+		BufferedReader input = createReader(delta);
+		readHeader(input);
+		String sourceDigest = readLine(input, SOURCE);
+		String targetDigest = readLine(input, TARGET);
+		if (!sourceDigest.equals(digest(source)))
+			throw new IOException("Delta does not apply to this index"); //$NON-NLS-1$
+
+		byte[][] sourceLines = split(source);
+		ByteArrayOutputStream result = new ByteArrayOutputStream(source.length);
+		int sourceIndex = 0;
+		String line;
+		while ((line = input.readLine()) != null) {
+			if (line.length() < 3 || line.charAt(1) != ' ')
+				throw new IOException("Malformed delta"); //$NON-NLS-1$
+			int count;
+			try {
+				count = Integer.parseInt(line.substring(2));
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed delta"); //$NON-NLS-1$
+			}
+			switch (line.charAt(0)) {
+				case COPY :
+					if (sourceIndex + count > sourceLines.length)
+						throw new IOException("Malformed delta"); //$NON-NLS-1$
+					for (int i = 0; i < count; i++)
+						result.write(sourceLines[sourceIndex++]);
+					break;
+				case SKIP :
+					sourceIndex += count;
+					break;
+				case ADD :
+					char[] added = new char[count];
+					for (int read = 0; read < count;) {
+						int n = input.read(added, read, count - read);
+						if (n == -1)
+							throw new IOException("Malformed delta"); //$NON-NLS-1$
+						read += n;
+					}
+					result.write(new String(added).getBytes(UTF_8));
+					break;
+				default :
+					throw new IOException("Malformed delta"); //$NON-NLS-1$
+			}
+		}
+		byte[] target = result.toByteArray();
+		if (!targetDigest.equals(digest(target)))
+			throw new IOException("Delta produced unexpected content"); //$NON-NLS-1$
+		return target;
+	}
+
+	/*
+	 * Computes the shortest edit script between a and b (Myers' algorithm) as a sequence of
+	 * COPY, SKIP and ADD operations, or returns null if it needs more than maxEdits edits.
+	 */
+	private static char[] diff(int[] a, int[] b, int maxEdits) {
+		int n = a.length;
+		int m = b.length;
+		// trace.get(d)[k + d] is the furthest x reached on diagonal k with d edits
+		List<int[]> trace = new ArrayList<int[]>();
+		int edits = -1;
+		for (int d = 0; d <= maxEdits && d <= n + m; d++) {
+			int[] previous = d == 0 ? null : trace.get(d - 1);
+			int[] current = new int[2 * d + 1];
+			for (int k = -d; k <= d; k += 2) {
+				int x;
+				if (d == 0)
+					x = 0;
+				else if (k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]))
+					x = previous[k + 1 + d - 1];
+				else
+					x = previous[k - 1 + d - 1] + 1;
+				int y = x - k;
+				while (x < n && y < m && a[x] == b[y]) {
+					x++;
+					y++;
+				}
+				current[k + d] = x;
+				if (x >= n && y >= m) {
+					edits = d;
+					break;
+				}
+			}
+			trace.add(current);
+			if (edits != -1)
+				break;
+		}
+		if (edits == -1)
+			return null;
+
+		// walk back from the end to recover the operations
+		char[] script = new char[n + m];
+		int length = 0;
+		int x = n;
+		int y = m;
+		for (int d = edits; d > 0; d--) {
+			int[] previous = trace.get(d - 1);
+			int k = x - y;
+			int previousK;
+			if (k == -d || (k != d && previous[k - 1 + d - 1] < previous[k + 1 + d - 1]))
+				previousK = k + 1;
+			else
+				previousK = k - 1;
+			int previousX = previous[previousK + d - 1];
+			int previousY = previousX - previousK;
+			while (x > previousX && y > previousY) {
+				script[length++] = COPY;
+				x--;
+				y--;
+			}
+			if (previousK == k + 1)
+				script[length++] = ADD;
+			else
+				script[length++] = SKIP;
+			x = previousX;
+			y = previousY;
+		}
+		while (x > 0 && y > 0) {
+			script[length++] = COPY;
+			x--;
+			y--;
+		}
+		char[] result = new char[length];
+		for (int i = 0; i < length; i++)
+			result[i] = script[length - 1 - i];
+		return result;
+	}
+
+	private static int[] identify(byte[][] lines, Map<String, Integer> ids) throws UnsupportedEncodingException {
+		int[] result = new int[lines.length];
+		for (int i = 0; i < lines.length; i++) {
+			// ISO-8859-1 maps every byte to a character, so equal strings mean equal bytes
+			String line = new String(lines[i], "ISO-8859-1"); //$NON-NLS-1$
+			Integer id = ids.get(line);
+			if (id == null) {
+				id = new Integer(ids.size());
+				ids.put(line, id);
+			}
+			result[i] = id.intValue();
+		}
+		return result;
+	}
+
+	/*
+	 * Splits the content into lines, each keeping its line terminator.
+	 */
+	private static byte[][] split(byte[] content) {
+		List<byte[]> lines = new ArrayList<byte[]>();
+		int start = 0;
+		for (int i = 0; i < content.length; i++) {
+			if (content[i] == '\n') {
+				lines.add(copy(content, start, i + 1));
+				start = i + 1;
+			}
+		}
+		if (start < content.length)
+			lines.add(copy(content, start, content.length));
+		return lines.toArray(new byte[lines.size()][]);
+	}
+
+	private static byte[] copy(byte[] content, int start, int end) {
+		byte[] result = new byte[end - start];
+		System.arraycopy(content, start, result, 0, result.length);
+		return result;
+	}
+
+	private static BufferedReader createReader(byte[] delta) throws UnsupportedEncodingException {
+		return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(delta), UTF_8));
+	}
+
+	private static void readHeader(BufferedReader input) throws IOException {
+		if (!HEADER.equals(input.readLine()))
+			throw new IOException("Malformed delta"); //$NON-NLS-1$
+	}
+
+	private static String readLine(BufferedReader input, String prefix) throws IOException {
+		String line = input.readLine();
+		if (line == null || !line.startsWith(prefix))
+			throw new IOException("Malformed delta"); //$NON-NLS-1$
+		return line.substring(prefix.length());
+	}
+
+	private static void writeLine(OutputStream output, String line) throws IOException {
+		output.write(line.getBytes("US-ASCII")); //$NON-NLS-1$
+		output.write('\n');
+	}
+
+	private static byte[] read(File file) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return readFully(input);
+		} finally {
+			input.close();
+		}
+	}
+
+	private static void write(File file, byte[] content) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(content);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Reads the remaining content of the given stream.
+	 */
+	public static byte[] readFully(InputStream input) throws IOException {
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1)
+			result.write(buffer, 0, read);
+		return result.toByteArray();
+	}
+}
@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.File;
+import java.net.URI;
+import org.eclipse.core.runtime.URIUtil;
+
+/**
+ * The index file a repository was actually loaded from, such as <code>content.jar</code>,
+ * <code>content.xml</code> or <code>content.xml.xz</code>, along with the last modification
+ * time of that file when it was loaded. The repository managers compare that time with the
+ * current one to tell whether a loaded repository is still current.
+ */
+public final class RepositoryIndexFile {
+	private static final String JAR_EXTENSION = ".jar"; //$NON-NLS-1$
+	private static final String XML_EXTENSION = ".xml"; //$NON-NLS-1$
+	private static final String XZ_EXTENSION = XML_EXTENSION + XZIndex.EXTENSION;
+
+	/**
+	 * Implemented by the repositories that know the index file they were loaded from.
+	 */
+	public interface Provider {
+		/**
+		 * Returns the index file this repository was loaded from, or <code>null</code> if
+		 * it is not known.
+		 */
+		public RepositoryIndexFile getIndexFile();
+	}
+
+	/**
+	 * The location of the index file.
+	 */
+	public final URI location;
+
+	/**
+	 * The last modification time of the index file when it was read, or <code>0</code> if
+	 * it is unknown.
+	 */
+	public final long timestamp;
+
+	public RepositoryIndexFile(URI location, long timestamp) {
+		this.location = location;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * Returns the index file of the repository at the given location that was read through
+	 * the given local file. The local file is either the index of a local repository or the
+	 * cache of the index of a remote repository, and its name tells which of the index files
+	 * with the given prefix was read.
+	 *
+	 * @param repositoryLocation the location of the repository
+	 * @param prefix the prefix of the index files, such as <code>content</code>
+	 * @param localFile the local file that was read
+	 * @param timestamp the last modification time of the index file, or <code>0</code> if
+	 * it is unknown
+	 */
+	public static RepositoryIndexFile create(URI repositoryLocation, String prefix, File localFile, long timestamp) {
+		if ("file".equals(repositoryLocation.getScheme())) //$NON-NLS-1$
+			return new RepositoryIndexFile(localFile.toURI(), timestamp);
+		String name = localFile.getName();
+		String extension = name.endsWith(XZ_EXTENSION) ? XZ_EXTENSION : name.endsWith(JAR_EXTENSION) ? JAR_EXTENSION : XML_EXTENSION;
+		return new RepositoryIndexFile(URIUtil.append(repositoryLocation, prefix + extension), timestamp);
+	}
+
+	public String toString() {
+		return location + "@" + timestamp; //$NON-NLS-1$
+	}
+}
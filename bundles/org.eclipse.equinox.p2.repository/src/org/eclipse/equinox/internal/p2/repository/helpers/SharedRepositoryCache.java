@@ -0,0 +1,250 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.repository.IRepository;
+
+/**
+ * A process wide cache of read-only repositories, shared by the repository managers of all
+ * provisioning agents so that agents using the same repositories load and hold them only once.
+ * <p>
+ * The cache holds at most {@link #PROP_SIZE} repositories, and evicts the least recently used
+ * repository when it is full. Each repository is stored along with the timestamp of the index
+ * it was loaded from. Once {@link #VALIDATION_INTERVAL} has passed since that timestamp was
+ * last checked, the manager getting the repository compares it with the current timestamp of
+ * the index, and loads the repository again if the index has changed.
+ * </p><p>
+ * The repositories are held until the agent that loaded them stops. Only repositories that do
+ * not depend on the manager of that agent, such as composites loading their children, may be
+ * put in the cache.
+ * </p><p>
+ * The cache also makes sure that a repository being loaded by one agent is not loaded by
+ * another agent at the same time, see {@link #enterLoad(String, IProgressMonitor)}.
+ * </p>
+ */
+public class SharedRepositoryCache {
+	/**
+	 * System property holding the maximum number of repositories in the cache. A value of
+	 * <code>0</code> disables the cache.
+	 */
+	public static final String PROP_SIZE = "eclipse.p2.repository.sharedCache.size"; //$NON-NLS-1$
+	private static final int DEFAULT_SIZE = 64;
+
+	/**
+	 * The number of milliseconds during which a cached repository is used without checking
+	 * the timestamp of its index.
+	 */
+	public static final long VALIDATION_INTERVAL = 60 * 1000;
+
+	/*
+	 * The longest a load waits for the same repository to be loaded by another thread. This
+	 * only matters for composites which are children of each other and that are loaded by
+	 * different threads at the same time, where waiting would not end otherwise.
+	 */
+	private static final long MAX_LOAD_WAIT = 60 * 1000;
+
+	private static SharedRepositoryCache defaultCache;
+
+	/**
+	 * A cached repository.
+	 */
+	public static class Entry {
+		public final IRepository<?> repository;
+		public final String suffix;
+		public final long timestamp;
+		long validated;
+
+		Entry(IRepository<?> repository, String suffix, long timestamp) {
+			this.repository = repository;
+			this.suffix = suffix;
+			this.timestamp = timestamp;
+			this.validated = System.currentTimeMillis();
+		}
+	}
+
+	private final int maxSize;
+	private final Map<String, Entry> entries;
+	private final Map<String, Thread> loads = new HashMap<String, Thread>();
+
+	private long hits = 0;
+	private long misses = 0;
+	private long reloads = 0;
+	private long evictions = 0;
+
+	/**
+	 * Returns the cache shared by all agents, or <code>null</code> if it is disabled.
+	 */
+	public static synchronized SharedRepositoryCache getDefault() {
+		if (defaultCache == null) {
+			int size = DEFAULT_SIZE;
+			String value = System.getProperty(PROP_SIZE);
+			if (value != null) {
+				try {
+					size = Integer.parseInt(value);
+				} catch (NumberFormatException e) {
+					// use the default size
+				}
+			}
+			if (size <= 0)
+				return null;
+			defaultCache = new SharedRepositoryCache(size);
+		}
+		return defaultCache;
+	}
+
+	public SharedRepositoryCache(int maxSize) {
+		this.maxSize = maxSize;
+		// iterates from the least recently used entry
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() <= SharedRepositoryCache.this.maxSize)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached repository for the given key, or <code>null</code> if there is none.
+	 * The caller must then either {@link #validated(Entry) confirm} that the entry is current,
+	 * or {@link #invalidate(String) remove} it.
+	 */
+	public synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null)
+			misses++;
+		return entry;
+	}
+
+	/**
+	 * Returns whether the timestamp of the given entry must be checked before the entry is used.
+	 */
+	public synchronized boolean needsValidation(Entry entry) {
+		return System.currentTimeMillis() - entry.validated > VALIDATION_INTERVAL;
+	}
+
+	/**
+	 * Records that the given entry is current and is about to be used.
+	 */
+	public synchronized void validated(Entry entry) {
+		entry.validated = System.currentTimeMillis();
+		hits++;
+	}
+
+	/**
+	 * Removes the repositories loaded by the given agent, which is stopping. The repositories
+	 * hold on to the agent that loaded them, which must not be kept reachable once stopped.
+	 */
+	public synchronized void removeAgent(IProvisioningAgent agent) {
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();)
+			if (it.next().repository.getProvisioningAgent() == agent)
+				it.remove();
+	}
+
+	/**
+	 * Removes the repository with the given key, which is going to be loaded again.
+	 */
+	public synchronized void invalidate(String key) {
+		if (entries.remove(key) != null)
+			reloads++;
+	}
+
+	/**
+	 * Adds a repository to the cache.
+	 *
+	 * @param key the key of the repository
+	 * @param repository the repository, which must not be modifiable
+	 * @param suffix the suffix of the factory the repository was loaded with
+	 * @param timestamp the timestamp of the index file the repository was loaded from
+	 */
+	public synchronized void put(String key, IRepository<?> repository, String suffix, long timestamp) {
+		entries.put(key, new Entry(repository, suffix, timestamp));
+	}
+
+	/**
+	 * Waits until no other thread is loading the repository with the given key, and records
+	 * that the current thread is loading it. When this method returns <code>true</code>, it
+	 * must be followed by a subsequent call to {@link #exitLoad(String)}.
+	 * <p>
+	 * A thread that is already loading another repository does not wait, so that composite
+	 * repositories loaded by different threads cannot wait for each other.
+	 * </p>
+	 */
+	public boolean enterLoad(String key, IProgressMonitor monitor) {
+		Thread current = Thread.currentThread();
+		synchronized (loads) {
+			if (!loads.containsValue(current)) {
+				long end = System.currentTimeMillis() + MAX_LOAD_WAIT;
+				while (true) {
+					Thread owner = loads.get(key);
+					if (owner == null || System.currentTimeMillis() >= end)
+						break;
+					if (monitor.isCanceled())
+						throw new OperationCanceledException();
+					try {
+						loads.wait(1000);
+					} catch (InterruptedException e) {
+						//keep trying
+					}
+				}
+			}
+			if (loads.containsKey(key))
+				return false;
+			loads.put(key, current);
+			return true;
+		}
+	}
+
+	/**
+	 * Records that the current thread is done loading the repository with the given key.
+	 */
+	public void exitLoad(String key) {
+		synchronized (loads) {
+			loads.remove(key);
+			loads.notifyAll();
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getReloads() {
+		return reloads;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized String toString() {
+		return "SharedRepositoryCache(size=" + entries.size() + '/' + maxSize + ", hits=" + hits + ", misses=" + misses + ", reloads=" + reloads + ", evictions=" + evictions + ')'; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+	}
+}
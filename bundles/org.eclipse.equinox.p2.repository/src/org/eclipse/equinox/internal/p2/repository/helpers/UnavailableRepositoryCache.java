@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.*;
+import java.util.*;
+import org.eclipse.equinox.internal.p2.core.helpers.Tracing;
+import org.eclipse.equinox.p2.core.ProvisionException;
+
+/**
+ * Remembers the repositories that could not be loaded, so that they are not tried again
+ * until some time has passed. The time grows exponentially with the number of consecutive
+ * failures, from {@link #PROP_BACKOFF} up to {@link #MAX_BACKOFF}.
+ * <p>
+ * The failures are saved in a file, so that they survive restarts and are seen by every
+ * agent and process using the same agent location. Changes made by other processes are
+ * picked up when the file changes.
+ * </p>
+ */
+public class UnavailableRepositoryCache {
+	/**
+	 * System property holding the number of seconds during which a repository is not tried
+	 * again after its first failure. A value of <code>0</code> disables the cache.
+	 */
+	public static final String PROP_BACKOFF = "eclipse.p2.repository.unavailable.backoff"; //$NON-NLS-1$
+	private static final long DEFAULT_BACKOFF = 10 * 60;
+
+	/**
+	 * The longest time in milliseconds during which a repository is not tried again.
+	 */
+	public static final long MAX_BACKOFF = 24 * 60 * 60 * 1000;
+
+	static final String FILE_NAME = "unavailable.properties"; //$NON-NLS-1$
+
+	private static final Map<File, UnavailableRepositoryCache> caches = new HashMap<File, UnavailableRepositoryCache>();
+
+	/*
+	 * The consecutive failures to load a repository, and the status code of the last one.
+	 */
+	private static final class Entry {
+		int failures;
+		long lastFailure;
+		int code;
+
+		Entry(int failures, long lastFailure, int code) {
+			this.failures = failures;
+			this.lastFailure = lastFailure;
+			this.code = code;
+		}
+	}
+
+	private final File file;
+	private final long backoff;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private long fileTimestamp = 0;
+
+	/**
+	 * Returns the cache saved in the given directory, or <code>null</code> if the cache is disabled.
+	 */
+	public static UnavailableRepositoryCache getCache(File directory) {
+		long backoff = DEFAULT_BACKOFF;
+		String value = System.getProperty(PROP_BACKOFF);
+		if (value != null) {
+			try {
+				backoff = Long.parseLong(value);
+			} catch (NumberFormatException e) {
+				// use the default backoff
+			}
+		}
+		if (backoff <= 0 || directory == null)
+			return null;
+		File file = new File(directory, FILE_NAME);
+		synchronized (caches) {
+			UnavailableRepositoryCache cache = caches.get(file);
+			if (cache == null) {
+				cache = new UnavailableRepositoryCache(file, backoff * 1000);
+				caches.put(file, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Creates a cache saved in the given file.
+	 *
+	 * @param file the file holding the failures
+	 * @param backoff the number of milliseconds a repository is not tried again after its first failure
+	 */
+	public UnavailableRepositoryCache(File file, long backoff) {
+		this.file = file;
+		this.backoff = backoff;
+	}
+
+	/**
+	 * Returns whether the repository with the given key failed recently enough that it must
+	 * not be tried again yet.
+	 */
+	public synchronized boolean isUnavailable(String key) {
+		return getFailureCode(key) != 0;
+	}
+
+	/**
+	 * Returns the status code of the last failure to load the repository with the given key,
+	 * or <code>0</code> if the repository may be tried again.
+	 */
+	public synchronized int getFailureCode(String key) {
+		reload();
+		Entry entry = entries.get(key);
+		return entry != null && currentTime() < getRetryTime(entry) ? entry.code : 0;
+	}
+
+	/**
+	 * Returns, for each of the given keys, whether the repository with that key must not be
+	 * tried again yet.
+	 */
+	public synchronized boolean[] isUnavailable(String[] keys) {
+		reload();
+		long now = currentTime();
+		boolean[] result = new boolean[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			Entry entry = entries.get(keys[i]);
+			result[i] = entry != null && now < getRetryTime(entry);
+		}
+		return result;
+	}
+
+	/**
+	 * Records that the repository with the given key could not be loaded.
+	 *
+	 * @param key the key of the repository
+	 * @param code the status code of the failure, such as {@link ProvisionException#REPOSITORY_FAILED_READ}
+	 */
+	public synchronized void failed(String key, int code) {
+		reload();
+		Entry entry = entries.get(key);
+		long now = currentTime();
+		if (entry == null)
+			entries.put(key, new Entry(1, now, code));
+		else {
+			entry.failures++;
+			entry.lastFailure = now;
+			entry.code = code;
+		}
+		save();
+	}
+
+	/**
+	 * Records that the repository with the given key was loaded, or is to be tried again.
+	 */
+	public synchronized void available(String key) {
+		reload();
+		if (entries.remove(key) != null)
+			save();
+	}
+
+	/**
+	 * Returns the current time in milliseconds. Tests override this method to control time.
+	 */
+	protected long currentTime() {
+		return System.currentTimeMillis();
+	}
+
+	private long getRetryTime(Entry entry) {
+		long delay = backoff;
+		for (int i = 1; i < entry.failures && delay < MAX_BACKOFF; i++)
+			delay *= 2;
+		return entry.lastFailure + Math.min(delay, MAX_BACKOFF);
+	}
+
+	/*
+	 * Reads the file again if another cache changed it.
+	 */
+	private void reload() {
+		long timestamp = file.lastModified();
+		if (timestamp == fileTimestamp)
+			return;
+		fileTimestamp = timestamp;
+		entries.clear();
+		if (timestamp == 0)
+			return;
+		Properties properties = new Properties();
+		InputStream input = null;
+		try {
+			input = new BufferedInputStream(new FileInputStream(file));
+			properties.load(input);
+		} catch (IOException e) {
+			return;
+		} finally {
+			close(input);
+		}
+		// entries whose longest backoff is over are of no use anymore
+		long oldest = currentTime() - MAX_BACKOFF;
+		for (Map.Entry<Object, Object> property : properties.entrySet()) {
+			// failures,lastFailure[,code]
+			String[] fields = ((String) property.getValue()).split(","); //$NON-NLS-1$
+			if (fields.length < 2)
+				continue;
+			try {
+				int code = fields.length > 2 ? Integer.parseInt(fields[2]) : ProvisionException.REPOSITORY_FAILED_READ;
+				Entry entry = new Entry(Integer.parseInt(fields[0]), Long.parseLong(fields[1]), code);
+				if (entry.lastFailure > oldest)
+					entries.put((String) property.getKey(), entry);
+			} catch (NumberFormatException e) {
+				// ignore the broken entry
+			}
+		}
+	}
+
+	private void save() {
+		Properties properties = new Properties();
+		for (Map.Entry<String, Entry> entry : entries.entrySet())
+			properties.put(entry.getKey(), entry.getValue().failures + "," + entry.getValue().lastFailure + "," + entry.getValue().code); //$NON-NLS-1$ //$NON-NLS-2$
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp"); //$NON-NLS-1$
+		OutputStream output = null;
+		try {
+			file.getParentFile().mkdirs();
+			output = new BufferedOutputStream(new FileOutputStream(temp));
+			properties.store(output, null);
+			output.close();
+			output = null;
+			file.delete();
+			if (!temp.renameTo(file))
+				temp.delete();
+		} catch (IOException e) {
+			// the failures are only remembered in memory
+			if (Tracing.DEBUG)
+				Tracing.debug("Unable to save unavailable repositories to " + file + ": " + e.getMessage()); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			close(output);
+		}
+		fileTimestamp = file.lastModified();
+	}
+
+	private static void close(Closeable stream) {
+		if (stream == null)
+			return;
+		try {
+			stream.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+}
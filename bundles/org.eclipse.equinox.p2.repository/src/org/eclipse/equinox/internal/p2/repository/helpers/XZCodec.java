@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.*;
+import org.tukaani.xz.*;
+
+/**
+ * The only class referring to the optional <code>org.tukaani.xz</code> package. It must
+ * not be loaded unless {@link XZIndex#isAvailable()} returns <code>true</code>.
+ */
+class XZCodec {
+	static InputStream decompress(InputStream input) throws IOException {
+		return new XZInputStream(input);
+	}
+
+	static OutputStream compress(OutputStream output) throws IOException {
+		return new XZOutputStream(output, new LZMA2Options());
+	}
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.repository.helpers;
+
+import java.io.*;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Support for xz compressed repository indexes (<code>content.xml.xz</code> and
+ * <code>artifacts.xml.xz</code>), which are considerably smaller than the deflate
+ * compressed jar indexes.
+ * <p>
+ * A repository with the property {@link #PROP_XZ_COMPRESSED} set publishes an xz
+ * compressed copy of its index next to the regular one, and lists it first in the
+ * factory order of its <code>p2.index</code> file so that clients able to read it
+ * prefer it over the jar or xml index.
+ * </p><p>
+ * The xz codec comes from the optional <code>org.tukaani.xz</code> package. Without it,
+ * xz compressed indexes are neither read nor written, and a stale xz compressed copy is
+ * removed when the repository is saved.
+ * </p>
+ */
+public class XZIndex {
+	/**
+	 * Repository property which, when set to <code>true</code>, causes an xz compressed
+	 * copy of the index to be published whenever the repository is saved.
+	 */
+	public static final String PROP_XZ_COMPRESSED = "p2.xz.compressed"; //$NON-NLS-1$
+	public static final String EXTENSION = ".xz"; //$NON-NLS-1$
+
+	private static final String INDEX_VERSION = "1"; //$NON-NLS-1$
+	private static final String CODEC_CLASS = "org.tukaani.xz.XZInputStream"; //$NON-NLS-1$
+
+	private static Boolean available;
+
+	/**
+	 * Returns whether the xz codec is available.
+	 */
+	public static synchronized boolean isAvailable() {
+		if (available == null) {
+			boolean found;
+			try {
+				XZIndex.class.getClassLoader().loadClass(CODEC_CLASS);
+				found = true;
+			} catch (ClassNotFoundException e) {
+				found = false;
+			} catch (LinkageError e) {
+				found = false;
+			}
+			available = Boolean.valueOf(found);
+		}
+		return available.booleanValue();
+	}
+
+	/**
+	 * Returns whether the given repository properties ask for an xz compressed index.
+	 */
+	public static boolean isEnabled(Map<String, String> properties) {
+		return properties != null && Boolean.valueOf(properties.get(PROP_XZ_COMPRESSED)).booleanValue();
+	}
+
+	/**
+	 * Returns a stream on the uncompressed content of the given xz compressed index.
+	 */
+	public static InputStream openStream(File xzFile) throws IOException {
+		if (!isAvailable())
+			throw new IOException("The xz codec is not available to read " + xzFile); //$NON-NLS-1$
+		InputStream input = new BufferedInputStream(new FileInputStream(xzFile));
+		try {
+			return XZCodec.decompress(input);
+		} catch (IOException e) {
+			input.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Updates the xz compressed copy of an index after the index has been saved.
+	 *
+	 * @param xmlFile the uncompressed index file, which need not exist
+	 * @param index the content of the index, or <code>null</code> to remove the xz compressed copy
+	 * @param factoryOrderKey the <code>p2.index</code> property listing the factories for this kind of repository
+	 */
+	public static void save(File xmlFile, byte[] index, String factoryOrderKey) throws IOException {
+		File xzFile = new File(xmlFile.getPath() + EXTENSION);
+		if (index == null || !isAvailable()) {
+			if (xzFile.exists()) {
+				xzFile.delete();
+				advertise(xmlFile, factoryOrderKey, false);
+			}
+			return;
+		}
+		File tempFile = getTempFile(xzFile);
+		OutputStream output = XZCodec.compress(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			output.write(index);
+		} finally {
+			output.close();
+		}
+		replace(tempFile, xzFile);
+		advertise(xmlFile, factoryOrderKey, true);
+	}
+
+	private static File getTempFile(File file) {
+		return new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+	}
+
+	/*
+	 * Moves the completely written temporary file over the given file.
+	 */
+	private static void replace(File tempFile, File file) throws IOException {
+		if (tempFile.renameTo(file))
+			return;
+		// some platforms will not rename over an existing file
+		file.delete();
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Unable to rename " + tempFile + " to " + file); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	/*
+	 * Records in the p2.index file of the repository whether clients should look for the xz
+	 * compressed index before the regular one, keeping any other content of the file.
+	 */
+	private static void advertise(File xmlFile, String factoryOrderKey, boolean available) throws IOException {
+		File indexFile = new File(xmlFile.getParentFile(), LocationProperties.INDEX_FILE);
+		Properties properties = new Properties();
+		if (indexFile.exists()) {
+			InputStream input = new BufferedInputStream(new FileInputStream(indexFile));
+			try {
+				properties.load(input);
+			} finally {
+				input.close();
+			}
+		} else if (!available) {
+			return;
+		}
+		String suffix = xmlFile.getName();
+		if (available)
+			properties.setProperty(factoryOrderKey, suffix + EXTENSION + ',' + suffix + ',' + LocationProperties.END);
+		else if (properties.remove(factoryOrderKey) == null)
+			return;
+		properties.setProperty(LocationProperties.VERSION, INDEX_VERSION);
+		// clients read p2.index first, so it is never left half written
+		File tempFile = getTempFile(indexFile);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(tempFile));
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+		replace(tempFile, indexFile);
+	}
+}
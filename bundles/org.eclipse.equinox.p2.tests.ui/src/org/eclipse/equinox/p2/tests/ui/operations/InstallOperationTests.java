@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2010-2012 IBM Corporation and others.
+ *  Copyright (c) 2010, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -16,11 +16,13 @@ import java.util.*;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.operations.IStatusCodes;
 import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.engine.IProvisioningPlan;
 import org.eclipse.equinox.p2.engine.ProvisioningContext;
 import org.eclipse.equinox.p2.metadata.*;
 import org.eclipse.equinox.p2.metadata.MetadataFactory.InstallableUnitDescription;
 import org.eclipse.equinox.p2.metadata.expression.*;
 import org.eclipse.equinox.p2.operations.InstallOperation;
+import org.eclipse.equinox.p2.operations.ProvisioningJob;
 import org.eclipse.equinox.p2.query.QueryUtil;
 import org.eclipse.equinox.p2.repository.IRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
@@ -95,6 +97,41 @@ public class InstallOperationTests extends AbstractProvisioningUITest {
 
 	}
 
+	public void testRefinementJob() {
+		// far too many units to find the best plan in a millisecond
+		int names = 1000;
+		int versions = 10;
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		IRequirement[] required = new IRequirement[names];
+		for (int i = 0; i < names; i++) {
+			for (int v = 1; v <= versions; v++)
+				units.add(createIU("P" + i, Version.createOSGi(v, 0, 0), true));
+			required[i] = createIURequirement("P" + i, new VersionRange(Version.createOSGi(1, 0, 0), true, Version.createOSGi(versions + 1, 0, 0), false));
+		}
+		IInstallableUnit root = createIU("Root", Version.create("1.0.0"), required);
+		units.add(root);
+		createTestMetdataRepository(units.toArray(new IInstallableUnit[units.size()]));
+
+		InstallOperation op = new InstallOperation(getSession(), Collections.singleton(root));
+		op.setProfileId(TESTPROFILE);
+		op.setResolutionTimeLimit(1);
+		assertTrue("Should resolve", op.resolveModal(getMonitor()).isOK());
+		IProvisioningPlan limited = op.getProvisioningPlan();
+		ProvisioningJob refinement = op.getRefinementJob(null);
+		assertNotNull("Time limit should be reached", refinement);
+		assertFalse("Not refined yet", op.isResolutionRefined());
+
+		assertTrue("Should refine", refinement.runModal(getMonitor()).isOK());
+		IProvisioningPlan best = op.getProvisioningPlan();
+		assertNotSame("Plan should be replaced", limited, best);
+		assertNull("Best plan should not be refined again", op.getRefinementJob(null));
+		for (int i = 0; i < names; i++)
+			assertFalse("Highest version of P" + i, best.getFutureState().query(QueryUtil.createIUQuery("P" + i, Version.createOSGi(versions, 0, 0)), getMonitor()).isEmpty());
+		Set<IInstallableUnit> limitedState = limited.getFutureState().query(QueryUtil.ALL_UNITS, getMonitor()).toUnmodifiableSet();
+		Set<IInstallableUnit> bestState = best.getFutureState().query(QueryUtil.ALL_UNITS, getMonitor()).toUnmodifiableSet();
+		assertEquals("Refined when the plan changed", !limitedState.equals(bestState), op.isResolutionRefined());
+	}
+
 	public void testUpdateWithNamespaceChange() {
 		//Create the IU that will be detected as an update
 		InstallableUnitDescription iud = new MetadataFactory.InstallableUnitDescription();
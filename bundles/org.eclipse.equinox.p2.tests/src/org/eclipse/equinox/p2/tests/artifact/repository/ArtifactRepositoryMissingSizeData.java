@@ -98,6 +98,26 @@ public class ArtifactRepositoryMissingSizeData extends AbstractProvisioningTest
 		}
 	}
 
+	/*
+	 * Sizes are remembered between sizings, which must still report an incomplete size.
+	 */
+	public void testMissingSizeRepeated() {
+		IProfile profile1 = createProfile("TestProfile." + getName());
+		ProfileChangeRequest req = new ProfileChangeRequest(profile1);
+		req.add(missingSizeIU);
+		req.setInstallableUnitInclusionRules(missingSizeIU, ProfileInclusionRules.createStrictInclusionRule(missingSizeIU));
+
+		IProvisioningPlan plan = createPlanner().getProvisioningPlan(req, context, null);
+		assertEquals(IStatus.OK, plan.getStatus().getSeverity());
+
+		for (int i = 0; i < 2; i++) {
+			IStatus status = engine.perform(plan, new SPhaseSet(new Sizing(100)), new NullProgressMonitor());
+			if (!status.matches(IStatus.WARNING) && status.getCode() != ProvisionException.ARTIFACT_INCOMPLETE_SIZING) {
+				fail("Incorrect status for missing file size during Sizing " + i);
+			}
+		}
+	}
+
 	private class SPhaseSet extends PhaseSet {
 		public SPhaseSet(Phase set) {
 			super(new Phase[] {set});
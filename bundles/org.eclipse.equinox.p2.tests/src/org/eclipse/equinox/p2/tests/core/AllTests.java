@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2007, 2010 IBM Corporation and others.
+ *  Copyright (c) 2007, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -24,6 +24,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(CollectorTest.class);
 		suite.addTestSuite(CompoundQueryableTest.class);
 		suite.addTestSuite(FileUtilsTest.class);
+		suite.addTestSuite(InterningPoolTest.class);
 		suite.addTestSuite(OrderedPropertiesTest.class);
 		suite.addTestSuite(ProvisioningAgentTest.class);
 		suite.addTestSuite(QueryTest.class);
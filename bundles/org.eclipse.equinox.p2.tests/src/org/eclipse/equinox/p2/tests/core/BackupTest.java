@@ -286,6 +286,41 @@ public class BackupTest extends AbstractProvisioningTest {
 		assertNoGarbage(store);
 	}
 
+	/**
+	 * Test backup to a directory on the same volume, next to the backed up files.
+	 */
+	public void testBackupNextToSource() throws Exception {
+		BackupStore store = new BackupStore(sourceDir, BUPREFIX);
+		store.backupAll(aDir);
+		File buDir = new File(sourceDir, store.getBackupName());
+		assertTrue("Backup directory not created next to source", buDir.isDirectory());
+		assertFalse("File not moved to backup - still exists", aTxt.exists());
+		store.restore();
+		assertFileContent("A not restored", aTxt, "A");
+		assertFileContent("B not restored", bTxt, "B");
+		assertFalse("Backup directory not cleaned up", buDir.exists());
+
+		store = new BackupStore(sourceDir, BUPREFIX);
+		store.backup(aTxt);
+		buDir = new File(sourceDir, store.getBackupName());
+		store.discard();
+		assertFalse("Discarded backup directory still in place", buDir.exists());
+		assertFalse("Discarded file restored", aTxt.exists());
+		// the discarded backup is deleted in the background
+		File[] discarded = null;
+		for (int i = 0; i < 100; i++) {
+			discarded = sourceDir.listFiles(new FilenameFilter() {
+				public boolean accept(File dir, String name) {
+					return name.startsWith(BUPREFIX);
+				}
+			});
+			if (discarded.length == 0)
+				break;
+			Thread.sleep(50);
+		}
+		assertEquals("Discarded backup not deleted", 0, discarded.length);
+	}
+
 	private void assertNoGarbage(BackupStore store) {
 		File buDir = new File(store.getBackupRoot(), BUPREFIX);
 		if (buDir.exists())
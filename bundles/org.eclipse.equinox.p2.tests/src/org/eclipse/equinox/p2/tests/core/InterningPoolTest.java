@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.core;
+
+import java.net.URI;
+import java.util.Arrays;
+import org.eclipse.equinox.internal.p2.core.helpers.InterningPool;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.IQueryResult;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class InterningPoolTest extends AbstractProvisioningTest {
+	public void testIntern() {
+		InterningPool pool = new InterningPool();
+		String id = new String("org.example.bundle");
+		assertSame("1.0", id, pool.intern(id));
+		assertSame("1.1", id, pool.intern(new String("org.example.bundle")));
+		assertNull("1.2", pool.intern(null));
+
+		Version version = Version.create("1.2.3");
+		assertSame("2.0", version, pool.intern(version));
+		assertSame("2.1", version, pool.intern(Version.create("1.2.3")));
+
+		IProvidedCapability capability = MetadataFactory.createProvidedCapability("ns", "name", version);
+		assertSame("3.0", capability, pool.intern(capability));
+		assertSame("3.1", capability, pool.intern(MetadataFactory.createProvidedCapability("ns", "name", Version.create("1.2.3"))));
+		assertNotSame("3.2", capability, pool.intern(MetadataFactory.createProvidedCapability("ns", "name", Version.create("1.2.4"))));
+	}
+
+	public void testAgentService() {
+		InterningPool pool = (InterningPool) getAgent().getService(InterningPool.SERVICE_NAME);
+		assertNotNull("1.0", pool);
+		assertSame("1.1", pool, getAgent().getService(InterningPool.SERVICE_NAME));
+	}
+
+	public void testSharedAcrossRepositories() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		URI[] locations = new URI[] {getTempFolder().toURI(), getTempFolder().toURI()};
+		for (int i = 0; i < locations.length; i++) {
+			IMetadataRepository repository = manager.createRepository(locations[i], "repo" + i, IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+			repository.addInstallableUnits(Arrays.asList(createIU("foo", Version.create("1.0.0"))));
+			manager.removeRepository(locations[i]);
+		}
+		IInstallableUnit[] units = new IInstallableUnit[locations.length];
+		for (int i = 0; i < locations.length; i++) {
+			IQueryResult<IInstallableUnit> result = manager.loadRepository(locations[i], getMonitor()).query(QueryUtil.createIUQuery("foo"), getMonitor());
+			units[i] = result.iterator().next();
+			manager.removeRepository(locations[i]);
+		}
+		assertNotSame("1.0", units[0], units[1]);
+		assertSame("1.1", units[0].getVersion(), units[1].getVersion());
+		assertSame("1.2", units[0].getId(), units[1].getId());
+	}
+}
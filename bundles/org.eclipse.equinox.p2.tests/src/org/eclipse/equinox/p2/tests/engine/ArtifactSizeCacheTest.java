@@ -0,0 +1,60 @@
+/*******************************************************************************
+ *  Copyright (c) 2013 IBM Corporation and others.
+ *  All rights reserved. This program and the accompanying materials
+ *  are made available under the terms of the Eclipse Public License v1.0
+ *  which accompanies this distribution, and is available at
+ *  http://www.eclipse.org/legal/epl-v10.html
+ * 
+ *  Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.engine;
+
+import org.eclipse.equinox.internal.p2.engine.phases.ArtifactSizeCache;
+import org.eclipse.equinox.internal.p2.metadata.ArtifactKey;
+import org.eclipse.equinox.p2.metadata.IArtifactKey;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
+import org.eclipse.equinox.p2.repository.artifact.IArtifactRepository;
+import org.eclipse.equinox.p2.repository.artifact.spi.ArtifactDescriptor;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestArtifactRepository;
+
+public class ArtifactSizeCacheTest extends AbstractProvisioningTest {
+
+	public void testCacheIsSharedPerAgent() {
+		ArtifactSizeCache cache = ArtifactSizeCache.getCache(getAgent());
+		assertNotNull(cache);
+		assertSame(cache, ArtifactSizeCache.getCache(getAgent()));
+	}
+
+	public void testCompleteSizesAreRemembered() {
+		ArtifactSizeCache cache = new ArtifactSizeCache();
+		IArtifactRepository repo = new TestArtifactRepository(getAgent());
+		IArtifactRepository other = new TestArtifactRepository(getAgent());
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "a", Version.create("1.0.0"));
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(key);
+		descriptor.setProperty(IArtifactDescriptor.ARTIFACT_SIZE, "100");
+		descriptor.setProperty(IArtifactDescriptor.DOWNLOAD_SIZE, "40");
+
+		long[] sizes = cache.put(repo, key, descriptor);
+		assertEquals(100, sizes[0]);
+		assertEquals(40, sizes[1]);
+		assertNotNull(cache.get(repo, key));
+		assertEquals(100, cache.get(repo, key)[0]);
+		assertNull(cache.get(other, key));
+	}
+
+	public void testIncompleteSizesAreNotRemembered() {
+		ArtifactSizeCache cache = new ArtifactSizeCache();
+		IArtifactRepository repo = new TestArtifactRepository(getAgent());
+		IArtifactKey key = new ArtifactKey("osgi.bundle", "b", Version.create("1.0.0"));
+		ArtifactDescriptor descriptor = new ArtifactDescriptor(key);
+		descriptor.setProperty(IArtifactDescriptor.ARTIFACT_SIZE, "100");
+
+		long[] sizes = cache.put(repo, key, descriptor);
+		assertEquals(100, sizes[0]);
+		assertEquals(-1, sizes[1]);
+		assertNull(cache.get(repo, key));
+	}
+}
@@ -423,6 +423,40 @@ public class EngineTest extends AbstractProvisioningTest {
 		assertFalse(ius.hasNext());
 	}
 
+	public void testJournalRemovedAfterOperation() throws Exception {
+		Map properties = new HashMap();
+		properties.put(IProfile.PROP_INSTALL_FOLDER, testProvisioning.getAbsolutePath());
+		IProfile profile = createProfile("testJournalRemovedAfterOperation", properties);
+		File dataDirectory = ((SimpleProfileRegistry) getProfileRegistry()).getProfileDataDirectory(profile.getProfileId());
+		File journal = new File(dataDirectory, EngineJournal.JOURNAL_FILE);
+
+		// simulate an operation that was interrupted before it could commit or roll back
+		StringBuffer buffer = new StringBuffer("begin testJournalRemovedAfterOperation\nphase install\n");
+		writeBuffer(journal, buffer);
+
+		IProvisioningPlan plan = engine.createPlan(profile, null);
+		plan.addInstallableUnit(createOSGiIU());
+		assertTrue(engine.perform(plan, new NullProgressMonitor()).isOK());
+		assertFalse(journal.exists());
+
+		plan = engine.createPlan(profile, null);
+		plan.addInstallableUnit(createBadIU());
+		assertFalse(engine.perform(plan, new NullProgressMonitor()).isOK());
+		assertFalse(journal.exists());
+	}
+
+	public void testRecoverJournal() throws Exception {
+		File dataDirectory = getTempFolder();
+		assertNull(EngineJournal.recover(dataDirectory));
+
+		File journal = new File(dataDirectory, EngineJournal.JOURNAL_FILE);
+		writeBuffer(journal, new StringBuffer("begin profile\nphase install\noperand a\n"));
+		List<String> entries = EngineJournal.recover(dataDirectory);
+		assertEquals(3, entries.size());
+		assertEquals("operand a", entries.get(2));
+		assertFalse(journal.exists());
+	}
+
 	// removing validate from engine api
 	//	public void testValidateMissingAction() {
 	//
@@ -266,6 +266,29 @@ public class CompositeMetadataRepositoryTest extends AbstractProvisioningTest {
 		assertEquals("Assert correct number of IUs", getNumUnique(repo1.query(QueryUtil.createIUAnyQuery(), null), repo2.query(QueryUtil.createIUAnyQuery(), null)), compRepo.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
 	}
 
+	public void testLoadManyChildren() throws ProvisionException {
+		CompositeMetadataRepository compRepo = createRepo(false);
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		List<URI> childLocations = new ArrayList<URI>();
+		for (int i = 0; i < 12; i++) {
+			URI childLocation = new File(repoLocation, "child" + i).toURI();
+			IMetadataRepository child = createMetadataRepository(childLocation, null);
+			child.addInstallableUnits(Arrays.asList(createIU("iu" + i)));
+			manager.removeRepository(childLocation);
+			compRepo.addChild(childLocation);
+			manager.removeRepository(childLocation);
+			childLocations.add(childLocation);
+		}
+		manager.removeRepository(repoLocation.toURI());
+
+		// reloading the composite loads all children again, possibly concurrently
+		compRepo = (CompositeMetadataRepository) manager.loadRepository(repoLocation.toURI(), null);
+		assertEquals(childLocations, compRepo.getChildren());
+		assertEquals(12, compRepo.query(QueryUtil.createIUAnyQuery(), null).toUnmodifiableSet().size());
+		for (URI childLocation : childLocations)
+			assertTrue(manager.contains(childLocation));
+	}
+
 	public void testRemoveNonexistantChild() {
 		//Setup: create an uncompressed repository
 		CompositeMetadataRepository compRepo = createRepo(false);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  Copyright (c) 2008, 2010 IBM Corporation and others.
+ *  Copyright (c) 2008, 2013 IBM Corporation and others.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -11,9 +11,11 @@
  *******************************************************************************/
 package org.eclipse.equinox.p2.tests.metadata.repository;
 
-import java.io.File;
+import java.io.*;
 import java.net.URI;
 import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.repository.MetadataRepositoryIO;
+import org.eclipse.equinox.internal.p2.repository.helpers.XZIndex;
 import org.eclipse.equinox.internal.provisional.p2.core.eventbus.*;
 import org.eclipse.equinox.internal.provisional.p2.repository.RepositoryEvent;
 import org.eclipse.equinox.p2.core.ProvisionException;
@@ -171,6 +173,116 @@ public class LocalMetadataRepositoryTest extends AbstractProvisioningTest {
 		}
 	}
 
+	public void testXZCompressedRepository() throws ProvisionException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(IRepository.PROP_COMPRESSED, "true");
+		properties.put(XZIndex.PROP_XZ_COMPRESSED, "true");
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+		repo.addInstallableUnits(Arrays.asList(createIU("foo")));
+
+		assertTrue("1.0", new File(repoLocation, "content.xml.xz").exists());
+		assertTrue("1.1", new File(repoLocation, "p2.index").exists());
+
+		// the xz compressed index alone is enough to load the repository
+		manager.removeRepository(repoLocation.toURI());
+		assertTrue("1.2", new File(repoLocation, "content.jar").delete());
+		repo = manager.loadRepository(repoLocation.toURI(), getMonitor());
+		assertEquals("1.3", 1, queryResultSize(repo.query(QueryUtil.createIUQuery("foo"), getMonitor())));
+	}
+
+	public void testXZCompressedRepositoryFallback() throws Exception {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		Map properties = new HashMap();
+		properties.put(IRepository.PROP_COMPRESSED, "true");
+		properties.put(XZIndex.PROP_XZ_COMPRESSED, "true");
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, properties);
+		repo.addInstallableUnits(Arrays.asList(createIU("foo")));
+		File xzFile = new File(repoLocation, "content.xml.xz");
+		assertTrue("1.0", xzFile.exists());
+
+		// p2.index still lists the xz compressed index first, but the jar is used
+		manager.removeRepository(repoLocation.toURI());
+		assertTrue("1.1", xzFile.delete());
+		repo = manager.loadRepository(repoLocation.toURI(), getMonitor());
+		assertEquals("1.2", 1, queryResultSize(repo.query(QueryUtil.createIUQuery("foo"), getMonitor())));
+
+		// likewise when the xz compressed index is not an xz file
+		manager.removeRepository(repoLocation.toURI());
+		writeBuffer(xzFile, new StringBuffer("not xz compressed"));
+		repo = manager.loadRepository(repoLocation.toURI(), getMonitor());
+		assertEquals("2.0", 1, queryResultSize(repo.query(QueryUtil.createIUQuery("foo"), getMonitor())));
+	}
+
+	public void testParallelParsing() throws ProvisionException {
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		IMetadataRepository repo = manager.createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		for (int i = 0; i < 1000; i++)
+			units.add(createEclipseIU("unit" + i));
+		repo.addInstallableUnits(units);
+
+		String oldThreads = System.setProperty(MetadataRepositoryIO.PROP_PARSING_THREADS, "4");
+		try {
+			// the units are parsed in several chunks
+			manager.removeRepository(repoLocation.toURI());
+			repo = manager.loadRepository(repoLocation.toURI(), getMonitor());
+		} finally {
+			if (oldThreads == null)
+				System.clearProperty(MetadataRepositoryIO.PROP_PARSING_THREADS);
+			else
+				System.setProperty(MetadataRepositoryIO.PROP_PARSING_THREADS, oldThreads);
+		}
+		assertEquals("1.0", 1000, queryResultSize(repo.query(QueryUtil.createIUAnyQuery(), getMonitor())));
+		assertEquals("1.1", 1, queryResultSize(repo.query(QueryUtil.createIUQuery("unit999"), getMonitor())));
+		assertEquals("1.2", "TestRepo", repo.getName());
+	}
+
+	public void testParallelParsingInPieces() throws Exception {
+		IMetadataRepository repo = getMetadataRepositoryManager().createRepository(repoLocation.toURI(), "TestRepo", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		for (int i = 0; i < 1000; i++)
+			units.add(createEclipseIU("unit\u00e9" + i));
+		repo.addInstallableUnits(units);
+		MetadataRepositoryIO io = new MetadataRepositoryIO(getAgent());
+		ByteArrayOutputStream document = new ByteArrayOutputStream();
+		io.write(repo, document);
+		String utf8 = document.toString("UTF-8");
+		assertTrue("0.1", utf8.indexOf("encoding='UTF-8'") != -1);
+		byte[] latin1 = utf8.replaceFirst("encoding='UTF-8'", "encoding='ISO-8859-1'").getBytes("ISO-8859-1");
+
+		String oldThreads = System.setProperty(MetadataRepositoryIO.PROP_PARSING_THREADS, "4");
+		try {
+			// the declaration is read a few bytes at a time, across refills of the buffer
+			repo = io.read(repoLocation.toURI().toURL(), new TrickleInputStream(document.toByteArray()), getMonitor());
+			assertEquals("1.0", 1000, queryResultSize(repo.query(QueryUtil.createIUAnyQuery(), getMonitor())));
+			assertEquals("1.1", 1, queryResultSize(repo.query(QueryUtil.createIUQuery("unit\u00e9999"), getMonitor())));
+
+			// units of documents in other encodings are not split
+			repo = io.read(repoLocation.toURI().toURL(), new TrickleInputStream(latin1), getMonitor());
+			assertEquals("2.0", 1000, queryResultSize(repo.query(QueryUtil.createIUAnyQuery(), getMonitor())));
+			assertEquals("2.1", 1, queryResultSize(repo.query(QueryUtil.createIUQuery("unit\u00e9999"), getMonitor())));
+		} finally {
+			if (oldThreads == null)
+				System.clearProperty(MetadataRepositoryIO.PROP_PARSING_THREADS);
+			else
+				System.setProperty(MetadataRepositoryIO.PROP_PARSING_THREADS, oldThreads);
+		}
+	}
+
+	/*
+	 * Returns at most three bytes on each read, like a slow connection.
+	 */
+	private static class TrickleInputStream extends ByteArrayInputStream {
+		TrickleInputStream(byte[] bytes) {
+			super(bytes);
+		}
+
+		public synchronized int read(byte[] b, int off, int len) {
+			return super.read(b, off, Math.min(len, 3));
+		}
+	}
+
 	/**
 	 * Tests loading a repository that has a reference to itself as a disabled repository.
 	 * @throws MalformedURLException 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -34,6 +34,7 @@ public class AllTests extends TestCase {
 		suite.addTestSuite(MultiplicityTest.class);
 		suite.addTestSuite(OSGiRangeTest.class);
 		suite.addTestSuite(OSGiVersionTest.class);
+		suite.addTestSuite(ParseCacheTest.class);
 		suite.addTestSuite(RawRangeTest.class);
 		suite.addTestSuite(RawRangeWithOriginalTest.class);
 		suite.addTestSuite(RawVersionTest.class);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2010 Cloudsmith Inc. and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc. and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -231,4 +231,29 @@ public class OSGiVersionTest extends VersionTesting {
 
 	}
 
+	public void testRawEquality() {
+		Version osgi = Version.parseVersion("1.2.3.foo");
+		Version raw = Version.parseVersion("raw:1.2.3.'foo'");
+		assertEquals(osgi, raw);
+		assertEquals(raw, osgi);
+		assertEquals(osgi.hashCode(), raw.hashCode());
+		assertEquals(0, osgi.compareTo(raw));
+		assertEquals(0, raw.compareTo(osgi));
+
+		osgi = Version.parseVersion("1.2.3");
+		raw = Version.parseVersion("raw:1.2.3.''");
+		assertEquals(osgi, raw);
+		assertEquals(osgi.hashCode(), raw.hashCode());
+	}
+
+	public void testRawCompare() {
+		assertOrder(Version.parseVersion("1.2.3.foo"), Version.parseVersion("raw:1.2.3.'fop'"));
+		assertOrder(Version.parseVersion("raw:1.2.3.'foo'"), Version.parseVersion("1.2.3.fop"));
+		assertOrder(Version.parseVersion("raw:1.2.3"), Version.parseVersion("1.2.3"));
+		assertOrder(Version.parseVersion("1.2.3.foo"), Version.parseVersion("raw:1.2.3.'foo'.0"));
+		assertOrder(Version.parseVersion("1.2.3.foo"), Version.parseVersion("raw:1.2.3p0"));
+		assertOrder(Version.parseVersion("raw:1.2.2p0"), Version.parseVersion("1.2.3"));
+		assertOrder(Version.parseVersion("1.2.3"), Version.parseVersion("raw:1.2.3.'foo'p''"));
+	}
+
 }
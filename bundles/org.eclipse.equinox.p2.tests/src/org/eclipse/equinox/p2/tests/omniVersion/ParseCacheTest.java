@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.omniVersion;
+
+import junit.framework.TestCase;
+import org.eclipse.equinox.internal.p2.metadata.ParseCache;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.VersionRange;
+
+public class ParseCacheTest extends TestCase {
+
+	public void testGetAndPut() {
+		ParseCache<String> cache = new ParseCache<String>(10);
+		assertNull(cache.get("a"));
+		cache.put("a", "A");
+		assertEquals("A", cache.get("a"));
+		assertNull(cache.get(null));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+
+	public void testGenerations() {
+		ParseCache<String> cache = new ParseCache<String>(2);
+		cache.put("a", "A");
+		cache.put("b", "B");
+		// starts a new generation, the first one is still found
+		cache.put("c", "C");
+		assertEquals("A", cache.get("a"));
+		// a moved to the new generation, which is now full
+		cache.put("d", "D");
+		// b was only in the dropped generation
+		assertNull(cache.get("b"));
+		assertEquals("C", cache.get("c"));
+		assertEquals("A", cache.get("a"));
+		assertEquals("D", cache.get("d"));
+		assertTrue(cache.size() <= 4);
+	}
+
+	public void testDisabled() {
+		ParseCache<String> cache = new ParseCache<String>(0);
+		cache.put("a", "A");
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+
+	public void testVersions() {
+		long hits = ParseCache.VERSIONS.getHits();
+		Version v = Version.create("1.2.3.parseCacheTest");
+		assertSame(v, Version.create("1.2.3.parseCacheTest"));
+		assertEquals(Version.createOSGi(1, 2, 3, "parseCacheTest"), v);
+		assertTrue(ParseCache.VERSIONS.getHits() > hits);
+		assertNull(Version.create(null));
+		try {
+			Version.create("1.2.3.parse.cache");
+			fail("period is not allowed in an OSGi qualifier");
+		} catch (IllegalArgumentException e) {
+			assertNull(ParseCache.VERSIONS.get("1.2.3.parse.cache"));
+		}
+	}
+
+	public void testRanges() {
+		VersionRange range = new VersionRange("[1.0.0.parseCacheTest,2.0.0)");
+		VersionRange again = new VersionRange("[1.0.0.parseCacheTest,2.0.0)");
+		assertEquals(range, again);
+		assertSame(range.getMinimum(), again.getMinimum());
+		assertEquals(new VersionRange(Version.create("1.0.0.parseCacheTest"), true, Version.createOSGi(2, 0, 0), false), range);
+		assertEquals(VersionRange.emptyRange, new VersionRange(null));
+		try {
+			new VersionRange("[2.0.0,1.0.0]");
+			fail("the minimum is greater than the maximum");
+		} catch (IllegalArgumentException e) {
+			assertNull(ParseCache.RANGES.get("[2.0.0,1.0.0]"));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.equinox.internal.p2.director.FilterCache;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.expression.ExpressionUtil;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class FilterCacheTest extends AbstractProvisioningTest {
+	private static IInstallableUnit createContext(String os) {
+		Map<String, String> context = new HashMap<String, String>();
+		context.put("osgi.os", os);
+		context.put("osgi.ws", "gtk");
+		return InstallableUnit.contextIU(context);
+	}
+
+	private static IMatchExpression<IInstallableUnit> createFilter(String os) {
+		// a new object on each call, unlike the filters parsed from LDAP strings
+		return ExpressionUtil.getFactory().<IInstallableUnit> matchExpression(ExpressionUtil.parse("properties['osgi.os'] == $0"), os);
+	}
+
+	public void testResults() {
+		FilterCache cache = new FilterCache(4, 10);
+		FilterCache.Results linux = cache.getResults(createContext("linux"));
+		assertTrue(linux.isMatch(null));
+		assertTrue(linux.isMatch(InstallableUnit.parseFilter("(osgi.os=linux)")));
+		assertFalse(linux.isMatch(InstallableUnit.parseFilter("(osgi.os=win32)")));
+		assertTrue(linux.isMatch(InstallableUnit.parseFilter("(&(osgi.os=linux)(osgi.ws=gtk))")));
+		assertEquals(3, linux.size());
+	}
+
+	public void testContexts() {
+		FilterCache cache = new FilterCache(4, 10);
+		FilterCache.Results linux = cache.getResults(createContext("linux"));
+		assertSame(linux, cache.getResults(createContext("linux")));
+		FilterCache.Results win32 = cache.getResults(createContext("win32"));
+		assertNotSame(linux, win32);
+		assertEquals(2, cache.size());
+
+		IMatchExpression<IInstallableUnit> filter = InstallableUnit.parseFilter("(osgi.os=win32)");
+		assertFalse(linux.isMatch(filter));
+		assertTrue(win32.isMatch(filter));
+	}
+
+	public void testEqualFilters() {
+		FilterCache.Results results = new FilterCache(4, 10).getResults(createContext("linux"));
+		IMatchExpression<IInstallableUnit> first = createFilter("linux");
+		IMatchExpression<IInstallableUnit> second = createFilter("linux");
+		assertNotSame(first, second);
+		assertTrue(results.isMatch(first));
+		assertTrue(results.isMatch(second));
+		assertFalse(results.isMatch(createFilter("win32")));
+		assertEquals(2, results.size());
+	}
+
+	public void testBounds() {
+		FilterCache cache = new FilterCache(2, 2);
+		FilterCache.Results linux = cache.getResults(createContext("linux"));
+		String[] systems = {"win32", "macosx", "aix"};
+		for (int i = 0; i < systems.length; i++)
+			assertFalse(linux.isMatch(createFilter(systems[i])));
+		assertTrue(linux.size() <= 2);
+		assertTrue(linux.isMatch(createFilter("linux")));
+
+		cache.getResults(createContext("win32"));
+		cache.getResults(createContext("macosx"));
+		assertEquals(2, cache.size());
+		assertNotSame(linux, cache.getResults(createContext("linux")));
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.*;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.internal.p2.director.RequirementMatches;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class RequirementMatchesTest extends AbstractProvisioningTest {
+	private IInstallableUnit a1;
+	private IInstallableUnit a2;
+	private IInstallableUnit a3;
+	private IInstallableUnit b1;
+	private int queries;
+	private RequirementMatches matches;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		a1 = createIU("A", Version.create("1.0.0"));
+		a2 = createIU("A", Version.create("2.0.0"), "(osgi.os=win32)", NO_PROVIDES);
+		a3 = createIU("A", Version.create("3.0.0"));
+		b1 = createIU("B", Version.create("1.0.0"));
+		final QueryableArray units = new QueryableArray(new IInstallableUnit[] {a1, a2, a3, b1});
+		IQueryable<IInstallableUnit> counting = new IQueryable<IInstallableUnit>() {
+			public IQueryResult<IInstallableUnit> query(IQuery<IInstallableUnit> query, IProgressMonitor monitor) {
+				queries++;
+				return units.query(query, monitor);
+			}
+		};
+		Map<String, String> context = new HashMap<String, String>();
+		context.put("osgi.os", "linux");
+		matches = new RequirementMatches(counting, InstallableUnit.contextIU(context));
+		matches.addUnits(units.everything());
+	}
+
+	public void testMatchesAreComputedOnce() {
+		IRequirement req = createIURequirement("A", new VersionRange("[1.0.0,3.0.0)"));
+		BitSet first = matches.getMatches(req);
+		assertEquals(2, first.cardinality());
+		assertSame(first, matches.getMatches(req));
+		assertEquals(1, queries);
+
+		// an equal requirement that is a different object is looked up again
+		IRequirement other = createIURequirement("A", new VersionRange("[1.0.0,3.0.0)"));
+		assertEquals(first, matches.getMatches(other));
+		assertEquals(2, queries);
+	}
+
+	public void testApplicableMatches() {
+		IRequirement req = createIURequirement("A", VersionRange.emptyRange);
+		List<IInstallableUnit> applicable = matches.getApplicableMatches(req);
+		// in the order the units were added, without the filtered one
+		assertEquals(Arrays.asList(new IInstallableUnit[] {a1, a3}), applicable);
+		assertEquals(3, matches.getMatches(req).cardinality());
+		assertTrue(matches.isApplicable(a1));
+		assertFalse(matches.isApplicable(a2));
+
+		// the caller owns the returned list
+		applicable.add(b1);
+		assertEquals(2, matches.getApplicableMatches(req).size());
+	}
+
+	public void testFilteredMatches() {
+		IRequirement req = createIURequirement("A", new VersionRange("[2.0.0,2.0.0]"));
+		assertTrue(matches.getApplicableMatches(req).isEmpty());
+		assertFalse(matches.getMatches(req).isEmpty());
+		assertSame(a2, matches.getUnit(matches.getMatches(req).nextSetBit(0)));
+	}
+
+	public void testNoMatches() {
+		IRequirement req = createIURequirement("C", VersionRange.emptyRange);
+		assertTrue(matches.getMatches(req).isEmpty());
+		assertTrue(matches.getApplicableMatches(req).isEmpty());
+	}
+}
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.director.RequirementsCache;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class RequirementsCacheTest extends AbstractProvisioningTest {
+	private final IRequirement requirement = createIURequirement("B", VersionRange.emptyRange);
+	private final IRequirement metaRequirement = createIURequirement("Touchpoint", VersionRange.emptyRange);
+
+	public void testPlainUnit() {
+		RequirementsCache cache = new RequirementsCache(10);
+		IInstallableUnit iu = createIU("A", DEFAULT_VERSION, new IRequirement[] {requirement});
+		assertSame(iu.getRequirements(), cache.getRequirements(iu, true));
+		assertEquals(0, cache.size());
+	}
+
+	public void testMetaRequirements() {
+		RequirementsCache cache = new RequirementsCache(10);
+		IInstallableUnit iu = createIUWithMetaRequirement("A", DEFAULT_VERSION, false, new IRequirement[] {requirement}, new IRequirement[] {metaRequirement});
+		Collection<IRequirement> withMeta = cache.getRequirements(iu, true);
+		assertEquals(Arrays.asList(new IRequirement[] {requirement, metaRequirement}), new ArrayList<IRequirement>(withMeta));
+		assertSame(withMeta, cache.getRequirements(iu, true));
+		assertSame(iu.getRequirements(), cache.getRequirements(iu, false));
+		assertEquals(1, cache.size());
+		try {
+			withMeta.add(requirement);
+			fail("the cached requirements are shared");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	public void testFragment() {
+		RequirementsCache cache = new RequirementsCache(10);
+		IInstallableUnitFragment fragment = createBundleFragment("F");
+		Collection<IRequirement> requirements = cache.getRequirements(fragment, false);
+		assertTrue(requirements.containsAll(fragment.getRequirements()));
+		assertTrue(requirements.containsAll(fragment.getHost()));
+		assertEquals(fragment.getRequirements().size() + fragment.getHost().size(), requirements.size());
+		assertSame(requirements, cache.getRequirements(fragment, false));
+	}
+
+	public void testIdentity() {
+		RequirementsCache cache = new RequirementsCache(10);
+		// equal units may be different objects with different requirements
+		IInstallableUnit first = createIUWithMetaRequirement("A", DEFAULT_VERSION, false, new IRequirement[] {requirement}, new IRequirement[] {metaRequirement});
+		IInstallableUnit second = createIUWithMetaRequirement("A", DEFAULT_VERSION, false, new IRequirement[0], new IRequirement[] {metaRequirement});
+		assertEquals(first, second);
+		assertEquals(2, cache.getRequirements(first, true).size());
+		assertEquals(1, cache.getRequirements(second, true).size());
+	}
+
+	public void testGenerations() {
+		RequirementsCache cache = new RequirementsCache(2);
+		IInstallableUnit[] ius = new IInstallableUnit[5];
+		for (int i = 0; i < ius.length; i++) {
+			ius[i] = createIUWithMetaRequirement("A" + i, DEFAULT_VERSION, false, new IRequirement[] {requirement}, new IRequirement[] {metaRequirement});
+			cache.getRequirements(ius[i], true);
+		}
+		assertTrue(cache.size() <= 4);
+		Collection<IRequirement> requirements = cache.getRequirements(ius[0], true);
+		assertEquals(2, requirements.size());
+		assertSame(requirements, cache.getRequirements(ius[0], true));
+	}
+}
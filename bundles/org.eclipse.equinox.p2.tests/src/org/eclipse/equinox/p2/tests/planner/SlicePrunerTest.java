@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.*;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.equinox.internal.p2.director.*;
+import org.eclipse.equinox.internal.p2.metadata.InstallableUnit;
+import org.eclipse.equinox.internal.provisional.p2.director.PlannerStatus;
+import org.eclipse.equinox.p2.engine.IProfile;
+import org.eclipse.equinox.p2.engine.IProvisioningPlan;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class SlicePrunerTest extends AbstractProvisioningTest {
+	private static IRequirement requires(String name) {
+		return createIURequirement(name, VersionRange.emptyRange);
+	}
+
+	private static IRequirement optionallyRequires(String name) {
+		return MetadataFactory.createRequirement(IInstallableUnit.NAMESPACE_IU_ID, name, VersionRange.emptyRange, null, true, false, true);
+	}
+
+	private static IInstallableUnit createIU(String name, IRequirement req) {
+		return createIU(name, DEFAULT_VERSION, new IRequirement[] {req});
+	}
+
+	private Set<IInstallableUnit> findImpossible(IInstallableUnit entryPoint, IInstallableUnit[] ius) {
+		QueryableArray slice = new QueryableArray(ius);
+		Map<String, String> context = new HashMap<String, String>();
+		context.put("osgi.os", "linux");
+		RequirementMatches matches = new RequirementMatches(slice, InstallableUnit.contextIU(context));
+		matches.addUnits(slice.everything());
+		return new SlicePruner(matches, false).findImpossible(Arrays.asList(ius), entryPoint);
+	}
+
+	public void testPropagation() {
+		IInstallableUnit a = createIU("A", requires("B"));
+		IInstallableUnit b = createIU("B", requires("C"));
+		IInstallableUnit c = createIU("C", requires("Missing"));
+		IInstallableUnit d = createIU("D", requires("Filtered"));
+		IInstallableUnit filtered = createIU("Filtered", "(osgi.os=win32)", NO_PROVIDES);
+		IInstallableUnit e = createIU("E", requires("F"));
+		IInstallableUnit f = createIU("F");
+		IInstallableUnit root = createIU("Root", requires("A"));
+		Set<IInstallableUnit> impossible = findImpossible(root, new IInstallableUnit[] {root, a, b, c, d, filtered, e, f});
+		assertEquals(new HashSet<IInstallableUnit>(Arrays.asList(a, b, c, d, filtered)), impossible);
+	}
+
+	public void testAlternatives() {
+		// B is one of two versions that can satisfy A
+		IInstallableUnit a = createIU("A", requires("B"));
+		IInstallableUnit b1 = createIU("B", Version.create("1.0.0"));
+		IInstallableUnit b2 = createIU("B", Version.create("2.0.0"), new IRequirement[] {requires("Missing")});
+		Set<IInstallableUnit> impossible = findImpossible(null, new IInstallableUnit[] {a, b1, b2});
+		assertEquals(Collections.singleton(b2), impossible);
+	}
+
+	public void testCycles() {
+		// C and D only require each other, E and F also require something missing
+		IInstallableUnit c = createIU("C", requires("D"));
+		IInstallableUnit d = createIU("D", requires("C"));
+		IInstallableUnit e = createIU("E", new IRequirement[] {requires("F"), requires("Missing")});
+		IInstallableUnit f = createIU("F", requires("E"));
+		Set<IInstallableUnit> impossible = findImpossible(null, new IInstallableUnit[] {c, d, e, f});
+		assertEquals(new HashSet<IInstallableUnit>(Arrays.asList(e, f)), impossible);
+	}
+
+	public void testOptionalRequirements() {
+		IInstallableUnit a = createIU("A", optionallyRequires("Missing"));
+		IInstallableUnit root = createIU("Root", requires("Missing"));
+		assertTrue(findImpossible(root, new IInstallableUnit[] {root, a}).isEmpty());
+	}
+
+	public void testPlanIsUnchanged() {
+		IInstallableUnit a1 = createIU("A", Version.create("1.0.0"), new IRequirement[] {requires("B")});
+		IInstallableUnit a2 = createIU("A", Version.create("2.0.0"), new IRequirement[] {requires("C")});
+		IInstallableUnit b = createIU("B");
+		IInstallableUnit c = createIU("C", requires("Missing"));
+		createTestMetdataRepository(new IInstallableUnit[] {a1, a2, b, c});
+		IProfile profile = createProfile("TestProfile." + getName());
+		IPlanner planner = createPlanner();
+
+		ProfileChangeRequest req = new ProfileChangeRequest(profile);
+		req.add(a1);
+		IProvisioningPlan plan = planner.getProvisioningPlan(req, null, null);
+		assertTrue(plan.getStatus().getSeverity() != IStatus.ERROR);
+		assertInstallOperand(plan, a1);
+		assertInstallOperand(plan, b);
+		assertNoOperand(plan, c);
+
+		// the newest version can not be installed, so the request fails and is explained
+		req = new ProfileChangeRequest(profile);
+		req.add(a2);
+		plan = planner.getProvisioningPlan(req, null, null);
+		assertEquals(IStatus.ERROR, plan.getStatus().getSeverity());
+		assertFalse(((PlannerStatus) plan.getStatus()).getRequestStatus().getExplanations().isEmpty());
+	}
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.equinox.internal.p2.director.ProfileChangeRequest;
+import org.eclipse.equinox.internal.p2.director.SimplePlanner;
+import org.eclipse.equinox.p2.engine.*;
+import org.eclipse.equinox.p2.metadata.*;
+import org.eclipse.equinox.p2.planner.IPlanner;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class SolveTimeLimitTest extends AbstractProvisioningTest {
+	private IInstallableUnit a;
+	private IInstallableUnit b1;
+	private IInstallableUnit b2;
+	private IProfile profile;
+	private IPlanner planner;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		a = createIU("A", Version.create("1.0.0"), new IRequirement[] {createIURequirement("B", new VersionRange("[1.0.0,3.0.0)"))});
+		b1 = createIU("B", Version.create("1.0.0"), true);
+		b2 = createIU("B", Version.create("2.0.0"), true);
+		createTestMetdataRepository(new IInstallableUnit[] {a, b1, b2});
+		profile = createProfile("TestProfile." + getName());
+		planner = createPlanner();
+	}
+
+	private IProvisioningPlan getPlan(String timeLimit) {
+		return getPlan(a, timeLimit);
+	}
+
+	private IProvisioningPlan getPlan(IInstallableUnit root, String timeLimit) {
+		ProfileChangeRequest request = new ProfileChangeRequest(profile);
+		request.add(root);
+		ProvisioningContext context = new ProvisioningContext(getAgent());
+		if (timeLimit != null)
+			context.setProperty(SimplePlanner.SOLVE_TIME_LIMIT, timeLimit);
+		return planner.getProvisioningPlan(request, context, null);
+	}
+
+	public void testOptimalPlanWithinLimit() {
+		IProvisioningPlan plan = getPlan("60000");
+		assertOK("plan", plan.getStatus());
+		assertTrue(plan.getStatus().getCode() != SimplePlanner.TIME_LIMIT_REACHED);
+		assertInstallOperand(plan, b2);
+		assertNoOperand(plan, b1);
+	}
+
+	public void testPlanWhenLimitReached() {
+		// whether the limit is reached depends on the machine, the plan is valid either way
+		IProvisioningPlan plan = getPlan("1");
+		assertTrue(plan.getStatus().isOK());
+		assertInstallOperand(plan, a);
+		assertEquals(1, plan.getFutureState().query(QueryUtil.createIUQuery("B"), null).toUnmodifiableSet().size());
+	}
+
+	public void testLimitReachedOnLargeSlice() {
+		// far too many units to solve in a millisecond
+		int names = 1000;
+		int versions = 10;
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>();
+		IRequirement[] required = new IRequirement[names];
+		for (int i = 0; i < names; i++) {
+			for (int v = 1; v <= versions; v++)
+				units.add(createIU("P" + i, Version.createOSGi(v, 0, 0), true));
+			required[i] = createIURequirement("P" + i, new VersionRange(Version.createOSGi(1, 0, 0), true, Version.createOSGi(versions + 1, 0, 0), false));
+		}
+		IInstallableUnit root = createIU("Root", Version.create("1.0.0"), required);
+		units.add(root);
+		createTestMetdataRepository(units.toArray(new IInstallableUnit[units.size()]));
+
+		IProvisioningPlan plan = getPlan(root, "1");
+		assertTrue(plan.getStatus().isOK());
+		assertEquals(SimplePlanner.TIME_LIMIT_REACHED, plan.getStatus().getCode());
+		assertInstallOperand(plan, root);
+		for (int i = 0; i < names; i++)
+			assertEquals(1, plan.getFutureState().query(QueryUtil.createIUQuery("P" + i), null).toUnmodifiableSet().size());
+	}
+
+	public void testInvalidLimit() {
+		IProvisioningPlan plan = getPlan("soon");
+		assertOK("plan", plan.getStatus());
+		assertInstallOperand(plan, b2);
+	}
+}
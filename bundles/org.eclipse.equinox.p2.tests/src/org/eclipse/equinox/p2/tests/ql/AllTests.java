@@ -20,7 +20,9 @@ public class AllTests extends TestCase {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTestSuite(EvaluatorTest.class);
+		suite.addTestSuite(ParallelMatcherTest.class);
 		suite.addTestSuite(PerformanceTest.class);
+		suite.addTestSuite(StreamingQueryResultTest.class);
 		suite.addTestSuite(TestQueryReimplementation.class);
 		return suite;
 	}
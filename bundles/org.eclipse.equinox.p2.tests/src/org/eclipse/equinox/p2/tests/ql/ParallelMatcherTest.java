@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.ql;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.director.QueryableArray;
+import org.eclipse.equinox.internal.p2.metadata.expression.ParallelMatcher;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
+import org.eclipse.equinox.p2.metadata.expression.IMatchExpression;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class ParallelMatcherTest extends AbstractProvisioningTest {
+	private static final int UNITS = 10000;
+
+	private List<IInstallableUnit> createUnits(String prefix) {
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>(UNITS);
+		for (int i = 0; i < UNITS; i++)
+			units.add(createIU(prefix + (i % 100), Version.createOSGi(1, 0, i)));
+		return units;
+	}
+
+	public void testMatchKeepsOrder() {
+		List<IInstallableUnit> units = createUnits("a");
+		IMatchExpression<IInstallableUnit> expression = ((ExpressionMatchQuery<IInstallableUnit>) QueryUtil.createIUQuery("a7")).getExpression();
+		List<IInstallableUnit> matches = ParallelMatcher.match(expression, IInstallableUnit.class, expression.createContext(), units.iterator());
+		assertEquals("1.0", UNITS / 100, matches.size());
+		Version previous = Version.emptyVersion;
+		for (IInstallableUnit unit : matches) {
+			assertEquals("1.1", "a7", unit.getId());
+			// the units were created in ascending version order
+			assertTrue("1.2", unit.getVersion().compareTo(previous) > 0);
+			previous = unit.getVersion();
+		}
+	}
+
+	public void testCompoundQueryable() {
+		IQueryable<IInstallableUnit> first = new QueryableArray(createUnits("a").toArray(new IInstallableUnit[UNITS]));
+		IQueryable<IInstallableUnit> second = new QueryableArray(createUnits("b").toArray(new IInstallableUnit[UNITS]));
+		IQueryable<IInstallableUnit> compound = QueryUtil.compoundQueryable(first, second);
+		// a full scan, no index applies
+		IQuery<IInstallableUnit> query = QueryUtil.createMatchQuery("id ~= /a1/ || id ~= /b2/");
+		assertEquals("1.0", 2 * UNITS / 100, queryResultSize(compound.query(query, null)));
+		// context queries are still evaluated as a whole
+		IQueryResult<IInstallableUnit> latest = compound.query(QueryUtil.createLatestQuery(query), null);
+		assertEquals("1.1", 2, queryResultSize(latest));
+		IQueryResult<IInstallableUnit> limited = compound.query(QueryUtil.createLimitQuery(query, 3), null);
+		assertEquals("1.2", 3, queryResultSize(limited));
+	}
+}
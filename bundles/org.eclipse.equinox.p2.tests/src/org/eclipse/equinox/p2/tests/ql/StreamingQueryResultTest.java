@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.ql;
+
+import java.util.*;
+import org.eclipse.equinox.internal.p2.metadata.expression.StreamingQueryResult;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.*;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class StreamingQueryResultTest extends AbstractProvisioningTest {
+	/*
+	 * An iterator counting the elements taken from it.
+	 */
+	static class CountingIterator<T> implements Iterator<T> {
+		private final Iterator<T> delegate;
+		int count = 0;
+
+		CountingIterator(Collection<T> elements) {
+			delegate = elements.iterator();
+		}
+
+		public boolean hasNext() {
+			return delegate.hasNext();
+		}
+
+		public T next() {
+			count++;
+			return delegate.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private List<IInstallableUnit> createUnits(int count) {
+		List<IInstallableUnit> units = new ArrayList<IInstallableUnit>(count);
+		for (int i = 0; i < count; i++)
+			units.add(createIU("iu" + i));
+		return units;
+	}
+
+	public void testLazyEvaluation() {
+		CountingIterator<String> source = new CountingIterator<String>(Arrays.asList("a", "b", "a", "c"));
+		StreamingQueryResult<String> result = new StreamingQueryResult<String>(source);
+		assertFalse("1.0", result.isEmpty());
+		assertEquals("1.1", 1, source.count);
+		assertEquals("1.2", "a", result.findFirst());
+		assertEquals("1.3", 1, source.count);
+		// duplicates are removed and the order is kept
+		assertEquals("1.4", Arrays.asList("a", "b", "c"), Arrays.asList(result.toArray(String.class)));
+		assertEquals("1.5", 4, source.count);
+		// the result can be iterated again
+		Iterator<String> iterator = result.iterator();
+		assertEquals("1.6", "a", iterator.next());
+		assertEquals("1.7", "b", iterator.next());
+		assertEquals("1.8", "c", iterator.next());
+		assertFalse("1.9", iterator.hasNext());
+		assertEquals("1.10", 3, result.size());
+	}
+
+	public void testInterleavedIterators() {
+		StreamingQueryResult<String> result = new StreamingQueryResult<String>(Arrays.asList("a", "b").iterator());
+		Iterator<String> first = result.iterator();
+		Iterator<String> second = result.iterator();
+		assertEquals("1.0", "a", first.next());
+		assertEquals("1.1", "a", second.next());
+		assertEquals("1.2", "b", second.next());
+		assertEquals("1.3", "b", first.next());
+		assertFalse("1.4", first.hasNext());
+	}
+
+	public void testMatchQueryIsEager() {
+		List<IInstallableUnit> units = createUnits(5000);
+		CountingIterator<IInstallableUnit> source = new CountingIterator<IInstallableUnit>(units);
+		IQueryResult<IInstallableUnit> result = QueryUtil.createIUQuery("iu1").perform(source);
+		// the source may change once the query returns, so every candidate was matched
+		assertEquals("1.0", units.size(), source.count);
+		units.clear();
+		assertFalse("1.1", result.isEmpty());
+		assertEquals("1.2", 1, queryResultSize(result));
+	}
+
+	public void testLimitQueryStopsEarly() {
+		List<IInstallableUnit> units = createUnits(5000);
+		CountingIterator<IInstallableUnit> source = new CountingIterator<IInstallableUnit>(units);
+		IQuery<IInstallableUnit> query = QueryUtil.createLimitQuery(QueryUtil.createMatchQuery("id ~= /iu*/"), 10);
+		IQueryResult<IInstallableUnit> result = query.perform(source);
+		assertEquals("1.0", 10, queryResultSize(result));
+		assertTrue("1.1", source.count < units.size());
+	}
+}
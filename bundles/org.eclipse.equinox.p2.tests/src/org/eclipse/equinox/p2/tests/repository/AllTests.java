@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2009, 2012 Cloudsmith Inc and others.
+ * Copyright (c) 2009, 2013 Cloudsmith Inc and others.
  * All rights reserved. This program and the accompanying materials 
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,8 +20,13 @@ public class AllTests extends TestCase {
 	public static Test suite() {
 		TestSuite suite = new TestSuite(AllTests.class.getName());
 		suite.addTestSuite(CacheManagerTest.class);
+		suite.addTestSuite(CompositeChildLoaderTest.class);
 		suite.addTestSuite(RepositoryHelperTest.class);
+		suite.addTestSuite(IndexDeltaTest.class);
 		suite.addTestSuite(RepositoryExtensionPointTest.class);
+		suite.addTestSuite(SharedRepositoryCacheTest.class);
+		suite.addTestSuite(RepositoryRefreshSchedulerTest.class);
+		suite.addTestSuite(UnavailableRepositoryCacheTest.class);
 		suite.addTestSuite(FileReaderTest2.class);
 		return suite;
 	}
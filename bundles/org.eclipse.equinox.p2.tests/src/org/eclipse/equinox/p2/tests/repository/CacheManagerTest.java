@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2011 EclipseSource.
+ * Copyright (c) 2011, 2013 EclipseSource.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -7,13 +7,15 @@
  ******************************************************************************/
 package org.eclipse.equinox.p2.tests.repository;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.net.URI;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 import junit.framework.TestCase;
 import org.eclipse.core.runtime.*;
-import org.eclipse.equinox.internal.p2.repository.CacheManager;
-import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.*;
+import org.eclipse.equinox.internal.p2.repository.helpers.IndexDelta;
 import org.eclipse.equinox.p2.core.*;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -83,6 +85,266 @@ public class CacheManagerTest extends TestCase {
 				lastModifiedInitial == cache2.lastModified());
 	}
 
+	public void testConditionalRequestForRemoteJar() throws Exception {
+		ConditionalTransport transport = new ConditionalTransport();
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		URI remoteLocation = new URI("http://example.com/repository/"); //$NON-NLS-1$
+		transport.lastModified = 1000000000000L;
+
+		File cache = manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+		assertTrue(cache.getName().endsWith(".jar")); //$NON-NLS-1$
+		assertEquals(transport.lastModified, cache.lastModified());
+		assertEquals(1, transport.downloads);
+
+		// an unchanged repository costs a single conditional request
+		File cache2 = manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(cache, cache2);
+		assertEquals(1, transport.downloads);
+		assertEquals(2, transport.requests);
+		assertEquals(0, transport.lastModifiedRequests);
+
+		transport.lastModified += ONE_HOUR;
+		File cache3 = manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(transport.lastModified, cache3.lastModified());
+		assertEquals(2, transport.downloads);
+		assertEquals(3, transport.requests);
+		assertEquals(0, transport.lastModifiedRequests);
+	}
+
+	public void testStreamedCacheCreation() throws Exception {
+		ConditionalTransport transport = new ConditionalTransport();
+		CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+		URI remoteLocation = new URI("http://example.com/repository/"); //$NON-NLS-1$
+		transport.lastModified = 1000000000000L;
+
+		CachingInputStream stream = manager.openCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+		File cache = stream.getCacheFile();
+		assertTrue(cache.getName().endsWith(".jar")); //$NON-NLS-1$
+		assertFalse(cache.exists());
+		assertEquals(1, stream.read());
+		// what the reader leaves is read into the cache on close
+		stream.close();
+		assertTrue(cache.exists());
+		assertEquals(3, cache.length());
+		assertEquals(transport.lastModified, cache.lastModified());
+		assertEquals(1, transport.streams);
+		assertEquals(0, transport.downloads);
+
+		// once cached, the index is validated as usual
+		stream = manager.openCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+		assertEquals(cache, stream.getCacheFile());
+		stream.close();
+		assertEquals(1, transport.streams);
+		assertEquals(0, transport.downloads);
+		assertEquals(1, transport.requests);
+	}
+
+	public void testIndexDeltas() throws Exception {
+		File remote = File.createTempFile("deltaRepository", ""); //$NON-NLS-1$//$NON-NLS-2$
+		assertTrue(remote.delete());
+		assertTrue(remote.mkdirs());
+		try {
+			DirectoryTransport transport = new DirectoryTransport(remote);
+			CacheManager manager = new CacheManager(new AgentLocationMock(), transport);
+			URI remoteLocation = new URI("http://example.com/repository/"); //$NON-NLS-1$
+			publishIndex(remote, null, index(0), 1, true);
+			File cache = manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+			assertEquals(Arrays.asList(new String[] {"content.jar"}), transport.downloads); //$NON-NLS-1$
+
+			// two versions behind, the chain of deltas is applied
+			publishIndex(remote, index(0), index(1), 2, true);
+			publishIndex(remote, index(1), index(2), 3, true);
+			transport.downloads.clear();
+			assertEquals(cache, manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor()));
+			assertTrue(Arrays.equals(index(2), readCache(cache)));
+			assertEquals(new File(remote, "content.jar").lastModified(), cache.lastModified()); //$NON-NLS-1$
+			assertFalse(transport.downloads.contains("content.jar")); //$NON-NLS-1$
+			assertEquals(3, transport.downloads.size());
+
+			// unchanged, a single conditional request and nothing downloaded
+			transport.downloads.clear();
+			transport.requests = 0;
+			transport.lastModifiedRequests = 0;
+			manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+			assertTrue(transport.downloads.isEmpty());
+			assertEquals(1, transport.requests);
+			assertEquals(0, transport.lastModifiedRequests);
+
+			// rewritten by a writer that does not publish deltas
+			publishIndex(remote, null, index(3), 4, false);
+			transport.downloads.clear();
+			cache = manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+			assertTrue(Arrays.equals(index(3), readCache(cache)));
+			assertTrue(transport.downloads.contains("content.jar")); //$NON-NLS-1$
+
+			// a delta that does not lead to the current digest
+			publishIndex(remote, index(3), index(4), 5, true);
+			File delta = new File(remote, "content.delta/" + IndexDelta.digest(index(3)) + IndexDelta.EXTENSION); //$NON-NLS-1$
+			assertTrue(delta.isFile());
+			writeFile(delta, IndexDelta.create(index(3), index(5)));
+			transport.downloads.clear();
+			cache = manager.createCache(remoteLocation, cachePrefix, new NullProgressMonitor());
+			assertTrue(Arrays.equals(index(4), readCache(cache)));
+			assertTrue(transport.downloads.contains("content.jar")); //$NON-NLS-1$
+		} finally {
+			File deltas = new File(remote, "content" + IndexDelta.FOLDER_SUFFIX); //$NON-NLS-1$
+			deleteFileOrDirectory(deltas);
+			deltas.delete();
+			deleteFileOrDirectory(remote);
+			remote.delete();
+		}
+	}
+
+	private static byte[] index(int version) throws UnsupportedEncodingException {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("<?xml version='1.0' encoding='UTF-8'?>\n<repository>\n  <properties size='1'>\n"); //$NON-NLS-1$
+		buffer.append("    <property name='p2.index.deltas' value='true'/>\n  </properties>\n  <units size='100'>\n"); //$NON-NLS-1$
+		for (int i = 0; i < 100; i++)
+			buffer.append("    <unit id='unit").append(i).append("' version='1.0.").append(i == version ? 1 : 0).append("'/>\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		buffer.append("  </units>\n</repository>\n"); //$NON-NLS-1$
+		return buffer.toString().getBytes("UTF-8"); //$NON-NLS-1$
+	}
+
+	/*
+	 * Writes the content.jar of a remote repository with the given time, in hours, and
+	 * optionally publishes the delta from the previous index.
+	 */
+	private static void publishIndex(File remote, byte[] previous, byte[] index, int hours, boolean publish) throws IOException {
+		File jar = new File(remote, "content.jar"); //$NON-NLS-1$
+		JarOutputStream output = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			output.putNextEntry(new JarEntry("content.xml")); //$NON-NLS-1$
+			output.write(index);
+		} finally {
+			output.close();
+		}
+		assertTrue(jar.setLastModified(1000000000000L + hours * ONE_HOUR));
+		if (publish)
+			IndexDelta.publish(new File(remote, "content" + IndexDelta.FOLDER_SUFFIX), previous, index); //$NON-NLS-1$
+	}
+
+	private static byte[] readCache(File cache) throws IOException {
+		return IndexDelta.readIndex(new File("content.xml"), cache); //$NON-NLS-1$
+	}
+
+	private static void writeFile(File file, byte[] content) throws IOException {
+		OutputStream output = new FileOutputStream(file);
+		try {
+			output.write(content);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * A transport serving the files of a local directory as a remote repository.
+	 */
+	private static class DirectoryTransport extends Transport {
+		private final File root;
+		final List<String> downloads = new ArrayList<String>();
+		int requests;
+		int lastModifiedRequests;
+
+		DirectoryTransport(File root) {
+			this.root = root;
+		}
+
+		private String getPath(URI location) {
+			String path = location.getPath();
+			return path.substring(path.indexOf("/repository/") + "/repository/".length()); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		public IStatus downloadIfModified(URI toDownload, OutputStream target, long ifModifiedSince, IProgressMonitor monitor) {
+			requests++;
+			File file = new File(root, getPath(toDownload));
+			if (ifModifiedSince > 0 && ifModifiedSince >= file.lastModified())
+				return new DownloadStatus(IStatus.OK, "test", DownloadStatus.CODE_NOT_MODIFIED, "", null); //$NON-NLS-1$ //$NON-NLS-2$
+			return download(toDownload, target, monitor);
+		}
+
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			return download(toDownload, target, monitor);
+		}
+
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			String path = getPath(toDownload);
+			File file = new File(root, path);
+			if (!file.isFile())
+				return new Status(IStatus.ERROR, "test", ProvisionException.ARTIFACT_NOT_FOUND, path, new FileNotFoundException(path)); //$NON-NLS-1$
+			try {
+				InputStream input = new FileInputStream(file);
+				try {
+					target.write(IndexDelta.readFully(input));
+				} finally {
+					input.close();
+				}
+			} catch (IOException e) {
+				// the download was stopped by the client
+				return new Status(IStatus.ERROR, "test", e.getMessage(), e); //$NON-NLS-1$
+			}
+			downloads.add(path);
+			DownloadStatus status = new DownloadStatus(IStatus.OK, "test", ""); //$NON-NLS-1$ //$NON-NLS-2$
+			status.setLastModified(file.lastModified());
+			return status;
+		}
+
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			return new FileInputStream(new File(root, getPath(toDownload)));
+		}
+
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			lastModifiedRequests++;
+			File file = new File(root, getPath(toDownload));
+			if (!file.exists())
+				throw new FileNotFoundException(toDownload.toString());
+			return file.lastModified();
+		}
+	}
+
+	/**
+	 * A transport serving a single jar that understands conditional requests.
+	 */
+	private static class ConditionalTransport extends Transport {
+		long lastModified;
+		int requests;
+		int downloads;
+		int lastModifiedRequests;
+		int streams;
+
+		public IStatus downloadIfModified(URI toDownload, OutputStream target, long ifModifiedSince, IProgressMonitor monitor) {
+			requests++;
+			if (ifModifiedSince > 0 && ifModifiedSince >= lastModified)
+				return new DownloadStatus(IStatus.OK, "test", DownloadStatus.CODE_NOT_MODIFIED, "", null); //$NON-NLS-1$ //$NON-NLS-2$
+			return download(toDownload, target, monitor);
+		}
+
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			return download(toDownload, target, monitor);
+		}
+
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			downloads++;
+			try {
+				target.write(new byte[] {1, 2, 3});
+			} catch (IOException e) {
+				return new Status(IStatus.ERROR, "test", e.getMessage(), e); //$NON-NLS-1$
+			}
+			DownloadStatus status = new DownloadStatus(IStatus.OK, "test", ""); //$NON-NLS-1$ //$NON-NLS-2$
+			status.setLastModified(lastModified);
+			return status;
+		}
+
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) {
+			streams++;
+			return new ByteArrayInputStream(new byte[] {1, 2, 3});
+		}
+
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) {
+			lastModifiedRequests++;
+			return lastModified;
+		}
+	}
+
 	private URI createRepistory() throws IOException {
 		File repository = File.createTempFile("remoteFile", ""); //$NON-NLS-1$//$NON-NLS-2$
 		assertTrue(repository.delete());
@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader.ChildLoader;
+import org.eclipse.equinox.internal.p2.repository.helpers.CompositeChildLoader.Result;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class CompositeChildLoaderTest extends AbstractProvisioningTest {
+
+	private static List<URI> children(int count) throws Exception {
+		List<URI> children = new ArrayList<URI>();
+		for (int i = 0; i < count; i++)
+			children.add(new URI("http://example.com/child" + i + "/"));
+		return children;
+	}
+
+	public void testResultsInOrder() throws Exception {
+		List<URI> children = children(10);
+		List<Result<String>> results = CompositeChildLoader.loadAll(children, new ChildLoader<String>() {
+			public String load(URI child, IProgressMonitor monitor) throws ProvisionException {
+				if (child.toString().indexOf("child3/") > 0)
+					throw new ProvisionException("failed");
+				return child.toString();
+			}
+		}, false, new NullProgressMonitor());
+		assertEquals(10, results.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(children.get(i), results.get(i).child);
+			if (i == 3)
+				assertNotNull(results.get(i).failure);
+			else
+				assertEquals(children.get(i).toString(), results.get(i).repository);
+		}
+	}
+
+	public void testStopOnFailure() throws Exception {
+		final List<URI> children = children(6);
+		long start = System.currentTimeMillis();
+		List<Result<String>> results = CompositeChildLoader.loadAll(children, new ChildLoader<String>() {
+			public String load(URI child, IProgressMonitor monitor) throws ProvisionException {
+				if (child.equals(children.get(0)))
+					throw new ProvisionException("failed");
+				// the other children take long unless they are canceled
+				long end = System.currentTimeMillis() + 20000;
+				while (System.currentTimeMillis() < end) {
+					if (monitor.isCanceled())
+						throw new OperationCanceledException();
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						// keep waiting
+					}
+				}
+				return child.toString();
+			}
+		}, true, new NullProgressMonitor());
+		assertTrue("1.0", System.currentTimeMillis() - start < 10000);
+		Result<String> last = results.get(results.size() - 1);
+		assertEquals("1.1", children.get(0), last.child);
+		assertNotNull("1.2", last.failure);
+	}
+}
@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.eclipse.equinox.internal.p2.repository.helpers.IndexDelta;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+/**
+ * Tests creating, publishing and applying repository index deltas.
+ */
+public class IndexDeltaTest extends AbstractProvisioningTest {
+
+	private static byte[] index(int units, int changed, boolean advertise) throws UnsupportedEncodingException {
+		StringBuffer buffer = new StringBuffer();
+		buffer.append("<?xml version='1.0' encoding='UTF-8'?>\n<repository>\n  <properties size='1'>\n");
+		if (advertise)
+			buffer.append("    <property name='p2.index.deltas' value='true'/>\n");
+		buffer.append("  </properties>\n  <units size='").append(units).append("'>\n");
+		for (int i = 0; i < units; i++)
+			buffer.append("    <unit id='unit").append(i).append("' version='1.0.").append(i == changed ? 1 : 0).append("'/>\n");
+		buffer.append("  </units>\n</repository>\n");
+		return buffer.toString().getBytes("UTF-8");
+	}
+
+	public void testRoundTrip() throws IOException {
+		byte[] source = index(200, -1, true);
+		byte[] target = index(200, 42, true);
+		byte[] delta = IndexDelta.create(source, target);
+		assertNotNull("1.0", delta);
+		assertTrue("1.1", delta.length < target.length / 10);
+		assertEquals("1.2", IndexDelta.digest(target), IndexDelta.getTarget(delta));
+		assertTrue("1.3", Arrays.equals(target, IndexDelta.apply(source, delta)));
+	}
+
+	public void testNonAsciiContent() throws IOException {
+		byte[] source = index(200, -1, true);
+		String text = new String(index(200, 42, true), "UTF-8");
+		byte[] target = text.replaceAll("unit42'", "unit\u00e9\u4e2d\u00fc'").getBytes("UTF-8");
+		byte[] delta = IndexDelta.create(source, target);
+		assertNotNull("1.0", delta);
+		assertTrue("1.1", Arrays.equals(target, IndexDelta.apply(source, delta)));
+	}
+
+	public void testUnrelatedContent() throws IOException {
+		byte[] source = index(200, -1, true);
+		byte[] target = "something else entirely\n".getBytes("UTF-8");
+		assertNull("1.0", IndexDelta.create(target, source));
+	}
+
+	public void testWrongSource() throws IOException {
+		byte[] source = index(50, -1, true);
+		byte[] delta = IndexDelta.create(source, index(50, 3, true));
+		try {
+			IndexDelta.apply(index(50, 7, true), delta);
+			fail("1.0 delta applied to the wrong index");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testAdvertised() throws IOException {
+		Map<String, String> properties = new HashMap<String, String>();
+		assertFalse("1.0", IndexDelta.isEnabled(properties));
+		properties.put(IndexDelta.PROP_PUBLISH_DELTAS, "true");
+		assertTrue("1.1", IndexDelta.isEnabled(properties));
+		assertTrue("1.2", IndexDelta.isAdvertised(index(5, -1, true)));
+		assertFalse("1.3", IndexDelta.isAdvertised(index(5, -1, false)));
+	}
+
+	public void testPublishChain() throws IOException {
+		File folder = new File(getTempFolder(), "content" + IndexDelta.FOLDER_SUFFIX);
+		byte[][] versions = new byte[IndexDelta.MAX_DELTAS + 3][];
+		byte[] previous = null;
+		for (int i = 0; i < versions.length; i++) {
+			versions[i] = index(100, i, true);
+			IndexDelta.publish(folder, previous, versions[i]);
+			previous = versions[i];
+		}
+		String current = new String(read(new File(folder, IndexDelta.CURRENT)), "US-ASCII");
+		assertEquals("1.0", IndexDelta.digest(versions[versions.length - 1]), current);
+
+		// follow the chain from the oldest version still covered by a delta
+		int start = versions.length - 1 - IndexDelta.MAX_DELTAS;
+		assertFalse("1.1", new File(folder, IndexDelta.digest(versions[start - 1]) + IndexDelta.EXTENSION).exists());
+		byte[] index = versions[start];
+		String digest = IndexDelta.digest(index);
+		while (!digest.equals(current)) {
+			File delta = new File(folder, digest + IndexDelta.EXTENSION);
+			assertTrue("1.2 " + delta, delta.exists());
+			index = IndexDelta.apply(index, read(delta));
+			digest = IndexDelta.digest(index);
+		}
+		assertTrue("1.3", Arrays.equals(versions[versions.length - 1], index));
+	}
+
+	private static byte[] read(File file) throws IOException {
+		InputStream input = new FileInputStream(file);
+		try {
+			return IndexDelta.readFully(input);
+		} finally {
+			input.close();
+		}
+	}
+}
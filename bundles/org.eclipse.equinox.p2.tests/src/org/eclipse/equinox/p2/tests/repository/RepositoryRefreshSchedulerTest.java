@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Arrays;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.internal.p2.repository.RepositoryRefreshScheduler;
+import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+
+public class RepositoryRefreshSchedulerTest extends AbstractProvisioningTest {
+	private File repositoryFolder;
+	private URI location;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		repositoryFolder = getTempFolder();
+		location = repositoryFolder.toURI();
+		IMetadataRepository repository = getMetadataRepositoryManager().createRepository(location, "RepositoryRefreshSchedulerTest", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		repository.addInstallableUnits(Arrays.asList(new IInstallableUnit[] {createIU("a")}));
+		// known to the manager, but not loaded
+		getMetadataRepositoryManager().removeRepository(location);
+		getMetadataRepositoryManager().addRepository(location);
+	}
+
+	protected void tearDown() throws Exception {
+		getMetadataRepositoryManager().removeRepository(location);
+		delete(repositoryFolder);
+		super.tearDown();
+	}
+
+	private AbstractRepositoryManager<?> getManager() {
+		return (AbstractRepositoryManager<?>) getMetadataRepositoryManager();
+	}
+
+	private void touchIndex() {
+		File[] files = repositoryFolder.listFiles();
+		for (int i = 0; i < files.length; i++)
+			files[i].setLastModified(files[i].lastModified() + 10000);
+	}
+
+	public void testPrefetch() throws ProvisionException {
+		assertTrue("1.0", getManager().prefetchRepository(location, null));
+		// a loaded repository is current as long as the index it was loaded from is unchanged
+		assertFalse("1.1", getManager().prefetchRepository(location, null));
+		assertFalse("1.2", getManager().prefetchRepository(location, null));
+		touchIndex();
+		assertTrue("1.3", getManager().prefetchRepository(location, null));
+		assertFalse("1.4", getManager().prefetchRepository(location, null));
+		IMetadataRepository repository = getMetadataRepositoryManager().loadRepository(location, null);
+		assertEquals("1.5", 1, queryResultSize(repository.query(QueryUtil.createIUQuery("a"), null)));
+	}
+
+	public void testPrefetchUnknownIndex() throws ProvisionException {
+		File folder = getTempFolder();
+		try {
+			// a created repository was not loaded from an index, so there is no telling whether it is current
+			getMetadataRepositoryManager().createRepository(folder.toURI(), "Created", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+			assertTrue("1.0", getManager().prefetchRepository(folder.toURI(), null));
+			assertFalse("1.1", getManager().prefetchRepository(folder.toURI(), null));
+		} finally {
+			getMetadataRepositoryManager().removeRepository(folder.toURI());
+			delete(folder);
+		}
+	}
+
+	public void testPrefetchDisabled() throws ProvisionException {
+		getMetadataRepositoryManager().setEnabled(location, false);
+		assertFalse("1.0", getManager().prefetchRepository(location, null));
+	}
+
+	public void testRefresh() throws ProvisionException {
+		RepositoryRefreshScheduler scheduler = new RepositoryRefreshScheduler(getAgent());
+		scheduler.setThreads(2);
+		// other repositories known to the test agent may not be reachable
+		IStatus result = scheduler.refresh(new NullProgressMonitor());
+		assertNotNull("1.0", result);
+		// the repository is loaded, so there is nothing left to prefetch
+		assertFalse("1.1", getManager().prefetchRepository(location, null));
+	}
+
+	public void testScheduleAndCancel() {
+		RepositoryRefreshScheduler scheduler = (RepositoryRefreshScheduler) getAgent().getService(RepositoryRefreshScheduler.SERVICE_NAME);
+		assertNotNull("1.0", scheduler);
+		assertFalse("1.1", scheduler.isScheduled());
+		scheduler.setJitter(60 * 60 * 1000);
+		scheduler.schedule();
+		assertTrue("1.2", scheduler.isScheduled());
+		scheduler.cancel();
+		assertFalse("1.3", scheduler.isScheduled());
+	}
+}
@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.equinox.internal.p2.repository.DownloadStatus;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.helpers.IndexDelta;
+import org.eclipse.equinox.internal.p2.repository.helpers.RepositoryIndexFile;
+import org.eclipse.equinox.internal.p2.repository.helpers.SharedRepositoryCache;
+import org.eclipse.equinox.p2.core.IProvisioningAgent;
+import org.eclipse.equinox.p2.core.IProvisioningAgentProvider;
+import org.eclipse.equinox.p2.core.ProvisionException;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.query.QueryUtil;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestActivator;
+
+public class SharedRepositoryCacheTest extends AbstractProvisioningTest {
+	/**
+	 * Serves the files of a folder as http://example.com/repository/, and records the files read.
+	 */
+	static class FolderTransport extends Transport {
+		private final File root;
+		final List<String> reads = new ArrayList<String>();
+
+		FolderTransport(File root) {
+			this.root = root;
+		}
+
+		private File getFile(URI location) {
+			String path = location.getPath();
+			return new File(root, path.substring(path.indexOf("/repository/") + "/repository/".length()));
+		}
+
+		public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+			return download(toDownload, target, monitor);
+		}
+
+		public IStatus download(URI toDownload, OutputStream target, IProgressMonitor monitor) {
+			File file = getFile(toDownload);
+			reads.add(file.getName());
+			try {
+				InputStream input = new FileInputStream(file);
+				try {
+					target.write(IndexDelta.readFully(input));
+				} finally {
+					input.close();
+				}
+			} catch (IOException e) {
+				return new Status(IStatus.ERROR, "test", ProvisionException.ARTIFACT_NOT_FOUND, file.getName(), e);
+			}
+			DownloadStatus status = new DownloadStatus(IStatus.OK, "test", "");
+			status.setLastModified(file.lastModified());
+			return status;
+		}
+
+		public InputStream stream(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			File file = getFile(toDownload);
+			reads.add(file.getName());
+			return new FileInputStream(file);
+		}
+
+		public long getLastModified(URI toDownload, IProgressMonitor monitor) throws FileNotFoundException {
+			File file = getFile(toDownload);
+			if (!file.exists())
+				throw new FileNotFoundException(toDownload.toString());
+			return file.lastModified();
+		}
+	}
+
+	private IMetadataRepository createRepository(String id) {
+		return createTestMetdataRepository(new IInstallableUnit[] {createIU(id)});
+	}
+
+	public void testGetAndPut() {
+		SharedRepositoryCache cache = new SharedRepositoryCache(2);
+		assertNull("1.0", cache.get("a"));
+		IMetadataRepository repository = createRepository("a");
+		cache.put("a", repository, "content.xml", 42);
+		SharedRepositoryCache.Entry entry = cache.get("a");
+		assertSame("1.1", repository, entry.repository);
+		assertEquals("1.2", "content.xml", entry.suffix);
+		assertEquals("1.3", 42, entry.timestamp);
+		assertFalse("1.4", cache.needsValidation(entry));
+		cache.validated(entry);
+		assertEquals("1.5", 1, cache.getHits());
+		assertEquals("1.6", 1, cache.getMisses());
+	}
+
+	public void testEviction() {
+		SharedRepositoryCache cache = new SharedRepositoryCache(2);
+		cache.put("a", createRepository("a"), "content.xml", 0);
+		cache.put("b", createRepository("b"), "content.xml", 0);
+		// a is now more recently used than b
+		assertNotNull("1.0", cache.get("a"));
+		cache.put("c", createRepository("c"), "content.xml", 0);
+		assertEquals("1.1", 2, cache.size());
+		assertEquals("1.2", 1, cache.getEvictions());
+		assertNotNull("1.3", cache.get("a"));
+		assertNull("1.4", cache.get("b"));
+		assertNotNull("1.5", cache.get("c"));
+	}
+
+	public void testInvalidate() {
+		SharedRepositoryCache cache = new SharedRepositoryCache(2);
+		cache.put("a", createRepository("a"), "content.xml", 0);
+		cache.invalidate("a");
+		cache.invalidate("b");
+		assertEquals("1.0", 1, cache.getReloads());
+		assertNull("1.1", cache.get("a"));
+	}
+
+	public void testRemoveAgent() {
+		SharedRepositoryCache cache = new SharedRepositoryCache(2);
+		IMetadataRepository repository = createRepository("a");
+		cache.put("a", repository, "content.xml", 0);
+		cache.removeAgent(null);
+		assertEquals("1.0", 1, cache.size());
+		cache.removeAgent(repository.getProvisioningAgent());
+		assertEquals("1.1", 0, cache.size());
+	}
+
+	public void testLoadLock() throws InterruptedException {
+		final SharedRepositoryCache cache = new SharedRepositoryCache(2);
+		assertTrue("1.0", cache.enterLoad("a", new NullProgressMonitor()));
+		// the thread loading a repository does not wait for itself
+		assertFalse("1.1", cache.enterLoad("a", new NullProgressMonitor()));
+		final boolean[] entered = new boolean[1];
+		Thread other = new Thread() {
+			public void run() {
+				entered[0] = cache.enterLoad("a", new NullProgressMonitor());
+				cache.exitLoad("a");
+			}
+		};
+		other.start();
+		other.join(200);
+		assertTrue("1.2", other.isAlive());
+		cache.exitLoad("a");
+		other.join(5000);
+		assertFalse("1.3", other.isAlive());
+		assertTrue("1.4", entered[0]);
+	}
+
+	public void testSharedJarRepository() throws Exception {
+		File folder = getTempFolder();
+		IMetadataRepositoryManager manager = getMetadataRepositoryManager();
+		IMetadataRepository local = manager.createRepository(folder.toURI(), "SharedRepositoryCacheTest", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		local.addInstallableUnits(Arrays.asList(new IInstallableUnit[] {createIU("a")}));
+		manager.removeRepository(folder.toURI());
+		File jar = new File(folder, "content.jar");
+		assertTrue("0.1", jar.exists());
+		assertFalse("0.2", new File(folder, "content.xml").exists());
+
+		SharedRepositoryCache cache = SharedRepositoryCache.getDefault();
+		if (cache == null)
+			return;
+		cache.clear();
+		URI location = new URI("http://example.com/repository/");
+		IProvisioningAgentProvider provider = (IProvisioningAgentProvider) ServiceHelper.getService(TestActivator.getContext(), IProvisioningAgentProvider.SERVICE_NAME);
+		IProvisioningAgent first = provider.createAgent(getTempFolder().toURI());
+		IProvisioningAgent second = provider.createAgent(getTempFolder().toURI());
+		try {
+			FolderTransport firstTransport = new FolderTransport(folder);
+			FolderTransport secondTransport = new FolderTransport(folder);
+			first.registerService(Transport.SERVICE_NAME, firstTransport);
+			second.registerService(Transport.SERVICE_NAME, secondTransport);
+
+			IMetadataRepository repository = ((IMetadataRepositoryManager) first.getService(IMetadataRepositoryManager.SERVICE_NAME)).loadRepository(location, getMonitor());
+			assertTrue("1.0", firstTransport.reads.contains("content.jar"));
+			// the repository knows it was read from the jar, not from the xml its factory is registered for
+			RepositoryIndexFile indexFile = ((RepositoryIndexFile.Provider) repository).getIndexFile();
+			assertEquals("1.1", URIUtil.append(location, "content.jar"), indexFile.location);
+			assertEquals("1.2", jar.lastModified(), indexFile.timestamp);
+			assertEquals("1.3", 1, cache.size());
+
+			IMetadataRepository shared = ((IMetadataRepositoryManager) second.getService(IMetadataRepositoryManager.SERVICE_NAME)).loadRepository(location, getMonitor());
+			assertSame("2.0", repository, shared);
+			assertFalse("2.1", secondTransport.reads.contains("content.jar"));
+			assertEquals("2.2", 1, queryResultSize(shared.query(QueryUtil.createIUQuery("a"), getMonitor())));
+
+			// the stopped agent is no longer reachable from the cache
+			first.stop();
+			first = null;
+			assertEquals("3.0", 0, cache.size());
+		} finally {
+			cache.clear();
+			if (first != null)
+				first.stop();
+			second.stop();
+		}
+	}
+}
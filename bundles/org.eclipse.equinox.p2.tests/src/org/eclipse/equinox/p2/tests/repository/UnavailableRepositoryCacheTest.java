@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.p2.tests.repository;
+
+import java.io.*;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Properties;
+import org.eclipse.core.runtime.URIUtil;
+import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
+import org.eclipse.equinox.internal.p2.repository.Transport;
+import org.eclipse.equinox.internal.p2.repository.helpers.AbstractRepositoryManager;
+import org.eclipse.equinox.internal.p2.repository.helpers.SharedRepositoryCache;
+import org.eclipse.equinox.internal.p2.repository.helpers.UnavailableRepositoryCache;
+import org.eclipse.equinox.p2.core.*;
+import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.repository.IRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
+import org.eclipse.equinox.p2.repository.metadata.IMetadataRepositoryManager;
+import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.p2.tests.TestActivator;
+
+public class UnavailableRepositoryCacheTest extends AbstractProvisioningTest {
+	/*
+	 * A cache whose time only moves when told to.
+	 */
+	static class ClockedCache extends UnavailableRepositoryCache {
+		long now = System.currentTimeMillis();
+
+		ClockedCache(File file, long backoff) {
+			super(file, backoff);
+		}
+
+		protected long currentTime() {
+			return now;
+		}
+	}
+
+	private File folder;
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		folder = getTempFolder();
+	}
+
+	protected void tearDown() throws Exception {
+		delete(folder);
+		super.tearDown();
+	}
+
+	public void testFailedAndAvailable() {
+		UnavailableRepositoryCache cache = new UnavailableRepositoryCache(new File(folder, "unavailable.properties"), 60 * 1000);
+		assertFalse("1.0", cache.isUnavailable("a"));
+		cache.failed("a", ProvisionException.REPOSITORY_FAILED_READ);
+		assertTrue("1.1", cache.isUnavailable("a"));
+		boolean[] unavailable = cache.isUnavailable(new String[] {"a", "b"});
+		assertTrue("1.2", unavailable[0]);
+		assertFalse("1.3", unavailable[1]);
+		cache.available("a");
+		assertFalse("1.4", cache.isUnavailable("a"));
+	}
+
+	public void testPersistence() {
+		File file = new File(folder, "unavailable.properties");
+		new UnavailableRepositoryCache(file, 60 * 1000).failed("a", ProvisionException.REPOSITORY_FAILED_READ);
+		// another session or agent sees the failure
+		assertTrue("1.0", new UnavailableRepositoryCache(file, 60 * 1000).isUnavailable("a"));
+	}
+
+	public void testFailureCode() throws IOException {
+		File file = new File(folder, "unavailable.properties");
+		UnavailableRepositoryCache cache = new UnavailableRepositoryCache(file, 60 * 1000);
+		assertEquals("1.0", 0, cache.getFailureCode("a"));
+		cache.failed("a", ProvisionException.REPOSITORY_FAILED_AUTHENTICATION);
+		assertEquals("1.1", ProvisionException.REPOSITORY_FAILED_AUTHENTICATION, new UnavailableRepositoryCache(file, 60 * 1000).getFailureCode("a"));
+
+		// entries saved without a code are read failures
+		Properties properties = new Properties();
+		properties.put("b", "1," + System.currentTimeMillis());
+		OutputStream output = new FileOutputStream(file);
+		try {
+			properties.store(output, null);
+		} finally {
+			output.close();
+		}
+		assertEquals("2.0", ProvisionException.REPOSITORY_FAILED_READ, new UnavailableRepositoryCache(file, 60 * 1000).getFailureCode("b"));
+	}
+
+	public void testBackoff() {
+		ClockedCache cache = new ClockedCache(new File(folder, "unavailable.properties"), 500);
+		cache.failed("a", ProvisionException.REPOSITORY_FAILED_READ);
+		cache.now += 499;
+		assertTrue("1.0", cache.isUnavailable("a"));
+		cache.now += 1;
+		assertFalse("1.1", cache.isUnavailable("a"));
+		// the second consecutive failure doubles the backoff
+		cache.failed("a", ProvisionException.REPOSITORY_FAILED_READ);
+		cache.now += 750;
+		assertTrue("1.2", cache.isUnavailable("a"));
+		cache.now += 250;
+		assertFalse("1.3", cache.isUnavailable("a"));
+	}
+
+	public void testGetUnavailableRepositories() throws Exception {
+		AbstractRepositoryManager<?> manager = (AbstractRepositoryManager<?>) getMetadataRepositoryManager();
+		URI missing = getTempFolder().toURI();
+		URI other = getTempFolder().toURI();
+		try {
+			getMetadataRepositoryManager().loadRepository(missing, null);
+			fail("1.0");
+		} catch (Exception e) {
+			// expected
+		}
+		URI[] unavailable = manager.getUnavailableRepositories(new URI[] {other, missing});
+		assertEquals("1.1", 1, unavailable.length);
+		assertEquals("1.2", missing, unavailable[0]);
+	}
+
+	public void testAddAndRefreshTryAgain() throws Exception {
+		File repositoryFolder = getTempFolder();
+		IMetadataRepositoryManager localManager = getMetadataRepositoryManager();
+		IMetadataRepository local = localManager.createRepository(repositoryFolder.toURI(), "UnavailableRepositoryCacheTest", IMetadataRepositoryManager.TYPE_SIMPLE_REPOSITORY, null);
+		local.addInstallableUnits(Arrays.asList(new IInstallableUnit[] {createIU("a")}));
+		localManager.removeRepository(repositoryFolder.toURI());
+
+		SharedRepositoryCache sharedCache = SharedRepositoryCache.getDefault();
+		if (sharedCache != null)
+			sharedCache.clear();
+		URI location = new URI("http://example.com/repository/");
+		IProvisioningAgentProvider provider = (IProvisioningAgentProvider) ServiceHelper.getService(TestActivator.getContext(), IProvisioningAgentProvider.SERVICE_NAME);
+		IProvisioningAgent agent = provider.createAgent(getTempFolder().toURI());
+		try {
+			agent.registerService(Transport.SERVICE_NAME, new SharedRepositoryCacheTest.FolderTransport(repositoryFolder));
+			URI dataArea = ((IAgentLocation) agent.getService(IAgentLocation.SERVICE_NAME)).getDataArea("org.eclipse.equinox.p2.repository");
+			UnavailableRepositoryCache cache = UnavailableRepositoryCache.getCache(URIUtil.toFile(dataArea));
+			if (cache == null)
+				return;
+			String key = IRepository.TYPE_METADATA + ":http:__example.com_repository";
+			IMetadataRepositoryManager manager = (IMetadataRepositoryManager) agent.getService(IMetadataRepositoryManager.SERVICE_NAME);
+			manager.addRepository(location);
+			// a previous session timed out on the location
+			cache.failed(key, ProvisionException.REPOSITORY_FAILED_READ);
+
+			try {
+				((AbstractRepositoryManager<?>) manager).prefetchRepository(location, getMonitor());
+				fail("1.0");
+			} catch (ProvisionException e) {
+				assertEquals("1.1", ProvisionException.REPOSITORY_FAILED_READ, e.getStatus().getCode());
+			}
+			// loads such as those of repository references fail without trying the location
+			try {
+				manager.loadRepository(location, getMonitor());
+				fail("1.2");
+			} catch (ProvisionException e) {
+				assertEquals("1.3", ProvisionException.REPOSITORY_FAILED_READ, e.getStatus().getCode());
+			}
+
+			// a refresh tries the location again
+			assertNotNull("2.0", manager.refreshRepository(location, getMonitor()));
+			assertFalse("2.1", cache.isUnavailable(key));
+
+			// so does adding it
+			cache.failed(key, ProvisionException.REPOSITORY_FAILED_READ);
+			manager.addRepository(location);
+			assertFalse("3.0", cache.isUnavailable(key));
+		} finally {
+			if (sharedCache != null)
+				sharedCache.clear();
+			agent.stop();
+		}
+	}
+}
@@ -22,6 +22,7 @@ import org.eclipse.equinox.p2.core.ProvisionException;
 import org.eclipse.equinox.p2.engine.*;
 import org.eclipse.equinox.p2.metadata.IArtifactKey;
 import org.eclipse.equinox.p2.metadata.IInstallableUnit;
+import org.eclipse.equinox.p2.metadata.Version;
 import org.eclipse.equinox.p2.planner.IPlanner;
 import org.eclipse.equinox.p2.publisher.eclipse.BundlesAction;
 import org.eclipse.equinox.p2.publisher.eclipse.EclipsePublisherHelper;
@@ -30,6 +31,7 @@ import org.eclipse.equinox.p2.repository.artifact.IArtifactDescriptor;
 import org.eclipse.equinox.p2.repository.artifact.IFileArtifactRepository;
 import org.eclipse.equinox.p2.repository.metadata.IMetadataRepository;
 import org.eclipse.equinox.p2.tests.AbstractProvisioningTest;
+import org.eclipse.equinox.simpleconfigurator.manipulator.SimpleConfiguratorManipulator;
 import org.eclipse.equinox.spi.p2.publisher.PublisherHelper;
 import org.eclipse.osgi.service.resolver.BundleDescription;
 
@@ -82,6 +84,35 @@ public class EclipseTouchpointTest extends AbstractProvisioningTest {
 		assertNotSame(manipulator, testManipulator);
 	}
 
+	public void testCommitOnlyWritesChangedFiles() throws Exception {
+		Properties profileProperties = new Properties();
+		File installFolder = getTempFolder();
+		profileProperties.setProperty(IProfile.PROP_INSTALL_FOLDER, installFolder.toString());
+		profileProperties.setProperty(IProfile.PROP_CACHE, installFolder.toString());
+		IProfile profile = createProfile("test", profileProperties);
+		File sourceInfo = new File(Util.getConfigurationFolder(profile), SimpleConfiguratorManipulator.SOURCE_INFO_PATH);
+
+		EclipseTouchpoint touchpoint = new EclipseTouchpoint();
+		Map parameters = new HashMap();
+		parameters.put(ActionConstants.PARM_AGENT, getAgent());
+		touchpoint.initializePhase(null, profile, "test", parameters);
+		SourceManipulator manipulator = (SourceManipulator) parameters.get(EclipseTouchpoint.PARM_SOURCE_BUNDLES);
+		assertEquals("1.0", 0, manipulator.getBundles().length);
+		touchpoint.completePhase(null, profile, "test", parameters);
+		assertOK("1.1", touchpoint.commit(profile));
+		assertFalse("1.2", sourceInfo.exists());
+
+		parameters.clear();
+		parameters.put(ActionConstants.PARM_AGENT, getAgent());
+		touchpoint.initializePhase(null, profile, "test", parameters);
+		manipulator = (SourceManipulator) parameters.get(EclipseTouchpoint.PARM_SOURCE_BUNDLES);
+		manipulator.addBundle(new File(installFolder, "plugins/a.source_1.0.0.jar"), "a.source", Version.createOSGi(1, 0, 0));
+		touchpoint.completePhase(null, profile, "test", parameters);
+		assertOK("2.0", touchpoint.commit(profile));
+		assertTrue("2.1", sourceInfo.exists());
+		assertFalse("2.2", new File(sourceInfo.getParentFile(), sourceInfo.getName() + ".tmp").exists());
+	}
+
 	public void testQualifyAction() {
 		EclipseTouchpoint touchpoint = new EclipseTouchpoint();
 		assertEquals("org.eclipse.equinox.p2.touchpoint.eclipse.installBundle", touchpoint.qualifyAction("installBundle"));
@@ -10,8 +10,11 @@ package org.eclipse.equinox.p2.tests.touchpoint.natives;
 
 import java.io.*;
 import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.IBackupStore;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.NativeTouchpoint;
+import org.eclipse.equinox.internal.p2.touchpoint.natives.Util;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.actions.ActionConstants;
 import org.eclipse.equinox.internal.p2.touchpoint.natives.actions.UnzipAction;
 import org.eclipse.equinox.p2.engine.IProfile;
@@ -288,7 +291,99 @@ public class UnzipActionTest extends AbstractProvisioningTest {
 		testUnzip(parameters, getTempFolder(), new String[] {a, b}, new String[] {c});
 	}
 
+	/**
+	 * Tests that gzipped tar files are extracted by the unzip action.
+	 */
+	public void testTarGz() {
+		String a = "a.txt";
+		String b = "foo/b.txt";
+		String c = "foo/bar/car/c.txt";
+
+		testUnzip(new HashMap<String, String>(), getTempFolder(), "a.dir.tar.gz", new String[] {a, b, c}, new String[0]);
+
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(ActionConstants.PARM_EXCLUDE, "**/c.txt");
+		testUnzip(parameters, getTempFolder(), "a.dir.tar.gz", new String[] {a, b}, new String[] {c});
+	}
+
+	/**
+	 * Tests that archives with enough entries to be extracted concurrently end up with the right content.
+	 */
+	public void testManyEntries() throws IOException {
+		File installFolder = getTempFolder();
+		File zipFile = new File(getTempFolder(), "many.zip");
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			for (int i = 0; i < 50; i++) {
+				zip.putNextEntry(new ZipEntry("dir" + (i % 5) + "/file" + i + ".txt"));
+				zip.write(("content of file " + i).getBytes());
+				zip.closeEntry();
+			}
+		} finally {
+			zip.close();
+		}
+
+		Properties profileProperties = new Properties();
+		profileProperties.setProperty(IProfile.PROP_INSTALL_FOLDER, installFolder.toString());
+		IProfile profile = createProfile("test", profileProperties);
+		InstallableUnitDescription iuDesc = new MetadataFactory.InstallableUnitDescription();
+		iuDesc.setId("test");
+		iuDesc.setVersion(DEFAULT_VERSION);
+		iuDesc.setTouchpointType(PublisherHelper.TOUCHPOINT_NATIVE);
+		IInstallableUnit iu = MetadataFactory.createInstallableUnit(iuDesc);
+
+		Map parameters = new HashMap();
+		parameters.put(ActionConstants.PARM_PROFILE, profile);
+		parameters.put("iu", iu);
+		NativeTouchpoint touchpoint = new NativeTouchpoint();
+		touchpoint.initializePhase(null, profile, "test", parameters);
+		parameters.put(ActionConstants.PARM_SOURCE, zipFile.getAbsolutePath());
+		parameters.put(ActionConstants.PARM_TARGET, installFolder.getAbsolutePath());
+		parameters = Collections.unmodifiableMap(parameters);
+
+		UnzipAction action = new UnzipAction();
+		assertOK("1.0", action.execute(parameters));
+		for (int i = 0; i < 50; i++) {
+			File file = new File(installFolder, "dir" + (i % 5) + "/file" + i + ".txt");
+			assertFileContent("1.1." + i, file, "content of file " + i);
+		}
+		action.undo(parameters);
+		for (int i = 0; i < 50; i++)
+			assertFalse("1.2." + i, new File(installFolder, "dir" + (i % 5) + "/file" + i + ".txt").exists());
+	}
+
+	/**
+	 * Tests that when several entries are extracted to the same file, the last one wins
+	 * as it would when extracting them one after the other.
+	 */
+	public void testDuplicateEntries() throws IOException {
+		File installFolder = getTempFolder();
+		File zipFile = new File(getTempFolder(), "duplicates.zip");
+		ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(zipFile));
+		try {
+			for (int i = 0; i < 20; i++) {
+				// the names differ but all of them are extracted to dup/file.txt
+				StringBuffer name = new StringBuffer("dup/");
+				for (int j = 0; j < i; j++)
+					name.append('/');
+				zip.putNextEntry(new ZipEntry(name.append("file.txt").toString()));
+				zip.write(("content " + i).getBytes());
+				zip.closeEntry();
+			}
+		} finally {
+			zip.close();
+		}
+
+		File[] files = Util.unzipFile(zipFile, installFolder, null, null, null);
+		assertEquals("1.0", 20, files.length);
+		assertFileContent("1.1", new File(installFolder, "dup/file.txt"), "content 19");
+	}
+
 	private void testUnzip(Map<String, String> params, File installFolder, String[] shoudlExistNames, String[] shoudlNotExistNames) {
+		testUnzip(params, installFolder, "a.dir.zip", shoudlExistNames, shoudlNotExistNames);
+	}
+
+	private void testUnzip(Map<String, String> params, File installFolder, String archiveName, String[] shoudlExistNames, String[] shoudlNotExistNames) {
 
 		ArrayList<File> shoudlExist = new ArrayList<File>();
 		ArrayList<File> shoudlNotExist = new ArrayList<File>();
@@ -309,8 +404,8 @@ public class UnzipActionTest extends AbstractProvisioningTest {
 		profileProperties.setProperty(IProfile.PROP_INSTALL_FOLDER, installFolder.toString());
 		IProfile profile = createProfile("test", profileProperties);
 
-		File zipSource = getTestData("1.0", "/testData/nativeTouchpoint/a.dir.zip");
-		File zipTarget = new File(installFolder, "a.dir.zip");
+		File zipSource = getTestData("1.0", "/testData/nativeTouchpoint/" + archiveName);
+		File zipTarget = new File(installFolder, archiveName);
 		copy("2.0", zipSource, zipTarget);
 
 		InstallableUnitDescription iuDesc = new MetadataFactory.InstallableUnitDescription();
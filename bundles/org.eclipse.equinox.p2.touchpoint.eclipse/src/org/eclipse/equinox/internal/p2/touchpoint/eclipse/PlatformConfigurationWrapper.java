@@ -36,6 +36,8 @@ public class PlatformConfigurationWrapper {
 	private File configFile;
 	private URI poolURI;
 	private Manipulator manipulator;
+	// only write platform.xml back if one of the phases actually changed it
+	private boolean dirty = false;
 
 	private static String FEATURES = "features/"; //$NON-NLS-1$
 
@@ -161,6 +163,7 @@ public class PlatformConfigurationWrapper {
 		if (poolSite == null) {
 			poolSite = createSite(poolURI, getDefaultPolicy());
 			configuration.add(poolSite);
+			dirty = true;
 		}
 	}
 
@@ -248,6 +251,7 @@ public class PlatformConfigurationWrapper {
 			if (linkFile != null)
 				site.setLinkFile(linkFile);
 			configuration.add(site);
+			dirty = true;
 		} else {
 			// check to see if the feature already exists in this site
 			if (site.getFeature(id, version) != null)
@@ -263,6 +267,7 @@ public class PlatformConfigurationWrapper {
 		addedFeature.setRoots(root);
 		addedFeature.setPrimary(primary);
 		site.addFeature(addedFeature);
+		dirty = true;
 		return Status.OK_STATUS;
 	}
 
@@ -277,7 +282,8 @@ public class PlatformConfigurationWrapper {
 		Site site = getSite(id, version);
 		if (site == null)
 			site = poolSite;
-		site.removeFeature(makeFeatureURL(id, version));
+		if (site.removeFeature(makeFeatureURL(id, version)) != null)
+			dirty = true;
 		// if we weren't able to remove the feature from the site because it
 		// didn't exist, then someone already did our job for us and it is ok.
 		return Status.OK_STATUS;
@@ -299,9 +305,10 @@ public class PlatformConfigurationWrapper {
 	 * @see org.eclipse.update.configurator.IPlatformConfiguration#save()
 	 */
 	public void save() throws ProvisionException {
-		if (configuration != null) {
+		if (configuration != null && dirty) {
 			configFile.getParentFile().mkdirs();
 			configuration.save(configFile, getOSGiInstallArea(manipulator));
+			dirty = false;
 		}
 	}
 
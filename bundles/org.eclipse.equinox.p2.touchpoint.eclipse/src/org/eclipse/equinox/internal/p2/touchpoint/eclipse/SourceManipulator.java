@@ -42,6 +42,7 @@ public class SourceManipulator {
 		sourceInfo.setSymbolicName(bundleId);
 		sourceInfo.setVersion(bundleVersion.toString());
 		sourceBundles.add(sourceInfo);
+		changed = true;
 	}
 
 	public void removeBundle(File bundleFile, String bundleId, Version bundleVersion) throws MalformedURLException, IOException {
@@ -53,12 +54,15 @@ public class SourceManipulator {
 			sourceInfo.setLocation(bundleFile.toURI());
 		sourceInfo.setSymbolicName(bundleId);
 		sourceInfo.setVersion(bundleVersion.toString());
-		sourceBundles.remove(sourceInfo);
+		if (sourceBundles.remove(sourceInfo))
+			changed = true;
 	}
 
 	public void save() throws IOException {
-		if (sourceBundles != null)
+		if (sourceBundles != null && changed) {
 			manipulator.saveConfiguration(sourceBundles.toArray(new BundleInfo[sourceBundles.size()]), getFileLocation(), getLauncherLocation().toURI());
+			changed = false;
+		}
 	}
 
 	private void load() throws MalformedURLException, IOException {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2008, 2010 IBM Corporation and others.
+ * Copyright (c) 2008, 2013 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials 
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 import org.eclipse.core.runtime.*;
+import org.eclipse.equinox.internal.frameworkadmin.utils.Utils;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.URLUtil;
 import org.eclipse.equinox.internal.p2.touchpoint.eclipse.Activator;
@@ -29,41 +30,48 @@ public class ConfigurationWriter implements ConfigurationConstants {
 	 * Save the given configuration to the specified location.
 	 */
 	static void save(Configuration configuration, File location, URL osgiInstallArea) throws ProvisionException {
-		XMLWriter writer = null;
+		// write to a sibling file first and move it in place once complete so that a
+		// failure half way through never leaves a truncated platform.xml behind
+		File stagingFile = Utils.getStagingFile(location);
+		boolean saved = false;
 		try {
-			OutputStream output = new BufferedOutputStream(new FileOutputStream(location));
-			writer = new XMLWriter(output);
-			Map<String, String> args = new HashMap<String, String>();
+			XMLWriter writer = new XMLWriter(new BufferedOutputStream(new FileOutputStream(stagingFile)));
+			try {
+				Map<String, String> args = new HashMap<String, String>();
 
-			// always write out an up-to-date timestamp
-			args.put(ATTRIBUTE_DATE, Long.toString(new Date().getTime()));
+				// always write out an up-to-date timestamp
+				args.put(ATTRIBUTE_DATE, Long.toString(new Date().getTime()));
 
-			String value = configuration.getSharedUR();
-			if (value != null)
-				args.put(ATTRIBUTE_SHARED_UR, value);
+				String value = configuration.getSharedUR();
+				if (value != null)
+					args.put(ATTRIBUTE_SHARED_UR, value);
 
-			value = configuration.getVersion();
-			if (value != null)
-				args.put(ATTRIBUTE_VERSION, value);
+				value = configuration.getVersion();
+				if (value != null)
+					args.put(ATTRIBUTE_VERSION, value);
 
-			args.put(ATTRIBUTE_TRANSIENT, Boolean.toString(configuration.isTransient()));
+				args.put(ATTRIBUTE_TRANSIENT, Boolean.toString(configuration.isTransient()));
 
-			writer.startTag(ELEMENT_CONFIG, args);
+				writer.startTag(ELEMENT_CONFIG, args);
 
-			for (Site site : configuration.internalGetSites(false)) {
-				write(writer, site, osgiInstallArea);
-			}
+				for (Site site : configuration.internalGetSites(false)) {
+					write(writer, site, osgiInstallArea);
+				}
 
-			writer.endTag(ELEMENT_CONFIG);
-		} catch (UnsupportedEncodingException e) {
-			throw new ProvisionException(NLS.bind(Messages.error_saving_config, location), e);
-		} catch (FileNotFoundException e) {
-			throw new ProvisionException(NLS.bind(Messages.error_saving_config, location), e);
-		} finally {
-			if (writer != null) {
-				writer.flush();
+				writer.endTag(ELEMENT_CONFIG);
+			} finally {
 				writer.close();
 			}
+			// the writer does not throw, a failed write or close only shows here
+			if (writer.checkError())
+				throw new ProvisionException(NLS.bind(Messages.error_saving_config, location));
+			Utils.replaceFile(stagingFile, location);
+			saved = true;
+		} catch (IOException e) {
+			throw new ProvisionException(NLS.bind(Messages.error_saving_config, location), e);
+		} finally {
+			if (!saved)
+				stagingFile.delete();
 		}
 		// put the config in the cache in case someone in the same session wants to read it
 		ConfigurationCache.put(location, configuration);
@@ -15,8 +15,10 @@ package org.eclipse.equinox.internal.p2.touchpoint.natives;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.equinox.internal.p2.core.helpers.ExecutorHelper;
 import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
 import org.eclipse.osgi.util.NLS;
 
@@ -41,6 +43,8 @@ import org.eclipse.osgi.util.NLS;
  * 
  * When backup is finished - the user should either call {@link #restore()} to put all 
  * of the files back, or call {@link #discard()} to remove all of the backed up "copies".
+ * A discarded backup directory is renamed out of the way and deleted by a background thread,
+ * so discarding does not hold up the caller in proportion to the size of the backup.
  * 
  * If {@link #restore()} or {@link #discard()} is not called the backup files will never be deleted.
  * 
@@ -59,7 +63,9 @@ import org.eclipse.osgi.util.NLS;
  * permissions from its parent directory. 
  * 
  * If a rename can not be performed, the backup store will make a copy and delete the original
- * file. This makes it possible to backup and restore across volume boundaries.
+ * file. This makes it possible to backup and restore across volume boundaries. Since a copy costs
+ * time proportional to the size of the file, the backup directory should preferably be placed on the
+ * same volume as the files being backed up.
  * 
  * When restoring directories they
  * will be created with permissions in a platform specific way (on UN*IX they will inherit the permissions 
@@ -97,6 +103,16 @@ public class BackupStore implements IBackupStore {
 	 */
 	private static final String ROOTCHAR = "_"; //$NON-NLS-1$
 
+	/**
+	 * Suffix given to a discarded backup directory while it is being deleted in the background.
+	 */
+	private static final String DISCARDED_SUFFIX = ".discarded"; //$NON-NLS-1$
+
+	/**
+	 * Deletes discarded backup directories. Created on first use.
+	 */
+	private static ExecutorService deleter;
+
 	/**
 	 * Map of directory File to backup root (File) - the backup root has 
 	 * a directory named {@link #backupName} where the backup is found.
@@ -137,6 +153,12 @@ public class BackupStore implements IBackupStore {
 	 */
 	private boolean closed;
 
+	/**
+	 * The directories in the backup that are known to exist. An archive backs up many files
+	 * into the same few directories, these are only created and checked once.
+	 */
+	private final Set<File> backupDirectories = new HashSet<File>();
+
 	/**
 	 * Generates a BackupStore with a default prefix of ".p2bu" for backup directory and
 	 * probe file. 
@@ -168,6 +190,22 @@ public class BackupStore implements IBackupStore {
 		backupCounter = 0;
 		restoreCounter = 0;
 		closed = false;
+		deleteDiscarded(prefix);
+	}
+
+	/*
+	 * A discarded backup may not have been fully deleted before the VM went away, remove
+	 * what an earlier store with the same prefix left behind.
+	 */
+	private void deleteDiscarded(final String prefix) {
+		File[] leftovers = backupRoot.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(DISCARDED_SUFFIX);
+			}
+		});
+		if (leftovers != null)
+			for (int i = 0; i < leftovers.length; i++)
+				deleteInBackground(leftovers[i]);
 	}
 
 	/**
@@ -255,9 +293,13 @@ public class BackupStore implements IBackupStore {
 	 */
 	private void moveToBackup(File file, File buFile) throws IOException {
 		// make sure all of the directories exist / gets created
-		buFile.getParentFile().mkdirs();
-		if (buFile.getParentFile().exists() && !buFile.getParentFile().isDirectory())
-			throw new IllegalArgumentException(NLS.bind(Messages.BackupStore_file_directory_mismatch, buFile.getParentFile().getAbsolutePath()));
+		File buDir = buFile.getParentFile();
+		if (!backupDirectories.contains(buDir)) {
+			buDir.mkdirs();
+			if (buDir.exists() && !buDir.isDirectory())
+				throw new IllegalArgumentException(NLS.bind(Messages.BackupStore_file_directory_mismatch, buDir.getAbsolutePath()));
+			backupDirectories.add(buDir);
+		}
 		if (file.renameTo(buFile)) {
 			backupCounter++;
 			return;
@@ -292,6 +334,8 @@ public class BackupStore implements IBackupStore {
 		if (!file.exists())
 			return;
 		file = makeParentCanonical(file);
+		if (isBackupDirectory(file))
+			return;
 		if (file.isDirectory()) {
 			File[] files = file.listFiles();
 			if (files != null)
@@ -311,6 +355,8 @@ public class BackupStore implements IBackupStore {
 		if (!file.exists())
 			return;
 		file = makeParentCanonical(file);
+		if (isBackupDirectory(file))
+			return;
 		if (file.isDirectory()) {
 			File[] files = file.listFiles();
 			if (files != null)
@@ -326,6 +372,16 @@ public class BackupStore implements IBackupStore {
 			backupCopy(file);
 	}
 
+	/*
+	 * The backup directory may be located inside a tree that is backed up as a whole - it must not
+	 * be moved into itself.
+	 */
+	private boolean isBackupDirectory(File file) throws IOException {
+		if (!file.getName().startsWith(backupName))
+			return false;
+		return file.getParentFile().equals(backupRoot.getCanonicalFile());
+	}
+
 	/**
 	 * Backup the file by moving it to the backup store (for later (optional) restore) but leaving
 	 * a copy of the contents in the original location.
@@ -465,15 +521,35 @@ public class BackupStore implements IBackupStore {
 	/**
 	 * Discards and closes this BackupStore. Does nothing if this store is already
 	 * restored or discarded.
+	 * The backup directory is renamed and then deleted asynchronously.
 	 */
 	public void discard() {
 		if (closed)
 			return;
 		closeSocket();
-		removeBackups();
+		File buRoot = new File(backupRoot, backupName);
+		if (buRoot.exists()) {
+			// get the directory out of the way right away so that its name can not clash with anything,
+			// and let the potentially long running delete happen in the background
+			File discarded = new File(backupRoot, backupName + DISCARDED_SUFFIX);
+			deleteInBackground(buRoot.renameTo(discarded) ? discarded : buRoot);
+		}
 		closed = true;
 	}
 
+	private static synchronized void deleteInBackground(final File buRoot) {
+		if (deleter == null) {
+			deleter = ExecutorHelper.newDaemonPool("p2 backup cleanup", 1); //$NON-NLS-1$
+		}
+		deleter.execute(new Runnable() {
+			public void run() {
+				Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+				if (!fullyDelete(buRoot))
+					logWarning(NLS.bind(Messages.BackupStore_can_not_remove_bu_directory, buRoot.getAbsolutePath()));
+			}
+		});
+	}
+
 	private void close(boolean fullyRestored) throws IOException {
 		closeSocket();
 		// check external tampering with backup store
@@ -527,7 +603,7 @@ public class BackupStore implements IBackupStore {
 	 * @param file the file or directory to fully delete
 	 * @return true if, and only if the file is deleted without errors
 	 */
-	private boolean fullyDelete(File file) {
+	private static boolean fullyDelete(File file) {
 		if (!file.exists())
 			return true;
 		if (file.isDirectory()) {
@@ -21,6 +21,7 @@ import java.io.IOException;
  */
 public class LazyBackupStore implements IBackupStore {
 	private BackupStore delegate;
+	private final File buParentDirectory;
 	private final String prefix;
 
 	/**
@@ -28,6 +29,17 @@ public class LazyBackupStore implements IBackupStore {
 	 * @param prefix The prefix to use in constructing the backup store directory
 	 */
 	public LazyBackupStore(String prefix) {
+		this(null, prefix);
+	}
+
+	/**
+	 * Creates a new lazy backup store
+	 * @param buParentDirectory The directory in which the backup store directory is created, 
+	 * or <code>null</code> to use java.io.tmpdir
+	 * @param prefix The prefix to use in constructing the backup store directory
+	 */
+	public LazyBackupStore(File buParentDirectory, String prefix) {
+		this.buParentDirectory = buParentDirectory;
 		this.prefix = prefix;
 	}
 
@@ -56,7 +68,7 @@ public class LazyBackupStore implements IBackupStore {
 	private void loadDelegate() {
 		if (delegate != null)
 			return;
-		delegate = new BackupStore(null, prefix);
+		delegate = new BackupStore(buParentDirectory, prefix);
 	}
 
 	public String getBackupName() {
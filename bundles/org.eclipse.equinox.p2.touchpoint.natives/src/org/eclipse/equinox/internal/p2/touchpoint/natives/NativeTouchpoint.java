@@ -122,6 +122,24 @@ public class NativeTouchpoint extends Touchpoint {
 		backups.remove(profile);
 	}
 
+	/**
+	 * Returns the directory the backup of the given profile should be placed in. Files
+	 * are moved to the backup with a rename, which only works without copying the file
+	 * when the backup is on the same volume, so the install folder is preferred when it
+	 * can be written to.
+	 * @param profile
+	 * @return the directory to create the backup in, or <code>null</code> for the default
+	 */
+	private static File getBackupParent(IProfile profile) {
+		String installFolder = Util.getInstallFolder(profile);
+		if (installFolder == null)
+			return null;
+		File folder = new File(installFolder);
+		if (!folder.isDirectory() || !folder.canWrite())
+			return null;
+		return folder;
+	}
+
 	/**
 	 * Gets the transactional state associated with a profile. A transactional state is
 	 * created if it did not exist.
@@ -131,7 +149,7 @@ public class NativeTouchpoint extends Touchpoint {
 	private static synchronized IBackupStore getBackupStore(IProfile profile) {
 		IBackupStore store = backups.get(profile);
 		if (store == null) {
-			store = new LazyBackupStore(escape(profile.getProfileId()));
+			store = new LazyBackupStore(getBackupParent(profile), escape(profile.getProfileId()));
 			backups.put(profile, store);
 		}
 		return store;
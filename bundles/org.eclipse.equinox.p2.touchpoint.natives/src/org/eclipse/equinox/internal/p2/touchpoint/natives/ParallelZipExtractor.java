@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2013 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.equinox.internal.p2.touchpoint.natives;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.eclipse.equinox.internal.p2.core.helpers.ExecutorHelper;
+
+/**
+ * Writes the content of a set of zip entries to their target files using a bounded
+ * number of threads. The zip file is accessed through its central directory so each
+ * entry can be read independently of the others.
+ * <p>
+ * The target files are expected to have been prepared (backed up, parent directories
+ * created) before the extraction starts, and to be distinct since they are written
+ * concurrently.
+ */
+class ParallelZipExtractor {
+	/**
+	 * System property to limit the number of threads used to extract a single archive.
+	 */
+	static final String PROP_UNZIP_THREADS = "eclipse.p2.unzip.threads"; //$NON-NLS-1$
+
+	// archives with fewer files than this are not worth handing to other threads
+	private static final int MIN_PARALLEL_ENTRIES = 4;
+
+	private final ZipFile zip;
+	private final List<ZipEntry> entries;
+	private final List<File> targets;
+
+	ParallelZipExtractor(ZipFile zip, List<ZipEntry> entries, List<File> targets) {
+		this.zip = zip;
+		this.entries = entries;
+		this.targets = targets;
+	}
+
+	void run() throws IOException {
+		int threads = Math.min(ExecutorHelper.getThreadCount(PROP_UNZIP_THREADS, Runtime.getRuntime().availableProcessors()), entries.size());
+		if (threads <= 1 || entries.size() < MIN_PARALLEL_ENTRIES) {
+			for (int i = 0; i < entries.size(); i++)
+				extract(entries.get(i), targets.get(i));
+			return;
+		}
+
+		ExecutorService executor = ExecutorHelper.newDaemonPool("p2 unzip", threads); //$NON-NLS-1$
+		try {
+			List<Future<Object>> results = new ArrayList<Future<Object>>(entries.size());
+			for (int i = 0; i < entries.size(); i++) {
+				final ZipEntry entry = entries.get(i);
+				final File target = targets.get(i);
+				results.add(executor.submit(new Callable<Object>() {
+					public Object call() throws IOException {
+						extract(entry, target);
+						return null;
+					}
+				}));
+			}
+			for (Future<Object> result : results)
+				waitFor(result);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/*
+	 * The file is sized to the entry up front so the file system can lay it out in one piece
+	 * while several entries are being written at the same time.
+	 */
+	private void extract(ZipEntry entry, File target) throws IOException {
+		RandomAccessFile out;
+		try {
+			out = new RandomAccessFile(target, "rw"); //$NON-NLS-1$
+		} catch (FileNotFoundException e) {
+			// TEMP: ignore this for now in case we're trying to replace
+			// a running eclipse.exe
+			return;
+		}
+		InputStream in = zip.getInputStream(entry);
+		try {
+			long size = entry.getSize();
+			if (size > 0)
+				out.setLength(size);
+			long written = 0;
+			byte[] buffer = new byte[16 * 1024];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				out.write(buffer, 0, len);
+				written += len;
+			}
+			if (written != size)
+				out.setLength(written);
+		} finally {
+			try {
+				in.close();
+			} finally {
+				out.close();
+			}
+		}
+		if (entry.getTime() != -1)
+			target.setLastModified(entry.getTime());
+	}
+
+	private static void waitFor(Future<Object> result) throws IOException {
+		try {
+			ExecutorHelper.getResult(result);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			IOException ioe = new IOException(cause.getMessage());
+			ioe.initCause(cause);
+			throw ioe;
+		}
+	}
+}
@@ -15,10 +15,9 @@ import java.net.URI;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.*;
 import org.eclipse.core.runtime.*;
-import org.eclipse.equinox.internal.p2.core.helpers.LogHelper;
+import org.eclipse.equinox.internal.p2.core.helpers.*;
 import org.eclipse.equinox.p2.core.*;
 import org.eclipse.equinox.p2.engine.IProfile;
 import org.eclipse.equinox.p2.repository.IRepository;
@@ -91,19 +90,63 @@ public class Util {
 	 * monitor and backup store may be null.
 	 * It takes in count exclude/exclude pattern (that can be null, case when everything is unzipped).
 	 * If a path is specified, the path is consider as entry point in zip, as when the to directory in zip would have been the specified path.
+	 * <p>
+	 * The zip central directory is read up front so that entries can be extracted concurrently.
+	 * Archives that are not zip files but (optionally gzipped) tar files are extracted as well.
 	 */
 	public static File[] unzipFile(File zipFile, File outputDir, String path, String[] includePatterns, String[] excludePatterns, IBackupStore store, String taskName, IProgressMonitor monitor) throws IOException {
-		InputStream in = new FileInputStream(zipFile);
+		ZipFile zip;
 		try {
-			return unzipStream(in, zipFile.length(), outputDir, path, includePatterns, excludePatterns, store, taskName, monitor);
+			zip = new ZipFile(zipFile);
+		} catch (ZipException e) {
+			// not a zip file, give tar a chance before reporting the original problem
+			if (isTarFile(zipFile))
+				return untarFile(zipFile, outputDir, path, includePatterns, excludePatterns, store);
+			throw new IOException(NLS.bind(Messages.Util_Error_Unzipping, zipFile, e.getMessage()));
+		}
+		try {
+			return unzipFile(zip, outputDir, new EntryFilter(path, includePatterns, excludePatterns), store);
 		} catch (IOException e) {
 			// add the file name to the message
 			throw new IOException(NLS.bind(Messages.Util_Error_Unzipping, zipFile, e.getMessage()));
 		} finally {
-			in.close();
+			zip.close();
 		}
 	}
 
+	private static File[] unzipFile(ZipFile zip, File outputDir, EntryFilter filter, IBackupStore store) throws IOException {
+		Enumeration<? extends ZipEntry> entries = zip.entries();
+		if (!entries.hasMoreElements())
+			// There must be at least one entry in a zip file.
+			throw new IOException(Messages.Util_Invalid_Zip_File_Format);
+
+		// Directories, backups and deletions are done up front on this thread since the
+		// backup store is not thread safe; only the file content is written concurrently.
+		// An entry whose target appears again later in the archive is skipped: written one
+		// after the other the last one would win, so only that one is written.
+		ArrayList<File> unzippedFiles = new ArrayList<File>();
+		Map<File, ZipEntry> fileEntries = new LinkedHashMap<File, ZipEntry>();
+		while (entries.hasMoreElements()) {
+			ZipEntry ze = entries.nextElement();
+			String name = filter.getTargetName(ze.getName());
+			if (name == null)
+				continue;
+			File outFile = new File(outputDir, name);
+			unzippedFiles.add(outFile);
+			if (ze.isDirectory()) {
+				outFile.mkdirs();
+			} else {
+				if (!fileEntries.containsKey(outFile))
+					prepareTarget(outFile, store);
+				fileEntries.put(outFile, ze);
+			}
+		}
+
+		List<File> fileTargets = new ArrayList<File>(fileEntries.keySet());
+		new ParallelZipExtractor(zip, new ArrayList<ZipEntry>(fileEntries.values()), fileTargets).run();
+		return unzippedFiles.toArray(new File[unzippedFiles.size()]);
+	}
+
 	/**
 	 * Unzip from an InputStream to an output directory using backup of overwritten files
 	 * if backup store is not null.
@@ -129,81 +172,186 @@ public class Util {
 			throw new IOException(Messages.Util_Invalid_Zip_File_Format);
 		}
 
-		if (path != null && path.trim().length() == 0)
-			path = null;
-		Pattern pathRegex = path == null ? null : createAntStylePattern("(" + path + ")(*)"); //$NON-NLS-1$ //$NON-NLS-2$
-
-		Collection<Pattern> includeRegexp = new ArrayList<Pattern>();
-		Collection<Pattern> excludeRegexp = new ArrayList<Pattern>();
-		if (includePatterns != null) {
-			for (String pattern : includePatterns) {
-				if (pattern != null) {
-					includeRegexp.add(createAntStylePattern(pattern));
+		EntryFilter filter = new EntryFilter(path, includePatterns, excludePatterns);
+		ArrayList<File> unzippedFiles = new ArrayList<File>();
+		do {
+			String name = filter.getTargetName(ze.getName());
+			if (name != null) {
+				File outFile = new File(outputDir, name);
+				unzippedFiles.add(outFile);
+				if (ze.isDirectory()) {
+					outFile.mkdirs();
+				} else {
+					prepareTarget(outFile, store);
+					writeEntry(in, outFile, ze.getTime());
 				}
 			}
+			in.closeEntry();
+		} while ((ze = in.getNextEntry()) != null);
+		in.close();
+
+		return unzippedFiles.toArray(new File[unzippedFiles.size()]);
+	}
+
+	/**
+	 * Extract a tar file, optionally gzipped, into the output directory using backup of
+	 * overwritten files if backup store is not null. Entries are selected the same way
+	 * as for {@link #unzipFile(File, File, String, String[], String[], IBackupStore, String, IProgressMonitor)}.
+	 * Tar archives have no central directory so they are extracted sequentially.
+	 */
+	public static File[] untarFile(File tarFile, File outputDir, String path, String[] includePatterns, String[] excludePatterns, IBackupStore store) throws IOException {
+		TarInputStream in;
+		try {
+			in = new TarInputStream(openTarStream(tarFile));
+		} catch (TarException e) {
+			throw new IOException(NLS.bind(Messages.Util_Error_Unzipping, tarFile, e.getMessage()));
 		}
-		if (excludePatterns != null) {
-			for (String pattern : excludePatterns) {
-				if (pattern != null) {
-					excludeRegexp.add(createAntStylePattern(pattern));
+		EntryFilter filter = new EntryFilter(path, includePatterns, excludePatterns);
+		ArrayList<File> extractedFiles = new ArrayList<File>();
+		try {
+			TarEntry entry;
+			while ((entry = in.getNextEntry()) != null) {
+				String name = filter.getTargetName(entry.getName());
+				if (name == null)
+					continue;
+				File outFile = new File(outputDir, name);
+				extractedFiles.add(outFile);
+				if (entry.getFileType() == TarEntry.DIRECTORY) {
+					outFile.mkdirs();
+				} else if (entry.getFileType() == TarEntry.FILE) {
+					prepareTarget(outFile, store);
+					// tar entries carry their time stamp in seconds
+					writeEntry(in, outFile, entry.getTime() * 1000);
 				}
 			}
+		} catch (TarException e) {
+			throw new IOException(NLS.bind(Messages.Util_Error_Unzipping, tarFile, e.getMessage()));
+		} finally {
+			in.close();
 		}
-		ArrayList<File> unzippedFiles = new ArrayList<File>();
-		do {
-			String name = ze.getName();
-			if (pathRegex == null || pathRegex.matcher(name).matches()) {
-				boolean unzip = includeRegexp.isEmpty();
-				for (Pattern pattern : includeRegexp) {
-					unzip = pattern.matcher(name).matches();
-					if (unzip)
-						break;
+		return extractedFiles.toArray(new File[extractedFiles.size()]);
+	}
+
+	private static boolean isTarFile(File file) {
+		InputStream in = null;
+		try {
+			in = openTarStream(file);
+			new TarInputStream(in).getNextEntry();
+			return true;
+		} catch (TarException e) {
+			return false;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// ignore
 				}
-				if (unzip && !excludeRegexp.isEmpty()) {
-					for (Pattern pattern : excludeRegexp) {
-						if (pattern.matcher(name).matches()) {
-							unzip = false;
-							break;
-						}
+			}
+		}
+	}
+
+	private static InputStream openTarStream(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		in.mark(2);
+		int magic = in.read() | (in.read() << 8);
+		in.reset();
+		if (magic == GZIPInputStream.GZIP_MAGIC)
+			return new GZIPInputStream(in);
+		return in;
+	}
+
+	/*
+	 * Make room for the given file, backing up or deleting what is there now.
+	 */
+	private static void prepareTarget(File outFile, IBackupStore store) throws IOException {
+		if (outFile.exists()) {
+			if (store != null)
+				store.backup(outFile);
+			else
+				outFile.delete();
+		} else {
+			outFile.getParentFile().mkdirs();
+		}
+	}
+
+	/*
+	 * Write the current entry of the given archive stream to the file. The stream is left open.
+	 */
+	private static void writeEntry(InputStream in, File outFile, long time) throws IOException {
+		try {
+			copyStream(in, false, new FileOutputStream(outFile), true);
+		} catch (FileNotFoundException e) {
+			// TEMP: ignore this for now in case we're trying to replace
+			// a running eclipse.exe
+		}
+		if (time != -1)
+			outFile.setLastModified(time);
+	}
+
+	/**
+	 * Selects the archive entries to extract and computes their name relative to the
+	 * output directory based on the optional path, include and exclude patterns.
+	 */
+	private static class EntryFilter {
+		private final Pattern pathRegex;
+		private final Collection<Pattern> includeRegexp = new ArrayList<Pattern>();
+		private final Collection<Pattern> excludeRegexp = new ArrayList<Pattern>();
+
+		EntryFilter(String path, String[] includePatterns, String[] excludePatterns) {
+			if (path != null && path.trim().length() == 0)
+				path = null;
+			pathRegex = path == null ? null : createAntStylePattern("(" + path + ")(*)"); //$NON-NLS-1$ //$NON-NLS-2$
+			if (includePatterns != null) {
+				for (String pattern : includePatterns) {
+					if (pattern != null) {
+						includeRegexp.add(createAntStylePattern(pattern));
 					}
 				}
-				if (unzip) {
-					if (pathRegex != null) {
-						Matcher matcher = pathRegex.matcher(name);
-						if (matcher.matches()) {
-							name = matcher.group(2);
-							if (name.startsWith("/")) //$NON-NLS-1$
-								name = name.substring(1);
-						}
-					}
-					File outFile = new File(outputDir, name);
-					unzippedFiles.add(outFile);
-					if (ze.isDirectory()) {
-						outFile.mkdirs();
-					} else {
-						if (outFile.exists()) {
-							if (store != null)
-								store.backup(outFile);
-							else
-								outFile.delete();
-						} else {
-							outFile.getParentFile().mkdirs();
-						}
-						try {
-							copyStream(in, false, new FileOutputStream(outFile), true);
-						} catch (FileNotFoundException e) {
-							// TEMP: ignore this for now in case we're trying to replace
-							// a running eclipse.exe
-						}
-						outFile.setLastModified(ze.getTime());
+			}
+			if (excludePatterns != null) {
+				for (String pattern : excludePatterns) {
+					if (pattern != null) {
+						excludeRegexp.add(createAntStylePattern(pattern));
 					}
 				}
 			}
-			in.closeEntry();
-		} while ((ze = in.getNextEntry()) != null);
-		in.close();
+		}
 
-		return unzippedFiles.toArray(new File[unzippedFiles.size()]);
+		/*
+		 * Return the name of the entry relative to the output directory, or null if it is not to be extracted.
+		 */
+		String getTargetName(String name) {
+			if (pathRegex != null && !pathRegex.matcher(name).matches())
+				return null;
+			boolean unzip = includeRegexp.isEmpty();
+			for (Pattern pattern : includeRegexp) {
+				unzip = pattern.matcher(name).matches();
+				if (unzip)
+					break;
+			}
+			if (unzip && !excludeRegexp.isEmpty()) {
+				for (Pattern pattern : excludeRegexp) {
+					if (pattern.matcher(name).matches()) {
+						unzip = false;
+						break;
+					}
+				}
+			}
+			if (!unzip)
+				return null;
+			if (pathRegex != null) {
+				Matcher matcher = pathRegex.matcher(name);
+				if (matcher.matches()) {
+					name = matcher.group(2);
+					if (name.startsWith("/")) //$NON-NLS-1$
+						name = name.substring(1);
+				}
+			}
+			return name;
+		}
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 Cloudsmith Inc.
+ * Copyright (c) 2006, 2013 Cloudsmith Inc.
  *  All rights reserved. This program and the accompanying materials
  *  are made available under the terms of the Eclipse Public License v1.0
  *  which accompanies this distribution, and is available at
@@ -20,7 +20,12 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -37,6 +42,7 @@ import org.eclipse.ecf.filetransfer.IFileTransferListener;
 import org.eclipse.ecf.filetransfer.IFileTransferPausable;
 import org.eclipse.ecf.filetransfer.IIncomingFileTransfer;
 import org.eclipse.ecf.filetransfer.IRetrieveFileTransferContainerAdapter;
+import org.eclipse.ecf.filetransfer.IRetrieveFileTransferOptions;
 import org.eclipse.ecf.filetransfer.IncomingFileTransferException;
 import org.eclipse.ecf.filetransfer.UserCancelledException;
 import org.eclipse.ecf.filetransfer.events.IFileTransferConnectStartEvent;
@@ -85,6 +91,10 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		}
 	}
 
+	private static final int HTTP_NOT_MODIFIED = 304;
+	// size of the pipe between the transfer thread and the reader of a streamed download
+	private static final int PIPE_SIZE = 64 * 1024;
+
 	private static IFileReaderProbe testProbe;
 	private boolean closeStreamWhenFinished = false;
 	private Exception exception;
@@ -105,6 +115,8 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	private boolean isPause = false;
 	private boolean hasPaused = false;
 	private IFileTransferPausable pasuable = null;
+	private long ifModifiedSince = 0;
+	private boolean notModified = false;
 
 
 	/**
@@ -261,7 +273,13 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	}
 
 	public InputStream read(URI url, final IProgressMonitor monitor) throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
-		final PipedInputStream input = new PipedInputStream();
+		final PipedInputStream input = new PipedInputStream() {
+			{
+				// the default pipe of 1024 bytes keeps the transfer thread waiting on a reader
+				// that is busy parsing, instead of letting it receive ahead
+				buffer = new byte[PIPE_SIZE];
+			}
+		};
 		PipedOutputStream output;
 		try {
 			output = new PipedOutputStream(input);
@@ -343,6 +361,27 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		readInto(uri, anOutputStream, -1, monitor);
 	}
 
+	/**
+	 * Reads the given URI into the stream unless the remote file has not been modified after
+	 * the given time, in which case nothing is written and {@link #isNotModified()} returns true.
+	 */
+	public void readIfModified(URI uri, OutputStream anOutputStream, long modifiedSince, IProgressMonitor monitor) //
+			throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
+		ifModifiedSince = modifiedSince;
+		try {
+			readInto(uri, anOutputStream, -1, monitor);
+		} finally {
+			ifModifiedSince = 0;
+		}
+	}
+
+	/**
+	 * Returns whether the last conditional read found the remote file unmodified.
+	 */
+	public boolean isNotModified() {
+		return notModified;
+	}
+
 	public boolean belongsTo(Object family) {
 		return family == this;
 	}
@@ -409,6 +448,15 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		this.monitorStarted = false;
 		this.theOutputStream = outputStream;
 		this.requestUri = uri;
+		this.notModified = false;
+
+		Map<String, Object> options = null;
+		if (ifModifiedSince > 0) {
+			Map<String, String> headers = new HashMap<String, String>();
+			headers.put("If-Modified-Since", formatHttpDate(ifModifiedSince)); //$NON-NLS-1$
+			options = new HashMap<String, Object>();
+			options.put(IRetrieveFileTransferOptions.REQUEST_HEADERS, headers);
+		}
 
 		for (int retryCount = 0;; retryCount++) {
 			if (monitor != null && monitor.isCanceled())
@@ -417,9 +465,9 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 			try {
 				IFileID fileID = FileIDFactory.getDefault().createFileID(adapter.getRetrieveNamespace(), uri.toString());
 				if (range != null)
-					adapter.sendRetrieveRequest(fileID, range, this, null);
+					adapter.sendRetrieveRequest(fileID, range, this, options);
 				else
-					adapter.sendRetrieveRequest(fileID, this, null);
+					adapter.sendRetrieveRequest(fileID, this, options);
 			} catch (IncomingFileTransferException e) {
 				exception = e;
 			} catch (FileCreateException e) {
@@ -463,6 +511,15 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 	 */
 	private boolean checkException(URI uri, int attemptCounter) throws CoreException, FileNotFoundException, AuthenticationFailedException, JREHttpClientRequiredException {
 		// note that 'exception' could have been captured in a callback
+		if (exception != null && ifModifiedSince > 0) {
+			// the answer to a conditional request is not an error
+			Throwable t = RepositoryStatusHelper.unwind(exception);
+			if (t instanceof IncomingFileTransferException && ((IncomingFileTransferException) t).getErrorCode() == HTTP_NOT_MODIFIED) {
+				exception = null;
+				notModified = true;
+				return true;
+			}
+		}
 		if (exception != null) {
 			// check if HTTP client needs to be changed
 			RepositoryStatusHelper.checkJREHttpClientRequired(exception);
@@ -502,6 +559,12 @@ public final class FileReader extends FileTransferJob implements IFileTransferLi
 		return true;
 	}
 
+	private static String formatHttpDate(long time) {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US); //$NON-NLS-1$
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return format.format(new Date(time));
+	}
+
 	protected Exception getException() {
 		return exception;
 	}
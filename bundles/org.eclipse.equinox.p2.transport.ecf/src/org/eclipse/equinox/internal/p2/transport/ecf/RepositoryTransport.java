@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 IBM Corporation and other.
+ * Copyright (c) 2006, 2013 IBM Corporation and other.
  * The code, documentation and other materials contained herein have been
  * licensed under the Eclipse Public License - v 1.0 by the copyright holder
  * listed above, as the Initial Contributor under such license. The text of
@@ -66,6 +66,14 @@ public class RepositoryTransport extends Transport {
 	}
 
 	public IStatus download(URI toDownload, OutputStream target, long startPos, IProgressMonitor monitor) {
+		return download(toDownload, target, startPos, 0, monitor);
+	}
+
+	public IStatus downloadIfModified(URI toDownload, OutputStream target, long ifModifiedSince, IProgressMonitor monitor) {
+		return download(toDownload, target, -1, ifModifiedSince, monitor);
+	}
+
+	private IStatus download(URI toDownload, OutputStream target, long startPos, long ifModifiedSince, IProgressMonitor monitor) {
 
 		boolean promptUser = false;
 		boolean useJREHttp = false;
@@ -98,13 +106,19 @@ public class RepositoryTransport extends Transport {
 							eventBus.addListener(listener);
 						}
 					}
-					reader.readInto(toDownload, target, startPos, monitor);
+					if (ifModifiedSince > 0)
+						reader.readIfModified(toDownload, target, ifModifiedSince, monitor);
+					else
+						reader.readInto(toDownload, target, startPos, monitor);
 				} finally {
 					if (eventBus != null) {
 						eventBus.removeListener(listener);
 					}
 				}
 
+				if (reader.isNotModified())
+					return statusOn(target, new DownloadStatus(IStatus.OK, Activator.ID, DownloadStatus.CODE_NOT_MODIFIED, Status.OK_STATUS.getMessage(), null), null);
+
 				// check that job ended ok - throw exceptions otherwise
 				IStatus result = reader.getResult();
 				if (result == null) {
@@ -17,6 +17,7 @@ import com.ibm.icu.util.ULocale;
 import org.eclipse.core.runtime.*;
 import org.eclipse.equinox.internal.p2.core.helpers.ServiceHelper;
 import org.eclipse.equinox.internal.p2.garbagecollector.GarbageCollector;
+import org.eclipse.equinox.internal.p2.repository.RepositoryRefreshScheduler;
 import org.eclipse.equinox.internal.p2.ui.sdk.scheduler.migration.MigrationSupport;
 import org.eclipse.equinox.internal.provisional.p2.updatechecker.*;
 import org.eclipse.equinox.p2.core.IProvisioningAgent;
@@ -162,6 +163,19 @@ public class AutomaticUpdateScheduler implements IStartup {
 		};
 		checker.addUpdateCheck(profileId, getProfileQuery(), delay, poll, listener);
 
+		// keep the repositories warm between scheduled checks so that checking is fast
+		if (poll != IUpdateChecker.ONE_TIME_CHECK) {
+			RepositoryRefreshScheduler refresher = getRefreshScheduler();
+			if (refresher != null)
+				refresher.schedule();
+		}
+	}
+
+	private RepositoryRefreshScheduler getRefreshScheduler() {
+		IProvisioningAgent agent = (IProvisioningAgent) ServiceHelper.getService(AutomaticUpdatePlugin.getContext(), IProvisioningAgent.SERVICE_NAME);
+		if (agent == null)
+			return null;
+		return (RepositoryRefreshScheduler) agent.getService(RepositoryRefreshScheduler.SERVICE_NAME);
 	}
 
 	private IQuery<IInstallableUnit> getProfileQuery() {
@@ -270,5 +284,8 @@ public class AutomaticUpdateScheduler implements IStartup {
 			checker.removeUpdateCheck(listener);
 			listener = null;
 		}
+		RepositoryRefreshScheduler refresher = getRefreshScheduler();
+		if (refresher != null)
+			refresher.cancel();
 	}
 }
@@ -31,10 +31,12 @@ public class SimpleConfiguratorManipulatorUtils {
 			throw new IllegalStateException(Messages.exception_failedToCreateDir);
 		}
 
+		// bundles.info is read by the launcher at startup, so never leave it half written
+		File stagingFile = Utils.getStagingFile(outputFile);
 		IOException caughtException = null;
 		OutputStream stream = null;
 		try {
-			stream = new FileOutputStream(outputFile);
+			stream = new FileOutputStream(stagingFile);
 			writeConfiguration(simpleInfos, stream);
 		} catch (IOException e) {
 			caughtException = e;
@@ -48,8 +50,11 @@ public class SimpleConfiguratorManipulatorUtils {
 					caughtException = e;
 			}
 		}
-		if (caughtException != null)
+		if (caughtException != null) {
+			stagingFile.delete();
 			throw caughtException;
+		}
+		Utils.replaceFile(stagingFile, outputFile);
 	}
 
 	/**